@@ -114,6 +114,7 @@ class ApiGenerator {
         String methodName = method.name
         String methodTemplateSource
         String responseType = ""
+        String responseElementType = ""
         String responseObserverType = ""
         String requestType = strippedName(apiSettings,method.parameterTypes[0])
         String observerTypeName = ""
@@ -123,7 +124,8 @@ class ApiGenerator {
             if (method.genericReturnType instanceof ParameterizedType) {
                 ParameterizedType innerTypeParam = (ParameterizedType) method.genericReturnType
                 Class<?> innerTypeClass = (Class<?>) innerTypeParam.getActualTypeArguments()[0]
-                responseType = strippedName(apiSettings,method.returnType) + "<" + strippedName(apiSettings,innerTypeClass) + ">"
+                responseElementType = strippedName(apiSettings,innerTypeClass)
+                responseType = "StreamingResponseIterator<" + responseElementType + ">"
                 methodTemplateSource = "SynchronousRepeatableResponseMethod.java.template"
             } else {
                 responseType = strippedName(apiSettings,method.returnType)
@@ -180,6 +182,7 @@ class ApiGenerator {
         String methodDeclaration = engine.createTemplate(methodDeclarationTemplate).make([
                 requestType: requestType,
                 responseType: responseType,
+                responseElementType: responseElementType,
                 apiClassName: settings.getAPIClassName(requestType),
                 apiResponseClassName: settings.getAPIResponseClassName(methodName,requestType),
                 apiPackage: settings.getAPIPackage(),
@@ -116,6 +116,54 @@ class ClassGenerator {
         project.file(settings.resourcesOutputDir + "jaxb.index").write(content)
     }
 
+    /**
+     * Method to generate the MessageWrapperRegistry mapping each API message class (including
+     * inner classes) to its wrapper constructor.
+     */
+    static void genWrapperRegistry(ProtocolSettings settings, Descriptors.FileDescriptor fileDescriptor){
+        Project project = settings.project
+        String template = getTemplate("MessageWrapperRegistry.java.template")
+        List registrations = []
+        List prototypeRegistrations = []
+        fileDescriptor.messageTypes.each{ Descriptor classDescriptor ->
+            registrations << genWrapperRegistration(settings, classDescriptor.name)
+            prototypeRegistrations << genPrototypeRegistration(settings, classDescriptor.name)
+            classDescriptor.nestedTypes.each{ Descriptor innerClassDescriptor ->
+                if(getMapFields(classDescriptor).find{FieldDescriptor fd -> fd.messageType.fullName == innerClassDescriptor.fullName} == null){
+                    registrations << genWrapperRegistration(settings, classDescriptor.name + "." + innerClassDescriptor.name)
+                    prototypeRegistrations << genPrototypeRegistration(settings, classDescriptor.name + "." + innerClassDescriptor.name)
+                }
+            }
+        }
+
+        def engine = new SimpleTemplateEngine()
+        String generatedRegistry = engine.createTemplate(template).make([
+                wrapperBasePackageName: settings.wrapperBasePackageName,
+                apiClassPath: settings.getAPIClassPath(),
+                registrations: registrations.join("\n"),
+                prototypeRegistrations: prototypeRegistrations.join("\n")]).toString()
+        project.file(settings.messageOutputDir + "MessageWrapperRegistry.java").write(generatedRegistry)
+    }
+
+    /**
+     * Help method generating one registry entry, className is the wrapper class name relative to
+     * the message package, i.e. inner classes separated with '.'.
+     */
+    static String genWrapperRegistration(ProtocolSettings settings, String className){
+        String apiClass = settings.getAPIClassPath() + "." + className
+        String wrapperClass = settings.wrapperBasePackageName + ".message." + className
+        return "        registry.put(${apiClass}.class, apiObject -> new ${wrapperClass}((${apiClass}) apiObject));"
+    }
+
+    /**
+     * Help method generating one prototype registry entry, mapping the descriptor of an API class
+     * to its default instance.
+     */
+    static String genPrototypeRegistration(ProtocolSettings settings, String className){
+        String apiClass = settings.getAPIClassPath() + "." + className
+        return "        registry.put(${apiClass}.getDescriptor(), ${apiClass}.getDefaultInstance());"
+    }
+
     /**
      * Method that generates available fields for given class.
      * @param classDescriptor the class descriptor
@@ -348,6 +396,9 @@ class ClassGenerator {
         String fieldValueType = mappingFields[1].type
         String xmlValueElement = ClassNameUtils.genXMLElement(mappingFields[1].descriptor)
         String xmlElement = ClassNameUtils.genXMLElement(mappingFieldDesc)
+        // Wrapped message values might be modified without calling setValue().
+        String valueModifiedCheck = mappingFields[1].descriptor.javaType == FieldDescriptor.JavaType.MESSAGE ?
+                " || ModificationTrackingList.isModified(next.value)" : ""
 
         def engine = new SimpleTemplateEngine()
         String generatedInnerClass = engine.createTemplate(innerClassTemplate).make([className: className,
@@ -359,6 +410,7 @@ class ClassGenerator {
                                                                                      entriesXmlType: entriesXmlType,
                                                                                      xmlKeyElement: xmlKeyElement,
                                                                                      xmlValueElement: xmlValueElement,
+                                                                                     valueModifiedCheck: valueModifiedCheck,
                                                                                      xmlElement: xmlElement]).toString()
 
         return generatedInnerClass
@@ -437,39 +489,49 @@ class ClassGenerator {
 
 
             String repeatableFields = ""
+            List populatedFieldChecks = []
             fields.each {
 
                 String fieldJavaName = ClassNameUtils.convertToJavaBean(it.name)
                 String fieldJavaType = ClassNameUtils.getType(it)
                 String fieldName = ClassNameUtils.lowerCaseFirst(fieldJavaName)
                 if (!it.mapField) {
+                    if (it.javaType == FieldDescriptor.JavaType.MESSAGE) {
+                        // Unmodified lazy list views doesn't need to be populated.
+                        populatedFieldChecks << "(${fieldName} != null && LazyMessageList.isModified(${fieldName}))"
+                    } else if (it.javaType != FieldDescriptor.JavaType.ENUM) {
+                        // Lists only read through the getter doesn't need to be populated.
+                        populatedFieldChecks << "(${fieldName} != null && ModificationTrackingList.isModified(${fieldName}))"
+                    }
                     if (it.javaType == FieldDescriptor.JavaType.MESSAGE) {
                         repeatableFields += """
 
         
-        if(${fieldName} != null){
-          ((${settings.getAPIClassName()}.${className}.Builder) builder).clear${fieldJavaName}();
-          for(${fieldJavaType} next : ${fieldName}){
-            ((${settings.getAPIClassName()}.${className}.Builder) builder).add${fieldJavaName}(next.getApiObject());
+        if(${fieldName} != null && LazyMessageList.isModified(${fieldName})){
+          // Copy elements before clearing, lazy views read not yet wrapped elements from the builder.
+          List<${fieldJavaType}> ${fieldName}Values = new ArrayList<>(${fieldName});
+          ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).clear${fieldJavaName}();
+          for(${fieldJavaType} next : ${fieldName}Values){
+            ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).add${fieldJavaName}(next.getApiObject());
           }
         }"""
                     } else {
                         if (it.javaType == FieldDescriptor.JavaType.BYTE_STRING) {
                             repeatableFields += """
 
-        if(${fieldName} != null){
-          ((${settings.getAPIClassName()}.${className}.Builder) builder).clear${fieldJavaName}();
+        if(${fieldName} != null && ModificationTrackingList.isModified(${fieldName})){
+          ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).clear${fieldJavaName}();
           for(byte[] next : ${fieldName}){
-            ((${settings.getAPIClassName()}.${className}.Builder) builder).add${fieldJavaName}(ByteString.copyFrom(next));
+            ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).add${fieldJavaName}(ByteString.copyFrom(next));
           }
         }"""
                         } else {
                             if (it.javaType != FieldDescriptor.JavaType.ENUM) {
                                 repeatableFields += """
-        if(${fieldName} != null){
-          ((${settings.getAPIClassName()}.${className}.Builder) builder).clear${fieldJavaName}();
+        if(${fieldName} != null && ModificationTrackingList.isModified(${fieldName})){
+          ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).clear${fieldJavaName}();
           for(${fieldJavaType} next : ${fieldName}){
-            ((${settings.getAPIClassName()}.${className}.Builder) builder).add${fieldJavaName}(next);
+            ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).add${fieldJavaName}(next);
           }
         }"""
                             }
@@ -477,13 +539,15 @@ class ClassGenerator {
                     }
                 } else {
                     ClassNameUtils.MappingType[] mappingFields = ClassNameUtils.getMappingTypes(it, settings)
+                    // Map entries only read through the getter doesn't need to be populated.
+                    populatedFieldChecks << "(${fieldName}Entries != null && ${fieldName}Entries.hasModifiedEntries())"
 
                     repeatableFields += """
 
-        if(${fieldName}Entries != null){
-          ((${settings.getAPIClassName()}.${className}.Builder) builder).clear${fieldJavaName}();
+        if(${fieldName}Entries != null && ${fieldName}Entries.hasModifiedEntries()){
+          ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).clear${fieldJavaName}();
           for(${fieldJavaType} entry : ${fieldName}Entries.getEntry()){
-            ((${settings.getAPIClassName()}.${className}.Builder) builder).put${fieldJavaName}(${getPopulateMapField(mappingFields[0], "Key")},${getPopulateMapField(mappingFields[1], "Value")});
+            ((${settings.getAPIClassName()}.${className}.Builder) getMutableBuilder()).put${fieldJavaName}(${getPopulateMapField(mappingFields[0], "Key")},${getPopulateMapField(mappingFields[1], "Value")});
           }
         }"""
                 }
@@ -496,6 +560,14 @@ class ClassGenerator {
        ${repeatableFields}
     }
 """
+            if(populatedFieldChecks.size() > 0){
+                retval += """
+    @Override
+    protected boolean hasRepeatedFieldsToPopulate(){
+        return ${populatedFieldChecks.join(" || ")};
+    }
+"""
+            }
 
 
         }
@@ -50,6 +50,8 @@ class WrapperClassGenerator extends DefaultTask{
 
             ClassGenerator.genJaxbIndex(protocolSettings, descriptor)
 
+            ClassGenerator.genWrapperRegistry(protocolSettings, descriptor)
+
             ClassGenerator.genPackageInfo(protocolSettings)
 
             ApiGenerator.generateBlockingAPIs(protocolSettings, ProtocolManager.compileClasses, descriptor)
@@ -0,0 +1,119 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.router.proto.RouterGrpc;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+import org.lightningj.lnd.wrapper.router.SynchronousRouterAPI;
+import org.lightningj.lnd.wrapper.router.message.ForwardHtlcInterceptRequest;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark measuring the number of intercepted HTLCs resolved per second by a HtlcInterceptorEngine
+ * with an increasing number of worker threads.
+ * <p>
+ *     An in-process server sends a batch of HTLCs on the interceptor stream and waits until all are
+ *     resolved. The decision function consumes a fixed amount of CPU per HTLC, so the throughput should
+ *     scale with the number of worker threads up to the number of cores.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HtlcInterceptorBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long DECISION_CPU_TOKENS = 2000;
+
+    @Param({"1", "2", "4", "8"})
+    public int workerThreads;
+
+    @Param({"true", "false"})
+    public boolean orderedResponses;
+
+    private Server server;
+    private ManagedChannel channel;
+    private HtlcInterceptorEngine<ForwardHtlcInterceptRequest> engine;
+    private volatile StreamObserver<RouterOuterClass.ForwardHtlcInterceptRequest> stream;
+    private volatile CountDownLatch resolved;
+
+    @Setup
+    public void setup() throws Exception{
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(new RouterGrpc.RouterImplBase() {
+            @Override
+            public StreamObserver<RouterOuterClass.ForwardHtlcInterceptResponse> htlcInterceptor(StreamObserver<RouterOuterClass.ForwardHtlcInterceptRequest> responseObserver) {
+                stream = responseObserver;
+                return new StreamObserver<RouterOuterClass.ForwardHtlcInterceptResponse>() {
+                    @Override
+                    public void onNext(RouterOuterClass.ForwardHtlcInterceptResponse value) {
+                        resolved.countDown();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                };
+            }
+        }).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        engine = new HtlcInterceptorEngine<>(new SynchronousRouterAPI(channel), htlc -> {
+            Blackhole.consumeCPU(DECISION_CPU_TOKENS);
+            return htlc.getOutgoingAmountMsat() > 0 ? HtlcDecision.resume() : HtlcDecision.fail();
+        }, workerThreads);
+        engine.setOrderedResponses(orderedResponses);
+        engine.start();
+        while(stream == null){
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void resolveHtlcs() throws Exception {
+        resolved = new CountDownLatch(BATCH_SIZE);
+        for(int i=0; i<BATCH_SIZE; i++){
+            stream.onNext(RouterOuterClass.ForwardHtlcInterceptRequest.newBuilder()
+                    .setIncomingCircuitKey(RouterOuterClass.CircuitKey.newBuilder().setChanId(1).setHtlcId(i))
+                    .setOutgoingAmountMsat(1000 + i).build());
+        }
+        resolved.await();
+    }
+}
@@ -0,0 +1,85 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging;
+
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.BenchmarkPayloads;
+import org.lightningj.lnd.wrapper.message.Invoice;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of iterating over 20 000 invoices fetched in pages of 1000 with a simulated
+ * network latency per page, with and without prefetching of the next page.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PagedIteratorBenchmark {
+
+    private static final int INVOICE_COUNT = 20000;
+    private static final int PAGE_SIZE = 1000;
+    private static final long PAGE_LATENCY_MILLIS = 5;
+
+    @Param({"true", "false"})
+    public boolean prefetch;
+
+    private List<LightningApi.ListInvoiceResponse> pages;
+    private PagingOptions options;
+
+    @Setup
+    public void setup(){
+        pages = new ArrayList<>();
+        for(int i=0; i<INVOICE_COUNT; i+=PAGE_SIZE){
+            LightningApi.ListInvoiceResponse.Builder builder = LightningApi.ListInvoiceResponse.newBuilder();
+            for(int j=i; j<i+PAGE_SIZE; j++){
+                builder.addInvoices(BenchmarkPayloads.genInvoice(j));
+            }
+            builder.setLastIndexOffset(i + PAGE_SIZE);
+            pages.add(builder.build());
+        }
+        options = new PagingOptions();
+        options.setInitialPageSize(PAGE_SIZE);
+        options.setMaxPageSize(PAGE_SIZE);
+        options.setPrefetch(prefetch);
+    }
+
+    @Benchmark
+    public void iterateAllInvoices(Blackhole blackhole) {
+        PageFetcher<LightningApi.ListInvoiceResponse> fetcher = (indexOffset, maxRecords) -> {
+            try {
+                Thread.sleep(PAGE_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int page = (int) (indexOffset / PAGE_SIZE);
+            return page < pages.size() ? pages.get(page) : LightningApi.ListInvoiceResponse.getDefaultInstance();
+        };
+        try(PagedIterator<Invoice> iterator = new PagedIterator<>(fetcher, LightningApi.ListInvoiceResponse::getInvoicesList,
+                LightningApi.ListInvoiceResponse::getLastIndexOffset, 0, options)){
+            while(iterator.hasNext()){
+                blackhole.consume(iterator.next().toJsonAsString(false));
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.payment;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.router.proto.RouterGrpc;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+import org.lightningj.lnd.util.HexUtils;
+import org.lightningj.lnd.wrapper.router.SynchronousRouterAPI;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark measuring the number of payments completed per second by a PaymentPipeline with
+ * an increasing number of payments in flight.
+ * <p>
+ *     An in-process router completes each payment a fixed time after it was sent, simulating
+ *     the time to route a payment, so the throughput should scale with the max in flight.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PaymentPipelineBenchmark {
+
+    private static final int BATCH_SIZE = 200;
+    private static final long ROUTING_TIME_MILLIS = 1;
+
+    @Param({"1", "10", "50"})
+    public int maxInFlight;
+
+    private Server server;
+    private ManagedChannel channel;
+    private ScheduledExecutorService routingScheduler;
+    private PaymentPipeline pipeline;
+    private long nextPaymentId = 0;
+
+    @Setup
+    public void setup() throws Exception{
+        routingScheduler = Executors.newScheduledThreadPool(4);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(new RouterGrpc.RouterImplBase() {
+            @Override
+            public void sendPaymentV2(RouterOuterClass.SendPaymentRequest request, StreamObserver<LightningApi.Payment> responseObserver) {
+                routingScheduler.schedule(() -> {
+                    responseObserver.onNext(LightningApi.Payment.newBuilder()
+                            .setPaymentHash(HexUtils.toHex(request.getPaymentHash()))
+                            .setStatus(LightningApi.Payment.PaymentStatus.SUCCEEDED).build());
+                    responseObserver.onCompleted();
+                }, ROUTING_TIME_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        pipeline = new PaymentPipeline(new SynchronousRouterAPI(channel), maxInFlight);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.close();
+        channel.shutdownNow();
+        server.shutdownNow();
+        routingScheduler.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void sendPayments() throws Exception {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+        for(int i=0; i<BATCH_SIZE; i++){
+            byte[] paymentHash = ByteBuffer.allocate(32).putLong(nextPaymentId++).array();
+            futures[i] = pipeline.submit(RouterOuterClass.SendPaymentRequest.newBuilder()
+                    .setPaymentHash(ByteString.copyFrom(paymentHash))
+                    .setAmt(1000).build());
+        }
+        CompletableFuture.allOf(futures).get();
+    }
+}
@@ -0,0 +1,70 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util;
+
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.BenchmarkPayloads;
+import org.lightningj.lnd.wrapper.ValidationResult;
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of ValidationUtils.validateMessage, performed on every request and
+ * response when validation is enabled in the API.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ValidationBenchmark {
+
+    private LightningApi.Invoice invoice;
+    private LightningApi.Invoice.Builder invoiceBuilder;
+    private LightningApi.ListInvoiceResponse listInvoiceResponse;
+    private ListInvoiceResponse listInvoiceResponseMessage;
+
+    @Setup
+    public void setup(){
+        invoice = BenchmarkPayloads.genInvoice(1);
+        invoiceBuilder = invoice.toBuilder();
+        listInvoiceResponse = BenchmarkPayloads.genListInvoiceResponse(100);
+        listInvoiceResponseMessage = new ListInvoiceResponse(listInvoiceResponse);
+    }
+
+    @Benchmark
+    public ValidationResult validateInvoice() {
+        return ValidationUtils.validateMessage(invoice, invoice.getDescriptorForType());
+    }
+
+    @Benchmark
+    public ValidationResult validateInvoiceBuilder() {
+        return ValidationUtils.validateMessage(invoiceBuilder, invoiceBuilder.getDescriptorForType());
+    }
+
+    @Benchmark
+    public ValidationResult validateListInvoiceResponse() {
+        return ValidationUtils.validateMessage(listInvoiceResponse, listInvoiceResponse.getDescriptorForType());
+    }
+
+    @Benchmark
+    public ValidationResult validateListInvoiceResponseMessage() {
+        return listInvoiceResponseMessage.validate();
+    }
+}
@@ -0,0 +1,102 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.message.GetInfoResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark measuring the GetInfo throughput of an APIPool with an increasing number of nodes.
+ * <p>
+ *     Each node is simulated by an in-process server processing one call at a time with a fixed
+ *     service time, so the throughput of a single node is bounded and the total throughput should
+ *     scale with the number of nodes in the pool.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(16)
+@Fork(1)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class APIPoolBenchmark {
+
+    private static final long SERVICE_TIME_MILLIS = 1;
+
+    @Param({"1", "2", "4"})
+    public int nodeCount;
+
+    @Param({"LEAST_OUTSTANDING_REQUESTS", "ROUND_ROBIN"})
+    public APIPool.LoadBalancingStrategy strategy;
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private APIPool<SynchronousLndAPI> pool;
+
+    @Setup
+    public void setup() throws Exception{
+        List<ManagedChannel> channels = new ArrayList<>();
+        for(int i=0; i<nodeCount; i++){
+            String name = InProcessServerBuilder.generateName();
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            executors.add(executor);
+            servers.add(InProcessServerBuilder.forName(name).executor(executor).addService(new LightningGrpc.LightningImplBase() {
+                @Override
+                public void getInfo(LightningApi.GetInfoRequest request, StreamObserver<LightningApi.GetInfoResponse> responseObserver) {
+                    try {
+                        Thread.sleep(SERVICE_TIME_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    responseObserver.onNext(LightningApi.GetInfoResponse.newBuilder().setAlias(name).build());
+                    responseObserver.onCompleted();
+                }
+            }).build().start());
+            channels.add(InProcessChannelBuilder.forName(name).build());
+        }
+        pool = new APIPool<>(channels, SynchronousLndAPI::new, strategy);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        pool.close();
+        for(Server server : servers){
+            server.shutdownNow();
+        }
+        for(ExecutorService executor : executors){
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public GetInfoResponse getInfo() throws Exception {
+        return pool.execute(api -> api.getInfo());
+    }
+}
@@ -0,0 +1,116 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import com.google.protobuf.ByteString;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+
+import java.util.Random;
+
+/**
+ * Help class generating realistic synthetic API objects used as benchmark payloads.
+ * A fixed seed is used so every run measures the same data.
+ *
+ * Created by Philip Vendil.
+ */
+public class BenchmarkPayloads {
+
+    private static final Random random = new Random(4711);
+
+    /**
+     * Generates a settled invoice with hashes, a payment request and one route hint.
+     *
+     * @param index the add index of the invoice.
+     * @return a new synthetic invoice.
+     */
+    public static LightningApi.Invoice genInvoice(long index){
+        return LightningApi.Invoice.newBuilder()
+                .setMemo("Invoice for order " + index)
+                .setRPreimage(randomBytes(32))
+                .setRHash(randomBytes(32))
+                .setValue(1000 + index)
+                .setValueMsat((1000 + index) * 1000)
+                .setCreationDate(1700000000L + index)
+                .setSettleDate(1700000600L + index)
+                .setPaymentRequest("lnbc" + (1000 + index) + "n1pjqqqqqpp5" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()))
+                .setExpiry(3600)
+                .setCltvExpiry(40)
+                .addRouteHints(LightningApi.RouteHint.newBuilder()
+                        .addHopHints(LightningApi.HopHint.newBuilder()
+                                .setNodeId("02" + Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()))
+                                .setChanId(random.nextLong() >>> 1)
+                                .setFeeBaseMsat(1000)
+                                .setFeeProportionalMillionths(1)
+                                .setCltvExpiryDelta(144)))
+                .setAddIndex(index)
+                .setSettleIndex(index)
+                .setAmtPaidSat(1000 + index)
+                .setAmtPaidMsat((1000 + index) * 1000)
+                .setState(LightningApi.Invoice.InvoiceState.SETTLED)
+                .setPaymentAddr(randomBytes(32))
+                .build();
+    }
+
+    /**
+     * Generates a list invoice response containing the given number of invoices.
+     *
+     * @param numberOfInvoices the number of invoices in the response.
+     * @return a new synthetic list invoice response.
+     */
+    public static LightningApi.ListInvoiceResponse genListInvoiceResponse(int numberOfInvoices){
+        LightningApi.ListInvoiceResponse.Builder builder = LightningApi.ListInvoiceResponse.newBuilder();
+        for(int i=0; i < numberOfInvoices; i++){
+            builder.addInvoices(genInvoice(i));
+        }
+        builder.setFirstIndexOffset(0);
+        builder.setLastIndexOffset(numberOfInvoices);
+        return builder.build();
+    }
+
+    /**
+     * Generates a forward htlc event as streamed by SubscribeHtlcEvents.
+     *
+     * @param index the htlc id to use.
+     * @return a new synthetic htlc event.
+     */
+    public static RouterOuterClass.HtlcEvent genHtlcEvent(long index){
+        return RouterOuterClass.HtlcEvent.newBuilder()
+                .setIncomingChannelId(random.nextLong() >>> 1)
+                .setOutgoingChannelId(random.nextLong() >>> 1)
+                .setIncomingHtlcId(index)
+                .setOutgoingHtlcId(index)
+                .setTimestampNs(System.nanoTime())
+                .setEventType(RouterOuterClass.HtlcEvent.EventType.FORWARD)
+                .setForwardEvent(RouterOuterClass.ForwardEvent.newBuilder()
+                        .setInfo(RouterOuterClass.HtlcInfo.newBuilder()
+                                .setIncomingTimelock(800040)
+                                .setOutgoingTimelock(800000)
+                                .setIncomingAmtMsat(100001000L)
+                                .setOutgoingAmtMsat(100000000L)))
+                .build();
+    }
+
+    /**
+     * Generates random bytes.
+     *
+     * @param length the number of bytes to generate.
+     * @return a ByteString of random data.
+     */
+    public static ByteString randomBytes(int length){
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return ByteString.copyFrom(data);
+    }
+}
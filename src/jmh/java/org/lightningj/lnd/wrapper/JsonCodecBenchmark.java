@@ -0,0 +1,80 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.util.JsonGenUtils;
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse;
+import org.openjdk.jmh.annotations.*;
+
+import javax.json.Json;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the JsonObjectBuilder tree based JSON conversion with the streaming
+ * conversion in JsonStreamUtils, using a ListInvoiceResponse containing one or many invoices.
+ * Run with the JMH gc profiler (-prof gc) to compare allocation rates.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JsonCodecBenchmark {
+
+    @Param({"1", "1000"})
+    public int invoiceCount;
+
+    private ListInvoiceResponse message;
+    private String json;
+    private ByteArrayOutputStream outputStream;
+
+    @Setup
+    public void setup(){
+        message = new ListInvoiceResponse(BenchmarkPayloads.genListInvoiceResponse(invoiceCount));
+        json = message.toJsonAsString(false);
+        outputStream = new ByteArrayOutputStream(json.length() * 2);
+    }
+
+    @Benchmark
+    public String writeTree() {
+        return JsonGenUtils.jsonToString(message.toJson(), false);
+    }
+
+    @Benchmark
+    public String writeStreamToString() {
+        return message.toJsonAsString(false);
+    }
+
+    @Benchmark
+    public int writeStreamToOutputStream() {
+        outputStream.reset();
+        message.toJson(outputStream, false);
+        return outputStream.size();
+    }
+
+    @Benchmark
+    public ListInvoiceResponse readTree() {
+        return new ListInvoiceResponse(Json.createReader(new StringReader(json)));
+    }
+
+    @Benchmark
+    public ListInvoiceResponse readStream() {
+        return new ListInvoiceResponse(Json.createParser(new StringReader(json)));
+    }
+}
@@ -0,0 +1,74 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.message.Invoice;
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the generated list getters on a large message, a ListInvoiceResponse with
+ * 10 000 invoices as returned by a ListInvoices call on a busy node. Every benchmark starts
+ * from a newly wrapped response, as done when a response is received.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ListGetterBenchmark {
+
+    private static final int INVOICE_COUNT = 10000;
+
+    private LightningApi.ListInvoiceResponse apiObject;
+
+    @Setup
+    public void setup(){
+        apiObject = BenchmarkPayloads.genListInvoiceResponse(INVOICE_COUNT);
+    }
+
+    @Benchmark
+    public Invoice getFirstInvoice() {
+        return new ListInvoiceResponse(apiObject).getInvoices().get(0);
+    }
+
+    @Benchmark
+    public long sumInvoiceValues() {
+        List<Invoice> invoices = new ListInvoiceResponse(apiObject).getInvoices();
+        long sum = 0;
+        for(Invoice invoice : invoices){
+            sum += invoice.getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long streamInvoiceValues() {
+        return new ListInvoiceResponse(apiObject).streamInvoices().mapToLong(Invoice::getValue).sum();
+    }
+
+    @Benchmark
+    public LightningApi.ListInvoiceResponse getInvoicesAndGetApiObject() {
+        ListInvoiceResponse response = new ListInvoiceResponse(apiObject);
+        response.getInvoices();
+        return response.getApiObject();
+    }
+}
@@ -0,0 +1,84 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse;
+import org.openjdk.jmh.annotations.*;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the conversions of a wrapped message to and from its GRPC API object and JSON,
+ * and of equals and hashCode, using a ListInvoiceResponse containing one or many invoices.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MessageBenchmark {
+
+    @Param({"1", "1000"})
+    public int invoiceCount;
+
+    private LightningApi.ListInvoiceResponse apiObject;
+    private ListInvoiceResponse message;
+    private ListInvoiceResponse otherMessage;
+    private String json;
+
+    @Setup
+    public void setup(){
+        apiObject = BenchmarkPayloads.genListInvoiceResponse(invoiceCount);
+        message = new ListInvoiceResponse(apiObject);
+        otherMessage = new ListInvoiceResponse(apiObject);
+        json = message.toJsonAsString(false);
+    }
+
+    @Benchmark
+    public LightningApi.ListInvoiceResponse getApiObject() {
+        return message.getApiObject();
+    }
+
+    @Benchmark
+    public LightningApi.ListInvoiceResponse wrapAndGetApiObject() {
+        return new ListInvoiceResponse(apiObject).getApiObject();
+    }
+
+    @Benchmark
+    public int hashCodeAndEquals() {
+        return message.equals(otherMessage) ? message.hashCode() : 0;
+    }
+
+    @Benchmark
+    public JsonObjectBuilder toJson() {
+        return message.toJson();
+    }
+
+    @Benchmark
+    public String toJsonAsString() {
+        return message.toJsonAsString(false);
+    }
+
+    @Benchmark
+    public ListInvoiceResponse fromJson() {
+        return new ListInvoiceResponse(Json.createReader(new StringReader(json)));
+    }
+}
@@ -0,0 +1,82 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.message.AliasMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of reading a repeated uint64 field with 100 000 channel ids using the boxed
+ * list getter compared to the primitive array and stream getters.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepeatedNumberBenchmark {
+
+    private static final int CHANNEL_ID_COUNT = 100000;
+
+    private LightningApi.AliasMap apiObject;
+
+    @Setup
+    public void setup(){
+        LightningApi.AliasMap.Builder builder = LightningApi.AliasMap.newBuilder();
+        for(long i=0; i<CHANNEL_ID_COUNT; i++){
+            builder.addAliases((700000L + i) << 40 | i);
+        }
+        apiObject = builder.build();
+    }
+
+    @Benchmark
+    public long sumBoxedList() throws ClientSideException {
+        long sum = 0;
+        for(Long chanId : new AliasMap(apiObject).getAliases()){
+            sum += chanId;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumLongArray() {
+        long sum = 0;
+        for(long chanId : new AliasMap(apiObject).getAliasesAsLongArray()){
+            sum += chanId;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumLongStream() {
+        return new AliasMap(apiObject).getAliasesAsLongStream().sum();
+    }
+
+    @Benchmark
+    public LightningApi.AliasMap setLongArray() {
+        long[] chanIds = new long[CHANNEL_ID_COUNT];
+        for(int i=0; i<chanIds.length; i++){
+            chanIds[i] = i;
+        }
+        AliasMap aliasMap = new AliasMap();
+        aliasMap.setAliasesFromLongArray(chanIds);
+        return aliasMap.getApiObject();
+    }
+}
@@ -0,0 +1,81 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of WrapperFactory.wrap() comparing the generated registry lookup with the
+ * previous reflection based lookup (class loading and constructor lookup on every call).
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WrapperFactoryBenchmark {
+
+    private WrapperFactory wrapperFactory = WrapperFactory.getInstance();
+
+    private LightningApi.Invoice invoice;
+    private RouterOuterClass.HtlcEvent htlcEvent;
+    private LightningApi.PendingChannelsResponse.PendingChannel pendingChannel;
+
+    @Setup
+    public void setup(){
+        invoice = BenchmarkPayloads.genInvoice(1);
+        htlcEvent = BenchmarkPayloads.genHtlcEvent(1);
+        pendingChannel = LightningApi.PendingChannelsResponse.PendingChannel.newBuilder()
+                .setRemoteNodePub("02ad1fddad0c572ec3e886cbea31bbafa30b5f7e745da7e936ed9d1471116cdc02")
+                .setCapacity(1000000)
+                .build();
+    }
+
+    @Benchmark
+    public Message wrapInvoice() throws ClientSideException {
+        return wrapperFactory.wrap(invoice);
+    }
+
+    @Benchmark
+    public Message wrapInvoiceUsingReflection() throws ClientSideException {
+        return wrapperFactory.lookupReflectiveConstructor(invoice.getClass()).apply(invoice);
+    }
+
+    @Benchmark
+    public Message wrapHtlcEvent() throws ClientSideException {
+        return wrapperFactory.wrap(htlcEvent);
+    }
+
+    @Benchmark
+    public Message wrapHtlcEventUsingReflection() throws ClientSideException {
+        return wrapperFactory.lookupReflectiveConstructor(htlcEvent.getClass()).apply(htlcEvent);
+    }
+
+    @Benchmark
+    public Message wrapInnerClass() throws ClientSideException {
+        return wrapperFactory.wrap(pendingChannel);
+    }
+
+    @Benchmark
+    public Message wrapInnerClassUsingReflection() throws ClientSideException {
+        return wrapperFactory.lookupReflectiveConstructor(pendingChannel.getClass()).apply(pendingChannel);
+    }
+}
@@ -0,0 +1,58 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of XMLParser marshalling and unmarshalling (with schema validation) of a
+ * ListInvoiceResponse containing one or many invoices.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XMLParserBenchmark {
+
+    @Param({"1", "1000"})
+    public int invoiceCount;
+
+    private XMLParser xmlParser;
+    private ListInvoiceResponse message;
+    private byte[] xmlData;
+
+    @Setup
+    public void setup() throws Exception{
+        xmlParser = new XMLParserFactory().getXMLParser("1.0");
+        message = new ListInvoiceResponse(BenchmarkPayloads.genListInvoiceResponse(invoiceCount));
+        xmlData = xmlParser.marshall(message);
+    }
+
+    @Benchmark
+    public byte[] marshall() throws Exception {
+        return xmlParser.marshall(message);
+    }
+
+    @Benchmark
+    public Message unmarshall() throws Exception {
+        return xmlParser.unmarshall(xmlData);
+    }
+}
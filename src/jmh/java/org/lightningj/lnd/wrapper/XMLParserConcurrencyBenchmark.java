@@ -0,0 +1,61 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark measuring the throughput of one XMLParser shared by all benchmark threads, marshalling
+ * and unmarshalling (with schema validation) a ListInvoiceResponse containing 10 invoices.
+ * <p>
+ *     Compare the result with a single thread run, for example using
+ *     <i>-Pjmh.threads=1</i>, the throughput should scale with the number of cores since each
+ *     thread uses its own pooled Marshaller and Unmarshaller.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Threads(Threads.MAX)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XMLParserConcurrencyBenchmark {
+
+    private XMLParser xmlParser;
+    private ListInvoiceResponse message;
+    private byte[] xmlData;
+
+    @Setup
+    public void setup() throws Exception{
+        xmlParser = new XMLParserFactory().getXMLParser("1.0");
+        message = new ListInvoiceResponse(BenchmarkPayloads.genListInvoiceResponse(10));
+        xmlData = xmlParser.marshall(message);
+    }
+
+    @Benchmark
+    public byte[] marshall() throws Exception {
+        return xmlParser.marshall(message);
+    }
+
+    @Benchmark
+    public Message unmarshall() throws Exception {
+        return xmlParser.unmarshall(xmlData);
+    }
+}
@@ -0,0 +1,63 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import org.lightningj.lnd.wrapper.message.Invoice;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the time until a first XML message is marshalled in a new JVM, comparing
+ * a parser with all protocols, a parser with only the lnd and invoices protocols and a
+ * parser initialized with warmUp, that loads the JAXB context and schemas in parallel.
+ * <p>
+ *     Each measurement is run in a new fork without warm up since JAXB initialization
+ *     is only cold once per JVM.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class XMLParserStartupBenchmark {
+
+    private Invoice invoice;
+
+    @Setup
+    public void setup() throws Exception{
+        invoice = new Invoice(BenchmarkPayloads.genInvoice(0));
+    }
+
+    @Benchmark
+    public byte[] allProtocols() throws Exception {
+        return new V1XMLParser().marshall(invoice);
+    }
+
+    @Benchmark
+    public byte[] allProtocolsWarmUp() throws Exception {
+        XMLParser parser = new V1XMLParser();
+        parser.warmUp().get();
+        return parser.marshall(invoice);
+    }
+
+    @Benchmark
+    public byte[] lndAndInvoicesProtocols() throws Exception {
+        return new V1XMLParser("lnd", "invoices").marshall(invoice);
+    }
+}
@@ -0,0 +1,88 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.SynchronousLndAPI;
+import org.lightningj.lnd.wrapper.message.PayReq;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the offline Bolt11Decoder with the DecodePayReq GRPC call.
+ * <p>
+ *     The GRPC call is made to an in-process server returning a pre-decoded PayReq, so
+ *     the measured RPC latency is a lower bound only including serialization, call setup and
+ *     wrapping. A real LND node adds network round trip and server side decoding.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class Bolt11DecoderBenchmark {
+
+    private static final String PAYMENT_REQUEST = "lnbc20m1pvjluezpp5qqqsyqcyq5rqwzqfqqqsyqcyq5rqwzqfqqqsyqcyq5rqwzqfqypqhp58yjmdan79s6qqdhdzgynm4zwqd5d7xmw5fk98klysy043l2ahrqsfpp3x9et2e20v6pu37c5d9vax37wxq72un98r9yq20q82gphp2nflc7jtzrcazrra7wwgzxqc8u7754cdlpfrmccae92qgzqvzq2ps8pqqqqqqpqqqqq9qqqvpeuqafqxu92d8lr6fvg0r5gv0heeeqgcrqlnm6jhphu9y00rrhy4grqszsvpcgpy9qqqqqqgqqqqq7qqzqxqzpucqzqffppqw508d6qejxtdg4y5r3zarvary0c5xw7kl9e6pwrsvtpcn5f9mqveaqpmsv4k434l0pn6fakdsagxqc8uf3vxfvzgzc52y9pasknsz3l2r4aa7ju0q8r2ttnj9tx57hhf9turg6sp9797e7";
+
+    private Server server;
+    private ManagedChannel channel;
+    private SynchronousLndAPI api;
+
+    @Setup
+    public void setup() throws Exception{
+        LightningApi.PayReq decoded = Bolt11Decoder.decodeToApi(PAYMENT_REQUEST);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).addService(new LightningGrpc.LightningImplBase() {
+            @Override
+            public void decodePayReq(LightningApi.PayReqString request, StreamObserver<LightningApi.PayReq> responseObserver) {
+                responseObserver.onNext(decoded);
+                responseObserver.onCompleted();
+            }
+        }).build().start();
+        channel = InProcessChannelBuilder.forName(name).build();
+        api = new SynchronousLndAPI(channel);
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Benchmark
+    public LightningApi.PayReq decodeToApiOffline() {
+        return Bolt11Decoder.decodeToApi(PAYMENT_REQUEST);
+    }
+
+    @Benchmark
+    public PayReq decodeOffline() {
+        return Bolt11Decoder.decode(PAYMENT_REQUEST);
+    }
+
+    @Benchmark
+    public PayReq decodePayReqRPC() throws Exception {
+        return api.decodePayReq(PAYMENT_REQUEST);
+    }
+}
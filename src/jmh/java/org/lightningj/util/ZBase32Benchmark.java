@@ -0,0 +1,57 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of ZBase32 encoding and decoding, the size 65 corresponds to a
+ * recoverable signature as used by SignMessage and VerifyMessage.
+ *
+ * Created by Philip Vendil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ZBase32Benchmark {
+
+    @Param({"65", "1024"})
+    public int size;
+
+    private byte[] data;
+    private String encoded;
+
+    @Setup
+    public void setup(){
+        data = new byte[size];
+        new Random(4711).nextBytes(data);
+        encoded = ZBase32.encodeToString(data);
+    }
+
+    @Benchmark
+    public String encode() {
+        return ZBase32.encodeToString(data);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return ZBase32.decode(encoded);
+    }
+}
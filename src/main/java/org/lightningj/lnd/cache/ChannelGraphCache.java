@@ -0,0 +1,579 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import io.grpc.Channel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.StatusException;
+import org.lightningj.lnd.wrapper.StatusExceptionWrapper;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local in-memory cache of the LND channel graph.
+ * <p>
+ *     The cache is initialized with one DescribeGraph snapshot and then kept up to date by
+ *     applying the incremental GraphTopologyUpdates received from SubscribeChannelGraph,
+ *     giving O(1) lookups of nodes by public key and channels by channel id without
+ *     the GetNodeInfo/GetChanInfo round trips or transferring and wrapping the full graph
+ *     on every call.
+ * </p>
+ * <p>
+ *     Internally channels are stored in a primitive long keyed map and public keys as interned
+ *     33 byte NodeKeys. Returned GraphNode and GraphChannel objects are immutable snapshots.
+ * </p>
+ * <p>
+ *     If the subscription fails is the cache marked as not synchronized and, if a reconnect delay
+ *     is set, reloaded automatically after the delay. The cache is thread safe.
+ * </p>
+ * Example:
+ * <pre>
+ * ChannelGraphCache graphCache = new ChannelGraphCache(synchronousLndAPI);
+ * graphCache.start();
+ * GraphChannel channel = graphCache.getChannel(chanId);
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class ChannelGraphCache implements Closeable {
+
+    protected static Logger log =
+            Logger.getLogger(ChannelGraphCache.class.getName());
+
+    protected StatusExceptionWrapper statusExceptionWrapper = StatusExceptionWrapper.getInstance();
+
+    private final Channel channel;
+    private final boolean includeUnannounced;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private GraphState state = new GraphState(16, 16);
+    private List<LightningApi.GraphTopologyUpdate> pendingUpdates = null;
+    private long generation = 0;
+    private ClientCallStreamObserver<LightningApi.GraphTopologySubscription> subscription;
+
+    private volatile boolean synced = false;
+    private volatile boolean closed = false;
+    private volatile long reconnectDelay = 0;
+    private ScheduledExecutorService reconnectScheduler;
+
+    /**
+     * Creates a graph cache using the call channel of the given API, only announced
+     * channels are cached.
+     *
+     * @param api the API to use the GRPC call channel of.
+     */
+    public ChannelGraphCache(API api){
+        this(api.getCallChannel(), false);
+    }
+
+    /**
+     * Creates a graph cache using the given GRPC channel.
+     *
+     * @param channel the GRPC channel to a LND node.
+     * @param includeUnannounced if unannounced channels should be included in the cache.
+     */
+    public ChannelGraphCache(Channel channel, boolean includeUnannounced){
+        this.channel = channel;
+        this.includeUnannounced = includeUnannounced;
+    }
+
+    /**
+     * Subscribes to graph topology updates and loads a full graph snapshot. Updates received
+     * while the snapshot is loaded are applied after the snapshot. Can also be called to
+     * reload the cache, in which case the previous subscription is cancelled.
+     *
+     * @throws StatusException if problems occurred in underlying GRPC call. Can be of one of three sub exceptions
+     * <li>ClientSideException: if problems was found in the request data, such as invalid or unexpected data.
+     * <li>ServerSideException: if server side problems was detected when processing the request.
+     * <li>CommunicationException: if communication related problems occurred during the call.
+     */
+    public void start() throws StatusException {
+        if(closed){
+            throw new IllegalStateException("ChannelGraphCache is closed.");
+        }
+        long currentGeneration;
+        lock.writeLock().lock();
+        try{
+            cancelSubscription();
+            currentGeneration = ++generation;
+            pendingUpdates = new ArrayList<>();
+            synced = false;
+        }finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            LightningGrpc.newStub(channel).subscribeChannelGraph(LightningApi.GraphTopologySubscription.getDefaultInstance(),
+                    new TopologyObserver(currentGeneration));
+            LightningApi.ChannelGraph graph = LightningGrpc.newBlockingStub(channel).describeGraph(
+                    LightningApi.ChannelGraphRequest.newBuilder().setIncludeUnannounced(includeUnannounced).build());
+            GraphState newState = GraphState.fromApi(graph);
+
+            boolean reload;
+            lock.writeLock().lock();
+            try {
+                if (currentGeneration != generation) {
+                    return;
+                }
+                for (LightningApi.GraphTopologyUpdate update : pendingUpdates) {
+                    newState.apply(update);
+                }
+                pendingUpdates = null;
+                state = newState;
+                reload = subscription == null;
+                synced = !reload;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.fine("Channel graph cache loaded with " + newState.nodes.size() + " nodes and " + newState.channels.size() + " channels.");
+            if(reload){
+                // The subscription failed while loading the snapshot, updates might have been missed.
+                scheduleReconnect();
+            }
+        }catch(StatusRuntimeException e){
+            abortStart(currentGeneration);
+            throw statusExceptionWrapper.wrap(e);
+        }catch(RuntimeException e){
+            // For example a malformed public key in the snapshot or in a buffered update.
+            abortStart(currentGeneration);
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up a node by its hex encoded public key.
+     *
+     * @param pubKey the hex encoded public key.
+     * @return the node or null if not found or the node hasn't announced itself.
+     */
+    public GraphNode getNode(String pubKey){
+        return getNode(NodeKey.fromHex(pubKey));
+    }
+
+    /**
+     * Looks up a node by its public key.
+     *
+     * @param pubKey the node public key.
+     * @return the node or null if not found or the node hasn't announced itself.
+     */
+    public GraphNode getNode(NodeKey pubKey){
+        lock.readLock().lock();
+        try{
+            NodeEntry entry = state.nodes.get(pubKey);
+            return entry != null ? entry.node : null;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks up a channel by its channel id.
+     *
+     * @param channelId the unique channel id.
+     * @return the channel or null if not found.
+     */
+    public GraphChannel getChannel(long channelId){
+        lock.readLock().lock();
+        try{
+            return state.channels.get(channelId);
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns all channels of a given node.
+     *
+     * @param pubKey the hex encoded public key of the node.
+     * @return list of channels of the node, empty if node isn't found.
+     */
+    public List<GraphChannel> getChannels(String pubKey){
+        return getChannels(NodeKey.fromHex(pubKey));
+    }
+
+    /**
+     * Returns all channels of a given node.
+     *
+     * @param pubKey the public key of the node.
+     * @return list of channels of the node, empty if node isn't found.
+     */
+    public List<GraphChannel> getChannels(NodeKey pubKey){
+        lock.readLock().lock();
+        try{
+            NodeEntry entry = state.nodes.get(pubKey);
+            if(entry == null){
+                return Collections.emptyList();
+            }
+            List<GraphChannel> retval = new ArrayList<>(entry.channelCount);
+            for(int i=0; i<entry.channelCount; i++){
+                GraphChannel c = state.channels.get(entry.channelIds[i]);
+                if(c != null){
+                    retval.add(c);
+                }
+            }
+            return retval;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @param pubKey the public key of the node.
+     * @return the sum of the capacity of all channels of the node.
+     */
+    public long getTotalCapacity(NodeKey pubKey){
+        long retval = 0;
+        for(GraphChannel c : getChannels(pubKey)){
+            retval += c.getCapacity();
+        }
+        return retval;
+    }
+
+    /**
+     *
+     * @return the number of nodes in the cache.
+     */
+    public int getNodeCount(){
+        lock.readLock().lock();
+        try{
+            return state.nodes.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of channels in the cache.
+     */
+    public int getChannelCount(){
+        lock.readLock().lock();
+        try{
+            return state.channels.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *
+     * @return true if the cache has loaded a snapshot and the topology subscription is active.
+     */
+    public boolean isSynchronized(){
+        return synced;
+    }
+
+    /**
+     *
+     * @param reconnectDelay delay in milliseconds before reloading the cache if the topology subscription failed,
+     *                       0 (default) to not reload automatically.
+     */
+    public void setReconnectDelay(long reconnectDelay){
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Cancels the topology subscription and clears the cache. The underlying GRPC channel is not closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synced = false;
+        lock.writeLock().lock();
+        try{
+            generation++;
+            cancelSubscription();
+            pendingUpdates = null;
+            state = new GraphState(16, 16);
+        }finally {
+            lock.writeLock().unlock();
+        }
+        synchronized (this){
+            if(reconnectScheduler != null){
+                reconnectScheduler.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Applies a topology update to the cache, buffering it if a snapshot is being loaded.
+     */
+    void onTopologyUpdate(long updateGeneration, LightningApi.GraphTopologyUpdate update){
+        lock.writeLock().lock();
+        try{
+            if(updateGeneration != generation){
+                return;
+            }
+            if(pendingUpdates != null){
+                pendingUpdates.add(update);
+            }else{
+                state.apply(update);
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void onTopologyError(long updateGeneration, Throwable t){
+        boolean loading;
+        lock.writeLock().lock();
+        try{
+            if(updateGeneration != generation){
+                return;
+            }
+            synced = false;
+            subscription = null;
+            loading = pendingUpdates != null;
+        }finally {
+            lock.writeLock().unlock();
+        }
+        log.log(Level.WARNING, "Channel graph subscription failed, cache is no longer synchronized: " + t.getMessage());
+        log.log(Level.FINE, "Stacktrace: ", t);
+        if(!loading){
+            // If failed during start() is the reload scheduled when the snapshot is loaded.
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect(){
+        long delay = reconnectDelay;
+        if(closed || delay <= 0){
+            return;
+        }
+        synchronized (this){
+            if(closed){
+                return;
+            }
+            if(reconnectScheduler == null){
+                reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "ChannelGraphCache-reconnect");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            reconnectScheduler.schedule(() -> {
+                try{
+                    if(!closed) {
+                        start();
+                    }
+                }catch(Exception e){
+                    log.log(Level.WARNING, "Error reloading channel graph cache: " + e.getMessage());
+                    scheduleReconnect();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the subscription and stops buffering updates after a failed start(), unless
+     * the cache have been restarted or closed in the meantime.
+     */
+    private void abortStart(long startGeneration){
+        lock.writeLock().lock();
+        try{
+            if(startGeneration == generation) {
+                cancelSubscription();
+                pendingUpdates = null;
+                synced = false;
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Should be called with write lock held.
+    private void cancelSubscription(){
+        if(subscription != null){
+            subscription.cancel("Channel graph subscription closed", null);
+            subscription = null;
+        }
+    }
+
+    private class TopologyObserver implements ClientResponseObserver<LightningApi.GraphTopologySubscription, LightningApi.GraphTopologyUpdate> {
+
+        private final long observerGeneration;
+
+        TopologyObserver(long observerGeneration){
+            this.observerGeneration = observerGeneration;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<LightningApi.GraphTopologySubscription> requestStream) {
+            lock.writeLock().lock();
+            try{
+                if(observerGeneration == generation){
+                    subscription = requestStream;
+                }
+            }finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void onNext(LightningApi.GraphTopologyUpdate value) {
+            onTopologyUpdate(observerGeneration, value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            onTopologyError(observerGeneration, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            onTopologyError(observerGeneration, new IllegalStateException("Channel graph subscription completed by server."));
+        }
+    }
+
+    /**
+     * Entry of a node in the graph, the key is the interned instance used by all channels
+     * of the node.
+     */
+    static class NodeEntry {
+        final NodeKey key;
+        GraphNode node;
+        long[] channelIds = new long[4];
+        int channelCount = 0;
+
+        NodeEntry(NodeKey key){
+            this.key = key;
+        }
+
+        void addChannel(long channelId){
+            for(int i=0; i<channelCount; i++){
+                if(channelIds[i] == channelId){
+                    return;
+                }
+            }
+            if(channelCount == channelIds.length){
+                long[] newIds = new long[channelIds.length * 2];
+                System.arraycopy(channelIds, 0, newIds, 0, channelCount);
+                channelIds = newIds;
+            }
+            channelIds[channelCount++] = channelId;
+        }
+
+        void removeChannel(long channelId){
+            for(int i=0; i<channelCount; i++){
+                if(channelIds[i] == channelId){
+                    channelIds[i] = channelIds[--channelCount];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The nodes and channels of the cached graph. Not thread safe.
+     */
+    static class GraphState {
+        final Map<NodeKey, NodeEntry> nodes;
+        final LongObjectHashMap<GraphChannel> channels;
+
+        GraphState(int expectedNodes, int expectedChannels){
+            nodes = new HashMap<>(Math.max(16, (int) (expectedNodes / 0.75f) + 1));
+            channels = new LongObjectHashMap<>(expectedChannels);
+        }
+
+        static GraphState fromApi(LightningApi.ChannelGraph graph){
+            GraphState retval = new GraphState(graph.getNodesCount(), graph.getEdgesCount());
+            for(LightningApi.LightningNode node : graph.getNodesList()){
+                NodeEntry entry = retval.getEntry(NodeKey.fromHex(node.getPubKey()));
+                entry.node = GraphNode.fromApi(entry.key, node);
+            }
+            for(LightningApi.ChannelEdge edge : graph.getEdgesList()){
+                NodeKey node1 = retval.getEntry(NodeKey.fromHex(edge.getNode1Pub())).key;
+                NodeKey node2 = retval.getEntry(NodeKey.fromHex(edge.getNode2Pub())).key;
+                retval.addChannel(GraphChannel.fromApi(node1, node2, edge));
+            }
+            return retval;
+        }
+
+        void apply(LightningApi.GraphTopologyUpdate update){
+            for(LightningApi.NodeUpdate nodeUpdate : update.getNodeUpdatesList()){
+                NodeEntry entry = getEntry(NodeKey.fromHex(nodeUpdate.getIdentityKey()));
+                entry.node = GraphNode.fromApi(entry.key, nodeUpdate, (int) (System.currentTimeMillis() / 1000L));
+            }
+            for(LightningApi.ChannelEdgeUpdate channelUpdate : update.getChannelUpdatesList()){
+                NodeKey advertisingNode = getEntry(NodeKey.fromHex(channelUpdate.getAdvertisingNode())).key;
+                GraphChannel graphChannel = channels.get(channelUpdate.getChanId());
+                if(graphChannel == null){
+                    NodeKey connectingNode = getEntry(NodeKey.fromHex(channelUpdate.getConnectingNode())).key;
+                    boolean advertisingFirst = advertisingNode.compareTo(connectingNode) < 0;
+                    graphChannel = new GraphChannel(channelUpdate.getChanId(), toChanPoint(channelUpdate.getChanPoint()),
+                            channelUpdate.getCapacity(),
+                            advertisingFirst ? advertisingNode : connectingNode,
+                            advertisingFirst ? connectingNode : advertisingNode,
+                            null, null);
+                    addChannel(graphChannel);
+                }
+                if(channelUpdate.hasRoutingPolicy()) {
+                    channels.put(graphChannel.getChannelId(),
+                            graphChannel.withPolicy(advertisingNode, GraphRoutingPolicy.fromApi(channelUpdate.getRoutingPolicy())));
+                }
+            }
+            for(LightningApi.ClosedChannelUpdate closedChannel : update.getClosedChansList()){
+                GraphChannel graphChannel = channels.remove(closedChannel.getChanId());
+                if(graphChannel != null){
+                    nodes.get(graphChannel.getNode1()).removeChannel(graphChannel.getChannelId());
+                    nodes.get(graphChannel.getNode2()).removeChannel(graphChannel.getChannelId());
+                }
+            }
+        }
+
+        NodeEntry getEntry(NodeKey key){
+            return nodes.computeIfAbsent(key, NodeEntry::new);
+        }
+
+        void addChannel(GraphChannel graphChannel){
+            channels.put(graphChannel.getChannelId(), graphChannel);
+            nodes.get(graphChannel.getNode1()).addChannel(graphChannel.getChannelId());
+            nodes.get(graphChannel.getNode2()).addChannel(graphChannel.getChannelId());
+        }
+
+        private static String toChanPoint(LightningApi.ChannelPoint chanPoint){
+            String txId;
+            if(chanPoint.getFundingTxidCase() == LightningApi.ChannelPoint.FundingTxidCase.FUNDING_TXID_STR){
+                txId = chanPoint.getFundingTxidStr();
+            }else{
+                // Funding tx id bytes are in reversed byte order compared to the string representation.
+                byte[] data = chanPoint.getFundingTxidBytes().toByteArray();
+                StringBuilder sb = new StringBuilder(data.length * 2);
+                for(int i=data.length-1; i>=0; i--){
+                    sb.append(String.format("%02x", data[i] & 0xff));
+                }
+                txId = sb.toString();
+            }
+            return txId + ":" + chanPoint.getOutputIndex();
+        }
+    }
+}
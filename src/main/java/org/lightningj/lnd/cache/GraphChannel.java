@@ -0,0 +1,135 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import org.lightningj.lnd.proto.LightningApi;
+
+/**
+ * Immutable compact representation of a channel edge in the channel graph.
+ * <p>
+ *     Node1 is always the node with the lexicographically smaller public key, as in LND.
+ *     Policy updates creates a new instance.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+public final class GraphChannel {
+
+    private final long channelId;
+    private final String chanPoint;
+    private final long capacity;
+    private final NodeKey node1;
+    private final NodeKey node2;
+    private final GraphRoutingPolicy node1Policy;
+    private final GraphRoutingPolicy node2Policy;
+
+    public GraphChannel(long channelId, String chanPoint, long capacity, NodeKey node1, NodeKey node2,
+                        GraphRoutingPolicy node1Policy, GraphRoutingPolicy node2Policy) {
+        this.channelId = channelId;
+        this.chanPoint = chanPoint;
+        this.capacity = capacity;
+        this.node1 = node1;
+        this.node2 = node2;
+        this.node1Policy = node1Policy;
+        this.node2Policy = node2Policy;
+    }
+
+    /**
+     * Converts a ChannelEdge API object into a compact channel.
+     *
+     * @param node1 the interned key of node1.
+     * @param node2 the interned key of node2.
+     * @param edge the channel edge to convert.
+     * @return a new GraphChannel.
+     */
+    public static GraphChannel fromApi(NodeKey node1, NodeKey node2, LightningApi.ChannelEdge edge){
+        return new GraphChannel(edge.getChannelId(), edge.getChanPoint(), edge.getCapacity(), node1, node2,
+                edge.hasNode1Policy() ? GraphRoutingPolicy.fromApi(edge.getNode1Policy()) : null,
+                edge.hasNode2Policy() ? GraphRoutingPolicy.fromApi(edge.getNode2Policy()) : null);
+    }
+
+    /**
+     * Creates a copy of this channel with the policy advertised by the given node replaced.
+     *
+     * @param advertisingNode the node advertising the policy.
+     * @param policy the new policy.
+     * @return a new updated GraphChannel.
+     */
+    public GraphChannel withPolicy(NodeKey advertisingNode, GraphRoutingPolicy policy){
+        if(node1.equals(advertisingNode)){
+            return new GraphChannel(channelId, chanPoint, capacity, node1, node2, policy, node2Policy);
+        }
+        return new GraphChannel(channelId, chanPoint, capacity, node1, node2, node1Policy, policy);
+    }
+
+    /**
+     * The unique channel ID for the channel. The first 3 bytes are the block
+     * height, the next 3 the index within the block, and the last 2 bytes are the
+     * output index for the channel.
+     */
+    public long getChannelId() {
+        return channelId;
+    }
+
+    public String getChanPoint() {
+        return chanPoint;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public NodeKey getNode1() {
+        return node1;
+    }
+
+    public NodeKey getNode2() {
+        return node2;
+    }
+
+    /**
+     *
+     * @return the policy advertised by node1, null if not yet advertised.
+     */
+    public GraphRoutingPolicy getNode1Policy() {
+        return node1Policy;
+    }
+
+    /**
+     *
+     * @return the policy advertised by node2, null if not yet advertised.
+     */
+    public GraphRoutingPolicy getNode2Policy() {
+        return node2Policy;
+    }
+
+    /**
+     *
+     * @param node one of the nodes of the channel.
+     * @return the other node of the channel.
+     */
+    public NodeKey getOtherNode(NodeKey node){
+        return node1.equals(node) ? node2 : node1;
+    }
+
+    /**
+     * Returns the policy used when forwarding from the given node over this channel.
+     *
+     * @param fromNode the node forwarding over the channel.
+     * @return the policy advertised by fromNode, null if not yet advertised.
+     */
+    public GraphRoutingPolicy getPolicyFrom(NodeKey fromNode){
+        return node1.equals(fromNode) ? node1Policy : node2Policy;
+    }
+}
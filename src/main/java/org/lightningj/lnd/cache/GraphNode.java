@@ -0,0 +1,139 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import org.lightningj.lnd.proto.LightningApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable compact representation of a node in the channel graph.
+ *
+ * Created by Philip Vendil.
+ */
+public final class GraphNode {
+
+    private final NodeKey pubKey;
+    private final String alias;
+    private final String color;
+    private final int lastUpdate;
+    private final List<String> addresses;
+    private final int[] features;
+
+    public GraphNode(NodeKey pubKey, String alias, String color, int lastUpdate, List<String> addresses, int[] features) {
+        this.pubKey = pubKey;
+        this.alias = alias;
+        this.color = color;
+        this.lastUpdate = lastUpdate;
+        this.addresses = Collections.unmodifiableList(addresses);
+        this.features = features;
+    }
+
+    /**
+     * Converts a LightningNode API object into a compact node.
+     *
+     * @param pubKey the interned public key of the node.
+     * @param node the node to convert.
+     * @return a new GraphNode.
+     */
+    public static GraphNode fromApi(NodeKey pubKey, LightningApi.LightningNode node){
+        return new GraphNode(pubKey, node.getAlias(), node.getColor(), node.getLastUpdate(),
+                toAddresses(node.getAddressesList()), toFeatures(node.getFeaturesMap()));
+    }
+
+    /**
+     * Converts a NodeUpdate API object from a topology update into a compact node.
+     *
+     * @param pubKey the interned public key of the node.
+     * @param update the node update to convert.
+     * @param lastUpdate the time the update was received in seconds since epoch, since not
+     *                   included in the update.
+     * @return a new GraphNode.
+     */
+    public static GraphNode fromApi(NodeKey pubKey, LightningApi.NodeUpdate update, int lastUpdate){
+        return new GraphNode(pubKey, update.getAlias(), update.getColor(), lastUpdate,
+                toAddresses(update.getNodeAddressesList()), toFeatures(update.getFeaturesMap()));
+    }
+
+    public NodeKey getPubKey() {
+        return pubKey;
+    }
+
+    /**
+     *
+     * @return the hex encoded public key of the node.
+     */
+    public String getPubKeyHex() {
+        return pubKey.toHex();
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public int getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     *
+     * @return unmodifiable list of advertised network addresses of the node.
+     */
+    public List<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     *
+     * @return a copy of the sorted array of feature bits advertised by the node.
+     */
+    public int[] getFeatures() {
+        return features.clone();
+    }
+
+    /**
+     *
+     * @param featureBit the feature bit to check.
+     * @return true if node advertises the given feature bit.
+     */
+    public boolean hasFeature(int featureBit){
+        return Arrays.binarySearch(features, featureBit) >= 0;
+    }
+
+    private static List<String> toAddresses(List<LightningApi.NodeAddress> nodeAddresses){
+        List<String> retval = new ArrayList<>(nodeAddresses.size());
+        for(LightningApi.NodeAddress nodeAddress : nodeAddresses){
+            retval.add(nodeAddress.getAddr());
+        }
+        return retval;
+    }
+
+    private static int[] toFeatures(Map<Integer, LightningApi.Feature> featureMap){
+        int[] retval = new int[featureMap.size()];
+        int i = 0;
+        for(Integer featureBit : featureMap.keySet()){
+            retval[i++] = featureBit;
+        }
+        Arrays.sort(retval);
+        return retval;
+    }
+}
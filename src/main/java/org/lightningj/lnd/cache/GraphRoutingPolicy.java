@@ -0,0 +1,92 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import org.lightningj.lnd.proto.LightningApi;
+
+/**
+ * Immutable compact representation of the routing policy of one direction of a channel.
+ *
+ * Created by Philip Vendil.
+ */
+public final class GraphRoutingPolicy {
+
+    private final int timeLockDelta;
+    private final long minHtlc;
+    private final long maxHtlcMsat;
+    private final long feeBaseMsat;
+    private final long feeRateMilliMsat;
+    private final boolean disabled;
+    private final int lastUpdate;
+
+    public GraphRoutingPolicy(int timeLockDelta, long minHtlc, long maxHtlcMsat, long feeBaseMsat,
+                              long feeRateMilliMsat, boolean disabled, int lastUpdate) {
+        this.timeLockDelta = timeLockDelta;
+        this.minHtlc = minHtlc;
+        this.maxHtlcMsat = maxHtlcMsat;
+        this.feeBaseMsat = feeBaseMsat;
+        this.feeRateMilliMsat = feeRateMilliMsat;
+        this.disabled = disabled;
+        this.lastUpdate = lastUpdate;
+    }
+
+    /**
+     * Converts a routing policy API object into a compact routing policy.
+     *
+     * @param policy the routing policy to convert.
+     * @return a new GraphRoutingPolicy.
+     */
+    public static GraphRoutingPolicy fromApi(LightningApi.RoutingPolicy policy){
+        return new GraphRoutingPolicy(policy.getTimeLockDelta(), policy.getMinHtlc(), policy.getMaxHtlcMsat(),
+                policy.getFeeBaseMsat(), policy.getFeeRateMilliMsat(), policy.getDisabled(), policy.getLastUpdate());
+    }
+
+    public int getTimeLockDelta() {
+        return timeLockDelta;
+    }
+
+    public long getMinHtlc() {
+        return minHtlc;
+    }
+
+    public long getMaxHtlcMsat() {
+        return maxHtlcMsat;
+    }
+
+    public long getFeeBaseMsat() {
+        return feeBaseMsat;
+    }
+
+    public long getFeeRateMilliMsat() {
+        return feeRateMilliMsat;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+
+    public int getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * Calculates the fee in milli satoshi for forwarding the given amount according to this policy.
+     *
+     * @param amountMsat the amount to forward in milli satoshi.
+     * @return the fee in milli satoshi.
+     */
+    public long calculateFeeMsat(long amountMsat){
+        return feeBaseMsat + (amountMsat * feeRateMilliMsat) / 1_000_000L;
+    }
+}
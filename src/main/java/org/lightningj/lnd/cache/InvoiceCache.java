@@ -0,0 +1,717 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import com.google.protobuf.ByteString;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.paging.LndPaging;
+import org.lightningj.lnd.paging.PagedIterator;
+import org.lightningj.lnd.paging.PagingOptions;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.StatusException;
+import org.lightningj.lnd.wrapper.StatusExceptionWrapper;
+import org.lightningj.lnd.wrapper.StreamingResponseException;
+import org.lightningj.lnd.wrapper.ValidationException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local in-memory cache of invoices keyed by payment hash, replacing repeated LookupInvoice
+ * polling when checking if invoices have been settled.
+ * <p>
+ *     The cache subscribes to SubscribeInvoices and loads the most recent invoices (up to the
+ *     max size) with paginated ListInvoices calls. Updates received while loading are applied
+ *     after the load. The add index and settle index of received invoices are kept as resume
+ *     tokens, so if the subscription fails is it, after the reconnect delay, resubscribed from the last
+ *     seen indexes and LND replays all invoices added or settled in the meantime. If automatic
+ *     resubscription is disabled are all futures waiting for settlement completed exceptionally
+ *     when the subscription fails, until the cache is restarted.
+ * </p>
+ * <p>
+ *     The cache holds at most max size invoices, evicting the least recently used invoice. Invoices
+ *     not in the cache can be fetched from LND using lookupInvoice(). A settled or canceled invoice
+ *     is never replaced by an older update in a non final state. Returned invoices are the immutable
+ *     GRPC objects, they can be wrapped without copying using new Invoice(apiObject). The cache is
+ *     thread safe.
+ * </p>
+ * Example:
+ * <pre>
+ * InvoiceCache invoiceCache = new InvoiceCache(synchronousLndAPI);
+ * invoiceCache.start();
+ * LightningApi.Invoice invoice = invoiceCache.getInvoice(paymentHash);
+ * invoiceCache.waitForSettlement(paymentHash).thenAccept(i -&gt; ...);
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class InvoiceCache implements Closeable {
+
+    public static final int DEFAULT_MAX_SIZE = 100000;
+    public static final long DEFAULT_RECONNECT_DELAY = 5000;
+
+    protected static Logger log =
+            Logger.getLogger(InvoiceCache.class.getName());
+
+    protected StatusExceptionWrapper statusExceptionWrapper = StatusExceptionWrapper.getInstance();
+
+    private final API api;
+    private final int maxSize;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private final LinkedHashMap<ByteString, LightningApi.Invoice> invoices;
+    private final Map<ByteString, List<CompletableFuture<LightningApi.Invoice>>> waiters = new HashMap<>();
+    private List<LightningApi.Invoice> pendingUpdates = null;
+    private long generation = 0;
+    private long addIndex = 0;
+    private long settleIndex = 0;
+    private ClientCallStreamObserver<LightningApi.InvoiceSubscription> subscription;
+    private boolean subscriptionFailed = false;
+
+    private volatile boolean synced = false;
+    private volatile boolean closed = false;
+    private volatile long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private volatile PagingOptions pagingOptions = new PagingOptions();
+    private ScheduledExecutorService reconnectScheduler;
+
+    /**
+     * Creates an invoice cache with default max size using the channel of the given API.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     */
+    public InvoiceCache(API api){
+        this(api, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates an invoice cache using the channel of the given API.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param maxSize the maximum number of invoices kept in the cache.
+     */
+    public InvoiceCache(API api, int maxSize){
+        if(maxSize < 1){
+            throw new IllegalArgumentException("Invalid max size: " + maxSize + ", must be 1 or greater.");
+        }
+        this.api = api;
+        this.maxSize = maxSize;
+        this.invoices = new LinkedHashMap<ByteString, LightningApi.Invoice>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteString, LightningApi.Invoice> eldest) {
+                return size() > InvoiceCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Subscribes to invoice updates and loads the most recent invoices. Can also be called
+     * to reload the cache, in which case the previous subscription is cancelled.
+     *
+     * @throws StatusException if problems occurred in underlying GRPC call. Can be of one of three sub exceptions
+     * <li>ClientSideException: if problems was found in the request data, such as invalid or unexpected data.
+     * <li>ServerSideException: if server side problems was detected when processing the request.
+     * <li>CommunicationException: if communication related problems occurred during the call.
+     * @throws ValidationException if validation problems found in received invoices.
+     */
+    public void start() throws StatusException, ValidationException {
+        if(closed){
+            throw new IllegalStateException("InvoiceCache is closed.");
+        }
+        long currentGeneration;
+        lock.lock();
+        try{
+            cancelSubscription();
+            currentGeneration = ++generation;
+            pendingUpdates = new ArrayList<>();
+            synced = false;
+            subscriptionFailed = false;
+            subscribe(currentGeneration, 0, 0);
+        }finally {
+            lock.unlock();
+        }
+
+        List<LightningApi.Invoice> loaded;
+        boolean loadFailed = true;
+        try {
+            loaded = loadInvoices();
+            loadFailed = false;
+        }finally {
+            if(loadFailed){
+                lock.lock();
+                try{
+                    if(currentGeneration == generation) {
+                        cancelSubscription();
+                        pendingUpdates = null;
+                    }
+                }finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        List<Runnable> completed = new ArrayList<>();
+        boolean resubscribe;
+        lock.lock();
+        try {
+            if (currentGeneration != generation) {
+                return;
+            }
+            invoices.clear();
+            for (LightningApi.Invoice invoice : loaded) {
+                apply(invoice, completed);
+            }
+            for (LightningApi.Invoice invoice : pendingUpdates) {
+                apply(invoice, completed);
+            }
+            pendingUpdates = null;
+            resubscribe = subscription == null;
+            synced = !resubscribe;
+        } finally {
+            lock.unlock();
+        }
+        complete(completed);
+        log.fine("Invoice cache loaded with " + loaded.size() + " invoices.");
+        if(resubscribe && !scheduleResubscribe()){
+            failAllWaiters(currentGeneration, new IllegalStateException("Invoice subscription failed while loading invoices and automatic resubscription is disabled."));
+        }
+    }
+
+    /**
+     * Looks up an invoice in the cache.
+     *
+     * @param paymentHash the payment hash of the invoice.
+     * @return the cached invoice or null if not found in cache.
+     */
+    public LightningApi.Invoice getInvoice(byte[] paymentHash){
+        return getInvoice(ByteString.copyFrom(paymentHash));
+    }
+
+    /**
+     * Looks up an invoice in the cache.
+     *
+     * @param paymentHash the payment hash of the invoice.
+     * @return the cached invoice or null if not found in cache.
+     */
+    public LightningApi.Invoice getInvoice(ByteString paymentHash){
+        lock.lock();
+        try{
+            return invoices.get(paymentHash);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Looks up an invoice in the cache and, if not found, with a LookupInvoice call to LND. Invoices
+     * fetched from LND are added to the cache.
+     *
+     * @param paymentHash the payment hash of the invoice.
+     * @return the invoice, never null.
+     * @throws StatusException if problems occurred in underlying GRPC call, for instance if the invoice
+     * doesn't exist.
+     */
+    public LightningApi.Invoice lookupInvoice(byte[] paymentHash) throws StatusException {
+        ByteString key = ByteString.copyFrom(paymentHash);
+        LightningApi.Invoice retval = getInvoice(key);
+        if(retval == null){
+            try {
+                retval = LightningGrpc.newBlockingStub(api.getCallChannel()).lookupInvoice(LightningApi.PaymentHash.newBuilder().setRHash(key).build());
+            }catch(StatusRuntimeException e){
+                throw statusExceptionWrapper.wrap(e);
+            }
+            onInvoiceLookup(retval);
+        }
+        return retval;
+    }
+
+    /**
+     *
+     * @param paymentHash the payment hash of the invoice.
+     * @return true if the invoice is in the cache and settled.
+     */
+    public boolean isSettled(byte[] paymentHash){
+        LightningApi.Invoice invoice = getInvoice(paymentHash);
+        return invoice != null && invoice.getState() == LightningApi.Invoice.InvoiceState.SETTLED;
+    }
+
+    /**
+     * Returns a future completed with the invoice when it is settled or canceled, the state of the
+     * invoice should be checked. If the invoice isn't in the cache is it looked up from LND
+     * asynchronously, completing the future exceptionally with a StatusException if the lookup fails.
+     * All pending futures are cancelled when the cache is closed. If the subscription failed and
+     * automatic resubscription is disabled is the future completed exceptionally with an
+     * IllegalStateException, since updates would no longer be received.
+     *
+     * @param paymentHash the payment hash of the invoice.
+     * @return a future completed when the invoice reaches a final state.
+     */
+    public CompletableFuture<LightningApi.Invoice> waitForSettlement(byte[] paymentHash){
+        ByteString key = ByteString.copyFrom(paymentHash);
+        CompletableFuture<LightningApi.Invoice> retval = new CompletableFuture<>();
+        LightningApi.Invoice existing;
+        lock.lock();
+        try{
+            if(closed){
+                retval.completeExceptionally(new IllegalStateException("InvoiceCache is closed."));
+                return retval;
+            }
+            existing = invoices.get(key);
+            if(existing == null || !isFinal(existing)){
+                if(subscriptionFailed){
+                    retval.completeExceptionally(new IllegalStateException("Invoice subscription failed and automatic resubscription is disabled, call start() to reload the cache."));
+                    return retval;
+                }
+                waiters.computeIfAbsent(key, k -> new ArrayList<>(1)).add(retval);
+            }
+        }finally {
+            lock.unlock();
+        }
+        if(existing != null && isFinal(existing)){
+            retval.complete(existing);
+            return retval;
+        }
+        retval.whenComplete((invoice, t) -> {
+            if(retval.isCancelled()){
+                removeWaiter(key, retval);
+            }
+        });
+        if(existing == null){
+            LightningGrpc.newStub(api.getCallChannel()).lookupInvoice(LightningApi.PaymentHash.newBuilder().setRHash(key).build(),
+                    new LookupObserver(key));
+        }
+        return retval;
+    }
+
+    /**
+     *
+     * @return the number of invoices in the cache.
+     */
+    public int size(){
+        lock.lock();
+        try{
+            return invoices.size();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the maximum number of invoices kept in the cache.
+     */
+    public int getMaxSize(){
+        return maxSize;
+    }
+
+    /**
+     *
+     * @return the highest add index seen, used when resubscribing.
+     */
+    public long getAddIndex(){
+        lock.lock();
+        try{
+            return addIndex;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the highest settle index seen, used when resubscribing.
+     */
+    public long getSettleIndex(){
+        lock.lock();
+        try{
+            return settleIndex;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return true if the cache is loaded and the invoice subscription is active.
+     */
+    public boolean isSynchronized(){
+        return synced;
+    }
+
+    /**
+     *
+     * @param reconnectDelay delay in milliseconds before resubscribing after the invoice subscription
+     *                       failed, default 5000. 0 to not resubscribe automatically, in which case
+     *                       all futures waiting for settlement are completed exceptionally when
+     *                       the subscription fails.
+     */
+    public void setReconnectDelay(long reconnectDelay){
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     *
+     * @param pagingOptions the paging options used when loading invoices in start().
+     */
+    public void setPagingOptions(PagingOptions pagingOptions){
+        this.pagingOptions = pagingOptions;
+    }
+
+    /**
+     * Cancels the subscription, clears the cache and cancels all futures waiting for settlement.
+     * The underlying API isn't closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synced = false;
+        List<CompletableFuture<LightningApi.Invoice>> pending = new ArrayList<>();
+        lock.lock();
+        try{
+            generation++;
+            cancelSubscription();
+            pendingUpdates = null;
+            invoices.clear();
+            for(List<CompletableFuture<LightningApi.Invoice>> futures : waiters.values()){
+                pending.addAll(futures);
+            }
+            waiters.clear();
+        }finally {
+            lock.unlock();
+        }
+        for(CompletableFuture<LightningApi.Invoice> future : pending){
+            future.cancel(false);
+        }
+        synchronized (this){
+            if(reconnectScheduler != null){
+                reconnectScheduler.shutdownNow();
+            }
+        }
+    }
+
+    void onInvoiceUpdate(long updateGeneration, LightningApi.Invoice invoice){
+        List<Runnable> completed = new ArrayList<>();
+        lock.lock();
+        try{
+            if(updateGeneration != generation){
+                return;
+            }
+            if(pendingUpdates != null){
+                pendingUpdates.add(invoice);
+            }else{
+                apply(invoice, completed);
+            }
+        }finally {
+            lock.unlock();
+        }
+        complete(completed);
+    }
+
+    void onSubscriptionError(long updateGeneration, Throwable t){
+        boolean loading;
+        lock.lock();
+        try{
+            if(updateGeneration != generation){
+                return;
+            }
+            synced = false;
+            subscription = null;
+            loading = pendingUpdates != null;
+        }finally {
+            lock.unlock();
+        }
+        log.log(Level.WARNING, "Invoice subscription failed, cache is no longer synchronized: " + t.getMessage());
+        log.log(Level.FINE, "Stacktrace: ", t);
+        // If failed during start() is resubscription scheduled when the load is completed.
+        if(!loading && !scheduleResubscribe()){
+            failAllWaiters(updateGeneration, new IllegalStateException("Invoice subscription failed and automatic resubscription is disabled: " + t.getMessage(), t));
+        }
+    }
+
+    private void onInvoiceLookup(LightningApi.Invoice invoice){
+        List<Runnable> completed = new ArrayList<>();
+        lock.lock();
+        try{
+            if(closed){
+                return;
+            }
+            // Only update the cached invoice, the indexes are resume tokens of the subscription.
+            long currentAddIndex = addIndex;
+            long currentSettleIndex = settleIndex;
+            apply(invoice, completed);
+            addIndex = currentAddIndex;
+            settleIndex = currentSettleIndex;
+        }finally {
+            lock.unlock();
+        }
+        complete(completed);
+    }
+
+    // Should be called with lock held, futures waiting for the invoice are completed by calling
+    // complete() with the given list after the lock is released.
+    private void apply(LightningApi.Invoice invoice, List<Runnable> completed){
+        ByteString key = invoice.getRHash();
+        LightningApi.Invoice existing = invoices.get(key);
+        LightningApi.Invoice current = invoice;
+        if(existing != null && isFinal(existing) && !isFinal(invoice)){
+            current = existing;
+        }else{
+            invoices.put(key, invoice);
+        }
+        addIndex = Math.max(addIndex, invoice.getAddIndex());
+        settleIndex = Math.max(settleIndex, invoice.getSettleIndex());
+        if(isFinal(current)){
+            List<CompletableFuture<LightningApi.Invoice>> futures = waiters.remove(key);
+            if(futures != null){
+                LightningApi.Invoice finalInvoice = current;
+                for(CompletableFuture<LightningApi.Invoice> future : futures){
+                    completed.add(() -> future.complete(finalInvoice));
+                }
+            }
+        }
+    }
+
+    private static void complete(List<Runnable> completed){
+        for(Runnable r : completed){
+            r.run();
+        }
+    }
+
+    private void removeWaiter(ByteString key, CompletableFuture<LightningApi.Invoice> future){
+        lock.lock();
+        try{
+            List<CompletableFuture<LightningApi.Invoice>> futures = waiters.get(key);
+            if(futures != null){
+                futures.remove(future);
+                if(futures.isEmpty()){
+                    waiters.remove(key);
+                }
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private void failWaiters(ByteString key, Throwable t){
+        List<CompletableFuture<LightningApi.Invoice>> futures;
+        lock.lock();
+        try{
+            futures = waiters.remove(key);
+        }finally {
+            lock.unlock();
+        }
+        if(futures != null){
+            Throwable cause = t instanceof Exception ? statusExceptionWrapper.wrap((Exception) t) : t;
+            for(CompletableFuture<LightningApi.Invoice> future : futures){
+                future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Completes all futures waiting for settlement exceptionally and fails new calls to
+     * waitForSettlement() until the cache is restarted, used when the subscription failed
+     * and isn't resubscribed.
+     */
+    private void failAllWaiters(long failedGeneration, Exception cause){
+        List<CompletableFuture<LightningApi.Invoice>> pending = new ArrayList<>();
+        lock.lock();
+        try{
+            if(failedGeneration != generation){
+                return;
+            }
+            subscriptionFailed = true;
+            for(List<CompletableFuture<LightningApi.Invoice>> futures : waiters.values()){
+                pending.addAll(futures);
+            }
+            waiters.clear();
+        }finally {
+            lock.unlock();
+        }
+        for(CompletableFuture<LightningApi.Invoice> future : pending){
+            future.completeExceptionally(cause);
+        }
+    }
+
+    private List<LightningApi.Invoice> loadInvoices() throws StatusException, ValidationException {
+        // Page backwards from the most recent invoice until the cache is full. Invoices within
+        // a page are in ascending order so the page filling the cache is read completely.
+        LightningApi.ListInvoiceRequest request = LightningApi.ListInvoiceRequest.newBuilder().setReversed(true).build();
+        List<LightningApi.Invoice> retval = new ArrayList<>();
+        try(PagedIterator<Message> iterator = LndPaging.listInvoices(api, request, pagingOptions)){
+            int fullAtPage = -1;
+            while(iterator.hasNext()){
+                if(fullAtPage != -1 && iterator.getPageCount() > fullAtPage){
+                    break;
+                }
+                retval.add((LightningApi.Invoice) iterator.next().getApiObject());
+                if(fullAtPage == -1 && retval.size() >= maxSize){
+                    fullAtPage = iterator.getPageCount();
+                }
+            }
+        }catch(StreamingResponseException e){
+            if(e.getCause() instanceof StatusException){
+                throw (StatusException) e.getCause();
+            }
+            if(e.getCause() instanceof ValidationException){
+                throw (ValidationException) e.getCause();
+            }
+            throw e;
+        }
+        retval.sort(Comparator.comparingLong(LightningApi.Invoice::getAddIndex));
+        if(retval.size() > maxSize){
+            return new ArrayList<>(retval.subList(retval.size() - maxSize, retval.size()));
+        }
+        return retval;
+    }
+
+    // Should be called with lock held.
+    private void subscribe(long subscriptionGeneration, long fromAddIndex, long fromSettleIndex){
+        LightningGrpc.newStub(api.getCallChannel()).subscribeInvoices(LightningApi.InvoiceSubscription.newBuilder()
+                .setAddIndex(fromAddIndex)
+                .setSettleIndex(fromSettleIndex).build(), new InvoiceObserver(subscriptionGeneration));
+    }
+
+    private void resubscribe(){
+        lock.lock();
+        try{
+            if(closed || subscription != null || pendingUpdates != null){
+                return;
+            }
+            long currentGeneration = ++generation;
+            log.fine("Resuming invoice subscription from add index " + addIndex + " and settle index " + settleIndex + ".");
+            subscribe(currentGeneration, addIndex, settleIndex);
+            synced = subscription != null && currentGeneration == generation;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if automatic resubscription is disabled.
+     */
+    private boolean scheduleResubscribe(){
+        long delay = reconnectDelay;
+        if(delay <= 0){
+            return false;
+        }
+        if(closed){
+            return true;
+        }
+        synchronized (this){
+            if(closed){
+                return true;
+            }
+            if(reconnectScheduler == null){
+                reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "InvoiceCache-reconnect");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            reconnectScheduler.schedule(this::resubscribe, delay, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    // Should be called with lock held.
+    private void cancelSubscription(){
+        if(subscription != null){
+            subscription.cancel("Invoice subscription closed", null);
+            subscription = null;
+        }
+    }
+
+    private static boolean isFinal(LightningApi.Invoice invoice){
+        return invoice.getState() == LightningApi.Invoice.InvoiceState.SETTLED ||
+                invoice.getState() == LightningApi.Invoice.InvoiceState.CANCELED;
+    }
+
+    private class InvoiceObserver implements ClientResponseObserver<LightningApi.InvoiceSubscription, LightningApi.Invoice> {
+
+        private final long observerGeneration;
+
+        InvoiceObserver(long observerGeneration){
+            this.observerGeneration = observerGeneration;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<LightningApi.InvoiceSubscription> requestStream) {
+            lock.lock();
+            try{
+                if(observerGeneration == generation){
+                    subscription = requestStream;
+                }
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onNext(LightningApi.Invoice value) {
+            onInvoiceUpdate(observerGeneration, value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            onSubscriptionError(observerGeneration, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            onSubscriptionError(observerGeneration, new IllegalStateException("Invoice subscription completed by server."));
+        }
+    }
+
+    private class LookupObserver implements StreamObserver<LightningApi.Invoice> {
+
+        private final ByteString paymentHash;
+
+        LookupObserver(ByteString paymentHash){
+            this.paymentHash = paymentHash;
+        }
+
+        @Override
+        public void onNext(LightningApi.Invoice value) {
+            onInvoiceLookup(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failWaiters(paymentHash, t);
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
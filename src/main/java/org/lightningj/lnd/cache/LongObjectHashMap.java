@@ -0,0 +1,165 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * Open addressing hash map with primitive long keys, avoiding the boxing and entry
+ * objects of a HashMap&lt;Long,V&gt; for large caches.
+ * <p>
+ *     Null values are not supported. Not thread safe, callers must synchronize access.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+class LongObjectHashMap<V> {
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int resizeAt;
+    private int size;
+
+    LongObjectHashMap(){
+        this(16);
+    }
+
+    LongObjectHashMap(int expectedSize){
+        allocate(tableSizeFor((int) (Math.max(expectedSize, 8) / LOAD_FACTOR) + 1));
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key){
+        int i = index(key);
+        while(values[i] != null){
+            if(keys[i] == key){
+                return (V) values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V put(long key, V value){
+        if(value == null){
+            throw new NullPointerException("Null values not supported");
+        }
+        int i = index(key);
+        while(values[i] != null){
+            if(keys[i] == key){
+                V oldValue = (V) values[i];
+                values[i] = value;
+                return oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if(++size > resizeAt){
+            rehash(values.length * 2);
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V remove(long key){
+        int i = index(key);
+        while(values[i] != null){
+            if(keys[i] == key){
+                V oldValue = (V) values[i];
+                shiftBackFrom(i);
+                size--;
+                return oldValue;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    int size(){
+        return size;
+    }
+
+    void clear(){
+        allocate(16);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEachValue(Consumer<V> consumer){
+        for(Object value : values){
+            if(value != null){
+                consumer.accept((V) value);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry at gap by moving following entries in the same probe
+     * sequence backwards, so no tombstones are needed.
+     */
+    private void shiftBackFrom(int gap){
+        int j = gap;
+        while(true){
+            j = (j + 1) & mask;
+            if(values[j] == null){
+                break;
+            }
+            int ideal = index(keys[j]);
+            if(((j - ideal) & mask) >= ((j - gap) & mask)){
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private int index(long key){
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int newCapacity){
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for(int i=0; i<oldValues.length; i++){
+            if(oldValues[i] != null){
+                int j = index(oldKeys[i]);
+                while(values[j] != null){
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity){
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int size){
+        int n = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        return Math.max(n, 16);
+    }
+}
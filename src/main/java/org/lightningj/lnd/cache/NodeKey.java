@@ -0,0 +1,132 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache;
+
+import java.util.Arrays;
+
+/**
+ * Compact immutable representation of a 33 byte compressed node public key, used as
+ * key in graph caches instead of 66 character hex strings.
+ * <p>
+ *     Instances are interned by the cache so all channels of a node reference the same
+ *     NodeKey instance.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+public final class NodeKey implements Comparable<NodeKey> {
+
+    public static final int KEY_LENGTH = 33;
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    private final byte[] key;
+    private final int hash;
+
+    private NodeKey(byte[] key){
+        this.key = key;
+        this.hash = Arrays.hashCode(key);
+    }
+
+    /**
+     * Creates a NodeKey from raw compressed public key data.
+     *
+     * @param key the 33 byte compressed public key, the data is copied.
+     * @return a new NodeKey.
+     * @throws IllegalArgumentException if key doesn't have length 33.
+     */
+    public static NodeKey fromBytes(byte[] key){
+        if(key == null || key.length != KEY_LENGTH){
+            throw new IllegalArgumentException("Invalid node public key, should be " + KEY_LENGTH + " bytes.");
+        }
+        return new NodeKey(key.clone());
+    }
+
+    /**
+     * Creates a NodeKey from a hex encoded compressed public key, as used in LND API messages.
+     *
+     * @param hexKey the 66 character hex encoded public key.
+     * @return a new NodeKey.
+     * @throws IllegalArgumentException if hexKey isn't a valid hex encoded 33 byte key.
+     */
+    public static NodeKey fromHex(String hexKey){
+        if(hexKey == null || hexKey.length() != KEY_LENGTH * 2){
+            throw new IllegalArgumentException("Invalid node public key, should be " + (KEY_LENGTH * 2) + " hex characters: " + hexKey);
+        }
+        byte[] key = new byte[KEY_LENGTH];
+        for(int i=0; i<KEY_LENGTH; i++){
+            int high = Character.digit(hexKey.charAt(i * 2), 16);
+            int low = Character.digit(hexKey.charAt(i * 2 + 1), 16);
+            if(high < 0 || low < 0){
+                throw new IllegalArgumentException("Invalid node public key, contains non hex characters: " + hexKey);
+            }
+            key[i] = (byte) ((high << 4) | low);
+        }
+        return new NodeKey(key);
+    }
+
+    /**
+     *
+     * @return a copy of the 33 byte compressed public key.
+     */
+    public byte[] toBytes(){
+        return key.clone();
+    }
+
+    /**
+     *
+     * @return the lower case hex encoded public key, as used in LND API messages.
+     */
+    public String toHex(){
+        char[] retval = new char[KEY_LENGTH * 2];
+        for(int i=0; i<KEY_LENGTH; i++){
+            retval[i * 2] = HEX_CHARS[(key[i] >> 4) & 0x0f];
+            retval[i * 2 + 1] = HEX_CHARS[key[i] & 0x0f];
+        }
+        return new String(retval);
+    }
+
+    /**
+     * Compares keys in unsigned lexicographical order, the same order used by LND
+     * to determine node1 and node2 in a channel.
+     */
+    @Override
+    public int compareTo(NodeKey o) {
+        for(int i=0; i<KEY_LENGTH; i++){
+            int diff = (key[i] & 0xff) - (o.key[i] & 0xff);
+            if(diff != 0){
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NodeKey nodeKey = (NodeKey) o;
+        return hash == nodeKey.hash && Arrays.equals(key, nodeKey.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+}
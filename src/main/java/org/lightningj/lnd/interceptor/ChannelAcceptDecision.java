@@ -0,0 +1,103 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import com.google.protobuf.ByteString;
+import org.lightningj.lnd.proto.LightningApi;
+
+/**
+ * Immutable decision if a channel open request should be accepted, returned by
+ * the ChannelAcceptPolicy.
+ *
+ * Created by Philip Vendil.
+ */
+public class ChannelAcceptDecision {
+
+    private static final ChannelAcceptDecision ACCEPT = new ChannelAcceptDecision(LightningApi.ChannelAcceptResponse.newBuilder().setAccept(true).build());
+    private static final ChannelAcceptDecision REJECT = new ChannelAcceptDecision(LightningApi.ChannelAcceptResponse.newBuilder().setAccept(false).build());
+
+    private final LightningApi.ChannelAcceptResponse response;
+
+    private ChannelAcceptDecision(LightningApi.ChannelAcceptResponse response){
+        this.response = response;
+    }
+
+    /**
+     *
+     * @return decision to accept the channel using the default channel parameters of LND.
+     */
+    public static ChannelAcceptDecision accept(){
+        return ACCEPT;
+    }
+
+    /**
+     *
+     * @return decision to reject the channel with the generic error of LND.
+     */
+    public static ChannelAcceptDecision reject(){
+        return REJECT;
+    }
+
+    /**
+     *
+     * @param error the reason sent to the initiating peer, at most 500 characters and should
+     *              not contain sensitive information.
+     * @return decision to reject the channel.
+     */
+    public static ChannelAcceptDecision reject(String error){
+        return new ChannelAcceptDecision(LightningApi.ChannelAcceptResponse.newBuilder().setAccept(false).setError(error).build());
+    }
+
+    /**
+     * Creates a decision from a complete response, for instance to accept a channel with custom
+     * channel parameters or as zero conf channel. The pending channel id is set by the engine.
+     *
+     * @param response the response to send to LND.
+     * @return decision sending the given response.
+     */
+    public static ChannelAcceptDecision of(LightningApi.ChannelAcceptResponse response){
+        return new ChannelAcceptDecision(response);
+    }
+
+    /**
+     *
+     * @return true if the channel is accepted.
+     */
+    public boolean isAccepted(){
+        return response.getAccept();
+    }
+
+    /**
+     *
+     * @return the response sent to LND, without pending channel id.
+     */
+    public LightningApi.ChannelAcceptResponse getResponse(){
+        return response;
+    }
+
+    /**
+     * Builds the response to LND for the given channel open request.
+     *
+     * @param pendingChanId the pending channel id of the request.
+     * @return the response with the pending channel id set.
+     */
+    LightningApi.ChannelAcceptResponse toResponse(ByteString pendingChanId){
+        return response.toBuilder().setPendingChanId(pendingChanId).build();
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelAcceptDecision{accept=" + response.getAccept() + (response.getError().isEmpty() ? "" : ", error=" + response.getError()) + "}";
+    }
+}
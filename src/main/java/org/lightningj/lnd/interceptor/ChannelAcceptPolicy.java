@@ -0,0 +1,37 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import org.lightningj.lnd.wrapper.Message;
+
+/**
+ * Policy registered with a ChannelAcceptorEngine, called concurrently by the worker
+ * threads for each channel open request.
+ *
+ * @param <T> the wrapped type of channel open request, ChannelAcceptRequest.
+ *
+ * Created by Philip Vendil.
+ */
+@FunctionalInterface
+public interface ChannelAcceptPolicy<T extends Message> {
+
+    /**
+     * Decides if a channel open request should be accepted.
+     *
+     * @param request the channel open request, wrapped read-only.
+     * @return the decision, null to use the default decision of the engine.
+     * @throws Exception if the decision couldn't be made, the default decision of the engine is used.
+     */
+    ChannelAcceptDecision evaluate(T request) throws Exception;
+}
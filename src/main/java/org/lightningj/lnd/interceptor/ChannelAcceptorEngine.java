@@ -0,0 +1,151 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.WrapperFactory;
+
+/**
+ * Engine answering all channel open requests of the ChannelAcceptor stream with a registered policy.
+ * <p>
+ *     Each ChannelAcceptRequest is wrapped read-only and evaluated by the policy on one of the
+ *     worker threads. The responses are correlated by pending channel id and sent as soon as they
+ *     are decided, so a slow evaluation doesn't delay other channel opens. If the policy doesn't
+ *     decide within the deadline, or throws an exception, is the channel rejected unless another
+ *     default decision is set. The stream is reopened automatically if it fails, see InterceptorEngine.
+ * </p>
+ * <p>
+ *     Policy decisions can be cached per peer node public key by setting a decision cache time to live,
+ *     further requests from the same peer are then answered directly without calling the policy. Only
+ *     use the cache if the policy decides on the peer alone, not the channel parameters.
+ * </p>
+ * Example:
+ * <pre>
+ * ChannelAcceptorEngine&lt;ChannelAcceptRequest&gt; engine = new ChannelAcceptorEngine&lt;&gt;(lndAPI,
+ *         request -&gt; allowList.contains(request.getNodePubkey()) ? ChannelAcceptDecision.accept() : ChannelAcceptDecision.reject("Not allowed."));
+ * engine.setDecisionCacheTimeToLive(60000);
+ * engine.start();
+ * </pre>
+ *
+ * @param <T> the wrapped type of channel open request, ChannelAcceptRequest.
+ *
+ * Created by Philip Vendil.
+ */
+public class ChannelAcceptorEngine<T extends Message> extends InterceptorEngine<LightningApi.ChannelAcceptRequest, LightningApi.ChannelAcceptResponse, ChannelAcceptDecision> {
+
+    public static final int DEFAULT_DECISION_CACHE_SIZE = 10000;
+
+    private final ChannelAcceptPolicy<T> policy;
+    private final WrapperFactory wrapperFactory = WrapperFactory.getInstance();
+    private final DecisionCache<ByteString, ChannelAcceptDecision> decisionCache = new DecisionCache<>(DEFAULT_DECISION_CACHE_SIZE, 0);
+    private volatile ChannelAcceptDecision defaultDecision = ChannelAcceptDecision.reject();
+
+    /**
+     * Creates an engine using one worker thread per available processor.
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param policy the policy called for each channel open request.
+     */
+    public ChannelAcceptorEngine(API api, ChannelAcceptPolicy<T> policy){
+        this(api, policy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param policy the policy called for each channel open request.
+     * @param workerThreads the number of threads calling the policy, 1 or greater.
+     */
+    public ChannelAcceptorEngine(API api, ChannelAcceptPolicy<T> policy, int workerThreads){
+        super(api, "ChannelAcceptorEngine", workerThreads);
+        this.policy = policy;
+        setOrderedResponses(false);
+    }
+
+    /**
+     *
+     * @param defaultDecision the decision used when the deadline is missed or the policy fails, default reject.
+     */
+    public void setDefaultDecision(ChannelAcceptDecision defaultDecision){
+        this.defaultDecision = defaultDecision;
+    }
+
+    /**
+     *
+     * @param timeToLive the time in milliseconds a policy decision is cached per peer node public key,
+     *                   0 (default) to disable the cache.
+     */
+    public void setDecisionCacheTimeToLive(long timeToLive){
+        decisionCache.setTimeToLive(timeToLive);
+    }
+
+    /**
+     * Removes the cached decision of a peer, for instance after the peer was added to an allow list.
+     *
+     * @param nodePubkey the public key of the peer node.
+     */
+    public void invalidateCachedDecision(byte[] nodePubkey){
+        decisionCache.remove(ByteString.copyFrom(nodePubkey));
+    }
+
+    /**
+     * Removes all cached decisions.
+     */
+    public void clearDecisionCache(){
+        decisionCache.clear();
+    }
+
+    /**
+     *
+     * @return the number of cached decisions, including expired decisions not yet removed.
+     */
+    public int getCachedDecisionCount(){
+        return decisionCache.size();
+    }
+
+    @Override
+    protected void openStream(ClientResponseObserver<LightningApi.ChannelAcceptResponse, LightningApi.ChannelAcceptRequest> responseObserver) {
+        LightningGrpc.newStub(api.getCallChannel()).channelAcceptor(responseObserver);
+    }
+
+    @Override
+    protected ChannelAcceptDecision getCachedDecision(LightningApi.ChannelAcceptRequest request) {
+        return decisionCache.get(request.getNodePubkey());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected ChannelAcceptDecision decide(LightningApi.ChannelAcceptRequest request) throws Exception {
+        ChannelAcceptDecision retval = policy.evaluate((T) wrapperFactory.wrap(request));
+        if(retval != null){
+            decisionCache.put(request.getNodePubkey(), retval);
+        }
+        return retval;
+    }
+
+    @Override
+    protected ChannelAcceptDecision getDefaultDecision(LightningApi.ChannelAcceptRequest request) {
+        return defaultDecision;
+    }
+
+    @Override
+    protected LightningApi.ChannelAcceptResponse toResponse(LightningApi.ChannelAcceptRequest request, ChannelAcceptDecision decision) {
+        return decision.toResponse(request.getPendingChanId());
+    }
+}
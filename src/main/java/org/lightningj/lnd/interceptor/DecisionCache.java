@@ -0,0 +1,125 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread safe cache of policy decisions with a time to live, holding at most max
+ * size decisions by evicting the least recently used.
+ *
+ * @param <K> the type of key.
+ * @param <D> the type of decision.
+ *
+ * Created by Philip Vendil.
+ */
+class DecisionCache<K, D> {
+
+    private final LinkedHashMap<K, Entry<D>> entries;
+    private volatile long timeToLive;
+
+    /**
+     *
+     * @param maxSize the maximum number of cached decisions.
+     * @param timeToLive the time in milliseconds a decision is cached, 0 to disable caching.
+     */
+    DecisionCache(int maxSize, long timeToLive){
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<K, Entry<D>>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<D>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     *
+     * @param key the key of the decision.
+     * @return the cached decision or null if not cached or expired.
+     */
+    D get(K key){
+        if(timeToLive <= 0){
+            return null;
+        }
+        long now = System.nanoTime();
+        synchronized (entries){
+            Entry<D> entry = entries.get(key);
+            if(entry == null){
+                return null;
+            }
+            if(now - entry.expireTime >= 0){
+                entries.remove(key);
+                return null;
+            }
+            return entry.decision;
+        }
+    }
+
+    /**
+     *
+     * @param key the key of the decision.
+     * @param decision the decision to cache.
+     */
+    void put(K key, D decision){
+        long ttl = timeToLive;
+        if(ttl <= 0){
+            return;
+        }
+        Entry<D> entry = new Entry<>(decision, System.nanoTime() + ttl * 1000000L);
+        synchronized (entries){
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     *
+     * @param key the key of the decision to remove.
+     */
+    void remove(K key){
+        synchronized (entries){
+            entries.remove(key);
+        }
+    }
+
+    void clear(){
+        synchronized (entries){
+            entries.clear();
+        }
+    }
+
+    int size(){
+        synchronized (entries){
+            return entries.size();
+        }
+    }
+
+    void setTimeToLive(long timeToLive){
+        this.timeToLive = timeToLive;
+        if(timeToLive <= 0){
+            clear();
+        }
+    }
+
+    private static class Entry<D> {
+        private final D decision;
+        private final long expireTime;
+
+        Entry(D decision, long expireTime){
+            this.decision = decision;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import com.google.protobuf.ByteString;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+
+/**
+ * Immutable decision of how an intercepted HTLC should be resolved, returned
+ * by the HtlcInterceptHandler.
+ *
+ * Created by Philip Vendil.
+ */
+public class HtlcDecision {
+
+    private static final HtlcDecision RESUME = new HtlcDecision(RouterOuterClass.ResolveHoldForwardAction.RESUME, ByteString.EMPTY, ByteString.EMPTY, null);
+    private static final HtlcDecision FAIL = new HtlcDecision(RouterOuterClass.ResolveHoldForwardAction.FAIL, ByteString.EMPTY, ByteString.EMPTY, null);
+
+    private final RouterOuterClass.ResolveHoldForwardAction action;
+    private final ByteString preimage;
+    private final ByteString failureMessage;
+    private final LightningApi.Failure.FailureCode failureCode;
+
+    private HtlcDecision(RouterOuterClass.ResolveHoldForwardAction action, ByteString preimage,
+                         ByteString failureMessage, LightningApi.Failure.FailureCode failureCode){
+        this.action = action;
+        this.preimage = preimage;
+        this.failureMessage = failureMessage;
+        this.failureCode = failureCode;
+    }
+
+    /**
+     *
+     * @return decision to forward the HTLC.
+     */
+    public static HtlcDecision resume(){
+        return RESUME;
+    }
+
+    /**
+     *
+     * @param preimage the preimage of the payment hash.
+     * @return decision to settle the HTLC locally.
+     */
+    public static HtlcDecision settle(byte[] preimage){
+        return new HtlcDecision(RouterOuterClass.ResolveHoldForwardAction.SETTLE, ByteString.copyFrom(preimage), ByteString.EMPTY, null);
+    }
+
+    /**
+     *
+     * @return decision to fail the HTLC with the default failure code of LND.
+     */
+    public static HtlcDecision fail(){
+        return FAIL;
+    }
+
+    /**
+     *
+     * @param failureCode the failure code to return to the sender, encrypted by LND.
+     * @return decision to fail the HTLC.
+     */
+    public static HtlcDecision fail(LightningApi.Failure.FailureCode failureCode){
+        return new HtlcDecision(RouterOuterClass.ResolveHoldForwardAction.FAIL, ByteString.EMPTY, ByteString.EMPTY, failureCode);
+    }
+
+    /**
+     *
+     * @param failureMessage an already encrypted onion failure message returned to the sender as is.
+     * @return decision to fail the HTLC.
+     */
+    public static HtlcDecision fail(byte[] failureMessage){
+        return new HtlcDecision(RouterOuterClass.ResolveHoldForwardAction.FAIL, ByteString.EMPTY, ByteString.copyFrom(failureMessage), null);
+    }
+
+    /**
+     *
+     * @return the resolve action.
+     */
+    public RouterOuterClass.ResolveHoldForwardAction getAction(){
+        return action;
+    }
+
+    /**
+     *
+     * @return the preimage if action is SETTLE, otherwise empty.
+     */
+    public ByteString getPreimage(){
+        return preimage;
+    }
+
+    /**
+     *
+     * @return the encrypted failure message if set, otherwise empty.
+     */
+    public ByteString getFailureMessage(){
+        return failureMessage;
+    }
+
+    /**
+     *
+     * @return the failure code if set, otherwise null.
+     */
+    public LightningApi.Failure.FailureCode getFailureCode(){
+        return failureCode;
+    }
+
+    /**
+     * Builds the response to LND for the given intercepted HTLC.
+     *
+     * @param request the intercepted HTLC.
+     * @return the response resolving the HTLC.
+     */
+    RouterOuterClass.ForwardHtlcInterceptResponse toResponse(RouterOuterClass.ForwardHtlcInterceptRequest request){
+        RouterOuterClass.ForwardHtlcInterceptResponse.Builder builder = RouterOuterClass.ForwardHtlcInterceptResponse.newBuilder()
+                .setIncomingCircuitKey(request.getIncomingCircuitKey())
+                .setAction(action)
+                .setPreimage(preimage)
+                .setFailureMessage(failureMessage);
+        if(failureCode != null){
+            builder.setFailureCode(failureCode);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return "HtlcDecision{action=" + action + (failureCode != null ? ", failureCode=" + failureCode : "") + "}";
+    }
+}
@@ -0,0 +1,37 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import org.lightningj.lnd.wrapper.Message;
+
+/**
+ * Decision function registered with a HtlcInterceptorEngine, called concurrently
+ * by the worker threads for each intercepted HTLC.
+ *
+ * @param <T> the wrapped type of intercepted HTLC, ForwardHtlcInterceptRequest.
+ *
+ * Created by Philip Vendil.
+ */
+@FunctionalInterface
+public interface HtlcInterceptHandler<T extends Message> {
+
+    /**
+     * Decides how an intercepted HTLC should be resolved.
+     *
+     * @param request the intercepted HTLC, wrapped read-only.
+     * @return the decision, null to use the default decision of the engine.
+     * @throws Exception if the decision couldn't be made, the default decision of the engine is used.
+     */
+    HtlcDecision decide(T request) throws Exception;
+}
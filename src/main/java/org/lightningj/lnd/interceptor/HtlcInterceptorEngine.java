@@ -0,0 +1,100 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.router.proto.RouterGrpc;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.WrapperFactory;
+
+/**
+ * Engine resolving all HTLCs intercepted by the Router HtlcInterceptor stream with a
+ * registered decision function.
+ * <p>
+ *     Each ForwardHtlcInterceptRequest is wrapped read-only, without validation, and passed
+ *     to the handler on one of the worker threads, so decision throughput scales with the number
+ *     of cores. The responses are written in batches by a single writer, by default in the order
+ *     the HTLCs were intercepted. If the handler doesn't decide within the deadline, or throws an
+ *     exception, is the HTLC resolved with the default decision (RESUME unless changed). See
+ *     InterceptorEngine for details.
+ * </p>
+ * Example:
+ * <pre>
+ * HtlcInterceptorEngine&lt;ForwardHtlcInterceptRequest&gt; engine = new HtlcInterceptorEngine&lt;&gt;(routerAPI,
+ *         htlc -&gt; htlc.getOutgoingAmountMsat() &gt; limit ? HtlcDecision.fail() : HtlcDecision.resume());
+ * engine.start();
+ * </pre>
+ *
+ * @param <T> the wrapped type of intercepted HTLC, ForwardHtlcInterceptRequest.
+ *
+ * Created by Philip Vendil.
+ */
+public class HtlcInterceptorEngine<T extends Message> extends InterceptorEngine<RouterOuterClass.ForwardHtlcInterceptRequest, RouterOuterClass.ForwardHtlcInterceptResponse, HtlcDecision> {
+
+    private final HtlcInterceptHandler<T> handler;
+    private final WrapperFactory wrapperFactory = WrapperFactory.getInstance();
+    private volatile HtlcDecision defaultDecision = HtlcDecision.resume();
+
+    /**
+     * Creates an engine using one worker thread per available processor.
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param handler the decision function called for each intercepted HTLC.
+     */
+    public HtlcInterceptorEngine(API api, HtlcInterceptHandler<T> handler){
+        this(api, handler, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param handler the decision function called for each intercepted HTLC.
+     * @param workerThreads the number of threads calling the handler, 1 or greater.
+     */
+    public HtlcInterceptorEngine(API api, HtlcInterceptHandler<T> handler, int workerThreads){
+        super(api, "HtlcInterceptorEngine", workerThreads);
+        this.handler = handler;
+    }
+
+    /**
+     *
+     * @param defaultDecision the decision used when the deadline is missed or the handler fails, default RESUME.
+     */
+    public void setDefaultDecision(HtlcDecision defaultDecision){
+        this.defaultDecision = defaultDecision;
+    }
+
+    @Override
+    protected void openStream(ClientResponseObserver<RouterOuterClass.ForwardHtlcInterceptResponse, RouterOuterClass.ForwardHtlcInterceptRequest> responseObserver) {
+        RouterGrpc.newStub(api.getCallChannel()).htlcInterceptor(responseObserver);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected HtlcDecision decide(RouterOuterClass.ForwardHtlcInterceptRequest request) throws Exception {
+        return handler.decide((T) wrapperFactory.wrap(request));
+    }
+
+    @Override
+    protected HtlcDecision getDefaultDecision(RouterOuterClass.ForwardHtlcInterceptRequest request) {
+        return defaultDecision;
+    }
+
+    @Override
+    protected RouterOuterClass.ForwardHtlcInterceptResponse toResponse(RouterOuterClass.ForwardHtlcInterceptRequest request, HtlcDecision decision) {
+        return decision.toResponse(request);
+    }
+}
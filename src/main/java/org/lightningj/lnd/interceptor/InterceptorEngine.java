@@ -0,0 +1,539 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import com.google.protobuf.GeneratedMessageV3;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.metrics.LatencyHistogram;
+import org.lightningj.lnd.wrapper.API;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Base class of engines answering requests sent by LND on a bidirectional stream, such as
+ * intercepted HTLCs, with decisions calculated by a user supplied function.
+ * <p>
+ *     Each received request is evaluated on a worker pool (by default one thread per core) so
+ *     a slow decision doesn't block the stream. The responses are written to the outbound stream
+ *     by a single writer at a time, every thread completing a decision queues its response and the
+ *     thread currently writing drains all queued responses in one batch. With ordered responses
+ *     (default) are responses written in the order the requests were received, otherwise as soon
+ *     as they are decided.
+ * </p>
+ * <p>
+ *     If a decision isn't made within the deadline, or the decision function throws an exception,
+ *     is the request answered with the default decision. The latency from receiving a request to
+ *     queueing its response is recorded in a latency histogram.
+ * </p>
+ * <p>
+ *     If the stream fails is it reopened after the reconnect delay. Responses to requests received
+ *     on a failed stream are discarded, LND resends unanswered requests when the stream is reopened.
+ * </p>
+ *
+ * @param <Q> the GRPC type of requests received from LND.
+ * @param <R> the GRPC type of responses sent to LND.
+ * @param <D> the type of decision returned by the decision function.
+ *
+ * Created by Philip Vendil.
+ */
+public abstract class InterceptorEngine<Q extends GeneratedMessageV3, R extends GeneratedMessageV3, D> implements Closeable {
+
+    public static final long DEFAULT_DEADLINE = 10000;
+    public static final long DEFAULT_RECONNECT_DELAY = 5000;
+
+    protected static Logger log =
+            Logger.getLogger(InterceptorEngine.class.getName());
+
+    protected final API api;
+    private final String name;
+    private final int workerThreads;
+
+    private final LatencyHistogram decisionLatency = new LatencyHistogram();
+    private final LongAdder decisionCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private volatile long deadline = DEFAULT_DEADLINE;
+    private volatile long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private volatile boolean orderedResponses = true;
+    private volatile boolean closed = false;
+    private volatile Executor executor;
+
+    // Guarded by this
+    private ExecutorService workerPool;
+    private ScheduledThreadPoolExecutor scheduler;
+    private Session session;
+
+    /**
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param name the name of the engine used in log messages and thread names.
+     * @param workerThreads the number of threads evaluating decisions, 1 or greater.
+     */
+    protected InterceptorEngine(API api, String name, int workerThreads){
+        if(workerThreads < 1){
+            throw new IllegalArgumentException("Invalid number of worker threads: " + workerThreads + ", must be 1 or greater.");
+        }
+        this.api = api;
+        this.name = name;
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Method that should open the bidirectional stream to LND using the GRPC channel of the API.
+     *
+     * @param responseObserver the observer receiving requests from LND.
+     */
+    protected abstract void openStream(ClientResponseObserver<R, Q> responseObserver);
+
+    /**
+     * Method that should evaluate a request by calling the user supplied decision function.
+     * Called by the worker threads.
+     *
+     * @param request the request received from LND.
+     * @return the decision, null to use the default decision.
+     * @throws Exception if the decision function failed, the default decision is used.
+     */
+    protected abstract D decide(Q request) throws Exception;
+
+    /**
+     *
+     * @param request the request received from LND.
+     * @return the decision to use if the deadline is missed or the decision function fails.
+     */
+    protected abstract D getDefaultDecision(Q request);
+
+    /**
+     * Method that should build the response sent to LND.
+     *
+     * @param request the request received from LND.
+     * @param decision the decision of the request.
+     * @return the response to send.
+     */
+    protected abstract R toResponse(Q request, D decision);
+
+    /**
+     * Method that can be overridden to answer a request directly on the receiving GRPC thread
+     * without calling the decision function, for instance from a cache.
+     *
+     * @param request the request received from LND.
+     * @return the decision or null (default) if the decision function should be called.
+     */
+    protected D getCachedDecision(Q request){
+        return null;
+    }
+
+    /**
+     * Method that can be overridden to skip received messages not expecting a response.
+     *
+     * @param request the request received from LND.
+     * @return true (default) if the request should be answered.
+     */
+    protected boolean isDecisionRequired(Q request){
+        return true;
+    }
+
+    /**
+     * Method that can be overridden to send a message to LND directly after the stream
+     * is opened, before any request is received.
+     *
+     * @return the message to send or null (default) if no message should be sent.
+     */
+    protected R getRegistrationMessage(){
+        return null;
+    }
+
+    /**
+     * Opens the stream to LND and starts answering requests.
+     */
+    public void start(){
+        synchronized (this){
+            if(closed){
+                throw new IllegalStateException(name + " is closed.");
+            }
+            if(workerPool == null && executor == null){
+                AtomicInteger threadIndex = new AtomicInteger();
+                workerPool = Executors.newFixedThreadPool(workerThreads, r -> {
+                    Thread t = new Thread(r, name + "-worker-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            if(scheduler == null){
+                scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+                    Thread t = new Thread(r, name + "-scheduler");
+                    t.setDaemon(true);
+                    return t;
+                });
+                scheduler.setRemoveOnCancelPolicy(true);
+            }
+        }
+        connect();
+    }
+
+    /**
+     *
+     * @return true if the stream to LND is open.
+     */
+    public synchronized boolean isConnected(){
+        return session != null && session.outbound != null;
+    }
+
+    /**
+     *
+     * @return histogram of the latency from receiving a request to queueing its response, in nanoseconds.
+     */
+    public LatencyHistogram getDecisionLatency(){
+        return decisionLatency;
+    }
+
+    /**
+     *
+     * @return the total number of answered requests, including timed out and failed decisions.
+     */
+    public long getDecisionCount(){
+        return decisionCount.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests answered with the default decision since the deadline was missed.
+     */
+    public long getTimeoutCount(){
+        return timeoutCount.sum();
+    }
+
+    /**
+     *
+     * @return the number of requests answered with the default decision since the decision function failed.
+     */
+    public long getErrorCount(){
+        return errorCount.sum();
+    }
+
+    /**
+     *
+     * @return the number of received requests not yet decided.
+     */
+    public int getPendingCount(){
+        return pendingCount.get();
+    }
+
+    /**
+     *
+     * @param deadline the time in milliseconds a decision is waited for before the default decision
+     *                 is used, default 10000. 0 to wait indefinitely.
+     */
+    public void setDeadline(long deadline){
+        this.deadline = deadline;
+    }
+
+    /**
+     *
+     * @param reconnectDelay delay in milliseconds before reopening a failed stream, default 5000.
+     *                       0 to not reconnect.
+     */
+    public void setReconnectDelay(long reconnectDelay){
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     *
+     * @param orderedResponses true (default) if responses should be sent in the order the requests were
+     *                         received, false to send each response as soon as it is decided.
+     */
+    public void setOrderedResponses(boolean orderedResponses){
+        this.orderedResponses = orderedResponses;
+    }
+
+    /**
+     * Sets an executor used to evaluate decisions instead of the internal worker pool. Must be set
+     * before start() and isn't shut down when the engine is closed.
+     *
+     * @param executor the executor evaluating decisions.
+     */
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    /**
+     * Closes the stream to LND and stops the internal worker pool. Undecided requests
+     * are not answered. The underlying API isn't closed.
+     */
+    @Override
+    public void close() {
+        Session current;
+        synchronized (this){
+            closed = true;
+            current = session;
+            session = null;
+            if(workerPool != null){
+                workerPool.shutdownNow();
+            }
+            if(scheduler != null){
+                scheduler.shutdownNow();
+            }
+        }
+        if(current != null){
+            current.cancel(name + " closed");
+        }
+    }
+
+    private void connect(){
+        Session newSession;
+        Session previous;
+        synchronized (this){
+            if(closed){
+                return;
+            }
+            previous = session;
+            newSession = new Session(orderedResponses);
+            session = newSession;
+        }
+        if(previous != null){
+            previous.cancel(name + " reconnected");
+        }
+        openStream(newSession);
+        R registration = getRegistrationMessage();
+        if(registration != null && newSession.outbound != null && !newSession.failed){
+            newSession.outbound.onNext(registration);
+        }
+    }
+
+    private void onStreamError(Session failedSession, Throwable t){
+        synchronized (this){
+            if(session != failedSession){
+                return;
+            }
+            session = null;
+        }
+        log.log(Level.WARNING, name + " stream failed: " + t.getMessage());
+        log.log(Level.FINE, "Stacktrace: ", t);
+        long delay = reconnectDelay;
+        if(delay <= 0){
+            return;
+        }
+        synchronized (this){
+            if(!closed){
+                scheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void reconnect(){
+        synchronized (this){
+            if(closed || session != null){
+                return;
+            }
+        }
+        log.fine(name + " reopening stream.");
+        connect();
+    }
+
+    private void dispatch(Session receivingSession, long sequence, Q request){
+        Decision decision = new Decision(receivingSession, sequence, request);
+        pendingCount.incrementAndGet();
+        D cached = getCachedDecision(request);
+        if(cached != null){
+            decision.complete(cached);
+            return;
+        }
+        long currentDeadline = deadline;
+        ScheduledThreadPoolExecutor currentScheduler;
+        Executor currentExecutor;
+        synchronized (this){
+            currentScheduler = scheduler;
+            currentExecutor = executor != null ? executor : workerPool;
+        }
+        try {
+            if (currentDeadline > 0) {
+                decision.timeout = currentScheduler.schedule(decision::onDeadline, currentDeadline, TimeUnit.MILLISECONDS);
+            }
+            currentExecutor.execute(decision);
+        }catch(RejectedExecutionException e){
+            errorCount.increment();
+            decision.complete(getDefaultDecision(request));
+        }
+    }
+
+    /**
+     * Decision of one request, completed either by a worker or when the deadline is missed.
+     */
+    private class Decision extends AtomicBoolean implements Runnable {
+
+        private final Session decisionSession;
+        private final long sequence;
+        private final Q request;
+        private final long startTime = System.nanoTime();
+        private volatile ScheduledFuture<?> timeout;
+
+        Decision(Session decisionSession, long sequence, Q request){
+            this.decisionSession = decisionSession;
+            this.sequence = sequence;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            if(get()){
+                return;
+            }
+            D result = null;
+            try {
+                result = decide(request);
+            }catch(Throwable t){
+                errorCount.increment();
+                log.log(Level.WARNING, name + " decision function failed, using default decision: " + t.getMessage());
+                log.log(Level.FINE, "Stacktrace: ", t);
+            }
+            complete(result != null ? result : getDefaultDecision(request));
+        }
+
+        void onDeadline(){
+            if(!get()){
+                if(complete(getDefaultDecision(request))){
+                    timeoutCount.increment();
+                    log.fine(name + " decision deadline missed, using default decision.");
+                }
+            }
+        }
+
+        boolean complete(D result){
+            if(!compareAndSet(false, true)){
+                return false;
+            }
+            ScheduledFuture<?> t = timeout;
+            if(t != null){
+                t.cancel(false);
+            }
+            pendingCount.decrementAndGet();
+            R response = toResponse(request, result);
+            decisionLatency.record(System.nanoTime() - startTime);
+            decisionCount.increment();
+            decisionSession.write(sequence, response);
+            return true;
+        }
+    }
+
+    /**
+     * One opened stream to LND, responses are only written to the stream the request was received on.
+     */
+    private class Session implements ClientResponseObserver<R, Q> {
+
+        private final boolean ordered;
+        private final ConcurrentHashMap<Long, R> orderedQueue = new ConcurrentHashMap<>();
+        private final Queue<R> unorderedQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean writing = new AtomicBoolean(false);
+        private volatile ClientCallStreamObserver<R> outbound;
+        private volatile boolean failed = false;
+        // Only accessed by the GRPC thread receiving requests.
+        private long nextSequence = 0;
+        // Only updated by the thread currently writing.
+        private volatile long nextToWrite = 0;
+
+        Session(boolean ordered){
+            this.ordered = ordered;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<R> requestStream) {
+            outbound = requestStream;
+        }
+
+        @Override
+        public void onNext(Q value) {
+            if(isDecisionRequired(value)) {
+                dispatch(this, nextSequence++, value);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            failed = true;
+            onStreamError(this, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            onError(new IllegalStateException(name + " stream completed by server."));
+        }
+
+        void write(long sequence, R response){
+            if(ordered){
+                orderedQueue.put(sequence, response);
+            }else{
+                unorderedQueue.add(response);
+            }
+            // Only one thread writes at a time, other threads just queue their response. The check
+            // after releasing the write flag catches responses queued while it was being released.
+            while(hasQueued() && writing.compareAndSet(false, true)){
+                try{
+                    R next;
+                    while((next = poll()) != null){
+                        if(!failed){
+                            outbound.onNext(next);
+                        }
+                    }
+                }catch(RuntimeException e){
+                    failed = true;
+                    log.log(Level.WARNING, name + " error sending response: " + e.getMessage());
+                    log.log(Level.FINE, "Stacktrace: ", e);
+                }finally {
+                    writing.set(false);
+                }
+            }
+        }
+
+        void cancel(String message){
+            failed = true;
+            ClientCallStreamObserver<R> o = outbound;
+            if(o != null){
+                o.cancel(message, null);
+            }
+        }
+
+        private boolean hasQueued(){
+            return ordered ? orderedQueue.containsKey(nextToWrite) : !unorderedQueue.isEmpty();
+        }
+
+        private R poll(){
+            if(ordered){
+                R retval = orderedQueue.remove(nextToWrite);
+                if(retval != null){
+                    nextToWrite++;
+                }
+                return retval;
+            }
+            return unorderedQueue.poll();
+        }
+    }
+}
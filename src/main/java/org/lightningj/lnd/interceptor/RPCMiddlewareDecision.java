@@ -0,0 +1,114 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import org.lightningj.lnd.proto.LightningApi;
+
+/**
+ * Immutable decision of how an intercepted RPC stream, request or response should be
+ * handled, returned by the RPCMiddlewarePolicy.
+ *
+ * Created by Philip Vendil.
+ */
+public class RPCMiddlewareDecision {
+
+    private static final RPCMiddlewareDecision ACCEPT = new RPCMiddlewareDecision(LightningApi.InterceptFeedback.getDefaultInstance());
+
+    private final LightningApi.InterceptFeedback feedback;
+
+    private RPCMiddlewareDecision(LightningApi.InterceptFeedback feedback){
+        this.feedback = feedback;
+    }
+
+    /**
+     *
+     * @return decision to let LND continue processing the stream, request or response unchanged.
+     */
+    public static RPCMiddlewareDecision accept(){
+        return ACCEPT;
+    }
+
+    /**
+     *
+     * @param error the error returned to the GRPC client, must not be empty.
+     * @return decision to abort the call with the given error.
+     */
+    public static RPCMiddlewareDecision reject(String error){
+        if(error == null || error.isEmpty()){
+            throw new IllegalArgumentException("Error message of rejected RPC must not be empty.");
+        }
+        return new RPCMiddlewareDecision(LightningApi.InterceptFeedback.newBuilder().setError(error).build());
+    }
+
+    /**
+     * Creates a decision replacing an intercepted response, only allowed for middleware not
+     * registered in read only mode.
+     *
+     * @param replacementSerialized the replacement message serialized in binary protobuf format.
+     * @return decision to replace the response.
+     */
+    public static RPCMiddlewareDecision replace(byte[] replacementSerialized){
+        return replace(ByteString.copyFrom(replacementSerialized));
+    }
+
+    /**
+     * Creates a decision replacing an intercepted response, only allowed for middleware not
+     * registered in read only mode.
+     *
+     * @param replacement the GRPC replacement message, of the same type as the original response.
+     * @return decision to replace the response.
+     */
+    public static RPCMiddlewareDecision replace(MessageLite replacement){
+        return replace(replacement.toByteString());
+    }
+
+    private static RPCMiddlewareDecision replace(ByteString replacementSerialized){
+        return new RPCMiddlewareDecision(LightningApi.InterceptFeedback.newBuilder()
+                .setReplaceResponse(true)
+                .setReplacementSerialized(replacementSerialized).build());
+    }
+
+    /**
+     *
+     * @return true if LND should continue processing, possibly with a replaced response.
+     */
+    public boolean isAccepted(){
+        return feedback.getError().isEmpty();
+    }
+
+    /**
+     *
+     * @return the feedback sent to LND.
+     */
+    public LightningApi.InterceptFeedback getFeedback(){
+        return feedback;
+    }
+
+    /**
+     * Builds the response to LND for the given intercept message.
+     *
+     * @param msgId the message id of the intercept message.
+     * @return the response referring to the intercept message.
+     */
+    LightningApi.RPCMiddlewareResponse toResponse(long msgId){
+        return LightningApi.RPCMiddlewareResponse.newBuilder().setRefMsgId(msgId).setFeedback(feedback).build();
+    }
+
+    @Override
+    public String toString() {
+        return "RPCMiddlewareDecision{" + (isAccepted() ? "accept" : "error=" + feedback.getError()) + (feedback.getReplaceResponse() ? ", replace" : "") + "}";
+    }
+}
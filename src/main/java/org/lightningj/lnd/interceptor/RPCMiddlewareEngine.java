@@ -0,0 +1,127 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor;
+
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.WrapperFactory;
+
+/**
+ * Engine registering a RPC middleware with the RegisterRPCMiddleware stream and answering all
+ * intercept messages with a registered policy.
+ * <p>
+ *     The registration message is sent each time the stream is opened, also when it is reopened
+ *     automatically after a failure. Each RPCMiddlewareRequest is wrapped read-only and evaluated
+ *     by the policy on one of the worker threads. The responses are correlated by message id and
+ *     sent as soon as they are decided, so a slow evaluation doesn't delay other intercepted calls.
+ *     If the policy doesn't decide within the deadline, or throws an exception, is the intercepted
+ *     call rejected, or accepted if the middleware is registered in read only mode, unless another
+ *     default decision is set. See InterceptorEngine for details.
+ * </p>
+ * Example:
+ * <pre>
+ * LightningApi.MiddlewareRegistration registration = LightningApi.MiddlewareRegistration.newBuilder()
+ *         .setMiddlewareName("audit").setReadOnlyMode(true).build();
+ * RPCMiddlewareEngine&lt;RPCMiddlewareRequest&gt; engine = new RPCMiddlewareEngine&lt;&gt;(lndAPI, registration,
+ *         request -&gt; { audit(request); return RPCMiddlewareDecision.accept(); });
+ * engine.start();
+ * </pre>
+ *
+ * @param <T> the wrapped type of intercept message, RPCMiddlewareRequest.
+ *
+ * Created by Philip Vendil.
+ */
+public class RPCMiddlewareEngine<T extends Message> extends InterceptorEngine<LightningApi.RPCMiddlewareRequest, LightningApi.RPCMiddlewareResponse, RPCMiddlewareDecision> {
+
+    private final LightningApi.MiddlewareRegistration registration;
+    private final RPCMiddlewarePolicy<T> policy;
+    private final WrapperFactory wrapperFactory = WrapperFactory.getInstance();
+    private volatile RPCMiddlewareDecision defaultDecision;
+
+    /**
+     * Creates an engine using one worker thread per available processor.
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param registration the registration sent to LND, with the name of the middleware and either a custom
+     *                     macaroon caveat name or read only mode.
+     * @param policy the policy called for each intercept message.
+     */
+    public RPCMiddlewareEngine(API api, LightningApi.MiddlewareRegistration registration, RPCMiddlewarePolicy<T> policy){
+        this(api, registration, policy, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param registration the registration sent to LND, with the name of the middleware and either a custom
+     *                     macaroon caveat name or read only mode.
+     * @param policy the policy called for each intercept message.
+     * @param workerThreads the number of threads calling the policy, 1 or greater.
+     */
+    public RPCMiddlewareEngine(API api, LightningApi.MiddlewareRegistration registration, RPCMiddlewarePolicy<T> policy, int workerThreads){
+        super(api, "RPCMiddlewareEngine", workerThreads);
+        this.registration = registration;
+        this.policy = policy;
+        this.defaultDecision = registration.getReadOnlyMode() ? RPCMiddlewareDecision.accept() :
+                RPCMiddlewareDecision.reject("Request rejected by middleware " + registration.getMiddlewareName() + ".");
+        setOrderedResponses(false);
+    }
+
+    /**
+     *
+     * @param defaultDecision the decision used when the deadline is missed or the policy fails, default
+     *                        reject, or accept in read only mode.
+     */
+    public void setDefaultDecision(RPCMiddlewareDecision defaultDecision){
+        this.defaultDecision = defaultDecision;
+    }
+
+    @Override
+    protected void openStream(ClientResponseObserver<LightningApi.RPCMiddlewareResponse, LightningApi.RPCMiddlewareRequest> responseObserver) {
+        LightningGrpc.newStub(api.getCallChannel()).registerRPCMiddleware(responseObserver);
+    }
+
+    @Override
+    protected LightningApi.RPCMiddlewareResponse getRegistrationMessage() {
+        return LightningApi.RPCMiddlewareResponse.newBuilder().setRegister(registration).build();
+    }
+
+    @Override
+    protected boolean isDecisionRequired(LightningApi.RPCMiddlewareRequest request) {
+        if(request.getInterceptTypeCase() == LightningApi.RPCMiddlewareRequest.InterceptTypeCase.REG_COMPLETE){
+            log.fine("RPC middleware " + registration.getMiddlewareName() + " registered.");
+            return false;
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected RPCMiddlewareDecision decide(LightningApi.RPCMiddlewareRequest request) throws Exception {
+        return policy.evaluate((T) wrapperFactory.wrap(request));
+    }
+
+    @Override
+    protected RPCMiddlewareDecision getDefaultDecision(LightningApi.RPCMiddlewareRequest request) {
+        return defaultDecision;
+    }
+
+    @Override
+    protected LightningApi.RPCMiddlewareResponse toResponse(LightningApi.RPCMiddlewareRequest request, RPCMiddlewareDecision decision) {
+        return decision.toResponse(request.getMsgId());
+    }
+}
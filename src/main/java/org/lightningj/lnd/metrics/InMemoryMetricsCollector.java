@@ -0,0 +1,195 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MetricsCollector keeping all metrics in memory, optionally exported as MXBeans in the
+ * platform MBean server.
+ * <p>
+ *     Each GRPC method gets a MethodMetrics, registered as
+ *     org.lightningj.lnd:type=MethodMetrics,method=&lt;method name&gt;, and each message type and processing
+ *     stage a LatencyHistogram, registered as
+ *     org.lightningj.lnd:type=ProcessingMetrics,message=&lt;message type&gt;,stage=&lt;stage&gt;.
+ *     Metrics are created on first use, after that is recording allocation free.
+ * </p>
+ * Example:
+ * <pre>
+ * InMemoryMetricsCollector metrics = new InMemoryMetricsCollector(true);
+ * synchronousLndAPI.setMetricsCollector(metrics);
+ * ...
+ * for(MethodMetrics m : metrics.getMethodMetricsByLatency(99.0)){
+ *     System.out.println(m);
+ * }
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class InMemoryMetricsCollector implements MetricsCollector, Closeable {
+
+    public static final String JMX_DOMAIN = "org.lightningj.lnd";
+
+    protected static Logger log =
+            Logger.getLogger(InMemoryMetricsCollector.class.getName());
+
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram[]> processing = new ConcurrentHashMap<>();
+    private final MBeanServer mBeanServer;
+    private final List<ObjectName> registeredNames = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a collector only keeping metrics in memory.
+     */
+    public InMemoryMetricsCollector(){
+        this(false);
+    }
+
+    /**
+     *
+     * @param registerJmx if metrics should be registered as MXBeans in the platform MBean server.
+     */
+    public InMemoryMetricsCollector(boolean registerJmx){
+        this.mBeanServer = registerJmx ? ManagementFactory.getPlatformMBeanServer() : null;
+    }
+
+    @Override
+    public void recordCall(String methodName, long latencyNanos, long bytesSent, long bytesReceived, String errorClass) {
+        MethodMetrics metrics = methods.get(methodName);
+        if(metrics == null){
+            metrics = methods.computeIfAbsent(methodName, this::createMethodMetrics);
+        }
+        metrics.record(latencyNanos, bytesSent, bytesReceived, errorClass);
+    }
+
+    @Override
+    public void recordProcessing(String messageType, ProcessingStage stage, long nanos) {
+        LatencyHistogram[] histograms = processing.get(messageType);
+        if(histograms == null){
+            histograms = processing.computeIfAbsent(messageType, this::createProcessingHistograms);
+        }
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     *
+     * @param methodName the full GRPC method name, for example lnrpc.Lightning/GetInfo.
+     * @return the metrics of the method or null if no call to the method has completed.
+     */
+    public MethodMetrics getMethodMetrics(String methodName){
+        return methods.get(methodName);
+    }
+
+    /**
+     *
+     * @return the metrics of all called methods.
+     */
+    public Collection<MethodMetrics> getMethodMetrics(){
+        return Collections.unmodifiableCollection(methods.values());
+    }
+
+    /**
+     * Returns the metrics of all called methods with the slowest first, useful to find slow LND calls.
+     *
+     * @param percentile the latency percentile to sort on, for example 99.0.
+     * @return list of method metrics sorted by the latency percentile in descending order.
+     */
+    public List<MethodMetrics> getMethodMetricsByLatency(double percentile){
+        List<MethodMetrics> retval = new ArrayList<>(methods.values());
+        retval.sort(Comparator.comparingLong((MethodMetrics m) -> m.getLatency().getValueAtPercentile(percentile)).reversed());
+        return retval;
+    }
+
+    /**
+     *
+     * @param messageType the name of the message type.
+     * @param stage the processing stage.
+     * @return histogram of processing times in nanoseconds, or null if no message of the type has been processed.
+     */
+    public LatencyHistogram getProcessingTime(String messageType, ProcessingStage stage){
+        LatencyHistogram[] histograms = processing.get(messageType);
+        return histograms != null ? histograms[stage.ordinal()] : null;
+    }
+
+    /**
+     *
+     * @return the names of all processed message types.
+     */
+    public Set<String> getProcessedMessageTypes(){
+        return Collections.unmodifiableSet(processing.keySet());
+    }
+
+    /**
+     * Unregisters all MXBeans registered by this collector, collected metrics are kept.
+     */
+    @Override
+    public void close() {
+        if(mBeanServer != null){
+            for(ObjectName name : registeredNames){
+                try {
+                    mBeanServer.unregisterMBean(name);
+                }catch(JMException e){
+                    log.log(Level.FINE, "Error unregistering MXBean " + name + ": " + e.getMessage(), e);
+                }
+            }
+            registeredNames.clear();
+        }
+    }
+
+    private MethodMetrics createMethodMetrics(String methodName){
+        MethodMetrics retval = new MethodMetrics(methodName);
+        register(retval, "type=MethodMetrics,method=" + ObjectName.quote(methodName));
+        return retval;
+    }
+
+    private LatencyHistogram[] createProcessingHistograms(String messageType){
+        ProcessingStage[] stages = ProcessingStage.values();
+        LatencyHistogram[] retval = new LatencyHistogram[stages.length];
+        for(ProcessingStage stage : stages){
+            retval[stage.ordinal()] = new LatencyHistogram();
+            register(retval[stage.ordinal()], "type=ProcessingMetrics,message=" + ObjectName.quote(messageType) + ",stage=" + stage.name());
+        }
+        return retval;
+    }
+
+    private void register(Object mxBean, String properties){
+        if(mBeanServer == null){
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":" + properties);
+            if(!mBeanServer.isRegistered(name)) {
+                mBeanServer.registerMBean(mxBean, name);
+                registeredNames.add(name);
+            }
+        }catch(JMException e){
+            log.log(Level.WARNING, "Error registering metrics MXBean " + properties + ": " + e.getMessage());
+            log.log(Level.FINE, "Stacktrace: ", e);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe histogram of latencies in nanoseconds with logarithmic buckets.
+ * <p>
+ *     Similar to HdrHistogram, each power of two range is divided into 32 linear sub buckets,
+ *     giving percentiles with a relative error below about 3%. Values up to 2^41 nanoseconds
+ *     (about 36 minutes) are tracked, larger values are counted in the last bucket. Recording a
+ *     value doesn't allocate memory and doesn't lock.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    /**
+     * The largest value tracked, larger values are recorded as this value.
+     */
+    public static final long MAX_TRACKED_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_TRACKED_VALUE) + 1);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the value in nanoseconds, negative values are recorded as 0.
+     */
+    public void record(long nanos){
+        long value = nanos < 0 ? 0 : Math.min(nanos, MAX_TRACKED_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalValue.add(value);
+        long currentMax;
+        while(value > (currentMax = maxValue.get()) && !maxValue.compareAndSet(currentMax, value)){
+            // Retry until max is updated or a larger value is recorded by another thread.
+        }
+    }
+
+    /**
+     * Returns the value at the given percentile, as the upper bound of the bucket containing the
+     * percentile but never larger than the max recorded value.
+     *
+     * @param percentile the percentile between 0 and 100.
+     * @return the value at the percentile in nanoseconds, 0 if no values are recorded.
+     */
+    public long getValueAtPercentile(double percentile){
+        long count = 0;
+        for(int i=0; i<counts.length(); i++){
+            count += counts.get(i);
+        }
+        if(count == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        long max = maxValue.get();
+        long accumulated = 0;
+        for(int i=0; i<counts.length(); i++){
+            accumulated += counts.get(i);
+            if(accumulated >= target){
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public long getCount(){
+        return totalCount.sum();
+    }
+
+    /**
+     *
+     * @return the sum of all recorded values in nanoseconds.
+     */
+    public long getTotal(){
+        return totalValue.sum();
+    }
+
+    /**
+     *
+     * @return the largest recorded value in nanoseconds.
+     */
+    public long getMax(){
+        return maxValue.get();
+    }
+
+    @Override
+    public double getMeanMicros(){
+        long count = totalCount.sum();
+        return count == 0 ? 0.0 : totalValue.sum() / (count * 1000.0);
+    }
+
+    @Override
+    public double getMedianMicros(){
+        return getValueAtPercentile(50.0) / 1000.0;
+    }
+
+    @Override
+    public double get99thPercentileMicros(){
+        return getValueAtPercentile(99.0) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros(){
+        return maxValue.get() / 1000.0;
+    }
+
+    /**
+     * Returns the bucket index of a value, values below 64 have their own bucket, larger values
+     * are bucketed by their highest 6 bits.
+     */
+    static int indexOf(long value){
+        if(value < 2 * SUB_BUCKET_HALF_COUNT){
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the largest value in the bucket of the given index.
+     */
+    static long upperBoundOf(int index){
+        if(index < 2 * SUB_BUCKET_HALF_COUNT){
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
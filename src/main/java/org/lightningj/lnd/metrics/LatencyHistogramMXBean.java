@@ -0,0 +1,52 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics;
+
+/**
+ * JMX interface of a LatencyHistogram, all times are in microseconds.
+ *
+ * Created by Philip Vendil.
+ */
+public interface LatencyHistogramMXBean {
+
+    /**
+     *
+     * @return the number of recorded values.
+     */
+    long getCount();
+
+    /**
+     *
+     * @return the mean of all recorded values in microseconds.
+     */
+    double getMeanMicros();
+
+    /**
+     *
+     * @return the median of the recorded values in microseconds.
+     */
+    double getMedianMicros();
+
+    /**
+     *
+     * @return the 99th percentile of the recorded values in microseconds.
+     */
+    double get99thPercentileMicros();
+
+    /**
+     *
+     * @return the largest recorded value in microseconds.
+     */
+    double getMaxMicros();
+}
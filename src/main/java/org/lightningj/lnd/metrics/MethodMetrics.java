@@ -0,0 +1,118 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of one GRPC method collected by InMemoryMetricsCollector.
+ *
+ * Created by Philip Vendil.
+ */
+public class MethodMetrics implements MethodMetricsMXBean {
+
+    private final String methodName;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+
+    MethodMetrics(String methodName){
+        this.methodName = methodName;
+    }
+
+    void record(long latencyNanos, long sent, long received, String errorClass){
+        latency.record(latencyNanos);
+        bytesSent.add(sent);
+        bytesReceived.add(received);
+        if(errorClass != null){
+            errorCount.increment();
+            errorCounts.computeIfAbsent(errorClass, k -> new LongAdder()).increment();
+        }
+    }
+
+    @Override
+    public String getMethodName(){
+        return methodName;
+    }
+
+    /**
+     *
+     * @return the histogram of call latencies in nanoseconds.
+     */
+    public LatencyHistogram getLatency(){
+        return latency;
+    }
+
+    @Override
+    public long getCallCount(){
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrorCount(){
+        return errorCount.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts(){
+        Map<String, Long> retval = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> entry : errorCounts.entrySet()){
+            retval.put(entry.getKey(), entry.getValue().sum());
+        }
+        return retval;
+    }
+
+    @Override
+    public long getBytesSent(){
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived(){
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMicros(){
+        return latency.getMeanMicros();
+    }
+
+    @Override
+    public double getMedianLatencyMicros(){
+        return latency.getMedianMicros();
+    }
+
+    @Override
+    public double get99thPercentileLatencyMicros(){
+        return latency.get99thPercentileMicros();
+    }
+
+    @Override
+    public double getMaxLatencyMicros(){
+        return latency.getMaxMicros();
+    }
+
+    @Override
+    public String toString(){
+        return methodName + " {calls=" + getCallCount() + ", errors=" + getErrorCounts() +
+                ", meanMicros=" + getMeanLatencyMicros() + ", p99Micros=" + get99thPercentileLatencyMicros() +
+                ", maxMicros=" + getMaxLatencyMicros() + ", bytesSent=" + getBytesSent() +
+                ", bytesReceived=" + getBytesReceived() + "}";
+    }
+}
@@ -0,0 +1,84 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX interface of the metrics of one GRPC method, all times are in microseconds.
+ *
+ * Created by Philip Vendil.
+ */
+public interface MethodMetricsMXBean {
+
+    /**
+     *
+     * @return the full GRPC method name.
+     */
+    String getMethodName();
+
+    /**
+     *
+     * @return the number of completed calls.
+     */
+    long getCallCount();
+
+    /**
+     *
+     * @return the number of calls that failed.
+     */
+    long getErrorCount();
+
+    /**
+     *
+     * @return the number of failed calls per error class.
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     *
+     * @return the total serialized size of all sent messages.
+     */
+    long getBytesSent();
+
+    /**
+     *
+     * @return the total serialized size of all received messages.
+     */
+    long getBytesReceived();
+
+    /**
+     *
+     * @return the mean call latency in microseconds.
+     */
+    double getMeanLatencyMicros();
+
+    /**
+     *
+     * @return the median call latency in microseconds.
+     */
+    double getMedianLatencyMicros();
+
+    /**
+     *
+     * @return the 99th percentile of call latency in microseconds.
+     */
+    double get99thPercentileLatencyMicros();
+
+    /**
+     *
+     * @return the maximum call latency in microseconds.
+     */
+    double getMaxLatencyMicros();
+}
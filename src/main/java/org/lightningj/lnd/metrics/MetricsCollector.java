@@ -0,0 +1,70 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics;
+
+/**
+ * Service provider interface for collecting client side metrics of LND API calls.
+ * <p>
+ *     Call metrics are reported by the MetricsClientInterceptor once for every completed GRPC
+ *     call and processing times by the API when converting, validating and wrapping messages.
+ *     Methods are called on GRPC and application threads concurrently, so implementations must be
+ *     thread safe and should be fast and avoid allocations since they are called on every call.
+ * </p>
+ *
+ * @see InMemoryMetricsCollector
+ * @see org.lightningj.lnd.wrapper.MetricsClientInterceptor
+ * Created by Philip Vendil.
+ */
+public interface MetricsCollector {
+
+    /**
+     * Stages of local message processing that are timed.
+     */
+    enum ProcessingStage {
+        /**
+         * Conversion of a wrapped request message into its GRPC API object.
+         */
+        CONVERT,
+        /**
+         * Validation of a request or response message.
+         */
+        VALIDATE,
+        /**
+         * Wrapping of a received GRPC API object into a wrapped message.
+         */
+        WRAP
+    }
+
+    /**
+     * Records a completed GRPC call.
+     *
+     * @param methodName the full GRPC method name, for example lnrpc.Lightning/GetInfo.
+     * @param latencyNanos the time in nanoseconds from the call was started until it was closed.
+     * @param bytesSent the serialized size of all sent request messages.
+     * @param bytesReceived the serialized size of all received response messages.
+     * @param errorClass the simple class name of the StatusException the call status is mapped to
+     *                   by StatusExceptionWrapper (ClientSideException, CommunicationException or
+     *                   ServerSideException), null if the call was successful.
+     */
+    void recordCall(String methodName, long latencyNanos, long bytesSent, long bytesReceived, String errorClass);
+
+    /**
+     * Records the time of a local processing stage of a message.
+     *
+     * @param messageType the name of the message type, for example Invoice.
+     * @param stage the processing stage.
+     * @param nanos the processing time in nanoseconds.
+     */
+    void recordProcessing(String messageType, ProcessingStage stage, long nanos);
+}
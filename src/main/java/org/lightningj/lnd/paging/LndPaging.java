@@ -0,0 +1,176 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging;
+
+import com.google.protobuf.GeneratedMessageV3;
+import io.grpc.StatusRuntimeException;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.proto.LightningGrpc;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.StatusException;
+import org.lightningj.lnd.wrapper.StatusExceptionWrapper;
+import org.lightningj.lnd.wrapper.ValidationException;
+import org.lightningj.lnd.wrapper.ValidationResult;
+import org.lightningj.lnd.wrapper.WrapperFactory;
+
+import java.util.function.Supplier;
+
+/**
+ * Factory of PagedIterators for the paginated calls of the main LND API, iterating over
+ * all invoices, payments or forwarding events matching a request without hand written
+ * index offset loops.
+ * <p>
+ *     The iterators use the GRPC channel of the given API, which can be either a synchronous
+ *     or an asynchronous LND API, and validate each received page if validation is enabled
+ *     in the API. The index offset and the max number of records of the given request are
+ *     managed by the iterator, the index offset of the request is used as start offset and
+ *     all other fields are used as filter for every page.
+ * </p>
+ * <p>
+ *     The type of the returned records are org.lightningj.lnd.wrapper.message.Invoice,
+ *     Payment and ForwardingEvent respectively.
+ * </p>
+ * Example:
+ * <pre>
+ * try(PagedIterator&lt;Invoice&gt; invoices = LndPaging.listInvoices(synchronousLndAPI)){
+ *     while(invoices.hasNext()){
+ *         Invoice invoice = invoices.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class LndPaging {
+
+    /**
+     * Iterates over all invoices using default paging options.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param <T> org.lightningj.lnd.wrapper.message.Invoice
+     * @return a new paged iterator of invoices.
+     */
+    public static <T extends Message> PagedIterator<T> listInvoices(API api){
+        return listInvoices(api, LightningApi.ListInvoiceRequest.getDefaultInstance(), new PagingOptions());
+    }
+
+    /**
+     * Iterates over all invoices matching the request. If reversed is set in the request are pages
+     * fetched backwards from the index offset, the invoices within each page are still returned
+     * in ascending order.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param request the request with filter settings and start index offset.
+     * @param options the paging options to use.
+     * @param <T> org.lightningj.lnd.wrapper.message.Invoice
+     * @return a new paged iterator of invoices.
+     */
+    public static <T extends Message> PagedIterator<T> listInvoices(API api, LightningApi.ListInvoiceRequest request, PagingOptions options){
+        LightningGrpc.LightningBlockingStub stub = LightningGrpc.newBlockingStub(api.getCallChannel());
+        boolean reversed = request.getReversed();
+        PageFetcher<LightningApi.ListInvoiceResponse> fetcher = (indexOffset, maxRecords) ->
+                call(api, () -> stub.listInvoices(request.toBuilder()
+                        .setIndexOffset(indexOffset)
+                        .setNumMaxInvoices(maxRecords).build()));
+        return new PagedIterator<>(fetcher, LightningApi.ListInvoiceResponse::getInvoicesList,
+                response -> reversed ? response.getFirstIndexOffset() : response.getLastIndexOffset(),
+                request.getIndexOffset(), options);
+    }
+
+    /**
+     * Iterates over all completed payments using default paging options.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param <T> org.lightningj.lnd.wrapper.message.Payment
+     * @return a new paged iterator of payments.
+     */
+    public static <T extends Message> PagedIterator<T> listPayments(API api){
+        return listPayments(api, LightningApi.ListPaymentsRequest.getDefaultInstance(), new PagingOptions());
+    }
+
+    /**
+     * Iterates over all payments matching the request. If reversed is set in the request are pages
+     * fetched backwards from the index offset, the payments within each page are still returned
+     * in ascending order.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param request the request with filter settings and start index offset.
+     * @param options the paging options to use.
+     * @param <T> org.lightningj.lnd.wrapper.message.Payment
+     * @return a new paged iterator of payments.
+     */
+    public static <T extends Message> PagedIterator<T> listPayments(API api, LightningApi.ListPaymentsRequest request, PagingOptions options){
+        LightningGrpc.LightningBlockingStub stub = LightningGrpc.newBlockingStub(api.getCallChannel());
+        boolean reversed = request.getReversed();
+        PageFetcher<LightningApi.ListPaymentsResponse> fetcher = (indexOffset, maxRecords) ->
+                call(api, () -> stub.listPayments(request.toBuilder()
+                        .setIndexOffset(indexOffset)
+                        .setMaxPayments(maxRecords).build()));
+        return new PagedIterator<>(fetcher, LightningApi.ListPaymentsResponse::getPaymentsList,
+                response -> reversed ? response.getFirstIndexOffset() : response.getLastIndexOffset(),
+                request.getIndexOffset(), options);
+    }
+
+    /**
+     * Iterates over all forwarding events matching the request using default paging options.
+     * Observe that LND only returns events from the last 24 hours if no start time is set in the request.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param request the request with start and end time and start index offset.
+     * @param <T> org.lightningj.lnd.wrapper.message.ForwardingEvent
+     * @return a new paged iterator of forwarding events.
+     */
+    public static <T extends Message> PagedIterator<T> forwardingHistory(API api, LightningApi.ForwardingHistoryRequest request){
+        return forwardingHistory(api, request, new PagingOptions());
+    }
+
+    /**
+     * Iterates over all forwarding events matching the request.
+     * Observe that LND only returns events from the last 24 hours if no start time is set in the request.
+     *
+     * @param api the API to use the GRPC channel and validation setting of.
+     * @param request the request with start and end time and start index offset.
+     * @param options the paging options to use.
+     * @param <T> org.lightningj.lnd.wrapper.message.ForwardingEvent
+     * @return a new paged iterator of forwarding events.
+     */
+    public static <T extends Message> PagedIterator<T> forwardingHistory(API api, LightningApi.ForwardingHistoryRequest request, PagingOptions options){
+        LightningGrpc.LightningBlockingStub stub = LightningGrpc.newBlockingStub(api.getCallChannel());
+        PageFetcher<LightningApi.ForwardingHistoryResponse> fetcher = (indexOffset, maxRecords) ->
+                call(api, () -> stub.forwardingHistory(request.toBuilder()
+                        .setIndexOffset((int) indexOffset)
+                        .setNumMaxEvents(maxRecords).build()));
+        return new PagedIterator<>(fetcher, LightningApi.ForwardingHistoryResponse::getForwardingEventsList,
+                response -> Integer.toUnsignedLong(response.getLastOffsetIndex()),
+                Integer.toUnsignedLong(request.getIndexOffset()), options);
+    }
+
+    private static <P extends GeneratedMessageV3> P call(API api, Supplier<P> call) throws StatusException, ValidationException {
+        P response;
+        try {
+            response = call.get();
+        }catch(StatusRuntimeException e){
+            throw StatusExceptionWrapper.getInstance().wrap(e);
+        }
+        if(api.isPerformValidation()){
+            ValidationResult validationResult = WrapperFactory.getInstance().wrap(response).validate();
+            if(!validationResult.isValid()){
+                throw new ValidationException("Validation problems in message " + validationResult.getMessageType(), validationResult);
+            }
+        }
+        return response;
+    }
+}
@@ -0,0 +1,40 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging;
+
+import org.lightningj.lnd.wrapper.StatusException;
+import org.lightningj.lnd.wrapper.ValidationException;
+
+/**
+ * Function fetching one page of a paginated LND call, such as ListInvoices,
+ * ListPayments or ForwardingHistory, used by PagedIterator.
+ *
+ * @param <P> the type of GRPC response message containing one page of records.
+ *
+ * Created by Philip Vendil.
+ */
+@FunctionalInterface
+public interface PageFetcher<P> {
+
+    /**
+     * Fetches one page of records.
+     *
+     * @param indexOffset the index offset to start the page from.
+     * @param maxRecords the maximum number of records to return.
+     * @return the GRPC response message containing the page.
+     * @throws StatusException if problems occurred in underlying GRPC call.
+     * @throws ValidationException if validation problems found in request or response data.
+     */
+    P fetchPage(long indexOffset, int maxRecords) throws StatusException, ValidationException;
+}
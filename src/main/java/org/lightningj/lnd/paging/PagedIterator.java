@@ -0,0 +1,323 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging;
+
+import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.MessageLite;
+import io.grpc.Status;
+import org.lightningj.lnd.wrapper.ClientSideException;
+import org.lightningj.lnd.wrapper.CommunicationException;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.StatusException;
+import org.lightningj.lnd.wrapper.StreamingResponseException;
+import org.lightningj.lnd.wrapper.ValidationException;
+import org.lightningj.lnd.wrapper.WrapperFactory;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator over all records of a paginated LND call, such as ListInvoices, ListPayments
+ * or ForwardingHistory, fetching one page at a time.
+ * <p>
+ *     Only the current page and the next page are held in memory, so iterating over millions
+ *     of records runs in constant memory. If prefetch is enabled (the default) is the next page
+ *     requested in the background as soon as the current page is received, so the network call
+ *     overlaps with the processing of the current page.
+ * </p>
+ * <p>
+ *     The size of each page is adapted to the average serialized size of the records received
+ *     so far, keeping each page around the target page size in bytes. If a call fails with status
+ *     RESOURCE_EXHAUSTED, i.e. the response was larger than the maximum inbound message size, is
+ *     the page size halved and the call retried.
+ * </p>
+ * <p>
+ *     Records are wrapped one at a time when next() is called. Since the Iterator interface doesn't
+ *     allow checked exceptions, errors are thrown as a StreamingResponseException with the
+ *     StatusException or ValidationException as cause.
+ * </p>
+ * Example:
+ * <pre>
+ * try(PagedIterator&lt;ForwardingEvent&gt; events = LndPaging.forwardingHistory(synchronousLndAPI, request)){
+ *     events.stream().forEach(event -&gt; ...);
+ * }
+ * </pre>
+ *
+ * @param <T> the type of wrapped record.
+ * @see LndPaging
+ *
+ * Created by Philip Vendil.
+ */
+public class PagedIterator<T extends Message> implements Iterator<T>, Closeable {
+
+    protected static Logger log =
+            Logger.getLogger(PagedIterator.class.getName());
+
+    protected WrapperFactory wrapperFactory = WrapperFactory.getInstance();
+
+    private final PageLoader loader;
+    private final int maxPageSize;
+    private final int targetPageBytes;
+    private final boolean prefetch;
+    private final Executor executor;
+
+    private int pageSize;
+    private long nextIndexOffset;
+    private List<? extends GeneratedMessageV3> records = Collections.emptyList();
+    private int position = 0;
+    private boolean lastPage = false;
+    private int pageCount = 0;
+    private CompletableFuture<Page> pendingPage;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new paged iterator, if prefetch is enabled is the first page requested directly.
+     *
+     * @param fetcher the function fetching one page.
+     * @param recordsGetter function returning the records of a page.
+     * @param nextIndexOffsetGetter function returning the index offset used to fetch the page after given page.
+     * @param startIndexOffset the index offset of the first page.
+     * @param options the paging options to use.
+     * @param <P> the type of GRPC response message containing one page.
+     */
+    public <P extends MessageLite> PagedIterator(PageFetcher<P> fetcher, Function<P, List<? extends GeneratedMessageV3>> recordsGetter,
+                                                ToLongFunction<P> nextIndexOffsetGetter, long startIndexOffset, PagingOptions options){
+        this.loader = (indexOffset, size) -> {
+            P response = fetcher.fetchPage(indexOffset, size);
+            return new Page(recordsGetter.apply(response), indexOffset, nextIndexOffsetGetter.applyAsLong(response), size, response.getSerializedSize());
+        };
+        this.maxPageSize = options.getMaxPageSize();
+        this.targetPageBytes = options.getTargetPageBytes();
+        this.prefetch = options.isPrefetch();
+        this.executor = options.getExecutor() != null ? options.getExecutor() : DefaultExecutorHolder.executor;
+        this.pageSize = Math.min(options.getInitialPageSize(), maxPageSize);
+        this.nextIndexOffset = startIndexOffset;
+        if(prefetch){
+            pendingPage = fetchAsync(nextIndexOffset, pageSize);
+        }
+    }
+
+    /**
+     * Returns true if there are more records, blocks until the next page is received if
+     * all records of the current page have been read.
+     *
+     * @return true if there is another record, false if all pages have been read or the iterator is closed.
+     * @throws StreamingResponseException if problems occurred fetching the next page.
+     */
+    @Override
+    public boolean hasNext() {
+        while(!closed && position >= records.size()){
+            if(lastPage){
+                close();
+                return false;
+            }
+            Page page = awaitPage();
+            if(!closed){
+                nextPage(page);
+            }
+        }
+        return !closed;
+    }
+
+    /**
+     * Returns the next wrapped record, blocks until the next page is received if
+     * all records of the current page have been read.
+     *
+     * @return the next wrapped record.
+     * @throws NoSuchElementException if all pages have been read or the iterator is closed.
+     * @throws StreamingResponseException if problems occurred fetching the next page or
+     * wrapping the record.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        try {
+            return (T) wrapperFactory.wrap(records.get(position++));
+        }catch(ClientSideException e){
+            throw error(e);
+        }
+    }
+
+    /**
+     * Method to get a sequential Stream of the remaining records. Closing the stream closes
+     * this iterator.
+     *
+     * @return a sequential ordered Stream of wrapped records.
+     */
+    public Stream<T> stream(){
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Closes the iterator, releasing the current page and ignoring any page being prefetched.
+     * Safe to call multiple times.
+     */
+    @Override
+    public void close() {
+        if(!closed){
+            closed = true;
+            records = Collections.emptyList();
+            CompletableFuture<Page> f = pendingPage;
+            pendingPage = null;
+            if(f != null){
+                f.cancel(false);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return true if the iterator is closed, either explicitly, because all pages have been
+     * read or because an error occurred.
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+
+    /**
+     *
+     * @return the number of pages received so far.
+     */
+    public int getPageCount(){
+        return pageCount;
+    }
+
+    /**
+     *
+     * @return the number of records that will be requested in the next page.
+     */
+    public int getPageSize(){
+        return pageSize;
+    }
+
+    private Page awaitPage(){
+        CompletableFuture<Page> f = pendingPage;
+        pendingPage = null;
+        try {
+            if (f == null) {
+                return load(nextIndexOffset, pageSize);
+            }
+            return f.get();
+        }catch(StatusException | ValidationException e){
+            throw error(e);
+        }catch(ExecutionException e){
+            if(e.getCause() instanceof StatusException || e.getCause() instanceof ValidationException){
+                throw error((Exception) e.getCause());
+            }
+            throw error(new CommunicationException("Error fetching page: " + e.getCause().getMessage(), Status.INTERNAL, e.getCause()));
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw error(new CommunicationException("Interrupted while waiting for page.", Status.CANCELLED, e));
+        }
+    }
+
+    private void nextPage(Page page){
+        pageCount++;
+        records = page.records;
+        position = 0;
+        nextIndexOffset = page.nextIndexOffset;
+        lastPage = page.records.size() < page.requestedSize || page.nextIndexOffset == page.indexOffset;
+        if(!page.records.isEmpty()){
+            long averageRecordBytes = Math.max(1, page.serializedSize / page.records.size());
+            pageSize = (int) Math.max(1, Math.min(maxPageSize, targetPageBytes / averageRecordBytes));
+        }else{
+            pageSize = Math.min(pageSize, page.requestedSize);
+        }
+        if(log.isLoggable(Level.FINE)){
+            log.fine("Received page " + pageCount + " with " + page.records.size() + " records (" + page.serializedSize + " bytes), next page size: " + pageSize + ".");
+        }
+        if(!lastPage && prefetch){
+            pendingPage = fetchAsync(nextIndexOffset, pageSize);
+        }
+    }
+
+    private CompletableFuture<Page> fetchAsync(long indexOffset, int size){
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return load(indexOffset, size);
+            }catch(StatusException | ValidationException e){
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private Page load(long indexOffset, int size) throws StatusException, ValidationException {
+        int requestedSize = size;
+        while(true) {
+            try {
+                return loader.load(indexOffset, requestedSize);
+            } catch (StatusException e) {
+                if (e.getStatus() == null || e.getStatus().getCode() != Status.Code.RESOURCE_EXHAUSTED || requestedSize <= 1) {
+                    throw e;
+                }
+                requestedSize = requestedSize / 2;
+                log.fine("Page exceeded maximum message size, retrying with page size " + requestedSize + ".");
+            }
+        }
+    }
+
+    private StreamingResponseException error(Exception e){
+        close();
+        return new StreamingResponseException("Error fetching page: " + e.getMessage(), e);
+    }
+
+    private interface PageLoader {
+        Page load(long indexOffset, int size) throws StatusException, ValidationException;
+    }
+
+    private static class Page {
+        final List<? extends GeneratedMessageV3> records;
+        final long indexOffset;
+        final long nextIndexOffset;
+        final int requestedSize;
+        final long serializedSize;
+
+        Page(List<? extends GeneratedMessageV3> records, long indexOffset, long nextIndexOffset, int requestedSize, long serializedSize){
+            this.records = records;
+            this.indexOffset = indexOffset;
+            this.nextIndexOffset = nextIndexOffset;
+            this.requestedSize = requestedSize;
+            this.serializedSize = serializedSize;
+        }
+    }
+
+    private static class DefaultExecutorHolder {
+        static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "PagedIterator-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
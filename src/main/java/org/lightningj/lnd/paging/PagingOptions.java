@@ -0,0 +1,131 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Settings controlling how a PagedIterator fetches pages.
+ * <p>
+ *     The page size starts at the initial page size and is then adapted after each page
+ *     so the serialized size of a page stays around the target page size in bytes, but
+ *     never above the max page size in records. The target should be well below the maximum
+ *     inbound message size of the GRPC channel (4 MB by default in GRPC, 50 MB for channels
+ *     created by the LightningJ APIs).
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+public class PagingOptions {
+
+    public static final int DEFAULT_INITIAL_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGE_SIZE = 10000;
+    public static final int DEFAULT_TARGET_PAGE_BYTES = 1024 * 1024 * 2;
+
+    private int initialPageSize = DEFAULT_INITIAL_PAGE_SIZE;
+    private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+    private int targetPageBytes = DEFAULT_TARGET_PAGE_BYTES;
+    private boolean prefetch = true;
+    private Executor executor;
+
+    /**
+     *
+     * @return the number of records requested in the first page.
+     */
+    public int getInitialPageSize() {
+        return initialPageSize;
+    }
+
+    /**
+     *
+     * @param initialPageSize the number of records requested in the first page, default 100.
+     */
+    public void setInitialPageSize(int initialPageSize) {
+        if(initialPageSize < 1){
+            throw new IllegalArgumentException("Invalid initial page size: " + initialPageSize + ", must be 1 or greater.");
+        }
+        this.initialPageSize = initialPageSize;
+    }
+
+    /**
+     *
+     * @return the maximum number of records requested in one page.
+     */
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    /**
+     *
+     * @param maxPageSize the maximum number of records requested in one page, default 10000.
+     */
+    public void setMaxPageSize(int maxPageSize) {
+        if(maxPageSize < 1){
+            throw new IllegalArgumentException("Invalid max page size: " + maxPageSize + ", must be 1 or greater.");
+        }
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     *
+     * @return the targeted serialized size of one page in bytes.
+     */
+    public int getTargetPageBytes() {
+        return targetPageBytes;
+    }
+
+    /**
+     *
+     * @param targetPageBytes the targeted serialized size of one page in bytes, default 2 MB.
+     */
+    public void setTargetPageBytes(int targetPageBytes) {
+        if(targetPageBytes < 1){
+            throw new IllegalArgumentException("Invalid target page bytes: " + targetPageBytes + ", must be 1 or greater.");
+        }
+        this.targetPageBytes = targetPageBytes;
+    }
+
+    /**
+     *
+     * @return true if the next page is fetched in the background while the current page is consumed.
+     */
+    public boolean isPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     *
+     * @param prefetch true if the next page should be fetched in the background while the current
+     *                 page is consumed, default true.
+     */
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     *
+     * @return the executor used to prefetch pages, null if a shared daemon thread pool is used.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     *
+     * @param executor the executor used to prefetch pages, null to use a shared daemon thread pool.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+}
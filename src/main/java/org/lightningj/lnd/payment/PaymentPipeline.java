@@ -0,0 +1,678 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.payment;
+
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.paging.LndPaging;
+import org.lightningj.lnd.paging.PagedIterator;
+import org.lightningj.lnd.paging.PagingOptions;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.router.proto.RouterGrpc;
+import org.lightningj.lnd.router.proto.RouterOuterClass;
+import org.lightningj.lnd.util.HexUtils;
+import org.lightningj.lnd.wrapper.API;
+import org.lightningj.lnd.wrapper.CommunicationException;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.StatusException;
+import org.lightningj.lnd.wrapper.StatusExceptionWrapper;
+import org.lightningj.lnd.wrapper.StreamingResponseException;
+import org.lightningj.util.Bolt11Decoder;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pipeline sending queued payments with the Router SendPaymentV2 call, keeping at most a
+ * given number of payments in flight.
+ * <p>
+ *     Payments are identified by payment hash, taken from the request or decoded from the payment
+ *     request. Submitting a payment with the same hash as a queued or in flight payment returns
+ *     the future of the existing payment instead of sending it twice. By default are in flight
+ *     updates suppressed by LND, intermediate IN_FLIGHT updates still received are only kept as
+ *     the last update. Each returned future is completed with the final payment when it has
+ *     SUCCEEDED or FAILED, the status should be checked. If LND rejects the payment is the future
+ *     completed exceptionally with a StatusException.
+ * </p>
+ * <p>
+ *     If the connection is lost while payments are in flight, they are, after the reconnect delay,
+ *     tracked by one TrackPayments stream for all payments, and the payments completed while
+ *     disconnected are found with a ListPayments call. Payments never received by LND are sent again.
+ *     The payments keep their slots until completed. The pipeline is thread safe.
+ * </p>
+ * Example:
+ * <pre>
+ * PaymentPipeline pipeline = new PaymentPipeline(routerAPI, 20);
+ * pipeline.submit(sendPaymentRequest.getApiObject()).thenAccept(payment -&gt; ...);
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class PaymentPipeline implements Closeable {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 10;
+    public static final long DEFAULT_RECONNECT_DELAY = 5000;
+
+    // Margin in seconds subtracted from the submit time when listing payments, covering clock differences.
+    private static final long CREATION_DATE_MARGIN = 600;
+
+    protected static Logger log =
+            Logger.getLogger(PaymentPipeline.class.getName());
+
+    protected StatusExceptionWrapper statusExceptionWrapper = StatusExceptionWrapper.getInstance();
+
+    private enum State {
+        QUEUED,
+        SENDING,
+        TRACKING
+    }
+
+    private final API api;
+    private final int maxInFlight;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock
+    private final Map<String, PendingPayment> payments = new HashMap<>();
+    private final ArrayDeque<PendingPayment> queue = new ArrayDeque<>();
+    private int inFlightCount = 0;
+    private int trackingCount = 0;
+    private boolean resumeScheduled = false;
+    private long trackGeneration = 0;
+    private ClientCallStreamObserver<RouterOuterClass.TrackPaymentsRequest> trackSubscription;
+
+    private volatile boolean closed = false;
+    private volatile boolean suppressInflightUpdates = true;
+    private volatile long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private volatile PagingOptions pagingOptions = new PagingOptions();
+    private ScheduledExecutorService reconnectScheduler;
+
+    /**
+     * Creates a pipeline with default max number of payments in flight.
+     *
+     * @param api the API to use the GRPC channel of.
+     */
+    public PaymentPipeline(API api){
+        this(api, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     *
+     * @param api the API to use the GRPC channel of.
+     * @param maxInFlight the maximum number of payments sent but not completed.
+     */
+    public PaymentPipeline(API api, int maxInFlight){
+        if(maxInFlight < 1){
+            throw new IllegalArgumentException("Invalid max in flight: " + maxInFlight + ", must be 1 or greater.");
+        }
+        this.api = api;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Queues a payment, it is sent as soon as the number of payments in flight is below the max.
+     * Cancelling the returned future removes the payment if it is still queued.
+     *
+     * @param request the payment to send, either the payment hash or a payment request must be set.
+     * @return a future completed with the payment when it has succeeded or failed, or the future of
+     * an already queued or in flight payment with the same payment hash.
+     */
+    public CompletableFuture<LightningApi.Payment> submit(RouterOuterClass.SendPaymentRequest request){
+        String paymentHash;
+        try{
+            paymentHash = getPaymentHash(request);
+        }catch(IllegalArgumentException e){
+            CompletableFuture<LightningApi.Payment> retval = new CompletableFuture<>();
+            retval.completeExceptionally(e);
+            return retval;
+        }
+        PendingPayment payment;
+        List<PendingPayment> toSend;
+        lock.lock();
+        try{
+            if(closed){
+                CompletableFuture<LightningApi.Payment> retval = new CompletableFuture<>();
+                retval.completeExceptionally(new IllegalStateException("PaymentPipeline is closed."));
+                return retval;
+            }
+            PendingPayment existing = payments.get(paymentHash);
+            if(existing != null){
+                return existing.future;
+            }
+            payment = new PendingPayment(paymentHash, request);
+            payments.put(paymentHash, payment);
+            queue.add(payment);
+            toSend = pollSendable();
+        }finally {
+            lock.unlock();
+        }
+        payment.future.whenComplete((p, t) -> {
+            if(payment.future.isCancelled()){
+                removeQueued(payment);
+            }
+        });
+        send(toSend);
+        return payment.future;
+    }
+
+    /**
+     *
+     * @param paymentHash the payment hash of a queued or in flight payment.
+     * @return the last intermediate update received for the payment or null if none
+     * received or the payment isn't queued or in flight.
+     */
+    public LightningApi.Payment getLastUpdate(byte[] paymentHash){
+        lock.lock();
+        try{
+            PendingPayment payment = payments.get(HexUtils.toHex(paymentHash));
+            return payment != null ? payment.lastUpdate : null;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of payments waiting to be sent.
+     */
+    public int getQueuedCount(){
+        lock.lock();
+        try{
+            return queue.size();
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of payments sent but not completed, including tracked payments.
+     */
+    public int getInFlightCount(){
+        lock.lock();
+        try{
+            return inFlightCount;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the number of in flight payments tracked after the connection was lost.
+     */
+    public int getTrackedCount(){
+        lock.lock();
+        try{
+            return trackingCount;
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *
+     * @return the maximum number of payments sent but not completed.
+     */
+    public int getMaxInFlight(){
+        return maxInFlight;
+    }
+
+    /**
+     *
+     * @param suppressInflightUpdates true (default) if no_inflight_updates should be set in sent requests,
+     *                                so LND only sends the final update of each payment.
+     */
+    public void setSuppressInflightUpdates(boolean suppressInflightUpdates){
+        this.suppressInflightUpdates = suppressInflightUpdates;
+    }
+
+    /**
+     *
+     * @param reconnectDelay delay in milliseconds before tracking payments after the connection was lost,
+     *                       default 5000.
+     */
+    public void setReconnectDelay(long reconnectDelay){
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     *
+     * @param pagingOptions the paging options used when listing payments completed while disconnected.
+     */
+    public void setPagingOptions(PagingOptions pagingOptions){
+        this.pagingOptions = pagingOptions;
+    }
+
+    /**
+     * Cancels all streams and all pending futures. Payments already sent are not
+     * aborted by LND. The underlying API isn't closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<PendingPayment> pending;
+        lock.lock();
+        try{
+            pending = new ArrayList<>(payments.values());
+            payments.clear();
+            queue.clear();
+            inFlightCount = 0;
+            trackingCount = 0;
+            cancelTrackSubscription();
+        }finally {
+            lock.unlock();
+        }
+        for(PendingPayment payment : pending){
+            ClientCallStreamObserver<?> stream = payment.stream;
+            if(stream != null){
+                stream.cancel("Payment pipeline closed", null);
+            }
+            payment.future.cancel(false);
+        }
+        synchronized (this){
+            if(reconnectScheduler != null){
+                reconnectScheduler.shutdownNow();
+            }
+        }
+    }
+
+    static String getPaymentHash(RouterOuterClass.SendPaymentRequest request) throws IllegalArgumentException{
+        if(!request.getPaymentHash().isEmpty()){
+            return HexUtils.toHex(request.getPaymentHash());
+        }
+        if(!request.getPaymentRequest().isEmpty()){
+            return Bolt11Decoder.decodeToApi(request.getPaymentRequest()).getPaymentHash();
+        }
+        throw new IllegalArgumentException("Invalid SendPaymentRequest, payment hash or payment request must be set.");
+    }
+
+    void onPaymentUpdate(LightningApi.Payment update){
+        if(update.getStatus() != LightningApi.Payment.PaymentStatus.SUCCEEDED &&
+                update.getStatus() != LightningApi.Payment.PaymentStatus.FAILED){
+            // Intermediate updates are collapsed into the last update.
+            lock.lock();
+            try{
+                PendingPayment payment = payments.get(update.getPaymentHash());
+                if(payment != null){
+                    payment.lastUpdate = update;
+                }
+            }finally {
+                lock.unlock();
+            }
+            return;
+        }
+        PendingPayment payment;
+        List<PendingPayment> toSend;
+        lock.lock();
+        try{
+            payment = payments.remove(update.getPaymentHash());
+            if(payment == null){
+                return;
+            }
+            release(payment);
+            toSend = pollSendable();
+        }finally {
+            lock.unlock();
+        }
+        payment.future.complete(update);
+        send(toSend);
+    }
+
+    void onSendError(PendingPayment payment, boolean tracking, Throwable t){
+        if(closed){
+            return;
+        }
+        StatusException e = t instanceof Exception ? statusExceptionWrapper.wrap((Exception) t) :
+                statusExceptionWrapper.wrap(Status.fromThrowable(t).asRuntimeException());
+        if(e instanceof CommunicationException){
+            log.log(Level.WARNING, "Connection lost for payment " + payment.paymentHash + ", resuming tracking after reconnect: " + e.getMessage());
+            track(payment);
+            return;
+        }
+        if(!tracking && e.getStatus() != null && e.getStatus().getCode() == Status.Code.ALREADY_EXISTS){
+            // Payment with same hash already sent by LND, track its outcome instead.
+            log.fine("Payment " + payment.paymentHash + " already exists, tracking existing payment.");
+            RouterGrpc.newStub(api.getCallChannel()).trackPaymentV2(RouterOuterClass.TrackPaymentRequest.newBuilder()
+                    .setPaymentHash(payment.request.getPaymentHash().isEmpty() ?
+                            ByteString.copyFrom(decodeHex(payment.paymentHash)) : payment.request.getPaymentHash())
+                    .setNoInflightUpdates(true).build(), new PaymentObserver<>(payment, true));
+            return;
+        }
+        List<PendingPayment> toSend;
+        lock.lock();
+        try{
+            if(payments.get(payment.paymentHash) != payment){
+                return;
+            }
+            payments.remove(payment.paymentHash);
+            release(payment);
+            toSend = pollSendable();
+        }finally {
+            lock.unlock();
+        }
+        payment.future.completeExceptionally(e);
+        send(toSend);
+    }
+
+    // Should be called with lock held.
+    private void release(PendingPayment payment){
+        if(payment.state == State.QUEUED){
+            queue.remove(payment);
+            return;
+        }
+        inFlightCount--;
+        if(payment.state == State.TRACKING){
+            trackingCount--;
+            if(trackingCount == 0){
+                cancelTrackSubscription();
+            }
+        }
+    }
+
+    // Should be called with lock held, the returned payments should be sent by calling
+    // send() after the lock is released.
+    private List<PendingPayment> pollSendable(){
+        if(queue.isEmpty() || inFlightCount >= maxInFlight){
+            return Collections.emptyList();
+        }
+        List<PendingPayment> retval = new ArrayList<>();
+        while(inFlightCount < maxInFlight && !queue.isEmpty()){
+            PendingPayment payment = queue.poll();
+            payment.state = State.SENDING;
+            inFlightCount++;
+            retval.add(payment);
+        }
+        return retval;
+    }
+
+    private void send(List<PendingPayment> toSend){
+        for(PendingPayment payment : toSend){
+            if(closed){
+                return;
+            }
+            RouterOuterClass.SendPaymentRequest request = payment.request;
+            if(suppressInflightUpdates && !request.getNoInflightUpdates()){
+                request = request.toBuilder().setNoInflightUpdates(true).build();
+            }
+            RouterGrpc.newStub(api.getCallChannel()).sendPaymentV2(request, new PaymentObserver<>(payment, false));
+        }
+    }
+
+    private void removeQueued(PendingPayment payment){
+        lock.lock();
+        try{
+            if(payment.state == State.QUEUED && payments.get(payment.paymentHash) == payment){
+                payments.remove(payment.paymentHash);
+                queue.remove(payment);
+            }
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    private void track(PendingPayment payment){
+        boolean schedule;
+        lock.lock();
+        try{
+            if(payments.get(payment.paymentHash) != payment || payment.state != State.SENDING){
+                return;
+            }
+            payment.state = State.TRACKING;
+            payment.stream = null;
+            trackingCount++;
+            schedule = !resumeScheduled;
+            resumeScheduled = true;
+        }finally {
+            lock.unlock();
+        }
+        if(schedule){
+            scheduleResume();
+        }
+    }
+
+    private void scheduleResume(){
+        synchronized (this){
+            if(closed){
+                return;
+            }
+            if(reconnectScheduler == null){
+                reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "PaymentPipeline-reconnect");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            reconnectScheduler.schedule(this::resume, Math.max(reconnectDelay, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void resume(){
+        Set<String> tracked = new HashSet<>();
+        long earliestSubmitTime = Long.MAX_VALUE;
+        lock.lock();
+        try{
+            resumeScheduled = false;
+            if(closed || trackingCount == 0){
+                return;
+            }
+            for(PendingPayment payment : payments.values()){
+                if(payment.state == State.TRACKING){
+                    tracked.add(payment.paymentHash);
+                    earliestSubmitTime = Math.min(earliestSubmitTime, payment.submitTime);
+                }
+            }
+            if(trackSubscription == null){
+                // Subscribe before listing so no update is missed in between.
+                RouterGrpc.newStub(api.getCallChannel()).trackPayments(RouterOuterClass.TrackPaymentsRequest.newBuilder()
+                        .setNoInflightUpdates(true).build(), new TrackObserver(++trackGeneration));
+            }
+        }finally {
+            lock.unlock();
+        }
+        log.fine("Tracking " + tracked.size() + " payments after reconnect.");
+
+        LightningApi.ListPaymentsRequest request = LightningApi.ListPaymentsRequest.newBuilder()
+                .setIncludeIncomplete(true)
+                .setCreationDateStart(Math.max(0, earliestSubmitTime / 1000 - CREATION_DATE_MARGIN)).build();
+        try(PagedIterator<Message> iterator = LndPaging.listPayments(api, request, pagingOptions)){
+            while(iterator.hasNext() && !tracked.isEmpty()){
+                LightningApi.Payment payment = (LightningApi.Payment) iterator.next().getApiObject();
+                if(tracked.remove(payment.getPaymentHash())){
+                    // In flight payments are completed by the track subscription.
+                    onPaymentUpdate(payment);
+                }
+            }
+        }catch(StreamingResponseException e){
+            log.log(Level.WARNING, "Error listing payments when resuming tracking, retrying after reconnect delay: " + e.getMessage());
+            log.log(Level.FINE, "Stacktrace: ", e);
+            lock.lock();
+            try{
+                if(resumeScheduled){
+                    return;
+                }
+                resumeScheduled = true;
+            }finally {
+                lock.unlock();
+            }
+            scheduleResume();
+            return;
+        }
+        resend(tracked);
+    }
+
+    // Payments not known by LND were never received and are sent again.
+    private void resend(Set<String> paymentHashes){
+        if(paymentHashes.isEmpty()){
+            return;
+        }
+        List<PendingPayment> toSend;
+        lock.lock();
+        try{
+            for(String paymentHash : paymentHashes){
+                PendingPayment payment = payments.get(paymentHash);
+                if(payment != null && payment.state == State.TRACKING){
+                    release(payment);
+                    payment.state = State.QUEUED;
+                    queue.addFirst(payment);
+                }
+            }
+            toSend = pollSendable();
+        }finally {
+            lock.unlock();
+        }
+        send(toSend);
+    }
+
+    private void onTrackError(long generation, Throwable t){
+        boolean schedule;
+        lock.lock();
+        try{
+            if(generation != trackGeneration || closed){
+                return;
+            }
+            trackSubscription = null;
+            trackGeneration++;
+            schedule = trackingCount > 0 && !resumeScheduled;
+            if(schedule){
+                resumeScheduled = true;
+            }
+        }finally {
+            lock.unlock();
+        }
+        log.log(Level.WARNING, "Payment tracking subscription failed: " + t.getMessage());
+        log.log(Level.FINE, "Stacktrace: ", t);
+        if(schedule){
+            scheduleResume();
+        }
+    }
+
+    // Should be called with lock held.
+    private void cancelTrackSubscription(){
+        trackGeneration++;
+        if(trackSubscription != null){
+            trackSubscription.cancel("Payment tracking completed", null);
+            trackSubscription = null;
+        }
+    }
+
+    private static byte[] decodeHex(String hex){
+        byte[] retval = new byte[hex.length() / 2];
+        for(int i=0; i<retval.length; i++){
+            retval[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return retval;
+    }
+
+    private static class PendingPayment {
+        private final String paymentHash;
+        private final RouterOuterClass.SendPaymentRequest request;
+        private final CompletableFuture<LightningApi.Payment> future = new CompletableFuture<>();
+        private final long submitTime = System.currentTimeMillis();
+        // Guarded by lock
+        private State state = State.QUEUED;
+        private LightningApi.Payment lastUpdate;
+        private volatile ClientCallStreamObserver<?> stream;
+
+        PendingPayment(String paymentHash, RouterOuterClass.SendPaymentRequest request){
+            this.paymentHash = paymentHash;
+            this.request = request;
+        }
+    }
+
+    private class PaymentObserver<Q> implements ClientResponseObserver<Q, LightningApi.Payment> {
+
+        private final PendingPayment payment;
+        private final boolean tracking;
+
+        PaymentObserver(PendingPayment payment, boolean tracking){
+            this.payment = payment;
+            this.tracking = tracking;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Q> requestStream) {
+            payment.stream = requestStream;
+        }
+
+        @Override
+        public void onNext(LightningApi.Payment value) {
+            onPaymentUpdate(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            onSendError(payment, tracking, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            // Stream ended without final update, track the payment as after a lost connection.
+            if(!closed && !payment.future.isDone()){
+                track(payment);
+            }
+        }
+    }
+
+    private class TrackObserver implements ClientResponseObserver<RouterOuterClass.TrackPaymentsRequest, LightningApi.Payment> {
+
+        private final long observerGeneration;
+
+        TrackObserver(long observerGeneration){
+            this.observerGeneration = observerGeneration;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<RouterOuterClass.TrackPaymentsRequest> requestStream) {
+            lock.lock();
+            try{
+                if(observerGeneration == trackGeneration){
+                    trackSubscription = requestStream;
+                }
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void onNext(LightningApi.Payment value) {
+            onPaymentUpdate(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            onTrackError(observerGeneration, t);
+        }
+
+        @Override
+        public void onCompleted() {
+            onTrackError(observerGeneration, new IllegalStateException("Payment tracking subscription completed by server."));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Class containing utility methods for hex encoding of byte data such as payment hashes
+ * and preimages.
+ * <p>
+ *     Encoding of ByteString values reads the bytes directly from the ByteString without first
+ *     copying them to a byte array.
+ * </p>
+ * Created by Philip Vendil.
+ */
+public class HexUtils {
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Method to hex encode the given data.
+     *
+     * @param data the data to encode, might be null.
+     * @return lower case hex encoded data or null if data is null.
+     */
+    public static String toHex(byte[] data){
+        if(data == null){
+            return null;
+        }
+        char[] retval = new char[data.length * 2];
+        for(int i=0; i<data.length; i++){
+            retval[i * 2] = HEX_CHARS[(data[i] >> 4) & 0x0f];
+            retval[i * 2 + 1] = HEX_CHARS[data[i] & 0x0f];
+        }
+        return new String(retval);
+    }
+
+    /**
+     * Method to hex encode the given data without copying it.
+     *
+     * @param data the data to encode, might be null.
+     * @return lower case hex encoded data or null if data is null.
+     */
+    public static String toHex(ByteString data){
+        if(data == null){
+            return null;
+        }
+        int size = data.size();
+        char[] retval = new char[size * 2];
+        for(int i=0; i<size; i++){
+            byte b = data.byteAt(i);
+            retval[i * 2] = HEX_CHARS[(b >> 4) & 0x0f];
+            retval[i * 2 + 1] = HEX_CHARS[b & 0x0f];
+        }
+        return new String(retval);
+    }
+
+    /**
+     * Immutable pairing of a ByteString and its hex encoding, used by generated messages to
+     * cache the hex representation of a bytes field. The cached value is valid as long as
+     * the field still references the same ByteString instance, since ByteStrings are immutable.
+     */
+    public static final class CachedHex {
+
+        private final ByteString source;
+        private final String hex;
+
+        /**
+         * Creates a cached hex encoding of the given value.
+         *
+         * @param source the value to encode, might be null.
+         */
+        public CachedHex(ByteString source){
+            this.source = source;
+            this.hex = toHex(source);
+        }
+
+        /**
+         *
+         * @param value the current value of the field.
+         * @return true if this cache entry was created from the given ByteString instance.
+         */
+        public boolean isCacheOf(ByteString value){
+            return source == value;
+        }
+
+        /**
+         *
+         * @return the lower case hex encoded value.
+         */
+        public String getHex(){
+            return hex;
+        }
+    }
+}
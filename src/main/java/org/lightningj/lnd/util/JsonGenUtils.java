@@ -14,20 +14,22 @@
 package org.lightningj.lnd.util;
 
 import com.google.protobuf.*;
-import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.WrapperFactory;
 
 import javax.json.*;
 import javax.json.stream.JsonGenerator;
 import javax.json.stream.JsonGeneratorFactory;
 import java.io.StringWriter;
-import java.lang.reflect.Method;
-import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
 
 /**
  * Class containing utility methods for generating/parsing JSON code.
+ * <p>
+ *     The conversion of each message type is performed using a JSON plan compiled once per
+ *     message descriptor, containing a typed converter for each field.
+ * </p>
  *
  * Created by Philip Vendil.
  */
@@ -44,6 +46,14 @@ public class JsonGenUtils {
         jsonPrettyPrintGeneratorFactory = Json.createGeneratorFactory(jsonPrettyPrintProperties);
     }
 
+    /**
+     * Help method returning the shared generator factory.
+     * @param prettyPrint true if the generators should pretty print with indentation and newlines.
+     * @return the generator factory with related settings.
+     */
+    static JsonGeneratorFactory getGeneratorFactory(boolean prettyPrint){
+        return prettyPrint ? jsonPrettyPrintGeneratorFactory : jsonGeneratorFactory;
+    }
 
     /**
      * Help method to convert a json object to string representation.
@@ -90,69 +100,7 @@ public class JsonGenUtils {
      * @throws JsonException if internal problems occurred converting the json data to message.
      */
     public static void readSingleValue(JsonObject jsonObject, Message.Builder apiObjectBuilder, Descriptors.FieldDescriptor fieldDescriptor) throws JsonException {
-        switch (fieldDescriptor.getJavaType()){
-            case INT:
-                apiObjectBuilder.setField(fieldDescriptor,jsonObject.getJsonNumber(fieldDescriptor.getJsonName()).intValueExact());
-                break;
-            case LONG:
-                apiObjectBuilder.setField(fieldDescriptor,jsonObject.getJsonNumber(fieldDescriptor.getJsonName()).longValueExact());
-                break;
-            case FLOAT:
-                float floatVal;
-                Object fObject = jsonObject.get(fieldDescriptor.getJsonName());
-                if(fObject instanceof JsonString){
-                    String fStringValue = ((JsonString) fObject).getString();
-                    if(fStringValue.equalsIgnoreCase(INFINITE)){
-                        floatVal = Float.POSITIVE_INFINITY;
-                    }else if(fStringValue.equalsIgnoreCase(NAN)){
-                        floatVal = Float.NaN;
-                    }else{
-                        throw new JsonException("Invalid Json String value for float value, It cannot be: " + fStringValue);
-                    }
-                }else{
-                    floatVal = (float) jsonObject.getJsonNumber(fieldDescriptor.getJsonName()).doubleValue();
-                }
-                apiObjectBuilder.setField(fieldDescriptor,floatVal);
-                break;
-            case DOUBLE:
-                // Here Infinite and NaN
-                double doubleVal;
-                Object dObject = jsonObject.get(fieldDescriptor.getJsonName());
-                if(dObject instanceof JsonString){
-                    String dStringValue = ((JsonString) dObject).getString();
-                    if(dStringValue.equalsIgnoreCase(INFINITE)){
-                        doubleVal = Double.POSITIVE_INFINITY;
-                    }else if(dStringValue.equalsIgnoreCase(NAN)){
-                        doubleVal = Double.NaN;
-                    }else{
-                        throw new JsonException("Invalid Json String value for double value, It cannot be: " + dStringValue);
-                    }
-                }else{
-                    doubleVal = jsonObject.getJsonNumber(fieldDescriptor.getJsonName()).doubleValue();
-                }
-
-                apiObjectBuilder.setField(fieldDescriptor,doubleVal);
-                break;
-            case BOOLEAN:
-                apiObjectBuilder.setField(fieldDescriptor,jsonObject.getBoolean(fieldDescriptor.getJsonName()));
-                break;
-            case STRING:
-                apiObjectBuilder.setField(fieldDescriptor,jsonObject.getString(fieldDescriptor.getJsonName()));
-                break;
-            case ENUM:
-                String enumVal = jsonObject.getString(fieldDescriptor.getJsonName());
-                Descriptors.EnumValueDescriptor enumValueDescriptor = fieldDescriptor.getEnumType().findValueByName(enumVal);
-                apiObjectBuilder.setField(fieldDescriptor,enumValueDescriptor);
-                break;
-            case BYTE_STRING:
-                byte[] data = Base64.getDecoder().decode(jsonObject.getString(fieldDescriptor.getJsonName()));
-                apiObjectBuilder.setField(fieldDescriptor,ByteString.copyFrom(data));
-                break;
-            case MESSAGE:
-                JsonObject subJsonObject = jsonObject.getJsonObject(fieldDescriptor.getJsonName());
-                apiObjectBuilder.setField(fieldDescriptor,jsonToMessage(subJsonObject,fieldDescriptor.getMessageType()).build());
-                break;
-        }
+        JsonMessagePlan.getField(fieldDescriptor).readSingle(jsonObject, apiObjectBuilder);
     }
 
 
@@ -164,81 +112,39 @@ public class JsonGenUtils {
      * @param fieldDescriptor the field descriptor
      */
     public static void setSingleValue(JsonObjectBuilder jsonObjectBuilder, Message.Builder apiObjectBuilder, Descriptors.FieldDescriptor fieldDescriptor) {
-        Object fieldValue = apiObjectBuilder.getField(fieldDescriptor);
-        if(fieldValue != null){
-          switch (fieldDescriptor.getJavaType()){
-              case INT:
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),(int) fieldValue);
-                  break;
-              case LONG:
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),(long) fieldValue);
-                  break;
-              case FLOAT:
-                  if(((Float) fieldValue).isInfinite()){
-                      jsonObjectBuilder.add(fieldDescriptor.getJsonName(), INFINITE);
-                      break;
-                  }
-                  if(((Float) fieldValue).isNaN()){
-                      jsonObjectBuilder.add(fieldDescriptor.getJsonName(), NAN);
-                      break;
-                  }
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),(float) fieldValue);
-                  break;
-              case DOUBLE:
-                  if(((Double) fieldValue).isInfinite()){
-                      jsonObjectBuilder.add(fieldDescriptor.getJsonName(), INFINITE);
-                      break;
-                  }
-                  if(((Double) fieldValue).isNaN()){
-                      jsonObjectBuilder.add(fieldDescriptor.getJsonName(), NAN);
-                      break;
-                  }
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),(double) fieldValue);
-                  break;
-              case BOOLEAN:
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),(boolean) fieldValue);
-                  break;
-              case STRING:
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),(String) fieldValue);
-                  break;
-              case ENUM:
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),fieldValue.toString());
-                  break;
-              case BYTE_STRING:
-                  String encoded = Base64.getEncoder().encodeToString(((ByteString) fieldValue).toByteArray());
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),encoded);
-                  break;
-              case MESSAGE:
-                  GeneratedMessageV3 subMessage = (GeneratedMessageV3) fieldValue;
-                  jsonObjectBuilder.add(fieldDescriptor.getJsonName(),
-                          messageToJson(subMessage.toBuilder(),fieldDescriptor.getMessageType()));
-                  break;
-          }
-        }
+        JsonMessagePlan.getField(fieldDescriptor).addSingle(jsonObjectBuilder, apiObjectBuilder);
     }
 
     /**
-     * Method to convert a Proto Message to JSON.
+     * Method to convert a Proto Message Builder to JSON.
      *
      * @param apiObjectBuilder the proto message builder to convert.
      * @param messageDescriptor the descriptor of the message.
      * @return a new JsonObjectBuilder with all fields set.
      */
     public static JsonObjectBuilder messageToJson(Message.Builder apiObjectBuilder, Descriptors.Descriptor messageDescriptor){
-        JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
-        for(Descriptors.FieldDescriptor fieldDescriptor : messageDescriptor.getFields()){
-            if(fieldDescriptor.isMapField() || fieldDescriptor.isRepeated()){
-                setRepeatedValue(jsonObjectBuilder,apiObjectBuilder,fieldDescriptor);
-            }else{
-                setSingleValue(jsonObjectBuilder,apiObjectBuilder,fieldDescriptor);
-            }
-        }
-        return jsonObjectBuilder;
+        return messageToJson((MessageOrBuilder) apiObjectBuilder, messageDescriptor);
+    }
+
+    /**
+     * Method to convert a Proto Message to JSON.
+     *
+     * @param apiObjectBuilder the proto message or message builder to convert.
+     * @param messageDescriptor the descriptor of the message.
+     * @return a new JsonObjectBuilder with all fields set.
+     */
+    public static JsonObjectBuilder messageToJson(MessageOrBuilder apiObjectBuilder, Descriptors.Descriptor messageDescriptor){
+        return JsonMessagePlan.get(messageDescriptor).toJson(apiObjectBuilder);
     }
 
 
     /**
      * Method to convert a jsonObject to a Message Builder.
+     * <p>
+     *     The builder is created from the default instance of the generated GRPC class registered
+     *     for the descriptor in WrapperFactory. For descriptors of unknown messages is a DynamicMessage
+     *     builder returned.
+     * </p>
      *
      * @param jsonObject the json object to return.
      * @param messageDescriptor the descriptor of the message to convert.
@@ -246,17 +152,9 @@ public class JsonGenUtils {
      * @throws JsonException if internal problems occurred converting the json data to message.
      */
     public static Message.Builder jsonToMessage(JsonObject jsonObject, Descriptors.Descriptor messageDescriptor) throws JsonException {
-
-        GeneratedMessageV3 defaultInstance;
-        try {
-            Class<?> messageClass = LightningApi.class.getClassLoader().loadClass(LightningApi.class.getName() + "$" + messageDescriptor.getName());
-            Method m = messageClass.getMethod("getDefaultInstance");
-            defaultInstance = (GeneratedMessageV3) m.invoke(null);
-        }catch(Exception e){
-            throw new JsonException("Error creating a instance of class " + messageDescriptor.getName() +", message: " +e.getMessage(),e);
-        }
-
-        return jsonToMessage(jsonObject,defaultInstance.toBuilder(),messageDescriptor);
+        Message prototype = WrapperFactory.getInstance().getPrototype(messageDescriptor);
+        Message.Builder builder = prototype != null ? prototype.newBuilderForType() : DynamicMessage.newBuilder(messageDescriptor);
+        return jsonToMessage(jsonObject,builder,messageDescriptor);
     }
 
     /**
@@ -268,17 +166,7 @@ public class JsonGenUtils {
      * @throws JsonException if internal problems occurred converting the json data to message.
      */
     public static Message.Builder jsonToMessage(JsonObject jsonObject, Message.Builder builder, Descriptors.Descriptor messageDescriptor) throws JsonException {
-
-        for(Descriptors.FieldDescriptor fieldDescriptor : messageDescriptor.getFields()){
-            if(jsonObject.containsKey(fieldDescriptor.getJsonName())) {
-                if (fieldDescriptor.isMapField() || fieldDescriptor.isRepeated()) {
-                    readRepeatedValue(jsonObject.getJsonArray(fieldDescriptor.getJsonName()),builder,fieldDescriptor);
-                } else {
-                    readSingleValue(jsonObject, builder, fieldDescriptor);
-                }
-            }
-        }
-
+        JsonMessagePlan.get(messageDescriptor).fromJson(jsonObject, builder);
         return builder;
     }
 
@@ -290,49 +178,7 @@ public class JsonGenUtils {
      * @param fieldDescriptor the descriptor of the field.
      */
     public static void setRepeatedValue(JsonObjectBuilder jsonObjectBuilder, Message.Builder apiObjectBuilder, Descriptors.FieldDescriptor fieldDescriptor) {
-        JsonArrayBuilder jsonArrayBuilder = Json.createArrayBuilder();
-        int fieldCount = apiObjectBuilder.getRepeatedFieldCount(fieldDescriptor);
-        for(int i=0;i<fieldCount;i++){
-
-            switch (fieldDescriptor.getJavaType()){
-                case INT:
-                    jsonArrayBuilder.add((int) apiObjectBuilder.getRepeatedField(fieldDescriptor,i));
-                    break;
-                case LONG:
-                    jsonArrayBuilder.add((long) apiObjectBuilder.getRepeatedField(fieldDescriptor,i));
-                    break;
-                case FLOAT:
-                    jsonArrayBuilder.add((float) apiObjectBuilder.getRepeatedField(fieldDescriptor,i));
-                    break;
-                case DOUBLE:
-                    jsonArrayBuilder.add((double) apiObjectBuilder.getRepeatedField(fieldDescriptor,i));
-                    break;
-                case BOOLEAN:
-                    jsonArrayBuilder.add((boolean) apiObjectBuilder.getRepeatedField(fieldDescriptor,i));
-                    break;
-                case STRING:
-                    jsonArrayBuilder.add((String) apiObjectBuilder.getRepeatedField(fieldDescriptor,i));
-                    break;
-                case ENUM:
-                    jsonArrayBuilder.add(apiObjectBuilder.getRepeatedField(fieldDescriptor,i).toString());
-                    break;
-                case BYTE_STRING:
-                    String encoded = Base64.getEncoder().encodeToString(((ByteString) apiObjectBuilder.getRepeatedField(fieldDescriptor,i)).toByteArray());
-                    jsonArrayBuilder.add(encoded);
-                    break;
-                case MESSAGE:
-                    if(fieldDescriptor.isMapField()){
-                        MapEntry mapEntry = (MapEntry) apiObjectBuilder.getRepeatedField(fieldDescriptor,i);
-                        jsonArrayBuilder.add(messageToJson( mapEntry.toBuilder(), mapEntry.getDescriptorForType()));
-                    }else {
-                        jsonArrayBuilder.add(messageToJson(apiObjectBuilder.getRepeatedFieldBuilder(fieldDescriptor, i), fieldDescriptor.getMessageType()));
-                    }
-                    break;
-            }
-
-        }
-
-        jsonObjectBuilder.add(fieldDescriptor.getJsonName(),jsonArrayBuilder);
+        JsonMessagePlan.getField(fieldDescriptor).addRepeated(jsonObjectBuilder, apiObjectBuilder);
     }
 
     /**
@@ -344,51 +190,6 @@ public class JsonGenUtils {
      * @throws JsonException if internal problems occurred converting the json data to message.
      */
     public static void readRepeatedValue(JsonArray jsonArray, Message.Builder apiObjectBuilder, Descriptors.FieldDescriptor fieldDescriptor) throws JsonException {
-        for(int i=0;i<jsonArray.size();i++){
-            switch (fieldDescriptor.getJavaType()){
-                case INT:
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,jsonArray.getJsonNumber(i).intValueExact());
-                    break;
-                case LONG:
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,jsonArray.getJsonNumber(i).longValueExact());
-                    break;
-                case FLOAT:
-                    Float value = (float) jsonArray.getJsonNumber(i).doubleValue();
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,value);
-                    break;
-                case DOUBLE:
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,jsonArray.getJsonNumber(i).doubleValue());
-                    break;
-                case BOOLEAN:
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,jsonArray.getBoolean(i));
-                    break;
-                case STRING:
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,jsonArray.getString(i));
-                    break;
-                case ENUM:
-                    String enumVal = jsonArray.getString(i);
-                    Descriptors.EnumValueDescriptor enumValueDescriptor = fieldDescriptor.getEnumType().findValueByName(enumVal);
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,enumValueDescriptor);
-                    break;
-                case BYTE_STRING:
-                    byte[] data = Base64.getDecoder().decode(jsonArray.getString(i));
-                    apiObjectBuilder.addRepeatedField(fieldDescriptor,ByteString.copyFrom(data));
-                    break;
-                case MESSAGE:
-                    JsonObject subJsonObject = jsonArray.getJsonObject(i);
-                    if(fieldDescriptor.isMapField()){
-                        Descriptors.FieldDescriptor keyFieldDesc = fieldDescriptor.getMessageType().getFields().get(0);
-                        Descriptors.FieldDescriptor valueFieldDesc = fieldDescriptor.getMessageType().getFields().get(1);
-                        MapEntry mapEntry = MapEntry.newDefaultInstance(fieldDescriptor.getMessageType(),keyFieldDesc.getLiteType(),keyFieldDesc.getDefaultValue(), valueFieldDesc.getLiteType(), valueFieldDesc.getDefaultValue());
-                        MapEntry.Builder mapBuilder = mapEntry.toBuilder();
-                        readSingleValue(subJsonObject,mapBuilder,keyFieldDesc);
-                        readSingleValue(subJsonObject,mapBuilder,valueFieldDesc);
-                        apiObjectBuilder.addRepeatedField(fieldDescriptor, mapBuilder.build());
-                    }else {
-                        apiObjectBuilder.addRepeatedField(fieldDescriptor, jsonToMessage(subJsonObject, fieldDescriptor.getMessageType()).build());
-                    }
-                    break;
-            }
-        }
+        JsonMessagePlan.getField(fieldDescriptor).readRepeated(jsonArray, apiObjectBuilder);
     }
 }
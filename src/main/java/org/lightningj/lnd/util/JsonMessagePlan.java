@@ -0,0 +1,646 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+import com.google.protobuf.UnsafeByteOperations;
+
+import javax.json.*;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.lightningj.lnd.util.JsonGenUtils.INFINITE;
+import static org.lightningj.lnd.util.JsonGenUtils.NAN;
+
+/**
+ * Precompiled JSON conversion plan for one message type, containing a typed codec for each
+ * field so the field type only have to be examined once per descriptor instead of for every
+ * field of every converted message. Plans are cached per descriptor and used by both the
+ * JsonObject based conversion in JsonGenUtils and the streaming conversion in JsonStreamUtils.
+ * <p>
+ *     Nested messages and map entries are created with newBuilderForField() of the parent
+ *     builder, so no class lookup is needed and messages of all protocols are supported.
+ * </p>
+ * Created by Philip Vendil.
+ */
+final class JsonMessagePlan {
+
+    private static final Map<Descriptors.Descriptor, JsonMessagePlan> plans = new ConcurrentHashMap<>();
+
+    private static final JsonBuilderFactory jsonBuilderFactory = Json.createBuilderFactory(new HashMap<String, Object>(0));
+
+    private final Descriptors.Descriptor descriptor;
+    private final FieldPlan[] fields;
+    private final Map<String, FieldPlan> fieldsByJsonName;
+
+    private JsonMessagePlan(Descriptors.Descriptor descriptor){
+        this.descriptor = descriptor;
+        this.fields = new FieldPlan[descriptor.getFields().size()];
+        this.fieldsByJsonName = new HashMap<>(fields.length * 2);
+        for(Descriptors.FieldDescriptor fieldDescriptor : descriptor.getFields()){
+            FieldPlan fieldPlan = new FieldPlan(fieldDescriptor);
+            fields[fieldDescriptor.getIndex()] = fieldPlan;
+            fieldsByJsonName.put(fieldPlan.jsonName, fieldPlan);
+        }
+    }
+
+    /**
+     * Returns the plan for the given message type, compiling it the first time.
+     *
+     * @param descriptor the descriptor of the message type.
+     * @return the plan of the message type, never null.
+     */
+    static JsonMessagePlan get(Descriptors.Descriptor descriptor){
+        JsonMessagePlan retval = plans.get(descriptor);
+        if(retval == null){
+            // Plans are immutable, if two threads compiles the same plan is one of them discarded.
+            retval = new JsonMessagePlan(descriptor);
+            plans.put(descriptor, retval);
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the plan of a single field.
+     *
+     * @param fieldDescriptor the descriptor of the field.
+     * @return the plan of the field in the plan of its containing type.
+     */
+    static FieldPlan getField(Descriptors.FieldDescriptor fieldDescriptor){
+        return get(fieldDescriptor.getContainingType()).fields[fieldDescriptor.getIndex()];
+    }
+
+    /**
+     *
+     * @return a new JsonObjectBuilder from the cached builder factory.
+     */
+    static JsonObjectBuilder createObjectBuilder(){
+        return jsonBuilderFactory.createObjectBuilder();
+    }
+
+    /**
+     *
+     * @return a new JsonArrayBuilder from the cached builder factory.
+     */
+    static JsonArrayBuilder createArrayBuilder(){
+        return jsonBuilderFactory.createArrayBuilder();
+    }
+
+    /**
+     * Converts a message to a JsonObjectBuilder.
+     */
+    JsonObjectBuilder toJson(MessageOrBuilder message){
+        JsonObjectBuilder jsonObjectBuilder = createObjectBuilder();
+        for(FieldPlan field : fields){
+            if(field.repeated){
+                field.addRepeated(jsonObjectBuilder, message);
+            }else{
+                field.addSingle(jsonObjectBuilder, message);
+            }
+        }
+        return jsonObjectBuilder;
+    }
+
+    /**
+     * Reads all fields of the message present in the JSON object into the builder.
+     */
+    void fromJson(JsonObject jsonObject, Message.Builder builder){
+        for(FieldPlan field : fields){
+            JsonValue value = jsonObject.get(field.jsonName);
+            if(value != null){
+                if(field.repeated){
+                    if(value.getValueType() != JsonValue.ValueType.ARRAY){
+                        throw field.invalidValue(value.getValueType());
+                    }
+                    field.readRepeated((JsonArray) value, builder);
+                }else{
+                    field.readSingle(jsonObject, builder);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the fields of the message to the generator, the start and end of the JSON object
+     * is written by the caller.
+     */
+    void write(JsonGenerator generator, MessageOrBuilder message){
+        for(FieldPlan field : fields){
+            if(field.repeated){
+                field.writeRepeated(generator, message);
+            }else{
+                field.writeSingle(generator, message);
+            }
+        }
+    }
+
+    /**
+     * Reads fields from the parser into the builder until the end of the current JSON object.
+     * Should be called after the START_OBJECT event have been read. Fields not defined in the
+     * message are skipped.
+     */
+    void read(JsonParser parser, Message.Builder builder){
+        JsonParser.Event event;
+        while((event = parser.next()) != JsonParser.Event.END_OBJECT){
+            if(event != JsonParser.Event.KEY_NAME){
+                throw new JsonException("Invalid JSON data for message " + descriptor.getName() + ", expected a field name but got " + event + ".");
+            }
+            FieldPlan field = fieldsByJsonName.get(parser.getString());
+            event = parser.next();
+            if(field == null){
+                skipValue(parser, event);
+                continue;
+            }
+            if(field.repeated){
+                if(event != JsonParser.Event.START_ARRAY){
+                    throw field.invalidValue(event);
+                }
+                // Last occurrence of a field wins, as when reading into a JsonObject.
+                builder.clearField(field.descriptor);
+                field.readRepeated(parser, builder);
+            }else{
+                builder.setField(field.descriptor, field.codec.read(parser, event, builder, field.descriptor, true));
+            }
+        }
+    }
+
+    private static void skipValue(JsonParser parser, JsonParser.Event event){
+        if(event != JsonParser.Event.START_OBJECT && event != JsonParser.Event.START_ARRAY){
+            return;
+        }
+        int depth = 1;
+        while(depth > 0){
+            switch (parser.next()){
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Plan for one field, containing its precalculated JSON name and codec.
+     */
+    static final class FieldPlan {
+
+        final Descriptors.FieldDescriptor descriptor;
+        final String jsonName;
+        final boolean repeated;
+        final ValueCodec codec;
+
+        FieldPlan(Descriptors.FieldDescriptor descriptor){
+            this.descriptor = descriptor;
+            this.jsonName = descriptor.getJsonName();
+            this.repeated = descriptor.isMapField() || descriptor.isRepeated();
+            this.codec = getCodec(descriptor.getJavaType());
+        }
+
+        void addSingle(JsonObjectBuilder jsonObjectBuilder, MessageOrBuilder message){
+            codec.add(jsonObjectBuilder, jsonName, message.getField(descriptor));
+        }
+
+        void addRepeated(JsonObjectBuilder jsonObjectBuilder, MessageOrBuilder message){
+            JsonArrayBuilder jsonArrayBuilder = createArrayBuilder();
+            int fieldCount = message.getRepeatedFieldCount(descriptor);
+            for(int i=0;i<fieldCount;i++){
+                codec.add(jsonArrayBuilder, message.getRepeatedField(descriptor, i));
+            }
+            jsonObjectBuilder.add(jsonName, jsonArrayBuilder);
+        }
+
+        void readSingle(JsonObject jsonObject, Message.Builder builder){
+            JsonValue value = jsonObject.get(jsonName);
+            if(value == null){
+                throw new JsonException("Field " + jsonName + " not found in JSON object.");
+            }
+            builder.setField(descriptor, codec.read(value, builder, descriptor, true));
+        }
+
+        void readRepeated(JsonArray jsonArray, Message.Builder builder){
+            for(int i=0;i<jsonArray.size();i++){
+                builder.addRepeatedField(descriptor, codec.read(jsonArray.get(i), builder, descriptor, false));
+            }
+        }
+
+        void writeSingle(JsonGenerator generator, MessageOrBuilder message){
+            codec.write(generator, jsonName, message.getField(descriptor));
+        }
+
+        void writeRepeated(JsonGenerator generator, MessageOrBuilder message){
+            generator.writeStartArray(jsonName);
+            int fieldCount = message.getRepeatedFieldCount(descriptor);
+            for(int i=0;i<fieldCount;i++){
+                codec.write(generator, message.getRepeatedField(descriptor, i));
+            }
+            generator.writeEnd();
+        }
+
+        void readRepeated(JsonParser parser, Message.Builder builder){
+            JsonParser.Event event;
+            while((event = parser.next()) != JsonParser.Event.END_ARRAY){
+                builder.addRepeatedField(descriptor, codec.read(parser, event, builder, descriptor, false));
+            }
+        }
+
+        JsonException invalidValue(Object found){
+            return ValueCodec.invalidValue(descriptor, found);
+        }
+    }
+
+    private static ValueCodec getCodec(Descriptors.FieldDescriptor.JavaType javaType){
+        switch (javaType){
+            case INT:
+                return IntCodec.INSTANCE;
+            case LONG:
+                return LongCodec.INSTANCE;
+            case FLOAT:
+                return FloatCodec.INSTANCE;
+            case DOUBLE:
+                return DoubleCodec.INSTANCE;
+            case BOOLEAN:
+                return BooleanCodec.INSTANCE;
+            case STRING:
+                return StringCodec.INSTANCE;
+            case ENUM:
+                return EnumCodec.INSTANCE;
+            case BYTE_STRING:
+                return ByteStringCodec.INSTANCE;
+            case MESSAGE:
+                return MessageCodec.INSTANCE;
+        }
+        throw new IllegalArgumentException("Unsupported field type: " + javaType);
+    }
+
+    /**
+     * Converter of field values of one java type, between the value representation used by
+     * Message.getField() and setField() and JSON.
+     * <p>
+     *     The flag single is true for values of non repeated fields, only single float and double
+     *     values can be represented with the strings "inf" and "nan".
+     * </p>
+     */
+    abstract static class ValueCodec {
+
+        abstract void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value);
+
+        abstract void add(JsonArrayBuilder jsonArrayBuilder, Object value);
+
+        abstract Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single);
+
+        abstract void write(JsonGenerator generator, String name, Object value);
+
+        abstract void write(JsonGenerator generator, Object value);
+
+        abstract Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single);
+
+        static JsonNumber asNumber(JsonValue value, Descriptors.FieldDescriptor fieldDescriptor){
+            if(value.getValueType() != JsonValue.ValueType.NUMBER){
+                throw invalidValue(fieldDescriptor, value.getValueType());
+            }
+            return (JsonNumber) value;
+        }
+
+        static String asString(JsonValue value, Descriptors.FieldDescriptor fieldDescriptor){
+            if(value.getValueType() != JsonValue.ValueType.STRING){
+                throw invalidValue(fieldDescriptor, value.getValueType());
+            }
+            return ((JsonString) value).getString();
+        }
+
+        static void checkEvent(JsonParser.Event event, JsonParser.Event expected, Descriptors.FieldDescriptor fieldDescriptor){
+            if(event != expected){
+                throw invalidValue(fieldDescriptor, event);
+            }
+        }
+
+        static JsonException invalidValue(Descriptors.FieldDescriptor fieldDescriptor, Object found){
+            return new JsonException("Invalid JSON value " + found + " for field " + fieldDescriptor.getJsonName() + " of type " +
+                    (fieldDescriptor.isRepeated() ? "repeated " : "") + fieldDescriptor.getJavaType() + ".");
+        }
+    }
+
+    private static final class IntCodec extends ValueCodec {
+        static final IntCodec INSTANCE = new IntCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, (int) value); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add((int) value); }
+        void write(JsonGenerator generator, String name, Object value) { generator.write(name, (int) value); }
+        void write(JsonGenerator generator, Object value) { generator.write((int) value); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            return asNumber(value, fieldDescriptor).intValueExact();
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            checkEvent(event, JsonParser.Event.VALUE_NUMBER, fieldDescriptor);
+            return parser.getBigDecimal().intValueExact();
+        }
+    }
+
+    private static final class LongCodec extends ValueCodec {
+        static final LongCodec INSTANCE = new LongCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, (long) value); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add((long) value); }
+        void write(JsonGenerator generator, String name, Object value) { generator.write(name, (long) value); }
+        void write(JsonGenerator generator, Object value) { generator.write((long) value); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            return asNumber(value, fieldDescriptor).longValueExact();
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            checkEvent(event, JsonParser.Event.VALUE_NUMBER, fieldDescriptor);
+            return parser.getBigDecimal().longValueExact();
+        }
+    }
+
+    /**
+     * Float values are written as the double value they widen to, which is the representation
+     * JsonObjectBuilder.add(String, double) produces.
+     */
+    private static final class FloatCodec extends ValueCodec {
+        static final FloatCodec INSTANCE = new FloatCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) {
+            float floatValue = (Float) value;
+            if(Float.isInfinite(floatValue)){
+                jsonObjectBuilder.add(name, INFINITE);
+            }else if(Float.isNaN(floatValue)){
+                jsonObjectBuilder.add(name, NAN);
+            }else{
+                jsonObjectBuilder.add(name, (double) floatValue);
+            }
+        }
+
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add((double) (float) value); }
+
+        void write(JsonGenerator generator, String name, Object value) {
+            float floatValue = (Float) value;
+            if(Float.isInfinite(floatValue)){
+                generator.write(name, INFINITE);
+            }else if(Float.isNaN(floatValue)){
+                generator.write(name, NAN);
+            }else{
+                generator.write(name, BigDecimal.valueOf((double) floatValue));
+            }
+        }
+
+        void write(JsonGenerator generator, Object value) { generator.write(BigDecimal.valueOf((double) (float) value)); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(single && value.getValueType() == JsonValue.ValueType.STRING){
+                return parseSpecial(((JsonString) value).getString());
+            }
+            return (float) asNumber(value, fieldDescriptor).doubleValue();
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(single && event == JsonParser.Event.VALUE_STRING){
+                return parseSpecial(parser.getString());
+            }
+            checkEvent(event, JsonParser.Event.VALUE_NUMBER, fieldDescriptor);
+            return (float) parser.getBigDecimal().doubleValue();
+        }
+
+        private static float parseSpecial(String value){
+            if(value.equalsIgnoreCase(INFINITE)){
+                return Float.POSITIVE_INFINITY;
+            }
+            if(value.equalsIgnoreCase(NAN)){
+                return Float.NaN;
+            }
+            throw new JsonException("Invalid Json String value for float value, It cannot be: " + value);
+        }
+    }
+
+    private static final class DoubleCodec extends ValueCodec {
+        static final DoubleCodec INSTANCE = new DoubleCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) {
+            double doubleValue = (Double) value;
+            if(Double.isInfinite(doubleValue)){
+                jsonObjectBuilder.add(name, INFINITE);
+            }else if(Double.isNaN(doubleValue)){
+                jsonObjectBuilder.add(name, NAN);
+            }else{
+                jsonObjectBuilder.add(name, doubleValue);
+            }
+        }
+
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add((double) value); }
+
+        void write(JsonGenerator generator, String name, Object value) {
+            double doubleValue = (Double) value;
+            if(Double.isInfinite(doubleValue)){
+                generator.write(name, INFINITE);
+            }else if(Double.isNaN(doubleValue)){
+                generator.write(name, NAN);
+            }else{
+                generator.write(name, BigDecimal.valueOf(doubleValue));
+            }
+        }
+
+        void write(JsonGenerator generator, Object value) { generator.write(BigDecimal.valueOf((double) value)); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(single && value.getValueType() == JsonValue.ValueType.STRING){
+                return parseSpecial(((JsonString) value).getString());
+            }
+            return asNumber(value, fieldDescriptor).doubleValue();
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(single && event == JsonParser.Event.VALUE_STRING){
+                return parseSpecial(parser.getString());
+            }
+            checkEvent(event, JsonParser.Event.VALUE_NUMBER, fieldDescriptor);
+            return parser.getBigDecimal().doubleValue();
+        }
+
+        private static double parseSpecial(String value){
+            if(value.equalsIgnoreCase(INFINITE)){
+                return Double.POSITIVE_INFINITY;
+            }
+            if(value.equalsIgnoreCase(NAN)){
+                return Double.NaN;
+            }
+            throw new JsonException("Invalid Json String value for double value, It cannot be: " + value);
+        }
+    }
+
+    private static final class BooleanCodec extends ValueCodec {
+        static final BooleanCodec INSTANCE = new BooleanCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, (boolean) value); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add((boolean) value); }
+        void write(JsonGenerator generator, String name, Object value) { generator.write(name, (boolean) value); }
+        void write(JsonGenerator generator, Object value) { generator.write((boolean) value); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(value.getValueType() == JsonValue.ValueType.TRUE){
+                return true;
+            }
+            if(value.getValueType() == JsonValue.ValueType.FALSE){
+                return false;
+            }
+            throw invalidValue(fieldDescriptor, value.getValueType());
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(event == JsonParser.Event.VALUE_TRUE){
+                return true;
+            }
+            if(event == JsonParser.Event.VALUE_FALSE){
+                return false;
+            }
+            throw invalidValue(fieldDescriptor, event);
+        }
+    }
+
+    private static final class StringCodec extends ValueCodec {
+        static final StringCodec INSTANCE = new StringCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, (String) value); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add((String) value); }
+        void write(JsonGenerator generator, String name, Object value) { generator.write(name, (String) value); }
+        void write(JsonGenerator generator, Object value) { generator.write((String) value); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            return asString(value, fieldDescriptor);
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            checkEvent(event, JsonParser.Event.VALUE_STRING, fieldDescriptor);
+            return parser.getString();
+        }
+    }
+
+    private static final class EnumCodec extends ValueCodec {
+        static final EnumCodec INSTANCE = new EnumCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, value.toString()); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add(value.toString()); }
+        void write(JsonGenerator generator, String name, Object value) { generator.write(name, value.toString()); }
+        void write(JsonGenerator generator, Object value) { generator.write(value.toString()); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            return findValue(asString(value, fieldDescriptor), fieldDescriptor);
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            checkEvent(event, JsonParser.Event.VALUE_STRING, fieldDescriptor);
+            return findValue(parser.getString(), fieldDescriptor);
+        }
+
+        private static Descriptors.EnumValueDescriptor findValue(String name, Descriptors.FieldDescriptor fieldDescriptor){
+            Descriptors.EnumValueDescriptor retval = fieldDescriptor.getEnumType().findValueByName(name);
+            if(retval == null){
+                throw new JsonException("Invalid value " + name + " for enum field " + fieldDescriptor.getJsonName() + ".");
+            }
+            return retval;
+        }
+    }
+
+    private static final class ByteStringCodec extends ValueCodec {
+        static final ByteStringCodec INSTANCE = new ByteStringCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, encode((ByteString) value)); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add(encode((ByteString) value)); }
+        void write(JsonGenerator generator, String name, Object value) { generator.write(name, encode((ByteString) value)); }
+        void write(JsonGenerator generator, Object value) { generator.write(encode((ByteString) value)); }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            return decode(asString(value, fieldDescriptor));
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            checkEvent(event, JsonParser.Event.VALUE_STRING, fieldDescriptor);
+            return decode(parser.getString());
+        }
+
+        private static String encode(ByteString data){
+            // Encodes from a read-only view to avoid copying the data into a new array first.
+            ByteBuffer encoded = Base64.getEncoder().encode(data.asReadOnlyByteBuffer());
+            return new String(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining(), StandardCharsets.ISO_8859_1);
+        }
+
+        private static ByteString decode(String data){
+            // The decoded array isn't shared so it can be wrapped without copying.
+            return UnsafeByteOperations.unsafeWrap(Base64.getDecoder().decode(data));
+        }
+    }
+
+    /**
+     * Codec of nested messages and map entries, map entries are represented as JSON objects
+     * with a key and a value field.
+     */
+    private static final class MessageCodec extends ValueCodec {
+        static final MessageCodec INSTANCE = new MessageCodec();
+
+        void add(JsonObjectBuilder jsonObjectBuilder, String name, Object value) { jsonObjectBuilder.add(name, toJson((MessageOrBuilder) value)); }
+        void add(JsonArrayBuilder jsonArrayBuilder, Object value) { jsonArrayBuilder.add(toJson((MessageOrBuilder) value)); }
+
+        void write(JsonGenerator generator, String name, Object value) {
+            MessageOrBuilder message = (MessageOrBuilder) value;
+            generator.writeStartObject(name);
+            get(message.getDescriptorForType()).write(generator, message);
+            generator.writeEnd();
+        }
+
+        void write(JsonGenerator generator, Object value) {
+            MessageOrBuilder message = (MessageOrBuilder) value;
+            generator.writeStartObject();
+            get(message.getDescriptorForType()).write(generator, message);
+            generator.writeEnd();
+        }
+
+        Object read(JsonValue value, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            if(value.getValueType() != JsonValue.ValueType.OBJECT){
+                throw invalidValue(fieldDescriptor, value.getValueType());
+            }
+            Message.Builder builder = parent.newBuilderForField(fieldDescriptor);
+            get(fieldDescriptor.getMessageType()).fromJson((JsonObject) value, builder);
+            return builder.build();
+        }
+
+        Object read(JsonParser parser, JsonParser.Event event, Message.Builder parent, Descriptors.FieldDescriptor fieldDescriptor, boolean single) {
+            checkEvent(event, JsonParser.Event.START_OBJECT, fieldDescriptor);
+            Message.Builder builder = parent.newBuilderForField(fieldDescriptor);
+            get(fieldDescriptor.getMessageType()).read(parser, builder);
+            return builder.build();
+        }
+
+        private static JsonObjectBuilder toJson(MessageOrBuilder message){
+            return get(message.getDescriptorForType()).toJson(message);
+        }
+    }
+}
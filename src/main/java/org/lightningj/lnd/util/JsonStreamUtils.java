@@ -0,0 +1,159 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageOrBuilder;
+
+import javax.json.JsonException;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class containing utility methods for streaming conversion between proto messages and JSON.
+ * <p>
+ *     Messages are written directly to a JsonGenerator and read directly from a JsonParser using
+ *     the JSON plan of the message descriptor, without building an intermediate JsonObject tree. The
+ *     produced JSON is identical to the output of JsonGenUtils.messageToJson() serialized
+ *     with JsonGenUtils.jsonToString().
+ * </p>
+ * Created by Philip Vendil.
+ */
+public class JsonStreamUtils {
+
+    /**
+     * Method to write a message as JSON to the given writer. The writer is flushed but not closed.
+     *
+     * @param message the proto message or builder to convert.
+     * @param writer the writer to write the JSON data to.
+     * @param prettyPrint true if json data should be pretty printed with indentation and newlines.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public static void writeMessage(MessageOrBuilder message, Writer writer, boolean prettyPrint) throws JsonException{
+        JsonGenerator generator = JsonGenUtils.getGeneratorFactory(prettyPrint).createGenerator(new NonClosingWriter(writer));
+        writeMessage(generator, message);
+        generator.close();
+    }
+
+    /**
+     * Method to convert a message into a JSON string.
+     *
+     * @param message the proto message or builder to convert.
+     * @param prettyPrint true if json data should be pretty printed with indentation and newlines.
+     * @return string json data representation of message.
+     * @throws JsonException if problems occurred converting the message.
+     */
+    public static String toJsonString(MessageOrBuilder message, boolean prettyPrint) throws JsonException{
+        StringWriter sw = new StringWriter();
+        JsonGenerator generator = JsonGenUtils.getGeneratorFactory(prettyPrint).createGenerator(sw);
+        writeMessage(generator, message);
+        generator.close();
+        return sw.toString();
+    }
+
+    /**
+     * Method to write a message as UTF-8 encoded JSON to the given output stream. The stream is flushed but not closed.
+     *
+     * @param message the proto message or builder to convert.
+     * @param outputStream the stream to write the JSON data to.
+     * @param prettyPrint true if json data should be pretty printed with indentation and newlines.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public static void writeMessage(MessageOrBuilder message, OutputStream outputStream, boolean prettyPrint) throws JsonException{
+        writeMessage(message, new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), prettyPrint);
+    }
+
+    /**
+     * Method to write a message as a JSON object value in the current context of the generator,
+     * i.e. as top level value or as an element of an array.
+     *
+     * @param generator the generator to write to.
+     * @param message the proto message or builder to convert.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public static void writeMessage(JsonGenerator generator, MessageOrBuilder message) throws JsonException{
+        generator.writeStartObject();
+        JsonMessagePlan.get(message.getDescriptorForType()).write(generator, message);
+        generator.writeEnd();
+    }
+
+    /**
+     * Method to write a message as a named JSON object value in the current object context of the generator.
+     *
+     * @param generator the generator to write to.
+     * @param name the name of the JSON object.
+     * @param message the proto message or builder to convert.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public static void writeMessage(JsonGenerator generator, String name, MessageOrBuilder message) throws JsonException{
+        generator.writeStartObject(name);
+        JsonMessagePlan.get(message.getDescriptorForType()).write(generator, message);
+        generator.writeEnd();
+    }
+
+    /**
+     * Method to read a JSON object from the parser into the given message builder. The parser should
+     * be positioned before the START_OBJECT event. Fields not defined in the message are ignored.
+     *
+     * @param parser the parser to read the JSON object from.
+     * @param builder the builder to set the read fields into.
+     * @return the given builder.
+     * @throws JsonException if the JSON data doesn't match the message definition.
+     */
+    public static Message.Builder readMessage(JsonParser parser, Message.Builder builder) throws JsonException{
+        return readMessage(parser, parser.next(), builder);
+    }
+
+    /**
+     * Method to read a JSON object from the parser into the given message builder when the parser
+     * have just returned the START_OBJECT event, for example when reading messages from a JSON array.
+     * Fields not defined in the message are ignored.
+     *
+     * @param parser the parser to read the JSON object from.
+     * @param event the event last returned by the parser, should be START_OBJECT.
+     * @param builder the builder to set the read fields into.
+     * @return the given builder.
+     * @throws JsonException if the JSON data doesn't match the message definition.
+     */
+    public static Message.Builder readMessage(JsonParser parser, JsonParser.Event event, Message.Builder builder) throws JsonException{
+        if(event != JsonParser.Event.START_OBJECT){
+            throw new JsonException("Invalid JSON data for message " + builder.getDescriptorForType().getName() + ", expected an object but got " + event + ".");
+        }
+        JsonMessagePlan.get(builder.getDescriptorForType()).read(parser, builder);
+        return builder;
+    }
+
+    /**
+     * Writer that only flushes the underlying writer when closed, so closing a generator
+     * releases its resources without closing the stream supplied by the caller.
+     */
+    private static class NonClosingWriter extends FilterWriter {
+
+        NonClosingWriter(Writer writer){
+            super(writer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util;
+
+import com.google.protobuf.MessageLite;
+import org.lightningj.lnd.wrapper.Message;
+
+/**
+ * Class containing utility methods for logging of messages.
+ * <p>
+ *     Messages with a serialized size larger than the configured max full message size is logged
+ *     in summary form (message name, serialized size and number of entries in repeated fields) instead
+ *     of full JSON, to avoid the cost of converting large messages such as ChannelGraph to JSON.
+ * </p>
+ * <p>
+ *     The max full message size can be set with the system property
+ *     {@value #SETTING_MAX_FULL_MESSAGE_SIZE} or by calling setMaxFullMessageSize(). A negative
+ *     value means that messages are always logged in full.
+ * </p>
+ * Created by Philip Vendil.
+ */
+public class LogUtils {
+
+    public static final String SETTING_MAX_FULL_MESSAGE_SIZE = "org.lightningj.lnd.log.maxfullmessagesize";
+    public static final int DEFAULT_MAX_FULL_MESSAGE_SIZE = 64 * 1024;
+
+    private static volatile int maxFullMessageSize = Integer.getInteger(SETTING_MAX_FULL_MESSAGE_SIZE, DEFAULT_MAX_FULL_MESSAGE_SIZE);
+
+    /**
+     * Method to convert a message into a string suitable for logging. Should only be called if
+     * related log level is enabled.
+     *
+     * @param message the message to convert.
+     * @return the full JSON representation of the message if serialized size is less or equal to
+     * max full message size, otherwise a summary of the message.
+     */
+    public static String toLogString(Message message){
+        if(maxFullMessageSize < 0){
+            return message.toString();
+        }
+        Object apiObject = message.getApiObject();
+        if(apiObject instanceof MessageLite && ((MessageLite) apiObject).getSerializedSize() > maxFullMessageSize){
+            return message.toSummaryString();
+        }
+        return message.toString();
+    }
+
+    /**
+     *
+     * @return the max serialized size in bytes of messages logged in full JSON format, negative
+     * if all messages are logged in full.
+     */
+    public static int getMaxFullMessageSize() {
+        return maxFullMessageSize;
+    }
+
+    /**
+     *
+     * @param maxFullMessageSize the max serialized size in bytes of messages logged in full JSON format,
+     *                           larger messages are logged in summary form. Use a negative value to always
+     *                           log messages in full.
+     */
+    public static void setMaxFullMessageSize(int maxFullMessageSize) {
+        LogUtils.maxFullMessageSize = maxFullMessageSize;
+    }
+}
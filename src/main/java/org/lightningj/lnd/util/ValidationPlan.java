@@ -0,0 +1,129 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.MessageLiteOrBuilder;
+import com.google.protobuf.MessageOrBuilder;
+import org.lightningj.lnd.wrapper.ValidationProblems;
+import org.lightningj.lnd.wrapper.ValidationResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precompiled validation plan for one message type, containing only the fields that
+ * can fail validation, i.e. required fields, which are checked for presence. Plans are cached per descriptor so the
+ * field descriptors only have to be examined once per message type.
+ * <p>
+ *     Message types without constraints, which currently is all LND messages, return
+ *     a shared immutable valid result without examining the message.
+ * </p>
+ * Created by Philip Vendil.
+ */
+final class ValidationPlan {
+
+    private static final Map<Descriptors.Descriptor, ValidationPlan> plans = new ConcurrentHashMap<>();
+
+    private final Descriptors.Descriptor descriptor;
+    private final Descriptors.FieldDescriptor[] requiredFields;
+    private final ValidationResult validResult;
+
+    private ValidationPlan(Descriptors.Descriptor descriptor){
+        this.descriptor = descriptor;
+        List<Descriptors.FieldDescriptor> required = new ArrayList<>();
+        for(Descriptors.FieldDescriptor fieldDescriptor : descriptor.getFields()){
+            if(fieldDescriptor.isRequired()){
+                required.add(fieldDescriptor);
+            }
+        }
+        this.requiredFields = required.toArray(new Descriptors.FieldDescriptor[0]);
+        this.validResult = ValidationResult.createValid(descriptor.getName());
+    }
+
+    /**
+     * Returns the plan for the given message type, compiling it the first time.
+     *
+     * @param descriptor the descriptor of the message type.
+     * @return the plan of the message type, never null.
+     */
+    static ValidationPlan get(Descriptors.Descriptor descriptor){
+        ValidationPlan retval = plans.get(descriptor);
+        if(retval == null){
+            // Plans are immutable, if two threads compiles the same plan is one of them discarded.
+            retval = new ValidationPlan(descriptor);
+            plans.put(descriptor, retval);
+        }
+        return retval;
+    }
+
+    /**
+     *
+     * @return true if the message type has fields that can fail validation.
+     */
+    boolean hasConstraints(){
+        return requiredFields.length > 0;
+    }
+
+    /**
+     * Validates the required fields of a message and required fields of
+     * required sub messages.
+     *
+     * @param messageOrBuilder the message or builder to validate.
+     * @return the shared immutable valid result if no problems was found, otherwise a new
+     * result containing all found validation problems.
+     */
+    ValidationResult validate(MessageLiteOrBuilder messageOrBuilder){
+        if(requiredFields.length == 0){
+            return validResult;
+        }
+        if(!(messageOrBuilder instanceof MessageOrBuilder)){
+            return validResult;
+        }
+        MessageOrBuilder message = (MessageOrBuilder) messageOrBuilder;
+        ValidationResult retval = null;
+        for(Descriptors.FieldDescriptor fieldDescriptor : requiredFields){
+            // Required fields are never repeated and always have presence.
+            if(!message.hasField(fieldDescriptor)){
+                retval = initResult(retval);
+                retval.getMessageErrors().add(new ValidationProblems(descriptor.getName(),fieldDescriptor.getName(),"lightningj.validation.fieldisrequired", new Object[]{fieldDescriptor.getName()},"Field " + fieldDescriptor.getName() + " is required."));
+                continue;
+            }
+
+            if(fieldDescriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE){
+                ValidationPlan subPlan = get(fieldDescriptor.getMessageType());
+                if(subPlan.hasConstraints()){
+                    retval = addSubMessageResult(retval, subPlan.validate((Message) message.getField(fieldDescriptor)));
+                }
+            }
+        }
+        return retval != null ? retval : validResult;
+    }
+
+    private ValidationResult addSubMessageResult(ValidationResult retval, ValidationResult subMessageResult){
+        if(subMessageResult.isValid()){
+            return retval;
+        }
+        retval = initResult(retval);
+        retval.getSubMessageResults().add(subMessageResult);
+        return retval;
+    }
+
+    private ValidationResult initResult(ValidationResult retval){
+        return retval != null ? retval : new ValidationResult(descriptor.getName());
+    }
+}
@@ -14,13 +14,9 @@
 package org.lightningj.lnd.util;
 
 import com.google.protobuf.Descriptors;
-import com.google.protobuf.Message;
 import com.google.protobuf.MessageLiteOrBuilder;
-import org.lightningj.lnd.wrapper.ValidationProblems;
 import org.lightningj.lnd.wrapper.ValidationResult;
 
-import java.util.List;
-
 /**
  * Helper class with methods to perform validation of Message objects.
  *
@@ -32,45 +28,32 @@ public class ValidationUtils {
     /**
      * Method to validate a message and generate a validation result.
      * <p>
+     *     The fields that can fail validation are determined once per message type. For message
+     *     types without any constraints is a shared immutable valid result returned without
+     *     examining the message.
+     * </p>
+     * <p>
      * <b>This method hasn't been tested properly since there currently are no validation requirements
      * in the proto specification.</b>
      * </p>
      * @param messageOrBuilder the message or builder to validate.
      * @param messageDescriptor the related message descriptor.
-     * @return a ValidationResult containing all found validation errors.
+     * @return a ValidationResult containing all found validation errors. Valid results are
+     * shared and immutable.
      */
     public static ValidationResult validateMessage(MessageLiteOrBuilder messageOrBuilder, Descriptors.Descriptor messageDescriptor){
-        ValidationResult retval = new ValidationResult(messageDescriptor.getName());
-        for(Descriptors.FieldDescriptor fieldDescriptor : messageDescriptor.getFields()){
-            if(fieldDescriptor.isRequired()){
-                Object field=null;
-                if(messageOrBuilder instanceof Message.Builder){
-                    field = ((Message.Builder) messageOrBuilder).getField(fieldDescriptor);
-                }
-                if(messageOrBuilder instanceof Message){
-                    field = ((Message) messageOrBuilder).getField(fieldDescriptor);
-                }
-               if(field == null){
-                   ValidationProblems ve = new ValidationProblems(messageDescriptor.getName(),fieldDescriptor.getName(),"lightningj.validation.fieldisrequired", new Object[]{fieldDescriptor.getName()},"Field " + fieldDescriptor.getName() + " is required.");
-                   retval.getMessageErrors().add(ve);
-               }else {
-                   if (fieldDescriptor.isRepeated() && ((List) field).size() == 0){
-                       ValidationProblems ve = new ValidationProblems(messageDescriptor.getName(),fieldDescriptor.getName(),"lightningj.validation.fieldisrequired", new Object[]{fieldDescriptor.getName()},"Field " + fieldDescriptor.getName() + " is required.");
-                       retval.getMessageErrors().add(ve);
-                   }
-               }
-
-               if(fieldDescriptor.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE){
-                   ValidationResult subMessageResult = validateMessage((Message) field, fieldDescriptor.getMessageType());
-                   if(!subMessageResult.isValid()){
-                       retval.getSubMessageResults().add(subMessageResult);
-                   }
-               }
-            }
-        }
-        return retval;
+        return ValidationPlan.get(messageDescriptor).validate(messageOrBuilder);
     }
 
-
+    /**
+     * Method to check if a message type has any fields that could fail validation,
+     * if not can validation of the message type be skipped entirely.
+     *
+     * @param messageDescriptor the related message descriptor.
+     * @return true if messages of the given type could fail validation.
+     */
+    public static boolean hasConstraints(Descriptors.Descriptor messageDescriptor){
+        return ValidationPlan.get(messageDescriptor).hasConstraints();
+    }
 
 }
@@ -13,12 +13,16 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper;
 
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
 import io.grpc.ManagedChannel;
 import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts;
 import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslContextBuilder;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslProvider;
+import org.lightningj.lnd.metrics.MetricsCollector;
+import org.lightningj.lnd.util.LogUtils;
 
 import javax.net.ssl.SSLException;
 import java.io.File;
@@ -44,6 +48,9 @@ abstract public class API {
     protected boolean performValidation=true;
     protected ManagedChannel channel;
 
+    protected volatile MetricsCollector metricsCollector;
+    private volatile Channel callChannel;
+
 
     /**
      * Minimal constructor for setting up a connection with LND Application.
@@ -99,13 +106,64 @@ abstract public class API {
      */
     protected void validate(Message message) throws ValidationException{
         if(performValidation){
+            MetricsCollector collector = metricsCollector;
+            long startTime = collector != null ? System.nanoTime() : 0;
             ValidationResult validationResult = message.validate();
+            if(collector != null){
+                collector.recordProcessing(message.getMessageName(), MetricsCollector.ProcessingStage.VALIDATE, System.nanoTime() - startTime);
+            }
             if(!validationResult.isValid()){
                 throw new ValidationException("Validation problems in message " + validationResult.getMessageType(),validationResult);
             }
         }
     }
 
+    /**
+     *
+     * @return the underlying GRPC managed channel, can be used to create other APIs or low
+     * level GRPC stubs sharing the same connection.
+     */
+    public ManagedChannel getChannel(){
+        return channel;
+    }
+
+    /**
+     * Sets the collector of client side metrics. All calls made by this API are measured by a
+     * MetricsClientInterceptor and the time to convert, validate and wrap messages is recorded.
+     * <p>
+     *     Alternatively can a MetricsClientInterceptor be added to a custom managed channel to only
+     *     collect call metrics.
+     * </p>
+     *
+     * @param metricsCollector the collector to report metrics to, null to disable metrics.
+     * @see org.lightningj.lnd.metrics.InMemoryMetricsCollector
+     */
+    public void setMetricsCollector(MetricsCollector metricsCollector){
+        this.callChannel = metricsCollector != null ? ClientInterceptors.intercept(channel, new MetricsClientInterceptor(metricsCollector)) : null;
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     *
+     * @return the collector of client side metrics, null if metrics isn't collected.
+     */
+    public MetricsCollector getMetricsCollector(){
+        return metricsCollector;
+    }
+
+    /**
+     * Returns the channel GRPC stubs should use for calls. Components creating their own low
+     * level GRPC stubs from an API should use this channel instead of getChannel() for their
+     * calls to be included in the collected metrics.
+     *
+     * @return the channel GRPC stubs should use for calls, the managed channel with
+     * metrics interceptor if metrics is collected.
+     */
+    public Channel getCallChannel(){
+        Channel retval = callChannel;
+        return retval != null ? retval : channel;
+    }
+
     /**
      * Method to close underlying channel and free resources.
      *
@@ -139,10 +197,18 @@ abstract public class API {
      * problems found, if validation is used.
      */
     protected Object processRequest(Message requestMessage) throws ValidationException{
-        log.fine("Sending request message: " + requestMessage.toString());
-        // TODO add tracetimes
+        if(log.isLoggable(Level.FINE)) {
+            log.fine("Sending request message: " + LogUtils.toLogString(requestMessage));
+        }
         validate(requestMessage);
-        return requestMessage.getApiObject();
+        MetricsCollector collector = metricsCollector;
+        if(collector == null){
+            return requestMessage.getApiObject();
+        }
+        long startTime = System.nanoTime();
+        Object apiObject = requestMessage.getApiObject();
+        collector.recordProcessing(requestMessage.getMessageName(), MetricsCollector.ProcessingStage.CONVERT, System.nanoTime() - startTime);
+        return apiObject;
     }
 
     /**
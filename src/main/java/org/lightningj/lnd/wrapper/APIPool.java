@@ -0,0 +1,400 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.stateservice.proto.StateGrpc;
+import org.lightningj.lnd.stateservice.proto.Stateservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of API instances, one per GRPC channel, where the channels can be connected to
+ * the same or different LND nodes. Each call is sent to one of the pool members selected
+ * by the load balancing strategy, spreading read heavy traffic over several nodes.
+ * <p>
+ *     The pool is generic over the API type so it can be used with any of the generated
+ *     synchronous or asynchronous API classes, created from a channel using the given factory,
+ *     for example the SynchronousLndAPI(ManagedChannel) constructor.
+ * </p>
+ * <p>
+ *     When started, the wallet state of each member is monitored using the StateService
+ *     SubscribeState call and members not in state RPC_ACTIVE or SERVER_ACTIVE are skipped.
+ *     Members are assumed to be available until a state have been received. If the state
+ *     subscription fails is the member marked as unavailable and the subscription is retried
+ *     after the reconnect delay. Nodes not supporting the StateService are always considered available.
+ * </p>
+ * Example:
+ * <pre>
+ * APIPool&lt;SynchronousLndAPI&gt; pool = new APIPool&lt;&gt;(channels, SynchronousLndAPI::new);
+ * pool.start();
+ * GetInfoResponse info = pool.execute(api -&gt; api.getInfo());
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class APIPool<T extends API> {
+
+    /**
+     * Strategy used to select the pool member handling a call.
+     */
+    public enum LoadBalancingStrategy {
+        /**
+         * Select the available member with fewest started but not yet completed calls.
+         */
+        LEAST_OUTSTANDING_REQUESTS,
+        /**
+         * Select available members in turn.
+         */
+        ROUND_ROBIN
+    }
+
+    /**
+     * Call performed on the API of the selected pool member.
+     *
+     * @param <T> the type of API.
+     * @param <R> the type of result.
+     */
+    @FunctionalInterface
+    public interface APICall<T, R> {
+        R call(T api) throws StatusException, ValidationException;
+    }
+
+    public static final long DEFAULT_RECONNECT_DELAY = 5000;
+
+    protected static Logger log =
+            Logger.getLogger(APIPool.class.getName());
+
+    private final List<Member<T>> members;
+    private final LoadBalancingStrategy strategy;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private volatile long reconnectDelay = DEFAULT_RECONNECT_DELAY;
+    private volatile boolean closed = false;
+    private ScheduledExecutorService reconnectScheduler;
+
+    /**
+     * Creates a pool using the least outstanding requests strategy.
+     *
+     * @param channels the GRPC channels to the LND nodes, at least one.
+     * @param apiFactory factory creating an API using the given channel.
+     */
+    public APIPool(List<ManagedChannel> channels, Function<ManagedChannel, T> apiFactory){
+        this(channels, apiFactory, LoadBalancingStrategy.LEAST_OUTSTANDING_REQUESTS);
+    }
+
+    /**
+     * Creates a pool using the given load balancing strategy.
+     *
+     * @param channels the GRPC channels to the LND nodes, at least one. Several channels to the
+     *                 same node can be used to spread load over several connections.
+     * @param apiFactory factory creating an API using the given channel.
+     * @param strategy the strategy used to select the member handling each call.
+     */
+    public APIPool(List<ManagedChannel> channels, Function<ManagedChannel, T> apiFactory, LoadBalancingStrategy strategy){
+        if(channels == null || channels.isEmpty()){
+            throw new IllegalArgumentException("APIPool requires at least one channel.");
+        }
+        this.strategy = strategy;
+        List<Member<T>> memberList = new ArrayList<>(channels.size());
+        for(ManagedChannel channel : channels){
+            CallCountingChannel countingChannel = new CallCountingChannel(channel);
+            memberList.add(new Member<>(apiFactory.apply(countingChannel), countingChannel));
+        }
+        this.members = Collections.unmodifiableList(memberList);
+    }
+
+    /**
+     * Starts monitoring the wallet state of all members using the StateService.
+     * Without calling start are all members considered available.
+     */
+    public void start(){
+        if(closed){
+            throw new IllegalStateException("APIPool is closed.");
+        }
+        for(Member<T> member : members){
+            subscribeState(member);
+        }
+    }
+
+    /**
+     * Selects the API of an available pool member according to the load balancing strategy.
+     * Use this method for asynchronous and streaming calls, the number of outstanding requests
+     * is tracked until the call is completed.
+     *
+     * @return the API of the selected member.
+     * @throws CommunicationException with status UNAVAILABLE if no member is available.
+     */
+    public T getAPI() throws CommunicationException{
+        return select().getAPI();
+    }
+
+    /**
+     * Performs a call on the API of an available pool member.
+     *
+     * @param call the call to perform, typically a lambda calling one API method.
+     * @param <R> the type of result.
+     * @return the result of the call.
+     * @throws StatusException if no member is available or problems occurred in underlying GRPC call.
+     * Can be of one of three sub exceptions
+     * <li>ClientSideException: if problems was found in the request data, such as invalid or unexpected data.
+     * <li>ServerSideException: if server side problems was detected when processing the request.
+     * <li>CommunicationException: if communication related problems occurred during the call or no member is available.
+     * @throws ValidationException exception containing a validation report with all validation
+     * problems found, if validation is used.
+     */
+    public <R> R execute(APICall<T, R> call) throws StatusException, ValidationException{
+        return call.call(getAPI());
+    }
+
+    /**
+     *
+     * @return all members of the pool in the order of the given channels.
+     */
+    public List<Member<T>> getMembers(){
+        return members;
+    }
+
+    /**
+     *
+     * @return the number of members currently available.
+     */
+    public int getAvailableCount(){
+        int retval = 0;
+        for(Member<T> member : members){
+            if(member.isAvailable()){
+                retval++;
+            }
+        }
+        return retval;
+    }
+
+    /**
+     *
+     * @return the strategy used to select members.
+     */
+    public LoadBalancingStrategy getStrategy(){
+        return strategy;
+    }
+
+    /**
+     *
+     * @param reconnectDelay delay in milliseconds before retrying a failed state subscription,
+     *                       default 5000. 0 to never retry, leaving the member unavailable.
+     */
+    public void setReconnectDelay(long reconnectDelay){
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Cancels all state subscriptions and closes the channels of all members.
+     *
+     * @throws StatusException if problems occurred closing one of the channels, the remaining
+     * channels are closed before the first exception is thrown.
+     */
+    public void close() throws StatusException {
+        closed = true;
+        synchronized (this){
+            if(reconnectScheduler != null){
+                reconnectScheduler.shutdownNow();
+            }
+        }
+        StatusException firstException = null;
+        for(Member<T> member : members){
+            member.cancelSubscription();
+            try {
+                member.getAPI().close();
+            }catch(StatusException e){
+                if(firstException == null){
+                    firstException = e;
+                }
+            }
+        }
+        if(firstException != null){
+            throw firstException;
+        }
+    }
+
+    Member<T> select() throws CommunicationException{
+        int size = members.size();
+        // Start at a rotating offset so ties in least outstanding requests are spread over members.
+        int start = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Member<T> selected = null;
+        for(int i=0; i<size; i++){
+            Member<T> member = members.get((start + i) % size);
+            if(!member.isAvailable()){
+                continue;
+            }
+            if(strategy == LoadBalancingStrategy.ROUND_ROBIN){
+                return member;
+            }
+            if(selected == null || member.getOutstandingRequests() < selected.getOutstandingRequests()){
+                selected = member;
+            }
+        }
+        if(selected == null){
+            throw new CommunicationException("No available LND node in API pool.", Status.UNAVAILABLE);
+        }
+        return selected;
+    }
+
+    private void subscribeState(Member<T> member){
+        if(closed){
+            return;
+        }
+        StateGrpc.newStub(member.channel.getDelegate()).subscribeState(Stateservice.SubscribeStateRequest.getDefaultInstance(),
+                new StateObserver(member));
+    }
+
+    private void scheduleResubscribe(Member<T> member){
+        long delay = reconnectDelay;
+        if(closed || delay <= 0){
+            return;
+        }
+        synchronized (this){
+            if(closed){
+                return;
+            }
+            if(reconnectScheduler == null){
+                reconnectScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "APIPool-reconnect");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            reconnectScheduler.schedule(() -> subscribeState(member), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Member of the pool, holding the API using one channel and its current state.
+     *
+     * @param <T> the type of API.
+     */
+    public static class Member<T extends API> {
+        private final T api;
+        private final CallCountingChannel channel;
+        private volatile boolean available = true;
+        private volatile Stateservice.WalletState walletState;
+        private volatile ClientCallStreamObserver<Stateservice.SubscribeStateRequest> subscription;
+
+        Member(T api, CallCountingChannel channel){
+            this.api = api;
+            this.channel = channel;
+        }
+
+        /**
+         *
+         * @return the API of the member.
+         */
+        public T getAPI(){
+            return api;
+        }
+
+        /**
+         *
+         * @return the number of calls started on the member but not yet completed.
+         */
+        public int getOutstandingRequests(){
+            return channel.getOutstandingCalls();
+        }
+
+        /**
+         *
+         * @return true if the member can be selected for calls.
+         */
+        public boolean isAvailable(){
+            return available;
+        }
+
+        /**
+         *
+         * @return the last received wallet state, null if not known.
+         */
+        public Stateservice.WalletState getWalletState(){
+            return walletState;
+        }
+
+        void updateState(Stateservice.WalletState state){
+            walletState = state;
+            available = state == Stateservice.WalletState.RPC_ACTIVE || state == Stateservice.WalletState.SERVER_ACTIVE;
+        }
+
+        void cancelSubscription(){
+            ClientCallStreamObserver<Stateservice.SubscribeStateRequest> s = subscription;
+            if(s != null){
+                s.cancel("API pool closed", null);
+                subscription = null;
+            }
+        }
+    }
+
+    private class StateObserver implements ClientResponseObserver<Stateservice.SubscribeStateRequest, Stateservice.SubscribeStateResponse> {
+
+        private final Member<T> member;
+
+        StateObserver(Member<T> member){
+            this.member = member;
+        }
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<Stateservice.SubscribeStateRequest> requestStream) {
+            member.subscription = requestStream;
+        }
+
+        @Override
+        public void onNext(Stateservice.SubscribeStateResponse value) {
+            if(log.isLoggable(Level.FINE)){
+                log.fine("API pool member " + member.channel.authority() + " changed state to " + value.getState() + ".");
+            }
+            member.updateState(value.getState());
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            member.subscription = null;
+            if(closed){
+                return;
+            }
+            if(Status.fromThrowable(t).getCode() == Status.Code.UNIMPLEMENTED){
+                log.info("API pool member " + member.channel.authority() + " doesn't support the state service, health checks disabled.");
+                member.walletState = null;
+                member.available = true;
+                return;
+            }
+            log.log(Level.WARNING, "State subscription for API pool member " + member.channel.authority() + " failed, member unavailable: " + t.getMessage());
+            log.log(Level.FINE, "Stacktrace: ", t);
+            member.walletState = null;
+            member.available = false;
+            scheduleResubscribe(member);
+        }
+
+        @Override
+        public void onCompleted() {
+            onError(new IllegalStateException("State subscription completed by server."));
+        }
+    }
+}
@@ -15,9 +15,11 @@ package org.lightningj.lnd.wrapper;
 
 import io.grpc.ManagedChannel;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import org.lightningj.lnd.util.LogUtils;
 
 import javax.net.ssl.SSLException;
 import java.io.File;
+import java.util.logging.Level;
 
 /**
  * Base call for all Asynchronous API implementations.
@@ -73,8 +75,9 @@ abstract public class AsynchronousAPI extends API{
      * problems found, if validation is used.
      */
     protected Message processResponse(Message responseMessage) throws ValidationException{
-        log.fine("Received response message: " + responseMessage.toString());
-        // TODO add tracetimes
+        if(log.isLoggable(Level.FINE)) {
+            log.fine("Received response message: " + LogUtils.toLogString(responseMessage));
+        }
         validate(responseMessage);
         return responseMessage;
     }
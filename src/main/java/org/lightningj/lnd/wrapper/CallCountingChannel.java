@@ -0,0 +1,143 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ConnectivityState;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Managed channel delegating to another channel while keeping count of the number of
+ * calls that have been started but not yet closed. Used by APIPool to select the node
+ * with the least outstanding requests, for synchronous, asynchronous and streaming calls alike.
+ *
+ * Created by Philip Vendil.
+ */
+class CallCountingChannel extends ManagedChannel {
+
+    private final ManagedChannel delegate;
+    private final AtomicInteger outstandingCalls = new AtomicInteger();
+
+    CallCountingChannel(ManagedChannel delegate){
+        this.delegate = delegate;
+    }
+
+    /**
+     *
+     * @return the number of calls started but not yet closed.
+     */
+    int getOutstandingCalls(){
+        return outstandingCalls.get();
+    }
+
+    /**
+     *
+     * @return the underlying channel.
+     */
+    ManagedChannel getDelegate(){
+        return delegate;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(delegate.newCall(methodDescriptor, callOptions)) {
+            private final AtomicBoolean closed = new AtomicBoolean(false);
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                outstandingCalls.incrementAndGet();
+                try {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            callClosed();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                }catch(RuntimeException e){
+                    callClosed();
+                    throw e;
+                }
+            }
+
+            private void callClosed(){
+                if(closed.compareAndSet(false, true)){
+                    outstandingCalls.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String authority() {
+        return delegate.authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        delegate.shutdown();
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        delegate.shutdownNow();
+        return this;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Override
+    public ConnectivityState getState(boolean requestConnection) {
+        return delegate.getState(requestConnection);
+    }
+
+    @Override
+    public void notifyWhenStateChanged(ConnectivityState source, Runnable callback) {
+        delegate.notifyWhenStateChanged(source, callback);
+    }
+
+    @Override
+    public void resetConnectBackoff() {
+        delegate.resetConnectBackoff();
+    }
+
+    @Override
+    public void enterIdle() {
+        delegate.enterIdle();
+    }
+}
@@ -0,0 +1,59 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Opt-in extension of StreamObserver for consumers that want to pull messages from
+ * a streaming call instead of having all messages pushed as fast as they arrive.
+ * <p>
+ *     When a FlowControlledStreamObserver is given to an asynchronous API call, automatic
+ *     flow control is disabled and only getInitialRequest() messages are delivered
+ *     before the observer requests more through the StreamFlowControl given in onStart().
+ *     This avoids unbounded buffering when the consumer is slower than the
+ *     stream, for instance when processing subscribeHtlcEvents or trackPayments.
+ * </p>
+ * Example:
+ * <pre>
+ * asynchronousRouterAPI.subscribeHtlcEvents(new FlowControlledStreamObserver&lt;HtlcEvent&gt;() {
+ *     StreamFlowControl flowControl;
+ *     public void onStart(StreamFlowControl flowControl) { this.flowControl = flowControl; }
+ *     public void onNext(HtlcEvent value) { process(value); flowControl.request(1); }
+ *     public void onError(Throwable t) { ... }
+ *     public void onCompleted() { ... }
+ * });
+ * </pre>
+ *
+ * @see StreamFlowControl
+ * Created by Philip Vendil.
+ */
+public interface FlowControlledStreamObserver<V> extends StreamObserver<V> {
+
+    /**
+     *
+     * @return the number of messages requested when the call is started, default 1.
+     */
+    default int getInitialRequest(){
+        return 1;
+    }
+
+    /**
+     * Called before the call is started, with the flow control used to request
+     * more messages or to cancel the call.
+     *
+     * @param flowControl the flow control of the started call.
+     */
+    void onStart(StreamFlowControl flowControl);
+}
@@ -0,0 +1,106 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.lightningj.lnd.metrics.MetricsCollector;
+
+/**
+ * StreamObserverWrapper used when the wrapped observer is a FlowControlledStreamObserver.
+ * <p>
+ *     Disables automatic inbound flow control of the GRPC call and lets the observer
+ *     request messages through a StreamFlowControl. If a received message couldn't be
+ *     converted or wasn't valid is the call cancelled and no more messages delivered.
+ * </p>
+ *
+ * @param <ReqT> the type of the underlying GRPC request.
+ * @param <T> the type of the underlying GRPC response.
+ * @see FlowControlledStreamObserver
+ * Created by Philip Vendil.
+ */
+public class FlowControlledStreamObserverWrapper<ReqT,T> extends StreamObserverWrapper<T> implements ClientResponseObserver<ReqT,T> {
+
+    protected ClientCallStreamObserver<ReqT> requestStream;
+    protected volatile boolean terminated = false;
+
+    public FlowControlledStreamObserverWrapper(FlowControlledStreamObserver<?> wrappedObserver,
+                                               boolean performValidation,
+                                               String messageType){
+        this(wrappedObserver, performValidation, messageType, null);
+    }
+
+    public FlowControlledStreamObserverWrapper(FlowControlledStreamObserver<?> wrappedObserver,
+                                               boolean performValidation,
+                                               String messageType,
+                                               MetricsCollector metricsCollector){
+        super(wrappedObserver, performValidation, messageType, metricsCollector);
+    }
+
+    /**
+     * Disables automatic flow control and calls onStart() on the wrapped observer.
+     *
+     * @param requestStream the request stream of the call about to be started.
+     */
+    @Override
+    public void beforeStart(ClientCallStreamObserver<ReqT> requestStream) {
+        this.requestStream = requestStream;
+        FlowControlledStreamObserver<?> observer = (FlowControlledStreamObserver<?>) wrappedObserver;
+        requestStream.disableAutoRequestWithInitial(observer.getInitialRequest());
+        observer.onStart(new StreamFlowControl() {
+            @Override
+            public void request(int count) {
+                requestStream.request(count);
+            }
+
+            @Override
+            public void cancel(String message) {
+                requestStream.cancel(message, null);
+            }
+        });
+    }
+
+    @Override
+    public void onNext(Object value) {
+        if(!terminated) {
+            super.onNext(value);
+        }
+    }
+
+    /**
+     * Delivers the error to the wrapped observer once. If the error occurred locally
+     * while processing a received message is the underlying call also cancelled.
+     */
+    @Override
+    public void onError(Throwable t) {
+        if(terminated){
+            return;
+        }
+        terminated = true;
+        if(!(t instanceof io.grpc.StatusException || t instanceof io.grpc.StatusRuntimeException)){
+            if(requestStream != null) {
+                requestStream.cancel("Error processing streamed message of type " + messageType + ": " + t.getMessage(), t);
+            }
+        }
+        super.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+        if(!terminated) {
+            terminated = true;
+            super.onCompleted();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import com.google.protobuf.GeneratedMessageV3;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * List view of a repeated message field used by generated wrapper classes. Instead of
+ * wrapping all elements when the list getter is called, each element is wrapped
+ * the first time it is accessed using get(i), so the cost of reading a large list
+ * response is proportional to the number of elements actually used.
+ * <p>
+ *     If per index caching is enabled is each wrapped element kept, returning the same
+ *     wrapper on subsequent calls so changes made to elements are included when the parent
+ *     message is built, the same behaviour as a regular list. Without caching is a new wrapper
+ *     created for every access, suitable for one time read-only traversals.
+ * </p>
+ * <p>
+ *     The first call to a modifying method copies all elements into a regular list which
+ *     is used from then on.
+ * </p>
+ *
+ * @param <T> the type of wrapped message.
+ *
+ * Created by Philip Vendil.
+ */
+public class LazyMessageList<T extends Message> extends AbstractList<T> implements RandomAccess {
+
+    private final int size;
+    private final IntFunction<? extends GeneratedMessageV3> elementReader;
+    private final WrapperFactory wrapperFactory;
+    private final boolean cacheElements;
+
+    private Object[] cache;
+    private List<T> materialized;
+
+    /**
+     * Creates a lazy list view using the singleton WrapperFactory.
+     *
+     * @param size the number of elements in the repeated field.
+     * @param elementReader function returning the API object at given index.
+     * @param cacheElements true if each wrapped element should be kept.
+     */
+    public LazyMessageList(int size, IntFunction<? extends GeneratedMessageV3> elementReader, boolean cacheElements){
+        this(size, elementReader, WrapperFactory.getInstance(), cacheElements);
+    }
+
+    /**
+     * Creates a lazy list view.
+     *
+     * @param size the number of elements in the repeated field.
+     * @param elementReader function returning the API object at given index.
+     * @param wrapperFactory the wrapper factory used to wrap elements.
+     * @param cacheElements true if each wrapped element should be kept.
+     */
+    public LazyMessageList(int size, IntFunction<? extends GeneratedMessageV3> elementReader, WrapperFactory wrapperFactory, boolean cacheElements){
+        this.size = size;
+        this.elementReader = elementReader;
+        this.wrapperFactory = wrapperFactory;
+        this.cacheElements = cacheElements;
+    }
+
+    /**
+     * Method to create a stream of wrapped elements of a repeated field without creating
+     * a list, every element is wrapped when it is consumed by the stream.
+     *
+     * @param size the number of elements in the repeated field.
+     * @param elementReader function returning the API object at given index.
+     * @param wrapperFactory the wrapper factory used to wrap elements.
+     * @param <T> the type of wrapped message.
+     * @return a sequential stream of wrapped elements.
+     */
+    public static <T extends Message> Stream<T> stream(int size, IntFunction<? extends GeneratedMessageV3> elementReader, WrapperFactory wrapperFactory){
+        return IntStream.range(0, size).mapToObj(i -> LazyMessageList.<T>wrap(wrapperFactory, elementReader, i));
+    }
+
+    /**
+     * Method used by generated wrapper classes to check if a repeated field list
+     * have to be populated into the builder, i.e. if the list or any of its elements
+     * might have been modified.
+     *
+     * @param list the list returned by the getter, not null.
+     * @return true if the list isn't an unmodified lazy list view.
+     */
+    public static boolean isModified(List<? extends Message> list){
+        if(list instanceof LazyMessageList){
+            return ((LazyMessageList<?>) list).isModified();
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if(materialized != null){
+            return materialized.get(index);
+        }
+        if(index < 0 || index >= size){
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if(!cacheElements){
+            return wrap(wrapperFactory, elementReader, index);
+        }
+        if(cache == null){
+            cache = new Object[size];
+        }
+        T retval = (T) cache[index];
+        if(retval == null){
+            retval = wrap(wrapperFactory, elementReader, index);
+            cache[index] = retval;
+        }
+        return retval;
+    }
+
+    @Override
+    public int size() {
+        return materialized != null ? materialized.size() : size;
+    }
+
+    @Override
+    public T set(int index, T element) {
+        return materialize().set(index, element);
+    }
+
+    @Override
+    public void add(int index, T element) {
+        materialize().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public T remove(int index) {
+        T retval = materialize().remove(index);
+        modCount++;
+        return retval;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        modCount++;
+        return materialize().addAll(c);
+    }
+
+    @Override
+    public void clear() {
+        if(materialized == null){
+            materialized = new ArrayList<>();
+            cache = null;
+        }else{
+            materialized.clear();
+        }
+        modCount++;
+    }
+
+    /**
+     *
+     * @return true if a modifying method have been called or any of the accessed
+     * elements have been modified.
+     */
+    boolean isModified(){
+        if(materialized != null){
+            return true;
+        }
+        if(cache != null){
+            for(Object o : cache){
+                if(o != null && (!((Message) o).isReadOnly() || ((Message) o).hasRepeatedFieldsToPopulate())){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @return the number of elements wrapped and kept in cache.
+     */
+    int getCachedCount(){
+        int retval = 0;
+        if(cache != null){
+            for(Object o : cache){
+                if(o != null){
+                    retval++;
+                }
+            }
+        }
+        return retval;
+    }
+
+    private List<T> materialize(){
+        if(materialized == null){
+            List<T> list = new ArrayList<>(size + 1);
+            for(int i=0; i<size; i++){
+                list.add(get(i));
+            }
+            materialized = list;
+            cache = null;
+        }
+        return materialized;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Message> T wrap(WrapperFactory wrapperFactory, IntFunction<? extends GeneratedMessageV3> elementReader, int index){
+        try {
+            return (T) wrapperFactory.wrap(elementReader.apply(index));
+        }catch(ClientSideException e){
+            throw new IllegalStateException("Error wrapping element " + index + " of repeated field: " + e.getMessage(), e);
+        }
+    }
+}
@@ -13,14 +13,22 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper;
 
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.GeneratedMessageV3;
 import com.google.protobuf.GeneratedMessageV3.Builder;
+import com.google.protobuf.MessageOrBuilder;
 import org.lightningj.lnd.util.JsonGenUtils;
+import org.lightningj.lnd.util.JsonStreamUtils;
 import org.lightningj.lnd.util.ValidationUtils;
 
 import javax.json.JsonException;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import jakarta.xml.bind.annotation.XmlTransient;
+import java.io.OutputStream;
+import java.io.Writer;
 
 /**
  * Base Wrapper Message class containing the base functionality for
@@ -39,7 +47,17 @@ public abstract class Message<T> {
 
     protected WrapperFactory wrapperFactory = WrapperFactory.getInstance();
 
-    protected Builder builder;
+    /**
+     * The builder of the message, null while the message is read-only. Inheriting messages
+     * use getReader() to read field values and getMutableBuilder() followed by invalidateCache()
+     * when modifying them.
+     */
+    private Builder builder;
+
+    private GeneratedMessageV3 readOnlyApiObject;
+    private volatile T cachedApiObject = null;
+    private volatile boolean hashCodeCached = false;
+    private volatile int cachedHashCode;
 
     /**
      * Base constructor used when reading from JSON.
@@ -56,6 +74,22 @@ public abstract class Message<T> {
         }
     }
 
+    /**
+     * Base constructor used when reading from a JSON stream. The JSON object is read field by field
+     * from the parser without first building a JsonObject.
+     * @param jsonParser the parser positioned before the json object to read.
+     * @param builder the API Object builder set by inheriting message object.
+     * @throws JsonException if problems occurred parsing the JSON data.
+     */
+    public Message(JsonParser jsonParser, Builder builder) throws JsonException {
+        this.builder = builder;
+        try {
+            JsonStreamUtils.readMessage(jsonParser, builder);
+        }catch(Exception e){
+            throw new JsonException("Error converting JSON to Message" + (e.getMessage() != null ? ": " + e.getMessage() : ""),e);
+        }
+    }
+
     /**
      * Base constructor for creating a new message.
      *
@@ -65,6 +99,19 @@ public abstract class Message<T> {
         this.builder = builder;
     }
 
+    /**
+     * Base constructor for wrapping a received API object in read-only mode. Getters read
+     * directly from the immutable API object and no builder is created until the message
+     * is modified by a setter.
+     *
+     * @param apiObject the API object to wrap.
+     */
+    @SuppressWarnings("unchecked")
+    public Message(GeneratedMessageV3 apiObject){
+        this.readOnlyApiObject = apiObject;
+        this.cachedApiObject = (T) apiObject;
+    }
+
 
     /**
      * Method to convert the Message into JSON Representation
@@ -74,7 +121,8 @@ public abstract class Message<T> {
     public JsonObjectBuilder toJson() throws JsonException{
         try {
             populateRepeatedFields();
-            return JsonGenUtils.messageToJson(builder, builder.getDescriptorForType());
+            MessageOrBuilder reader = getReader();
+            return JsonGenUtils.messageToJson(reader, reader.getDescriptorForType());
         }catch(Exception e){
             throw new JsonException("Error converting Message to JSON" + (e.getMessage() != null ? ": " + e.getMessage() : ""),e);
         }
@@ -87,17 +135,117 @@ public abstract class Message<T> {
      * @return string json data representation of message.
      */
     public String toJsonAsString(boolean prettyPrint){
-        return JsonGenUtils.jsonToString(toJson(),prettyPrint);
+        try {
+            populateRepeatedFields();
+            return JsonStreamUtils.toJsonString(getReader(), prettyPrint);
+        }catch(Exception e){
+            throw new JsonException("Error converting Message to JSON" + (e.getMessage() != null ? ": " + e.getMessage() : ""),e);
+        }
+    }
+
+    /**
+     * Method to write the message as JSON directly to a writer, without building the
+     * JSON data in memory first. The writer is flushed but not closed.
+     * @param writer the writer to write the json data to.
+     * @param prettyPrint if json data should be pretty printed with newlines and indentation.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public void toJson(Writer writer, boolean prettyPrint) throws JsonException{
+        try {
+            populateRepeatedFields();
+            JsonStreamUtils.writeMessage(getReader(), writer, prettyPrint);
+        }catch(Exception e){
+            throw new JsonException("Error converting Message to JSON" + (e.getMessage() != null ? ": " + e.getMessage() : ""),e);
+        }
+    }
+
+    /**
+     * Method to write the message as UTF-8 encoded JSON directly to an output stream, without
+     * building the JSON data in memory first. The stream is flushed but not closed.
+     * @param outputStream the stream to write the json data to.
+     * @param prettyPrint if json data should be pretty printed with newlines and indentation.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public void toJson(OutputStream outputStream, boolean prettyPrint) throws JsonException{
+        try {
+            populateRepeatedFields();
+            JsonStreamUtils.writeMessage(getReader(), outputStream, prettyPrint);
+        }catch(Exception e){
+            throw new JsonException("Error converting Message to JSON" + (e.getMessage() != null ? ": " + e.getMessage() : ""),e);
+        }
+    }
+
+    /**
+     * Method to write the message as a JSON object in the current context of a generator, for
+     * example as an element of an array when streaming a list of messages.
+     * @param jsonGenerator the generator to write the json object to.
+     * @throws JsonException if problems occurred converting or writing the message.
+     */
+    public void toJson(JsonGenerator jsonGenerator) throws JsonException{
+        try {
+            populateRepeatedFields();
+            JsonStreamUtils.writeMessage(jsonGenerator, getReader());
+        }catch(Exception e){
+            throw new JsonException("Error converting Message to JSON" + (e.getMessage() != null ? ": " + e.getMessage() : ""),e);
+        }
     }
 
 
     /**
      * Method to return the underlying API object in GRPC format.
+     * <p>
+     *     The built object is cached until a setter is called. If lists of repeated or
+     *     mapped fields have been fetched or set, which could be modified by the caller, is
+     *     the object rebuilt for each call.
+     * </p>
      * @return the underlying API object in GRPC format.
      */
     public T getApiObject(){
-        populateRepeatedFields();
-        return (T)  builder.build();
+        if(hasRepeatedFieldsToPopulate()){
+            populateRepeatedFields();
+            return (T) getMutableBuilder().build();
+        }
+        T retval = cachedApiObject;
+        if(retval == null){
+            retval = (T) getMutableBuilder().build();
+            cachedApiObject = retval;
+        }
+        return retval;
+    }
+
+    /**
+     * Method used by inherited messages to read field values, from the immutable API object
+     * while the message is read-only, otherwise from the builder.
+     *
+     * @return the message or builder to read field values from.
+     */
+    protected MessageOrBuilder getReader(){
+        Builder b = builder;
+        return b != null ? b : readOnlyApiObject;
+    }
+
+    /**
+     * Method used by inherited messages before modifying field values, creating the builder
+     * from the immutable API object if the message is read-only.
+     *
+     * @return the builder of the message.
+     */
+    protected Builder getMutableBuilder(){
+        if(builder == null){
+            builder = (Builder) readOnlyApiObject.toBuilder();
+            readOnlyApiObject = null;
+        }
+        return builder;
+    }
+
+    /**
+     *
+     * @return true if the message still reads directly from the wrapped API object,
+     * i.e. no builder have been created.
+     */
+    @XmlTransient
+    public boolean isReadOnly(){
+        return builder == null;
     }
 
     /**
@@ -105,12 +253,52 @@ public abstract class Message<T> {
      */
     protected void populateRepeatedFields(){}
 
+    /**
+     * Method to be overrided by inherited messages that contains repeatable or mapped fields.
+     *
+     * @return true if lists of repeated or mapped fields have been fetched or set, and need to
+     * be populated into the builder before it is built.
+     */
+    protected boolean hasRepeatedFieldsToPopulate(){
+        return false;
+    }
+
+    /**
+     * Method that must be called by inherited messages whenever the underlying builder
+     * is modified, clearing the cached API object and hash code.
+     */
+    protected void invalidateCache(){
+        cachedApiObject = null;
+        hashCodeCached = false;
+    }
+
     /**
      *
      * @return the name of the underling message.
      */
     public String getMessageName() {
-        return builder.getDescriptorForType().getName();
+        return getReader().getDescriptorForType().getName();
+    }
+
+    /**
+     * Returns a short summary of this message containing the message name, the serialized size
+     * and the number of entries in each repeated field. Cheap to calculate compared to toString()
+     * and useful when logging large messages.
+     *
+     * @return a summary of the message.
+     */
+    public String toSummaryString(){
+        com.google.protobuf.Message apiObject = (com.google.protobuf.Message) getApiObject();
+        StringBuilder sb = new StringBuilder(getMessageName());
+        sb.append(": summary {serializedSize=").append(apiObject.getSerializedSize());
+        for(Descriptors.FieldDescriptor fieldDescriptor : apiObject.getDescriptorForType().getFields()){
+            if(fieldDescriptor.isRepeated()){
+                sb.append(", ").append(fieldDescriptor.getJsonName()).append("=")
+                        .append(apiObject.getRepeatedFieldCount(fieldDescriptor)).append(" entries");
+            }
+        }
+        sb.append("}");
+        return sb.toString();
     }
 
     /**
@@ -125,7 +313,8 @@ public abstract class Message<T> {
     /**
      * Method to check if another object equals this object.
      * <p>
-     *     Compares the underlying API object data so can be relative resource intensive.
+     *     Compares the underlying API object data so can be relative resource intensive, unless
+     *     both API objects are cached and have different hash codes.
      * </p>
      */
     @Override
@@ -134,16 +323,28 @@ public abstract class Message<T> {
         if (o == null || getClass() != o.getClass()) return false;
 
         Message<?> that = (Message<?>) o;
+        if(!hasRepeatedFieldsToPopulate() && !that.hasRepeatedFieldsToPopulate() && hashCode() != that.hashCode()){
+            return false;
+        }
         return getApiObject().equals(that.getApiObject());
     }
 
     /**
      *
-     * @return the underlying API Object hash code, can be relative resource intensive to calculate.
+     * @return the underlying API Object hash code, can be relative resource intensive to calculate
+     * the first time. The hash code is cached until a setter is called, unless lists of repeated or
+     * mapped fields have been fetched or set.
      */
     @Override
     public int hashCode() {
-        return getApiObject().hashCode();
+        if(hasRepeatedFieldsToPopulate()){
+            return getApiObject().hashCode();
+        }
+        if(!hashCodeCached){
+            cachedHashCode = getApiObject().hashCode();
+            hashCodeCached = true;
+        }
+        return cachedHashCode;
     }
 
     /**
@@ -153,6 +354,7 @@ public abstract class Message<T> {
      * @return a ValidationReport containing all validation error found in message.
      */
     public ValidationResult validate()  {
-        return ValidationUtils.validateMessage(builder,builder.getDescriptorForType());
+        MessageOrBuilder reader = getReader();
+        return ValidationUtils.validateMessage(reader,reader.getDescriptorForType());
     }
 }
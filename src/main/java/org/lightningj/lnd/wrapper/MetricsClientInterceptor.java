@@ -0,0 +1,103 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.*;
+import org.lightningj.lnd.metrics.MetricsCollector;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Client Call Interceptor reporting the latency, the number of sent and received bytes and the
+ * error class of each GRPC call to a MetricsCollector.
+ * <p>
+ *     Latency is measured from the call is started until it is closed, for streaming calls
+ *     including the time the stream was open. Sizes are the serialized sizes of the protobuf
+ *     messages, excluding GRPC framing and compression.
+ * </p>
+ *
+ * @see MetricsCollector
+ * Created by Philip Vendil.
+ */
+public class MetricsClientInterceptor implements io.grpc.ClientInterceptor {
+
+    private static Logger log =
+            Logger.getLogger(MetricsClientInterceptor.class.getName());
+
+    private final MetricsCollector metricsCollector;
+    private final StatusExceptionWrapper statusExceptionWrapper = StatusExceptionWrapper.getInstance();
+
+    public MetricsClientInterceptor(MetricsCollector metricsCollector) {
+        assert metricsCollector != null;
+        this.metricsCollector = metricsCollector;
+    }
+
+    /**
+     * Intercept {@link ClientCall} creation by the {@code next} {@link Channel} and wraps the
+     * call to measure it.
+     *
+     * @param method      the remote method to be called.
+     * @param callOptions the runtime options to be applied to this call.
+     * @param next        the channel which is being intercepted.
+     * @return the call object for the remote operation, never {@code null}.
+     */
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+        final String methodName = method.getFullMethodName();
+        return new ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+            private volatile long startTime;
+            private volatile long bytesSent;
+            private volatile long bytesReceived;
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+                startTime = System.nanoTime();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<RespT>(responseListener) {
+                    @Override
+                    public void onMessage(RespT message) {
+                        bytesReceived += sizeOf(message);
+                        super.onMessage(message);
+                    }
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        record(methodName, System.nanoTime() - startTime, bytesSent, bytesReceived, status);
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+
+            @Override
+            public void sendMessage(ReqT message) {
+                bytesSent += sizeOf(message);
+                super.sendMessage(message);
+            }
+        };
+    }
+
+    private void record(String methodName, long latencyNanos, long bytesSent, long bytesReceived, Status status){
+        try{
+            String errorClass = status.isOk() ? null : statusExceptionWrapper.getExceptionClass(status).getSimpleName();
+            metricsCollector.recordCall(methodName, latencyNanos, bytesSent, bytesReceived, errorClass);
+        }catch(RuntimeException e){
+            log.log(Level.WARNING, "Error recording metrics of call " + methodName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long sizeOf(Object message){
+        return message instanceof MessageLite ? ((MessageLite) message).getSerializedSize() : 0;
+    }
+}
@@ -0,0 +1,106 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * List returned by generated wrapper classes for repeated string, number and bytes fields and
+ * for map entries, recording if the list have been modified. Used to only populate repeated
+ * and mapped fields into the builder when they have actually been changed, so reading a list
+ * doesn't cause the message to be rebuilt.
+ * <p>
+ *     All modifications made through the list, its iterators and sub lists are recorded.
+ *     Changes made directly to the contents of byte array elements are not detected, such
+ *     elements should be replaced using set() instead.
+ * </p>
+ *
+ * @param <E> the type of element.
+ *
+ * Created by Philip Vendil.
+ */
+public class ModificationTrackingList<E> extends AbstractList<E> implements RandomAccess {
+
+    private final List<E> list;
+    private boolean modified = false;
+
+    /**
+     * Creates a list backed by the given list, the given list should not be used
+     * after creating the tracking list.
+     *
+     * @param list the list containing the initial values.
+     */
+    public ModificationTrackingList(List<E> list){
+        this.list = list;
+    }
+
+    /**
+     * Method used by generated wrapper classes to check if a repeated field list or list of map
+     * entries have to be populated into the builder.
+     *
+     * @param list the list returned by the getter or set by the caller, null if never set.
+     * @return true if the list isn't an unmodified tracking list.
+     */
+    public static boolean isModified(List<?> list){
+        if(list instanceof ModificationTrackingList){
+            return ((ModificationTrackingList<?>) list).modified;
+        }
+        return true;
+    }
+
+    /**
+     * Method used by generated wrapper classes to check if a wrapped message value of a map
+     * entry have been modified.
+     *
+     * @param message the message to check, null if not set.
+     * @return true if the message is no longer read-only or have repeated fields to populate.
+     */
+    public static boolean isModified(Message<?> message){
+        return message != null && (!message.isReadOnly() || message.hasRepeatedFieldsToPopulate());
+    }
+
+    @Override
+    public E get(int index) {
+        return list.get(index);
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        E retval = list.set(index, element);
+        modified = true;
+        return retval;
+    }
+
+    @Override
+    public void add(int index, E element) {
+        list.add(index, element);
+        modified = true;
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        E retval = list.remove(index);
+        modified = true;
+        modCount++;
+        return retval;
+    }
+}
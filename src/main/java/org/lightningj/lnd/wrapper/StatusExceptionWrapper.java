@@ -59,21 +59,14 @@ public class StatusExceptionWrapper {
             if(status != null) {
                 assert status != Status.OK;
 
-                switch (status.getCode()) {
-                    case CANCELLED:
-                    case INVALID_ARGUMENT:
-                    case NOT_FOUND:
-                    case ALREADY_EXISTS:
-                    case PERMISSION_DENIED:
-                    case OUT_OF_RANGE:
-                    case UNAUTHENTICATED:
-                        return new ClientSideException(e.getMessage(),status,e);
-                    case DEADLINE_EXCEEDED:
-                    case UNAVAILABLE:
-                        return new CommunicationException(e.getMessage(),status,e);
-                    default:
-                    return  new ServerSideException(e.getMessage(),status,e);
+                Class<? extends org.lightningj.lnd.wrapper.StatusException> exceptionClass = getExceptionClass(status);
+                if(exceptionClass == ClientSideException.class){
+                    return new ClientSideException(e.getMessage(),status,e);
                 }
+                if(exceptionClass == CommunicationException.class){
+                    return new CommunicationException(e.getMessage(),status,e);
+                }
+                return new ServerSideException(e.getMessage(),status,e);
             }
             return new ServerSideException("Internal Error, couldn't determine status in GRPC call.",null,e);
         }
@@ -83,4 +76,28 @@ public class StatusExceptionWrapper {
 
 
 
+
+    /**
+     * Method returning the type of StatusException a GRPC status is converted to by the wrap method.
+     *
+     * @param status the GRPC status of a failed call.
+     * @return either ClientSideException, CommunicationException or ServerSideException class.
+     */
+    public Class<? extends org.lightningj.lnd.wrapper.StatusException> getExceptionClass(Status status){
+        switch (status.getCode()) {
+            case CANCELLED:
+            case INVALID_ARGUMENT:
+            case NOT_FOUND:
+            case ALREADY_EXISTS:
+            case PERMISSION_DENIED:
+            case OUT_OF_RANGE:
+            case UNAUTHENTICATED:
+                return ClientSideException.class;
+            case DEADLINE_EXCEEDED:
+            case UNAVAILABLE:
+                return CommunicationException.class;
+            default:
+                return ServerSideException.class;
+        }
+    }
 }
@@ -0,0 +1,45 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+/**
+ * Interface used by a FlowControlledStreamObserver to control the flow of messages
+ * in a streaming call.
+ * <p>
+ *     No more messages than requested is delivered to the observer, messages not
+ *     yet requested are kept in the GRPC transport which in turn applies back pressure
+ *     to the LND node.
+ * </p>
+ *
+ * @see FlowControlledStreamObserver
+ * Created by Philip Vendil.
+ */
+public interface StreamFlowControl {
+
+    /**
+     * Requests the given number of additional messages to be delivered to
+     * the observer's onNext() method. Thread safe.
+     *
+     * @param count the number of additional messages to request, must be positive.
+     */
+    void request(int count);
+
+    /**
+     * Cancels the streaming call. The observer's onError() method is called with
+     * a ClientSideException with status CANCELLED.
+     *
+     * @param message a message describing why the call was cancelled, might be null.
+     */
+    void cancel(String message);
+}
@@ -18,6 +18,8 @@ import io.grpc.Status;
 import io.grpc.StatusException;
 import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
+import org.lightningj.lnd.metrics.MetricsCollector;
+import org.lightningj.lnd.util.LogUtils;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,14 +46,31 @@ public class StreamObserverWrapper<T> implements StreamObserver<T> {
     protected String messageType;
     protected WrapperFactory wrapperFactory = WrapperFactory.getInstance();
     protected StatusExceptionWrapper exceptionWrapper = StatusExceptionWrapper.getInstance();
+    protected MetricsCollector metricsCollector;
 
     public StreamObserverWrapper(StreamObserver<?> wrappedObserver,
                                  boolean performValidation,
                                  String messageType){
+      this(wrappedObserver, performValidation, messageType, null);
+    }
+
+    /**
+     * Constructor also recording the time to wrap and validate each message.
+     *
+     * @param wrappedObserver the observer receiving wrapped messages.
+     * @param performValidation if received messages should be validated.
+     * @param messageType the name of the received message type.
+     * @param metricsCollector the collector of processing times, null if not used.
+     */
+    public StreamObserverWrapper(StreamObserver<?> wrappedObserver,
+                                 boolean performValidation,
+                                 String messageType,
+                                 MetricsCollector metricsCollector){
       assert wrappedObserver != null;
       this.wrappedObserver=wrappedObserver;
       this.performValidation=performValidation;
       this.messageType = messageType;
+      this.metricsCollector = metricsCollector;
     }
     /**
      * Receives a value from the stream.
@@ -73,12 +92,22 @@ public class StreamObserverWrapper<T> implements StreamObserver<T> {
     public void onNext(Object value) {
         assert value instanceof GeneratedMessageV3;
         try {
+            long startTime = metricsCollector != null ? System.nanoTime() : 0;
             Message message = wrapperFactory.wrap((GeneratedMessageV3) value);
-            log.fine("Received streamed message: " + message.toString());
+            if(metricsCollector != null){
+                metricsCollector.recordProcessing(messageType, MetricsCollector.ProcessingStage.WRAP, System.nanoTime() - startTime);
+            }
+            if(log.isLoggable(Level.FINE)) {
+                log.fine("Received streamed message: " + LogUtils.toLogString(message));
+            }
             if(!performValidation){
                 wrappedObserver.onNext(message);
             }else {
+                startTime = metricsCollector != null ? System.nanoTime() : 0;
                 ValidationResult validationResult = message.validate();
+                if(metricsCollector != null){
+                    metricsCollector.recordProcessing(messageType, MetricsCollector.ProcessingStage.VALIDATE, System.nanoTime() - startTime);
+                }
                 if (validationResult.isValid()) {
                     wrappedObserver.onNext(message);
                 } else {
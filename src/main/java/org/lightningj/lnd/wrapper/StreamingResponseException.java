@@ -0,0 +1,42 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+/**
+ * Unchecked exception thrown by StreamingResponseIterator if problems occurred
+ * when reading the next message from a server streaming call.
+ * <p>
+ *     The cause is either a StatusException (ClientSideException, ServerSideException or
+ *     CommunicationException) or a ValidationException, the same exceptions that
+ *     would have been thrown by a non-streaming call.
+ * </p>
+ *
+ * @see StreamingResponseIterator
+ * Created by Philip Vendil.
+ */
+public class StreamingResponseException extends RuntimeException {
+
+    public StreamingResponseException(String message, Exception cause){
+        super(message, cause);
+    }
+
+    /**
+     *
+     * @return the underlying StatusException or ValidationException.
+     */
+    @Override
+    public synchronized Exception getCause() {
+        return (Exception) super.getCause();
+    }
+}
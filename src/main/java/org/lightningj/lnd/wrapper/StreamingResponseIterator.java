@@ -0,0 +1,175 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import com.google.protobuf.GeneratedMessageV3;
+import io.grpc.Context;
+import io.grpc.StatusRuntimeException;
+import org.lightningj.lnd.metrics.MetricsCollector;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator returned by synchronous server streaming calls such as subscribeInvoices.
+ * <p>
+ *     Messages are read from the underlying GRPC call, wrapped and validated (if validation is enabled)
+ *     one at a time when next() is called, so memory usage stays constant no matter how long
+ *     the stream is running. hasNext() blocks until a new message is received or the stream
+ *     is completed.
+ * </p>
+ * <p>
+ *     Calling close() (possibly from another thread) cancels the underlying GRPC call, after which
+ *     hasNext() returns false. The stream is also closed automatically when completed or if an error occurred.
+ *     Since the Iterator interface doesn't allow checked exceptions, errors are thrown as a
+ *     StreamingResponseException with the StatusException or ValidationException as cause.
+ * </p>
+ * Example:
+ * <pre>
+ * try(StreamingResponseIterator&lt;Invoice&gt; invoices = synchronousLndAPI.subscribeInvoices(0L,0L)){
+ *     while(invoices.hasNext()){
+ *         Invoice invoice = invoices.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class StreamingResponseIterator<T> implements Iterator<T>, Closeable {
+
+    private final SynchronousAPI api;
+    private final Iterator<?> responses;
+    private final Context.CancellableContext context;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor for a new StreamingResponseIterator.
+     *
+     * @param api the synchronous API used to wrap, log and validate received messages.
+     * @param responses the underlying GRPC response iterator.
+     * @param context the context the GRPC call was started in, cancelled when the iterator is closed.
+     *                Might be null if no call should be cancelled.
+     */
+    protected StreamingResponseIterator(SynchronousAPI api, Iterator<?> responses, Context.CancellableContext context){
+        assert api != null;
+        assert responses != null;
+        this.api = api;
+        this.responses = responses;
+        this.context = context;
+    }
+
+    /**
+     * Returns true if there is another message in the stream, blocks until the next message
+     * is received or the stream is completed.
+     *
+     * @return true if there is another message in the stream, false if stream is completed or closed.
+     * @throws StreamingResponseException if problems occurred in the underlying GRPC call.
+     */
+    @Override
+    public boolean hasNext() {
+        if(closed){
+            return false;
+        }
+        try {
+            boolean hasNext = responses.hasNext();
+            if(!hasNext){
+                close();
+            }
+            return hasNext;
+        }catch(StatusRuntimeException e){
+            if(closed){
+                return false;
+            }
+            throw error(api.statusExceptionWrapper.wrap(e));
+        }
+    }
+
+    /**
+     * Returns the next wrapped message in stream, blocks until the next message
+     * is received or the stream is completed.
+     *
+     * @return the next wrapped and validated message.
+     * @throws NoSuchElementException if stream is completed or closed.
+     * @throws StreamingResponseException if problems occurred in the underlying GRPC call or
+     * if received message wasn't valid.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        Object value;
+        try{
+            value = responses.next();
+        }catch(StatusRuntimeException e){
+            throw error(api.statusExceptionWrapper.wrap(e));
+        }
+        try {
+            MetricsCollector collector = api.metricsCollector;
+            long startTime = collector != null ? System.nanoTime() : 0;
+            Message message = api.wrapperFactory.wrap((GeneratedMessageV3) value);
+            if(collector != null){
+                collector.recordProcessing(message.getMessageName(), MetricsCollector.ProcessingStage.WRAP, System.nanoTime() - startTime);
+            }
+            return (T) api.processResponse(message);
+        }catch(StatusException | ValidationException e){
+            throw error(e);
+        }
+    }
+
+    /**
+     * Method to get a sequential Stream of the remaining messages. Closing the stream closes
+     * this iterator and cancels the underlying GRPC call.
+     *
+     * @return a sequential ordered Stream of wrapped messages.
+     */
+    public Stream<T> stream(){
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Closes the iterator and cancels the underlying GRPC call if not already completed.
+     * Safe to call multiple times and from other threads.
+     */
+    @Override
+    public void close() {
+        if(!closed){
+            closed = true;
+            if(context != null){
+                context.cancel(null);
+            }
+        }
+    }
+
+    /**
+     *
+     * @return true if the iterator is closed, either explicitly or because the stream completed or failed.
+     */
+    public boolean isClosed(){
+        return closed;
+    }
+
+    private StreamingResponseException error(Exception e){
+        close();
+        return new StreamingResponseException("Error reading streamed message: " + e.getMessage(), e);
+    }
+}
@@ -13,14 +13,17 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper;
 
-import com.google.protobuf.GeneratedMessageV3;
+import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import io.grpc.netty.shaded.io.netty.handler.ssl.SslContext;
+import org.lightningj.lnd.metrics.MetricsCollector;
+import org.lightningj.lnd.util.LogUtils;
 
 import javax.net.ssl.SSLException;
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.function.Function;
+import java.util.logging.Level;
 
 /**
  * Base call for all Synchronous API implementations.
@@ -76,28 +79,61 @@ abstract public class SynchronousAPI extends API{
      * problems found, if validation is used.
      */
     protected Message processResponse(Message responseMessage) throws ValidationException{
-        log.fine("Received response message: " + responseMessage.toString());
+        if(log.isLoggable(Level.FINE)) {
+            log.fine("Received response message: " + LogUtils.toLogString(responseMessage));
+        }
         validate(responseMessage);
         return responseMessage;
     }
 
     /**
-     * Method to convert and validate (if validation is enabled) a iterable response from LDN Server to a wrapped object.
+     * Method to wrap, convert and validate (if validation is enabled) a response from LDN Server.
+     * The time to wrap the response is recorded if a metrics collector is set.
+     *
+     * @param apiObject the underlying response API object received from the LDN Server.
+     * @param wrapper the constructor of the wrapped response message.
+     * @param <T> the type of the underlying API object.
+     * @return a wrapped response message
+     * @throws ValidationException exception containing a validation report with all validation
+     * problems found, if validation is used.
+     */
+    protected <T> Message processResponse(T apiObject, Function<T, ? extends Message> wrapper) throws ValidationException{
+        MetricsCollector collector = metricsCollector;
+        if(collector == null){
+            return processResponse(wrapper.apply(apiObject));
+        }
+        long startTime = System.nanoTime();
+        Message message = wrapper.apply(apiObject);
+        collector.recordProcessing(message.getMessageName(), MetricsCollector.ProcessingStage.WRAP, System.nanoTime() - startTime);
+        return processResponse(message);
+    }
+
+    /**
+     * Method to convert and validate (if validation is enabled) a iterable response from LDN Server to wrapped objects.
+     * <p>
+     *     Messages are wrapped and validated lazily when read from the returned iterator.
+     * </p>
      *
      * @param responses the iterable collection of response message to convert
-     * @return a wrapped List of response message
+     * @return a lazy iterator of wrapped response messages.
      * @throws ValidationException exception containing a validation report with all validation
      * problems found, if validation is used.
      */
     protected Iterator<?> processRepeatableResponse(Iterator<?> responses) throws ValidationException, ClientSideException {
-        ArrayList<Message> retval = new ArrayList<>();
-        while(responses.hasNext()){
-            Message message = wrapperFactory.wrap((GeneratedMessageV3) responses.next());
-            log.fine("Received response message: " + message.toString());
-            validate(message);
-            retval.add(message);
-        }
-        return retval.iterator();
+        return processRepeatableResponse(responses, null);
+    }
+
+    /**
+     * Method to convert and validate (if validation is enabled) a server streaming response from LDN Server
+     * to a lazy iterator of wrapped objects.
+     *
+     * @param responses the GRPC response iterator to convert.
+     * @param context the context the GRPC call was started in, cancelled when returned iterator is closed,
+     *                null if no call should be cancelled.
+     * @return a lazy and closeable iterator of wrapped response messages.
+     */
+    protected StreamingResponseIterator<?> processRepeatableResponse(Iterator<?> responses, Context.CancellableContext context){
+        return new StreamingResponseIterator<>(this, responses, context);
     }
 
 
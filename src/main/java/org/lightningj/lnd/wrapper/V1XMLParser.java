@@ -13,14 +13,87 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper;
 
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * LND Version 1 implementation of XML Api
+ * <p>
+ *     By default are all protocols supported, but to reduce startup time it is possible to
+ *     create a parser only loading the JAXB packages and XSD schemas of the protocols used,
+ *     for example: new V1XMLParser("lnd","invoices").
+ * </p>
  * Created by Philip Vendil.
  */
 public class V1XMLParser extends XMLParser {
 
+    /**
+     * Names of all supported protocols, in the order their packages and schemas are loaded.
+     */
+    public static final List<String> SUPPORTED_PROTOCOLS = Collections.unmodifiableList(Arrays.asList(
+            "lnd",
+            "autopilot",
+            "chainnotifier",
+            "chainkit",
+            "invoices",
+            "router",
+            "signer",
+            "walletkit",
+            "watchtower",
+            "wtclient",
+            "verrpc",
+            "walletunlocker",
+            "stateservice",
+            "dev",
+            "neutrino",
+            "peers"
+    ));
+
+    private final List<String> protocols;
+
+    /**
+     * Creates a parser supporting all protocols.
+     */
+    public V1XMLParser(){
+        this.protocols = SUPPORTED_PROTOCOLS;
+    }
+
+    /**
+     * Creates a parser only supporting the given protocols. Since most protocols refer to
+     * messages in the main Lightning API should "lnd" usually be included.
+     *
+     * @param protocols the names of the protocols to support, see SUPPORTED_PROTOCOLS.
+     * @throws IllegalArgumentException if no or an unsupported protocol was given.
+     */
+    public V1XMLParser(String... protocols) throws IllegalArgumentException{
+        if(protocols == null || protocols.length == 0){
+            throw new IllegalArgumentException("At least one XML protocol must be specified.");
+        }
+        List<String> requested = Arrays.asList(protocols);
+        for(String protocol : requested){
+            if(!SUPPORTED_PROTOCOLS.contains(protocol)){
+                throw new IllegalArgumentException("Unsupported XML protocol: " + protocol);
+            }
+        }
+        List<String> selected = new ArrayList<>();
+        for(String protocol : SUPPORTED_PROTOCOLS){
+            if(requested.contains(protocol)){
+                selected.add(protocol);
+            }
+        }
+        this.protocols = Collections.unmodifiableList(selected);
+    }
+
+    /**
+     *
+     * @return the names of the protocols supported by this parser, in load order.
+     */
+    public List<String> getProtocols(){
+        return protocols;
+    }
+
     /**
      * @return return the version of the related Lnd API.
      */
@@ -34,24 +107,11 @@ public class V1XMLParser extends XMLParser {
      */
     @Override
     protected String[] getSchemaLocations() {
-        return new String[]{
-                "/lnd_v1.xsd",
-                "/autopilot_v1.xsd",
-                "/chainnotifier_v1.xsd",
-                "/chainkit_v1.xsd",
-                "/invoices_v1.xsd",
-                "/router_v1.xsd",
-                "/signer_v1.xsd",
-                "/walletkit_v1.xsd",
-                "/watchtower_v1.xsd",
-                "/wtclient_v1.xsd",
-                "/verrpc_v1.xsd",
-                "/walletunlocker_v1.xsd",
-                "/stateservice_v1.xsd",
-                "/dev_v1.xsd",
-                "/neutrino_v1.xsd",
-                "/peers_v1.xsd"
-        };
+        String[] retval = new String[protocols.size()];
+        for(int i=0; i<retval.length; i++){
+            retval[i] = "/" + protocols.get(i) + "_v1.xsd";
+        }
+        return retval;
     }
 
     /**
@@ -59,21 +119,13 @@ public class V1XMLParser extends XMLParser {
      */
     @Override
     protected String getJAXBClassPath() {
-        return  "org.lightningj.lnd.wrapper.message:" +
-                "org.lightningj.lnd.wrapper.autopilot.message:"+
-                "org.lightningj.lnd.wrapper.chainnotifier.message:"+
-                "org.lightningj.lnd.wrapper.chainkit.message:"+
-                "org.lightningj.lnd.wrapper.invoices.message:"+
-                "org.lightningj.lnd.wrapper.router.message:"+
-                "org.lightningj.lnd.wrapper.signer.message:"+
-                "org.lightningj.lnd.wrapper.walletkit.message:" +
-                "org.lightningj.lnd.wrapper.watchtower.message:" +
-                "org.lightningj.lnd.wrapper.wtclient.message:" +
-                "org.lightningj.lnd.wrapper.verrpc.message:" +
-                "org.lightningj.lnd.wrapper.walletunlocker.message:" +
-                "org.lightningj.lnd.wrapper.stateservice.message:" +
-                "org.lightningj.lnd.wrapper.dev.message:" +
-                "org.lightningj.lnd.wrapper.neutrino.message:" +
-                "org.lightningj.lnd.wrapper.peers.message";
+        StringBuilder retval = new StringBuilder();
+        for(String protocol : protocols){
+            if(retval.length() > 0){
+                retval.append(':');
+            }
+            retval.append(protocol.equals("lnd") ? "org.lightningj.lnd.wrapper.message" : "org.lightningj.lnd.wrapper." + protocol + ".message");
+        }
+        return retval.toString();
     }
 }
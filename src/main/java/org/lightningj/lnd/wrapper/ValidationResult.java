@@ -19,6 +19,7 @@ import javax.json.Json;
 import javax.json.JsonArrayBuilder;
 import javax.json.JsonObjectBuilder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -45,6 +46,20 @@ public class ValidationResult {
         this.messageType = messageType;
     }
 
+    /**
+     * Creates an immutable valid result, that can be shared between validations of
+     * the same message type. Trying to add problems to the result throws UnsupportedOperationException.
+     *
+     * @param messageType the name of the related message.
+     * @return a new immutable valid result.
+     */
+    public static ValidationResult createValid(String messageType){
+        ValidationResult retval = new ValidationResult(messageType);
+        retval.messageErrors = Collections.emptyList();
+        retval.subMessageResults = Collections.emptyList();
+        return retval;
+    }
+
     /**
      *
      * @return true of no validation errors found in this message or any sub-messages.
@@ -13,31 +13,97 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper;
 
+import com.google.protobuf.Descriptors;
 import com.google.protobuf.GeneratedMessageV3;
 import io.grpc.Status;
 
 import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Wrapper factory converting a GRPC Message into it's wrapper object.
+ * <p>
+ *     Wrapper constructors are looked up in the MessageWrapperRegistry generated for each
+ *     protocol, so no reflection is performed when wrapping known API classes. Classes not
+ *     found in any registry are looked up using reflection once and then cached.
+ * </p>
  *
  * Created by Philip Vendil.
  */
 public class WrapperFactory {
 
+    private static Logger log =
+            Logger.getLogger(WrapperFactory.class.getName());
+
+    // When adding new protocols, remember to also add in build.gradle.
+    private static final String[] wrapperRegistries = {
+            "org.lightningj.lnd.wrapper.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.autopilot.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.chainnotifier.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.chainkit.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.invoices.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.router.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.signer.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.walletkit.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.watchtower.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.wtclient.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.verrpc.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.walletunlocker.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.stateservice.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.dev.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.peers.message.MessageWrapperRegistry",
+            "org.lightningj.lnd.wrapper.neutrino.message.MessageWrapperRegistry"
+    };
+
     private static final Map<String,String> wrapperPackages = new HashMap<>();
     static {
         wrapperPackages.put("org.lightningj.lnd.proto.LightningApi$","org.lightningj.lnd.wrapper.message.");
         wrapperPackages.put("org.lightningj.lnd.autopilot.proto.AutopilotOuterClass$","org.lightningj.lnd.wrapper.autopilot.message.");
         wrapperPackages.put("org.lightningj.lnd.chainnotifier.proto.ChainNotifierOuterClass$","org.lightningj.lnd.wrapper.chainnotifier.message.");
-        wrapperPackages.put("org.lightningj.lnd.invoices.proto.InvoicesOuterClass$"," org.lightningj.lnd.wrapper.invoices.message.");
+        wrapperPackages.put("org.lightningj.lnd.chainkit.proto.Chainkit$","org.lightningj.lnd.wrapper.chainkit.message.");
+        wrapperPackages.put("org.lightningj.lnd.invoices.proto.InvoicesOuterClass$","org.lightningj.lnd.wrapper.invoices.message.");
         wrapperPackages.put("org.lightningj.lnd.router.proto.RouterOuterClass$","org.lightningj.lnd.wrapper.router.message.");
         wrapperPackages.put("org.lightningj.lnd.signer.proto.SignerOuterClass$","org.lightningj.lnd.wrapper.signer.message.");
         wrapperPackages.put("org.lightningj.lnd.walletkit.proto.WalletKitOuterClass$","org.lightningj.lnd.wrapper.walletkit.message.");
+        wrapperPackages.put("org.lightningj.lnd.watchtower.proto.WatchtowerOuterClass$","org.lightningj.lnd.wrapper.watchtower.message.");
+        wrapperPackages.put("org.lightningj.lnd.wtclient.proto.Wtclient$","org.lightningj.lnd.wrapper.wtclient.message.");
+        wrapperPackages.put("org.lightningj.lnd.verrpc.proto.Verrpc$","org.lightningj.lnd.wrapper.verrpc.message.");
+        wrapperPackages.put("org.lightningj.lnd.walletunlocker.proto.Walletunlocker$","org.lightningj.lnd.wrapper.walletunlocker.message.");
+        wrapperPackages.put("org.lightningj.lnd.stateservice.proto.Stateservice$","org.lightningj.lnd.wrapper.stateservice.message.");
+        wrapperPackages.put("org.lightningj.lnd.dev.proto.DevOuterClass$","org.lightningj.lnd.wrapper.dev.message.");
+        wrapperPackages.put("org.lightningj.lnd.peers.proto.PeersOuterClass$","org.lightningj.lnd.wrapper.peers.message.");
+        wrapperPackages.put("org.lightningj.lnd.neutrino.proto.Neutrino$","org.lightningj.lnd.wrapper.neutrino.message.");
     }
 
+    /**
+     * Map of API class to wrapper constructor, populated from all generated registries
+     * when class is loaded and read only after that.
+     */
+    private static final Map<Class<?>, Function<GeneratedMessageV3, Message>> wrapperConstructors = new HashMap<>();
+
+    /**
+     * Map of message descriptor to default instance of the API class, populated from all generated
+     * registries when class is loaded and read only after that.
+     */
+    private static final Map<Descriptors.Descriptor, com.google.protobuf.Message> prototypes = new HashMap<>();
+    static {
+        for(String registryClassName : wrapperRegistries){
+            try {
+                Class<?> registryClass = WrapperFactory.class.getClassLoader().loadClass(registryClassName);
+                registryClass.getMethod("register", Map.class).invoke(null, wrapperConstructors);
+                registryClass.getMethod("registerPrototypes", Map.class).invoke(null, prototypes);
+            }catch(Exception e){
+                log.log(Level.FINE, "Couldn't load wrapper registry " + registryClassName + ", reflection will be used to wrap its messages: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private final Map<Class<?>, Function<GeneratedMessageV3, Message>> reflectiveConstructors = new ConcurrentHashMap<>();
 
     private static final WrapperFactory instance = new WrapperFactory();
 
@@ -58,9 +124,44 @@ public class WrapperFactory {
      * @throws ClientSideException if problems occurred constructing the wrapped object.
      */
     public Message wrap(GeneratedMessageV3 apiObject) throws ClientSideException{
+        Function<GeneratedMessageV3, Message> constructor = wrapperConstructors.get(apiObject.getClass());
+        if(constructor == null){
+            constructor = reflectiveConstructors.get(apiObject.getClass());
+            if(constructor == null){
+                constructor = lookupReflectiveConstructor(apiObject.getClass());
+                reflectiveConstructors.put(apiObject.getClass(), constructor);
+            }
+        }
+        try {
+            return constructor.apply(apiObject);
+        }catch(Exception e){
+            throw new  ClientSideException("Error constructing wrapper for GRPC object " + apiObject.getClass().getSimpleName()  + ", message: " + e.getMessage(),null,e);
+        }
+    }
+
+    /**
+     * Method to look up the default instance of the API class of a message type.
+     *
+     * @param descriptor the descriptor of the message type.
+     * @return the default instance of the related API class or null if the message type
+     * isn't part of any of the supported protocols.
+     */
+    public com.google.protobuf.Message getPrototype(Descriptors.Descriptor descriptor){
+        return prototypes.get(descriptor);
+    }
+
+    /**
+     * Method to look up the wrapper constructor of an API class using reflection. Only used
+     * for API classes not found in any generated MessageWrapperRegistry.
+     *
+     * @param apiClass the GRPC class to find wrapper constructor for.
+     * @return a function constructing a wrapped object using reflection.
+     * @throws ClientSideException if no related wrapper class or constructor could be found.
+     */
+    Function<GeneratedMessageV3, Message> lookupReflectiveConstructor(Class<?> apiClass) throws ClientSideException{
         Class c;
         try {
-            String sourceName = apiObject.getClass().getName();
+            String sourceName = apiClass.getName();
             String className = null;
             for(String sourcePackage : wrapperPackages.keySet())
             if(sourceName.startsWith(sourcePackage)){
@@ -69,18 +170,25 @@ public class WrapperFactory {
                 className = targetBasePackage + sourceName;
             }
             if(className == null){
-                throw new ClientSideException("Error looking up wrapper class, verify that wrapper class for API class: " + apiObject.getClass().getName() + " exists.", Status.INTERNAL);
+                throw new ClientSideException("Error looking up wrapper class, verify that wrapper class for API class: " + apiClass.getName() + " exists.", Status.INTERNAL);
             }
             c = WrapperFactory.class.getClassLoader().loadClass(className);
         }catch(Exception e){
-            throw new ClientSideException("Error converting GRPC object " + apiObject.getClass().getSimpleName() + " to wrapped object, message: " + e.getMessage(),null,e);
+            throw new ClientSideException("Error converting GRPC object " + apiClass.getSimpleName() + " to wrapped object, message: " + e.getMessage(),null,e);
         }
+        final Constructor constructor;
         try {
-            Constructor constructor = c.getConstructor(apiObject.getClass());
-            return (Message) constructor.newInstance(apiObject);
+            constructor = c.getConstructor(apiClass);
         }catch(Exception e){
-            throw new  ClientSideException("Error constructing wrapper for GRPC object " + apiObject.getClass().getSimpleName()  + ", message: " + e.getMessage(),null,e);
+            throw new  ClientSideException("Error constructing wrapper for GRPC object " + apiClass.getSimpleName()  + ", message: " + e.getMessage(),null,e);
         }
+        return apiObject -> {
+            try {
+                return (Message) constructor.newInstance(apiObject);
+            }catch(Exception e){
+                throw new IllegalStateException(e);
+            }
+        };
     }
 
 
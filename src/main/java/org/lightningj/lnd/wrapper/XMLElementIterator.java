@@ -0,0 +1,189 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.annotation.XmlRootElement;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterator reading all elements of a given message type from a XML document one by one
+ * using StAX, keeping only the current element in memory. Created by XMLParser.unmarshallElements.
+ * <p>
+ *     Since the Iterator interface doesn't allow checked exceptions, errors are thrown as
+ *     a XMLStreamingException with the JAXBException as cause, after which the iterator is closed.
+ *     The iterator is not thread-safe.
+ * </p>
+ * Example:
+ * <pre>
+ * try(XMLElementIterator&lt;Payment&gt; payments = xmlParser.unmarshallElements(inputStream, Payment.class)){
+ *     while(payments.hasNext()){
+ *         Payment payment = payments.next();
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class XMLElementIterator<T extends Message> implements Iterator<T>, Closeable {
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private final XMLParser parser;
+    private final Class<T> elementType;
+    private final String elementName;
+    private final String namespace;
+    private final XMLStreamReader reader;
+    private Unmarshaller unmarshaller;
+    private boolean positioned = false;
+    private boolean closed = false;
+
+    /**
+     * Opens the document for reading.
+     *
+     * @param parser the parser providing the unmarshaller.
+     * @param inputStream the stream to read the XML data from.
+     * @param elementType the type of messages to read.
+     * @param namespace the namespace of the elements to read.
+     * @throws JAXBException if problems occurred opening the document.
+     * @throws IllegalArgumentException if element type isn't a XML root element.
+     */
+    XMLElementIterator(XMLParser parser, InputStream inputStream, Class<T> elementType, String namespace) throws JAXBException, IllegalArgumentException{
+        XmlRootElement rootElement = elementType.getAnnotation(XmlRootElement.class);
+        if(rootElement == null){
+            throw new IllegalArgumentException("Invalid element type " + elementType.getSimpleName() + ", must be a XML root element.");
+        }
+        this.parser = parser;
+        this.elementType = elementType;
+        this.elementName = rootElement.name();
+        this.namespace = namespace;
+        try {
+            reader = inputFactory.createXMLStreamReader(inputStream);
+        }catch(XMLStreamException e){
+            throw new JAXBException("Error opening XML document: " + e.getMessage(), e);
+        }
+        unmarshaller = parser.acquireUnmarshaller();
+    }
+
+    /**
+     * Returns true if there is another element of the given type in the document.
+     *
+     * @return true if there is another element, false if end of document is reached or iterator is closed.
+     * @throws XMLStreamingException if problems occurred reading the document.
+     */
+    @Override
+    public boolean hasNext() {
+        if(closed){
+            return false;
+        }
+        if(positioned){
+            return true;
+        }
+        try {
+            while(true){
+                if(reader.getEventType() == XMLStreamConstants.START_ELEMENT &&
+                        elementName.equals(reader.getLocalName()) && namespace.equals(reader.getNamespaceURI())){
+                    positioned = true;
+                    return true;
+                }
+                if(!reader.hasNext()){
+                    close();
+                    return false;
+                }
+                reader.next();
+            }
+        }catch(XMLStreamException e){
+            throw error(new JAXBException("Error reading XML document: " + e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Unmarshalls the next element of the given type, validated against the XSD Schema.
+     *
+     * @return the next message.
+     * @throws NoSuchElementException if end of document is reached or iterator is closed.
+     * @throws XMLStreamingException if problems occurred reading or validating the element.
+     */
+    @Override
+    public T next() {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        positioned = false;
+        try {
+            return unmarshaller.unmarshal(reader, elementType).getValue();
+        }catch(JAXBException e){
+            // Failed unmarshaller is discarded instead of returned to the pool.
+            unmarshaller = null;
+            throw error(e);
+        }
+    }
+
+    /**
+     * Method to get a sequential Stream of the remaining elements. Closing the stream closes
+     * this iterator.
+     *
+     * @return a sequential ordered Stream of messages.
+     */
+    public Stream<T> stream(){
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    /**
+     * Closes the iterator, the underlying stream is not closed. Safe to call multiple times.
+     */
+    @Override
+    public void close() {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            reader.close();
+        }catch(XMLStreamException e){
+            // Nothing to clean up, the underlying stream is closed by the caller.
+        }
+        if(unmarshaller != null){
+            parser.releaseUnmarshaller(unmarshaller);
+            unmarshaller = null;
+        }
+    }
+
+    private XMLStreamingException error(JAXBException e){
+        close();
+        return new XMLStreamingException("Error reading XML element: " + e.getMessage(), e);
+    }
+
+    private static XMLInputFactory createInputFactory(){
+        XMLInputFactory retval = XMLInputFactory.newFactory();
+        retval.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        retval.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return retval;
+    }
+}
@@ -0,0 +1,327 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.annotation.XmlNs;
+import jakarta.xml.bind.annotation.XmlSchema;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writer streaming messages of the same type one by one as child elements of a container element
+ * using StAX, so large exports can be written with constant memory usage. Created by
+ * XMLParser.createElementWriter.
+ * <p>
+ *     The namespaces of the element type's package are declared once on the container element
+ *     and not repeated on every element. The writer is not thread-safe.
+ * </p>
+ * Example:
+ * <pre>
+ * try(XMLElementWriter writer = xmlParser.createElementWriter(outputStream, "payments", Payment.class)){
+ *     for(Payment payment : payments){
+ *         writer.write(payment);
+ *     }
+ * }
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class XMLElementWriter implements AutoCloseable {
+
+    private static final XMLOutputFactory outputFactory = XMLOutputFactory.newFactory();
+
+    private final Marshaller marshaller;
+    private final XMLStreamWriter writer;
+    private final NamespaceFilteringWriter filteringWriter;
+    private long count = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates the writer and writes the start of the document and the container element.
+     *
+     * @param parser the parser creating the marshaller.
+     * @param outputStream the stream to write the UTF-8 XML data to.
+     * @param containerElementName the local name of the container element.
+     * @param namespace the namespace of the container element.
+     * @param elementType the type of messages written, used to find the namespaces to declare.
+     * @throws JAXBException if problems occurred writing the start of the document.
+     */
+    XMLElementWriter(XMLParser parser, OutputStream outputStream, String containerElementName, String namespace,
+                     Class<? extends Message> elementType) throws JAXBException{
+        marshaller = parser.createMarshaller(false);
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+        Map<String,String> declaredNamespaces = new HashMap<>();
+        try {
+            writer = outputFactory.createXMLStreamWriter(outputStream, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement(XMLConstants.DEFAULT_NS_PREFIX, containerElementName, namespace);
+            writer.writeDefaultNamespace(namespace);
+            declaredNamespaces.put(XMLConstants.DEFAULT_NS_PREFIX, namespace);
+            Package p = elementType.getPackage();
+            XmlSchema xmlSchema = p != null ? p.getAnnotation(XmlSchema.class) : null;
+            if(xmlSchema != null){
+                for(XmlNs xmlNs : xmlSchema.xmlns()){
+                    writer.writeNamespace(xmlNs.prefix(), xmlNs.namespaceURI());
+                    declaredNamespaces.put(xmlNs.prefix(), xmlNs.namespaceURI());
+                }
+            }
+        }catch(XMLStreamException e){
+            throw new JAXBException("Error writing start of XML document: " + e.getMessage(), e);
+        }
+        filteringWriter = new NamespaceFilteringWriter(writer, declaredNamespaces);
+    }
+
+    /**
+     * Writes the message as the next element in the container. The message is
+     * validated against the XSD schema.
+     *
+     * @param message the message to write.
+     * @throws JAXBException if problems occurred converting the message into XML or writing to the stream.
+     * @throws IllegalStateException if the writer is closed.
+     */
+    public void write(Message message) throws JAXBException, IllegalStateException{
+        if(closed){
+            throw new IllegalStateException("XMLElementWriter is closed.");
+        }
+        marshaller.marshal(message, filteringWriter);
+        count++;
+    }
+
+    /**
+     *
+     * @return the number of elements written.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /**
+     * Ends the container element and the document and flushes the stream,
+     * the underlying stream is not closed. Safe to call multiple times.
+     *
+     * @throws JAXBException if problems occurred writing the end of the document.
+     */
+    @Override
+    public void close() throws JAXBException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        }catch(XMLStreamException e){
+            throw new JAXBException("Error writing end of XML document: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * XMLStreamWriter skipping the namespace declarations on the root of each marshalled
+     * element that are already declared, with the same prefix, on the container element.
+     */
+    private static class NamespaceFilteringWriter implements XMLStreamWriter {
+
+        private final XMLStreamWriter delegate;
+        private final Map<String,String> declaredNamespaces;
+        private int depth = 0;
+
+        NamespaceFilteringWriter(XMLStreamWriter delegate, Map<String,String> declaredNamespaces){
+            this.delegate = delegate;
+            this.declaredNamespaces = declaredNamespaces;
+        }
+
+        private boolean isDeclared(String prefix, String namespaceURI){
+            return depth == 1 && namespaceURI != null && namespaceURI.equals(declaredNamespaces.get(prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix));
+        }
+
+        @Override
+        public void writeNamespace(String prefix, String namespaceURI) throws XMLStreamException {
+            if(!isDeclared(prefix, namespaceURI)){
+                delegate.writeNamespace(prefix, namespaceURI);
+            }
+        }
+
+        @Override
+        public void writeDefaultNamespace(String namespaceURI) throws XMLStreamException {
+            if(!isDeclared(XMLConstants.DEFAULT_NS_PREFIX, namespaceURI)){
+                delegate.writeDefaultNamespace(namespaceURI);
+            }
+        }
+
+        @Override
+        public void writeStartElement(String localName) throws XMLStreamException {
+            depth++;
+            delegate.writeStartElement(localName);
+        }
+
+        @Override
+        public void writeStartElement(String namespaceURI, String localName) throws XMLStreamException {
+            depth++;
+            delegate.writeStartElement(namespaceURI, localName);
+        }
+
+        @Override
+        public void writeStartElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+            depth++;
+            delegate.writeStartElement(prefix, localName, namespaceURI);
+        }
+
+        @Override
+        public void writeEndElement() throws XMLStreamException {
+            depth--;
+            delegate.writeEndElement();
+        }
+
+        @Override
+        public void writeEmptyElement(String namespaceURI, String localName) throws XMLStreamException {
+            delegate.writeEmptyElement(namespaceURI, localName);
+        }
+
+        @Override
+        public void writeEmptyElement(String prefix, String localName, String namespaceURI) throws XMLStreamException {
+            delegate.writeEmptyElement(prefix, localName, namespaceURI);
+        }
+
+        @Override
+        public void writeEmptyElement(String localName) throws XMLStreamException {
+            delegate.writeEmptyElement(localName);
+        }
+
+        @Override
+        public void writeEndDocument() throws XMLStreamException {
+            // Fragments never end the container document.
+        }
+
+        @Override
+        public void close() throws XMLStreamException {
+            // Closed by the XMLElementWriter.
+        }
+
+        @Override
+        public void flush() throws XMLStreamException {
+            delegate.flush();
+        }
+
+        @Override
+        public void writeAttribute(String localName, String value) throws XMLStreamException {
+            delegate.writeAttribute(localName, value);
+        }
+
+        @Override
+        public void writeAttribute(String prefix, String namespaceURI, String localName, String value) throws XMLStreamException {
+            delegate.writeAttribute(prefix, namespaceURI, localName, value);
+        }
+
+        @Override
+        public void writeAttribute(String namespaceURI, String localName, String value) throws XMLStreamException {
+            delegate.writeAttribute(namespaceURI, localName, value);
+        }
+
+        @Override
+        public void writeComment(String data) throws XMLStreamException {
+            delegate.writeComment(data);
+        }
+
+        @Override
+        public void writeProcessingInstruction(String target) throws XMLStreamException {
+            delegate.writeProcessingInstruction(target);
+        }
+
+        @Override
+        public void writeProcessingInstruction(String target, String data) throws XMLStreamException {
+            delegate.writeProcessingInstruction(target, data);
+        }
+
+        @Override
+        public void writeCData(String data) throws XMLStreamException {
+            delegate.writeCData(data);
+        }
+
+        @Override
+        public void writeDTD(String dtd) throws XMLStreamException {
+            delegate.writeDTD(dtd);
+        }
+
+        @Override
+        public void writeEntityRef(String name) throws XMLStreamException {
+            delegate.writeEntityRef(name);
+        }
+
+        @Override
+        public void writeStartDocument() throws XMLStreamException {
+            // Fragments are written inside the already started document.
+        }
+
+        @Override
+        public void writeStartDocument(String version) throws XMLStreamException {
+            // Fragments are written inside the already started document.
+        }
+
+        @Override
+        public void writeStartDocument(String encoding, String version) throws XMLStreamException {
+            // Fragments are written inside the already started document.
+        }
+
+        @Override
+        public void writeCharacters(String text) throws XMLStreamException {
+            delegate.writeCharacters(text);
+        }
+
+        @Override
+        public void writeCharacters(char[] text, int start, int len) throws XMLStreamException {
+            delegate.writeCharacters(text, start, len);
+        }
+
+        @Override
+        public String getPrefix(String uri) throws XMLStreamException {
+            return delegate.getPrefix(uri);
+        }
+
+        @Override
+        public void setPrefix(String prefix, String uri) throws XMLStreamException {
+            delegate.setPrefix(prefix, uri);
+        }
+
+        @Override
+        public void setDefaultNamespace(String uri) throws XMLStreamException {
+            delegate.setDefaultNamespace(uri);
+        }
+
+        @Override
+        public void setNamespaceContext(NamespaceContext context) throws XMLStreamException {
+            delegate.setNamespaceContext(context);
+        }
+
+        @Override
+        public NamespaceContext getNamespaceContext() {
+            return delegate.getNamespaceContext();
+        }
+
+        @Override
+        public Object getProperty(String name) throws IllegalArgumentException {
+            return delegate.getProperty(name);
+        }
+    }
+}
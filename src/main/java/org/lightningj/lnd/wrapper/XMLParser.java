@@ -20,24 +20,52 @@ import jakarta.xml.bind.JAXBContext;
 import jakarta.xml.bind.JAXBException;
 import jakarta.xml.bind.Marshaller;
 import jakarta.xml.bind.Unmarshaller;
+import jakarta.xml.bind.annotation.XmlSchema;
 import javax.xml.transform.Source;
-import javax.xml.transform.SourceLocator;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class containing help methods to marshall and unmarshall XML data to messages.
+ * <p>
+ *     The parser is thread-safe. The JAXBContext and the XSD Schema are created once
+ *     and shared, while JAXB Marshallers and Unmarshallers, that aren't thread-safe, are
+ *     borrowed from bounded pools for the duration of each call. If more threads than the
+ *     pool size parse concurrently are additional instances created and discarded after use.
+ * </p>
  *
  * Created by Philip Vendil.
  */
 public abstract class XMLParser {
 
+    /**
+     * Default maximum number of idle instances kept of each kind of Marshaller and Unmarshaller.
+     */
+    public static final int DEFAULT_MAX_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final Pool<Unmarshaller> unmarshallerPool = new Pool<>();
+    private final Pool<Marshaller> marshallerPool = new Pool<>();
+    private final Pool<Marshaller> prettyPrintMarshallerPool = new Pool<>();
+    private volatile int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+
+    private final Object jaxbContextLock = new Object();
+    private final Object schemaLock = new Object();
+    private volatile JAXBContext jaxbContext = null;
+    private volatile Schema schema = null;
+
     /**
      *
      * @return return the version of the related Lnd API.
@@ -68,7 +96,26 @@ public abstract class XMLParser {
      * XML to Message.
      */
     public Message unmarshall(byte[] xmlData) throws JAXBException{
-        Object retval = getUnmarshaller().unmarshal(new ByteArrayInputStream(xmlData));
+        return unmarshall(new ByteArrayInputStream(xmlData));
+    }
+
+    /**
+     * Method to unmarshall a xml document read from an input stream into a Message.
+     * <p>
+     *     When unmarshalling is the supplied data validated against XSD Schema. The
+     *     stream is read until the end of the document but not closed.
+     * </p>
+     *
+     * @param inputStream the stream to read the XML data from.
+     * @return the converted message object.
+     * @throws JAXBException if problems occurred reading the stream or converting the object from
+     * XML to Message.
+     */
+    public Message unmarshall(InputStream inputStream) throws JAXBException{
+        Unmarshaller unmarshaller = acquireUnmarshaller();
+        Object retval = unmarshaller.unmarshal(inputStream);
+        // Only returned to the pool after successful use, leaving no state from failed parsing.
+        releaseUnmarshaller(unmarshaller);
         if(retval instanceof Message){
             return (Message) retval;
         }
@@ -102,86 +149,350 @@ public abstract class XMLParser {
      */
     public byte[] marshall(Message message, boolean prettyPrint) throws JAXBException, IllegalArgumentException{
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        if(prettyPrint){
-            getPrettyPrintMarshaller().marshal(message,baos);
-        }else{
-            getMarshaller().marshal(message,baos);
-        }
+        marshall(message, baos, prettyPrint);
         return baos.toByteArray();
     }
 
+    /**
+     * Method to write a Message as XML to an output stream without
+     * buffering the whole document in memory.
+     *
+     * @param message the message to convert into XML data.
+     * @param outputStream the stream to write the UTF-8 XML data to, flushed but not closed.
+     * @throws JAXBException if problems occurred converting
+     * the object from message into XML data or writing to the stream.
+     * @throws IllegalArgumentException if supplied message was null or otherwise illegal
+     */
+    public void marshall(Message message, OutputStream outputStream) throws JAXBException, IllegalArgumentException{
+        marshall(message, outputStream, false);
+    }
+
+    /**
+     * Method to write a Message as XML to an output stream with option to
+     * have the output formatted into indented (pretty print) format.
+     *
+     * @param message the message to convert into XML data.
+     * @param outputStream the stream to write the UTF-8 XML data to, flushed but not closed.
+     * @param prettyPrint if the XML output should be in pretty print format.
+     * @throws JAXBException if problems occurred converting
+     * the object from message into XML data or writing to the stream.
+     * @throws IllegalArgumentException if supplied message was null or otherwise illegal
+     */
+    public void marshall(Message message, OutputStream outputStream, boolean prettyPrint) throws JAXBException, IllegalArgumentException{
+        Marshaller marshaller = acquireMarshaller(prettyPrint);
+        marshaller.marshal(message,outputStream);
+        releaseMarshaller(marshaller, prettyPrint);
+    }
+
+    /**
+     * Creates a writer that streams messages of the same type one by one as child elements of
+     * a container element, for example exporting all payments of a paginated ListPayments
+     * query as a <i>&lt;payments&gt;</i> document without keeping all of them in memory.
+     * Each element is validated against the XSD Schema when written.
+     *
+     * @param outputStream the stream to write the UTF-8 XML data to, not closed by the writer.
+     * @param containerElementName the local name of the container element, created in the
+     *                             namespace of the element type.
+     * @param elementType the type of messages written.
+     * @return a new element writer that must be closed to end the document.
+     * @throws JAXBException if problems occurred creating the writer or writing the start of the document.
+     */
+    public XMLElementWriter createElementWriter(OutputStream outputStream, String containerElementName,
+                                                Class<? extends Message> elementType) throws JAXBException{
+        return new XMLElementWriter(this, outputStream, containerElementName, getNamespace(elementType), elementType);
+    }
+
+    /**
+     * Reads all elements of the given message type from a XML document one by one using StAX,
+     * without loading the whole document into memory. The elements can be on any level of the
+     * document, so both documents written by an XMLElementWriter and a regular marshalled
+     * message such as a ListPaymentsResponse can be read, returning each Payment in order.
+     * Each element is validated against the XSD Schema when read.
+     *
+     * @param inputStream the stream to read the XML data from, not closed by the iterator.
+     * @param elementType the type of message to read.
+     * @param <T> the type of message to read.
+     * @return an iterator of unmarshalled messages that should be closed after use.
+     * @throws JAXBException if problems occurred opening the document.
+     * @throws IllegalArgumentException if element type isn't a XML root element.
+     */
+    public <T extends Message> XMLElementIterator<T> unmarshallElements(InputStream inputStream, Class<T> elementType) throws JAXBException, IllegalArgumentException{
+        return new XMLElementIterator<>(this, inputStream, elementType, getNamespace(elementType));
+    }
+
 
     /**
-     * Loads related XSD schema into Schema object.
+     * Returns the related XSD schemas loaded into a Schema object. The schema is
+     * loaded once and then shared, Schema objects are thread-safe.
+     *
      * @return generated schema used for validation of XML objects.
      * @throws SAXException if loading of schema failed.
      */
     public Schema getSchema() throws SAXException {
-        String[] schemaLocations = getSchemaLocations();
-        Source[] sources = new Source[schemaLocations.length];
-        for(int i=0; i <schemaLocations.length; i++){
-            sources[i] = new StreamSource(getClass().getResourceAsStream(schemaLocations[i]));
+        Schema retval = schema;
+        if(retval == null){
+            synchronized (schemaLock){
+                retval = schema;
+                if(retval == null){
+                    retval = loadSchema();
+                    schema = retval;
+                }
+            }
         }
-        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-
+        return retval;
+    }
 
-        Schema schema = schemaFactory.newSchema(sources);
+    /**
+     * Initializes the JAXBContext and compiles the XSD schemas in parallel on the
+     * common fork join pool, see warmUp(Executor).
+     *
+     * @return a future completed with this parser when initialization is done.
+     */
+    public CompletableFuture<XMLParser> warmUp(){
+        return warmUp(ForkJoinPool.commonPool());
+    }
 
-        return schema;
+    /**
+     * Initializes the JAXBContext and compiles the XSD schemas in parallel on the given
+     * executor, followed by creation of one pooled Marshaller and Unmarshaller. Should be called
+     * at application startup so the first XML call on a request thread doesn't have to wait for
+     * the initialization. Calls made before the warm up is done wait for the ongoing
+     * initialization instead of starting a new one.
+     *
+     * @param executor the executor running the initialization.
+     * @return a future completed with this parser when initialization is done, or
+     * completed exceptionally with the JAXBException or SAXException if initialization failed.
+     */
+    public CompletableFuture<XMLParser> warmUp(Executor executor){
+        CompletableFuture<JAXBContext> contextFuture = supplyAsync(this::getJAXBContext, executor);
+        CompletableFuture<Schema> schemaFuture = supplyAsync(this::getSchema, executor);
+        return contextFuture.thenCombineAsync(schemaFuture, (initializedContext, initializedSchema) -> {
+            try {
+                unmarshallerPool.release(createUnmarshaller(), maxPoolSize);
+                marshallerPool.release(createMarshaller(false), maxPoolSize);
+            }catch(JAXBException e){
+                throw new CompletionException(e);
+            }
+            return this;
+        }, executor);
     }
 
+    /**
+     *
+     * @param maxPoolSize the maximum number of idle instances kept of each kind of
+     *                    Marshaller and Unmarshaller, default two per available processor.
+     *                    Setting 0 disables pooling.
+     */
+    public void setMaxPoolSize(int maxPoolSize){
+        if(maxPoolSize < 0){
+            throw new IllegalArgumentException("Invalid max pool size: " + maxPoolSize + ", must be 0 or greater.");
+        }
+        this.maxPoolSize = maxPoolSize;
+    }
 
+    /**
+     *
+     * @return the maximum number of idle instances kept of each kind of Marshaller and Unmarshaller.
+     */
+    public int getMaxPoolSize(){
+        return maxPoolSize;
+    }
 
     /**
-     * Help method maintaining the JAXB Context.
+     * Help method maintaining the JAXB Context, created once and shared
+     * since JAXBContext is thread-safe.
      */
-    private JAXBContext jaxbContext = null;
     protected JAXBContext getJAXBContext() throws JAXBException{
-        if(jaxbContext== null){
-            jaxbContext = JAXBContext.newInstance(getJAXBClassPath());
+        JAXBContext retval = jaxbContext;
+        if(retval == null){
+            synchronized (jaxbContextLock){
+                retval = jaxbContext;
+                if(retval == null){
+                    retval = JAXBContext.newInstance(getJAXBClassPath());
+                    jaxbContext = retval;
+                }
+            }
         }
-        return jaxbContext;
+        return retval;
+    }
+
+    /**
+     * Creates a new Unmarshaller validating against the shared schema. Called
+     * when no pooled instance is available.
+     *
+     * @return a new Unmarshaller.
+     * @throws JAXBException if problems occurred creating the unmarshaller or loading the schema.
+     */
+    protected Unmarshaller createUnmarshaller() throws JAXBException{
+        Unmarshaller retval = getJAXBContext().createUnmarshaller();
+        retval.setSchema(getSchemaAsJAXB());
+        return retval;
     }
 
+    /**
+     * Creates a new Marshaller validating against the shared schema. Called
+     * when no pooled instance is available.
+     *
+     * @param prettyPrint if the marshaller should generate formatted output.
+     * @return a new Marshaller.
+     * @throws JAXBException if problems occurred creating the marshaller or loading the schema.
+     */
+    protected Marshaller createMarshaller(boolean prettyPrint) throws JAXBException{
+        Marshaller retval = getJAXBContext().createMarshaller();
+        retval.setSchema(getSchemaAsJAXB());
+        if(prettyPrint){
+            retval.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        }
+        return retval;
+    }
 
-    private Unmarshaller unmarshaller = null;
+    /**
+     * Returns a new Unmarshaller validating against the shared schema, the instance
+     * isn't pooled.
+     *
+     * @return a new Unmarshaller.
+     * @throws JAXBException if problems occurred creating the unmarshaller or loading the schema.
+     * @deprecated the parser no longer keeps a single Unmarshaller, use createUnmarshaller()
+     * instead. Will be removed in a later major release.
+     */
+    @Deprecated
     protected Unmarshaller getUnmarshaller() throws JAXBException{
-        if(unmarshaller == null){
-            unmarshaller = getJAXBContext().createUnmarshaller();
-            try {
-                unmarshaller.setSchema(getSchema());
-            }catch(SAXException e){
-                throw new JAXBException("Error generating XML Schema: " + e.getMessage(),e);
-            }
-        }
-        return unmarshaller;
+        return createUnmarshaller();
     }
 
-    private Marshaller marshaller = null;
+    /**
+     * Returns a new Marshaller validating against the shared schema, the instance
+     * isn't pooled.
+     *
+     * @return a new Marshaller.
+     * @throws JAXBException if problems occurred creating the marshaller or loading the schema.
+     * @deprecated the parser no longer keeps a single Marshaller, use createMarshaller(false)
+     * instead. Will be removed in a later major release.
+     */
+    @Deprecated
     protected Marshaller getMarshaller() throws JAXBException{
-        if(marshaller == null){
-            marshaller = createMarshaller();
-        }
-        return marshaller;
+        return createMarshaller(false);
     }
 
-    private Marshaller prettyPrintMarshaller = null;
+    /**
+     * Returns a new Marshaller generating formatted output and validating against the
+     * shared schema, the instance isn't pooled.
+     *
+     * @return a new pretty print Marshaller.
+     * @throws JAXBException if problems occurred creating the marshaller or loading the schema.
+     * @deprecated the parser no longer keeps a single Marshaller, use createMarshaller(true)
+     * instead. Will be removed in a later major release.
+     */
+    @Deprecated
     protected Marshaller getPrettyPrintMarshaller() throws JAXBException{
-        if(prettyPrintMarshaller == null){
-            prettyPrintMarshaller = createMarshaller();
-            prettyPrintMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-        }
-        return prettyPrintMarshaller;
+        return createMarshaller(true);
     }
 
-    private Marshaller createMarshaller() throws JAXBException{
-        Marshaller retval = getJAXBContext().createMarshaller();
+    /**
+     *
+     * @return the number of idle Unmarshallers currently in the pool.
+     */
+    int getPooledUnmarshallerCount(){
+        return unmarshallerPool.size();
+    }
+
+    /**
+     *
+     * @return the number of idle non pretty print Marshallers currently in the pool.
+     */
+    int getPooledMarshallerCount(){
+        return marshallerPool.size();
+    }
+
+    Unmarshaller acquireUnmarshaller() throws JAXBException{
+        Unmarshaller retval = unmarshallerPool.poll();
+        return retval != null ? retval : createUnmarshaller();
+    }
+
+    Marshaller acquireMarshaller(boolean prettyPrint) throws JAXBException{
+        Marshaller retval = (prettyPrint ? prettyPrintMarshallerPool : marshallerPool).poll();
+        return retval != null ? retval : createMarshaller(prettyPrint);
+    }
+
+    void releaseMarshaller(Marshaller marshaller, boolean prettyPrint){
+        (prettyPrint ? prettyPrintMarshallerPool : marshallerPool).release(marshaller, maxPoolSize);
+    }
+
+    void releaseUnmarshaller(Unmarshaller unmarshaller){
+        unmarshallerPool.release(unmarshaller, maxPoolSize);
+    }
+
+    private static String getNamespace(Class<?> elementType){
+        Package p = elementType.getPackage();
+        XmlSchema xmlSchema = p != null ? p.getAnnotation(XmlSchema.class) : null;
+        return xmlSchema != null ? xmlSchema.namespace() : XMLConstants.NULL_NS_URI;
+    }
+
+    private Schema getSchemaAsJAXB() throws JAXBException{
         try {
-            retval.setSchema(getSchema());
+            return getSchema();
         }catch(SAXException e){
             throw new JAXBException("Error generating XML Schema: " + e.getMessage(),e);
         }
-        return retval;
+    }
+
+    private Schema loadSchema() throws SAXException{
+        String[] schemaLocations = getSchemaLocations();
+        Source[] sources = new Source[schemaLocations.length];
+        for(int i=0; i <schemaLocations.length; i++){
+            sources[i] = new StreamSource(getClass().getResourceAsStream(schemaLocations[i]));
+            // Set system id so relative imports of schemas not in the list can be resolved from class path.
+            URL url = getClass().getResource(schemaLocations[i]);
+            if(url != null){
+                sources[i].setSystemId(url.toExternalForm());
+            }
+        }
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+
+        return schemaFactory.newSchema(sources);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(Initializer<T> initializer, Executor executor){
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return initializer.init();
+            }catch(JAXBException | SAXException e){
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @FunctionalInterface
+    private interface Initializer<T> {
+        T init() throws JAXBException, SAXException;
+    }
+
+    /**
+     * Lock free bounded pool of idle instances.
+     */
+    private static class Pool<T> {
+        private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        T poll(){
+            T retval = idle.poll();
+            if(retval != null){
+                size.decrementAndGet();
+            }
+            return retval;
+        }
+
+        void release(T instance, int maxSize){
+            if(size.incrementAndGet() <= maxSize){
+                idle.offer(instance);
+            }else{
+                size.decrementAndGet();
+            }
+        }
+
+        int size(){
+            return size.get();
+        }
     }
 
 }
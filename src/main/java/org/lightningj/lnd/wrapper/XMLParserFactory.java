@@ -13,9 +13,13 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * Factory class to retrieve Singleton XML Parser within the factory instance.
@@ -26,6 +30,8 @@ public class XMLParserFactory {
 
 
     private Map<String, XMLParser> xmlParsers = new HashMap<>();
+    private Map<String, Function<String[], XMLParser>> protocolParserFactories = new HashMap<>();
+    private Map<String, XMLParser> protocolParsers = new ConcurrentHashMap<>();
 
     /**
      * Constructor for new XMLParser that initiates all supported versions of XML Parsers.
@@ -34,6 +40,7 @@ public class XMLParserFactory {
     public XMLParserFactory(){
         XMLParser v1Parser = new V1XMLParser();
         xmlParsers.put(v1Parser.getVersion(),v1Parser);
+        protocolParserFactories.put(v1Parser.getVersion(), V1XMLParser::new);
     }
 
     /**
@@ -51,6 +58,29 @@ public class XMLParserFactory {
         return retval;
     }
 
+    /**
+     * Method to retrieve a XMLParser for a given version only loading the JAXB packages and
+     * XSD schemas of the given protocols, which reduces startup time. The same instance is
+     * returned for the same set of protocols.
+     *
+     * @param version the version to retrieve.
+     * @param protocols the names of the protocols to support, for example "lnd" and "invoices".
+     * @return the corresponding XMLParser.
+     * @throws IllegalArgumentException if unsupported version or protocol found.
+     */
+    public XMLParser getXMLParser(String version, String... protocols) throws IllegalArgumentException{
+        Function<String[], XMLParser> parserFactory = protocolParserFactories.get(version);
+        if(parserFactory == null){
+            throw new IllegalArgumentException("Error no XML Parser with version " + version + " supported.");
+        }
+        String key = version + ":" + (protocols == null ? "" : String.join(",", new TreeSet<>(Arrays.asList(protocols))));
+        XMLParser retval = protocolParsers.get(key);
+        if(retval == null){
+            retval = protocolParsers.computeIfAbsent(key, k -> parserFactory.apply(protocols));
+        }
+        return retval;
+    }
+
     /**
      * Returns a set of supported XML Parser versions.
      *
@@ -0,0 +1,39 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper;
+
+import jakarta.xml.bind.JAXBException;
+
+/**
+ * Unchecked exception thrown by XMLElementIterator if problems occurred
+ * reading or unmarshalling the next element of a XML document.
+ *
+ * @see XMLElementIterator
+ * Created by Philip Vendil.
+ */
+public class XMLStreamingException extends RuntimeException {
+
+    public XMLStreamingException(String message, JAXBException cause){
+        super(message, cause);
+    }
+
+    /**
+     *
+     * @return the underlying JAXBException.
+     */
+    @Override
+    public synchronized JAXBException getCause() {
+        return (JAXBException) super.getCause();
+    }
+}
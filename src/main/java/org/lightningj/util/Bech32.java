@@ -0,0 +1,242 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util;
+
+/**
+ * Bech32 and Bech32m encoder/decoder utility class, implementing BIP-173 and BIP-350.
+ * <p>
+ *     Decoded data is returned as an array of 5 bit words, use convertBits() to
+ *     convert between 5 bit words and bytes. Lightning payment requests (BOLT11) are
+ *     Bech32 encoded without the 90 character length limit.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+public class Bech32 {
+
+    /**
+     * The checksum variant of encoded data.
+     */
+    public enum Encoding{
+        /** Original checksum defined in BIP-173, used in segwit v0 addresses and BOLT11 */
+        BECH32,
+        /** Checksum defined in BIP-350, used in segwit v1+ addresses */
+        BECH32M
+    }
+
+    private static final String CHARSET = "qpzry9x8gf2tvdw0s3jn54khce6mua7l";
+    private static final int BECH32_CONST = 1;
+    private static final int BECH32M_CONST = 0x2bc830a3;
+    private static final int CHECKSUM_LENGTH = 6;
+
+    private static final byte[] decodeMap = new byte[128];
+
+    static{
+        for(int i=0; i<decodeMap.length; i++){
+            decodeMap[i] = -1;
+        }
+        for(int i=0; i<CHARSET.length(); i++){
+            decodeMap[CHARSET.charAt(i)] = (byte) i;
+            decodeMap[Character.toUpperCase(CHARSET.charAt(i))] = (byte) i;
+        }
+    }
+
+    /**
+     * Class containing the result of a Bech32 decoding.
+     */
+    public static class Decoded {
+        private final String hrp;
+        private final byte[] data;
+        private final Encoding encoding;
+
+        Decoded(String hrp, byte[] data, Encoding encoding) {
+            this.hrp = hrp;
+            this.data = data;
+            this.encoding = encoding;
+        }
+
+        /**
+         * @return the lower case human readable part.
+         */
+        public String getHrp() {
+            return hrp;
+        }
+
+        /**
+         * @return the data part as 5 bit words, without checksum.
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * @return the checksum variant used.
+         */
+        public Encoding getEncoding() {
+            return encoding;
+        }
+    }
+
+    /**
+     * Method to decode a Bech32 or Bech32m encoded string with a max length of 90 characters.
+     *
+     * @param data the string to decode.
+     * @return the decoded human readable part and 5 bit data words.
+     * @throws IllegalArgumentException if invalid Bech32 data was specified.
+     */
+    public static Decoded decode(String data) throws IllegalArgumentException{
+        return decode(data, 90);
+    }
+
+    /**
+     * Method to decode a Bech32 or Bech32m encoded string.
+     *
+     * @param data the string to decode.
+     * @param maxLength the max allowed length of the string, -1 for no limit.
+     * @return the decoded human readable part and 5 bit data words.
+     * @throws IllegalArgumentException if invalid Bech32 data was specified.
+     */
+    public static Decoded decode(String data, int maxLength) throws IllegalArgumentException{
+        if(data == null){
+            throw new IllegalArgumentException("Invalid Bech32 data, cannot be null.");
+        }
+        int length = data.length();
+        if(maxLength >= 0 && length > maxLength){
+            throw new IllegalArgumentException("Invalid Bech32 data, exceeds max length of " + maxLength + " characters.");
+        }
+        boolean hasLower = false;
+        boolean hasUpper = false;
+        for(int i=0; i<length; i++){
+            char c = data.charAt(i);
+            if(c < 33 || c > 126){
+                throw new IllegalArgumentException("Invalid Bech32 data, contains invalid character at position " + i + ".");
+            }
+            hasLower |= (c >= 'a' && c <= 'z');
+            hasUpper |= (c >= 'A' && c <= 'Z');
+        }
+        if(hasLower && hasUpper){
+            throw new IllegalArgumentException("Invalid Bech32 data, mixed case is not allowed.");
+        }
+        int separator = data.lastIndexOf('1');
+        if(separator < 1 || separator + CHECKSUM_LENGTH + 1 > length){
+            throw new IllegalArgumentException("Invalid Bech32 data, invalid separator position.");
+        }
+        String hrp = data.substring(0, separator).toLowerCase();
+        byte[] words = new byte[length - separator - 1];
+        for(int i=0; i<words.length; i++){
+            char c = data.charAt(separator + 1 + i);
+            byte value = c < 128 ? decodeMap[c] : -1;
+            if(value < 0){
+                throw new IllegalArgumentException("Invalid Bech32 data, invalid character '" + c + "' in data part.");
+            }
+            words[i] = value;
+        }
+        int checksum = polymod(hrp, words, words.length);
+        Encoding encoding;
+        if(checksum == BECH32_CONST){
+            encoding = Encoding.BECH32;
+        }else if(checksum == BECH32M_CONST){
+            encoding = Encoding.BECH32M;
+        }else{
+            throw new IllegalArgumentException("Invalid Bech32 data, checksum verification failed.");
+        }
+        byte[] dataWords = new byte[words.length - CHECKSUM_LENGTH];
+        System.arraycopy(words, 0, dataWords, 0, dataWords.length);
+        return new Decoded(hrp, dataWords, encoding);
+    }
+
+    /**
+     * Method to encode 5 bit data words into a lower case Bech32 or Bech32m string.
+     *
+     * @param hrp the human readable part.
+     * @param data the 5 bit words to encode.
+     * @param encoding the checksum variant to use.
+     * @return the encoded string.
+     */
+    public static String encode(String hrp, byte[] data, Encoding encoding){
+        hrp = hrp.toLowerCase();
+        byte[] words = new byte[data.length + CHECKSUM_LENGTH];
+        System.arraycopy(data, 0, words, 0, data.length);
+        int checksum = polymod(hrp, words, words.length) ^ (encoding == Encoding.BECH32 ? BECH32_CONST : BECH32M_CONST);
+        for(int i=0; i<CHECKSUM_LENGTH; i++){
+            words[data.length + i] = (byte) ((checksum >>> (5 * (5 - i))) & 31);
+        }
+        StringBuilder sb = new StringBuilder(hrp.length() + 1 + words.length);
+        sb.append(hrp).append('1');
+        for(byte word : words){
+            sb.append(CHARSET.charAt(word));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method to convert a sequence of fromBits sized values into toBits sized values, for
+     * instance between 5 bit words and 8 bit bytes.
+     *
+     * @param data the input data.
+     * @param offset the offset of first value to convert in input data.
+     * @param length the number of values to convert.
+     * @param fromBits the number of bits in each input value.
+     * @param toBits the number of bits in each output value.
+     * @param pad if remaining bits should be padded with zeros into a last value, if false
+     *            are remaining bits dropped.
+     * @return the converted data.
+     */
+    public static byte[] convertBits(byte[] data, int offset, int length, int fromBits, int toBits, boolean pad){
+        int totalBits = length * fromBits;
+        byte[] retval = new byte[pad ? (totalBits + toBits - 1) / toBits : totalBits / toBits];
+        int acc = 0;
+        int bits = 0;
+        int maxValue = (1 << toBits) - 1;
+        int maxAcc = (1 << (fromBits + toBits - 1)) - 1;
+        int pos = 0;
+        for(int i=offset; i<offset + length; i++){
+            acc = ((acc << fromBits) | (data[i] & ((1 << fromBits) - 1))) & maxAcc;
+            bits += fromBits;
+            while(bits >= toBits){
+                bits -= toBits;
+                retval[pos++] = (byte) ((acc >>> bits) & maxValue);
+            }
+        }
+        if(pad && bits > 0){
+            retval[pos] = (byte) ((acc << (toBits - bits)) & maxValue);
+        }
+        return retval;
+    }
+
+    private static int polymod(String hrp, byte[] words, int length){
+        int chk = 1;
+        for(int i=0; i<hrp.length(); i++){
+            chk = polymodStep(chk) ^ (hrp.charAt(i) >> 5);
+        }
+        chk = polymodStep(chk);
+        for(int i=0; i<hrp.length(); i++){
+            chk = polymodStep(chk) ^ (hrp.charAt(i) & 31);
+        }
+        for(int i=0; i<length; i++){
+            chk = polymodStep(chk) ^ words[i];
+        }
+        return chk;
+    }
+
+    private static int polymodStep(int pre){
+        int b = pre >>> 25;
+        return ((pre & 0x1ffffff) << 5)
+                ^ (-((b) & 1) & 0x3b6a57b2)
+                ^ (-((b >> 1) & 1) & 0x26508e6d)
+                ^ (-((b >> 2) & 1) & 0x1ea119fa)
+                ^ (-((b >> 3) & 1) & 0x3d4233dd)
+                ^ (-((b >> 4) & 1) & 0x2a1462b3);
+    }
+}
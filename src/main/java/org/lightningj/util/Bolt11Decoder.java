@@ -0,0 +1,445 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util;
+
+import com.google.protobuf.ByteString;
+import org.lightningj.lnd.proto.LightningApi;
+import org.lightningj.lnd.wrapper.ClientSideException;
+import org.lightningj.lnd.wrapper.Message;
+import org.lightningj.lnd.wrapper.WrapperFactory;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Offline decoder of BOLT11 lightning payment requests, returning the same PayReq
+ * message as the LND DecodePayReq call without the GRPC round trip.
+ * <p>
+ *     Performs Bech32 decoding, parsing of tagged fields and recovery of the payee
+ *     public key from the signature. If the payment request contains an explicit
+ *     payee (n field) is it verified against the recovered key. Unknown tagged fields
+ *     are ignored.
+ * </p>
+ * <p>
+ *     Fields are set as by LND: expiry defaults to 3600 seconds, cltv expiry to 18
+ *     blocks, feature names follow LND naming and the fallback address is encoded for the
+ *     network given by the currency prefix.
+ * </p>
+ * Example:
+ * <pre>
+ * PayReq payReq = Bolt11Decoder.decode("lnbc1...");
+ * </pre>
+ *
+ * Created by Philip Vendil.
+ */
+public class Bolt11Decoder {
+
+    public static final long DEFAULT_EXPIRY = 3600;
+    public static final long DEFAULT_CLTV_EXPIRY = 18;
+
+    private static final String PREFIX = "ln";
+    private static final String URI_PREFIX = "lightning:";
+    private static final int TIMESTAMP_WORDS = 7;
+    private static final int SIGNATURE_WORDS = 104;
+    private static final int HOP_HINT_LENGTH = 51;
+
+    private static final int TYPE_PAYMENT_HASH = 1;
+    private static final int TYPE_ROUTE_HINT = 3;
+    private static final int TYPE_FEATURES = 5;
+    private static final int TYPE_EXPIRY = 6;
+    private static final int TYPE_FALLBACK_ADDRESS = 9;
+    private static final int TYPE_DESCRIPTION = 13;
+    private static final int TYPE_PAYMENT_ADDR = 16;
+    private static final int TYPE_PAYEE = 19;
+    private static final int TYPE_DESCRIPTION_HASH = 23;
+    private static final int TYPE_MIN_FINAL_CLTV_EXPIRY = 24;
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+    private static final String BASE58_CHARS = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+
+    /**
+     * Network settings derived from the currency prefix of a payment request.
+     */
+    private enum Network {
+        REGTEST("bcrt", "bcrt", 0x6f, 0xc4),
+        MAINNET("bc", "bc", 0x00, 0x05),
+        SIGNET("tbs", "tb", 0x6f, 0xc4),
+        TESTNET("tb", "tb", 0x6f, 0xc4),
+        SIMNET("sb", "sb", 0x3f, 0x7b);
+
+        final String currencyPrefix;
+        final String segwitHrp;
+        final int p2pkhVersion;
+        final int p2shVersion;
+
+        Network(String currencyPrefix, String segwitHrp, int p2pkhVersion, int p2shVersion) {
+            this.currencyPrefix = currencyPrefix;
+            this.segwitHrp = segwitHrp;
+            this.p2pkhVersion = p2pkhVersion;
+            this.p2shVersion = p2shVersion;
+        }
+    }
+
+    private static final Map<Integer,String> featureNames = new HashMap<>();
+
+    static{
+        addFeatureName(0, "data-loss-protect");
+        addFeatureName(2, "initial-routing-sync");
+        addFeatureName(4, "upfront-shutdown-script");
+        addFeatureName(6, "gossip-queries");
+        addFeatureName(8, "tlv-onion");
+        addFeatureName(10, "gossip-queries-ex");
+        addFeatureName(12, "static-remote-key");
+        addFeatureName(14, "payment-addr");
+        addFeatureName(16, "multi-path-payments");
+        addFeatureName(18, "wumbo-channels");
+        addFeatureName(20, "anchor-commitments");
+        addFeatureName(22, "anchors-zero-fee-htlc-tx");
+        addFeatureName(24, "route-blinding");
+        addFeatureName(26, "shutdown-any-segwit");
+        addFeatureName(30, "amp");
+        addFeatureName(44, "explicit-commitment-type");
+        addFeatureName(46, "scid-alias");
+        addFeatureName(48, "payment-metadata");
+        addFeatureName(50, "zero-conf");
+        addFeatureName(54, "keysend");
+        addFeatureName(2022, "script-enforced-lease");
+    }
+
+    private static void addFeatureName(int requiredBit, String name){
+        featureNames.put(requiredBit, name);
+        featureNames.put(requiredBit + 1, name);
+    }
+
+    /**
+     * Method to decode a BOLT11 payment request into a wrapped PayReq message.
+     *
+     * @param paymentRequest the bech32 encoded payment request, optionally prefixed with 'lightning:'.
+     * @param <T> the wrapped PayReq type, i.e org.lightningj.lnd.wrapper.message.PayReq.
+     * @return a wrapped PayReq message with the same content as returned by the DecodePayReq call.
+     * @throws IllegalArgumentException if payment request was invalid.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Message<LightningApi.PayReq>> T decode(String paymentRequest) throws IllegalArgumentException{
+        try {
+            return (T) WrapperFactory.getInstance().wrap(decodeToApi(paymentRequest));
+        }catch (ClientSideException e){
+            throw new IllegalStateException("Error wrapping decoded PayReq: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Method to decode a BOLT11 payment request into a low level API PayReq message.
+     *
+     * @param paymentRequest the bech32 encoded payment request, optionally prefixed with 'lightning:'.
+     * @return a PayReq message with the same content as returned by the DecodePayReq call.
+     * @throws IllegalArgumentException if payment request was invalid.
+     */
+    public static LightningApi.PayReq decodeToApi(String paymentRequest) throws IllegalArgumentException{
+        if(paymentRequest == null){
+            throw new IllegalArgumentException("Invalid payment request, cannot be null.");
+        }
+        if(paymentRequest.regionMatches(true, 0, URI_PREFIX, 0, URI_PREFIX.length())){
+            paymentRequest = paymentRequest.substring(URI_PREFIX.length());
+        }
+        Bech32.Decoded decoded = Bech32.decode(paymentRequest, -1);
+        if(decoded.getEncoding() != Bech32.Encoding.BECH32){
+            throw new IllegalArgumentException("Invalid payment request, must use Bech32 checksum.");
+        }
+        String hrp = decoded.getHrp();
+        byte[] words = decoded.getData();
+        if(!hrp.startsWith(PREFIX)){
+            throw new IllegalArgumentException("Invalid payment request, prefix must start with 'ln'.");
+        }
+        if(words.length < TIMESTAMP_WORDS + SIGNATURE_WORDS){
+            throw new IllegalArgumentException("Invalid payment request, data part too short.");
+        }
+        Network network = null;
+        for(Network n : Network.values()){
+            if(hrp.startsWith(n.currencyPrefix, PREFIX.length())){
+                network = n;
+                break;
+            }
+        }
+        if(network == null){
+            throw new IllegalArgumentException("Invalid payment request, unknown currency prefix in: " + hrp);
+        }
+
+        LightningApi.PayReq.Builder payReq = LightningApi.PayReq.newBuilder();
+        long amountMsat = parseAmount(hrp.substring(PREFIX.length() + network.currencyPrefix.length()));
+        payReq.setNumMsat(amountMsat);
+        payReq.setNumSatoshis(amountMsat / 1000);
+        payReq.setTimestamp(readLong(words, 0, TIMESTAMP_WORDS));
+        payReq.setExpiry(DEFAULT_EXPIRY);
+        payReq.setCltvExpiry(DEFAULT_CLTV_EXPIRY);
+
+        byte[] payee = null;
+        boolean hasPaymentHash = false;
+        int dataEnd = words.length - SIGNATURE_WORDS;
+        int pos = TIMESTAMP_WORDS;
+        while(pos < dataEnd){
+            if(pos + 3 > dataEnd){
+                throw new IllegalArgumentException("Invalid payment request, truncated tagged field.");
+            }
+            int type = words[pos];
+            int length = (words[pos + 1] << 5) | words[pos + 2];
+            int offset = pos + 3;
+            pos = offset + length;
+            if(pos > dataEnd){
+                throw new IllegalArgumentException("Invalid payment request, tagged field length exceeds data.");
+            }
+            switch (type){
+                case TYPE_PAYMENT_HASH:
+                    if(length == 52 && !hasPaymentHash) {
+                        payReq.setPaymentHash(toHex(Bech32.convertBits(words, offset, length, 5, 8, false)));
+                        hasPaymentHash = true;
+                    }
+                    break;
+                case TYPE_PAYMENT_ADDR:
+                    if(length == 52) {
+                        payReq.setPaymentAddr(ByteString.copyFrom(Bech32.convertBits(words, offset, length, 5, 8, false)));
+                    }
+                    break;
+                case TYPE_DESCRIPTION:
+                    payReq.setDescription(new String(Bech32.convertBits(words, offset, length, 5, 8, false), StandardCharsets.UTF_8));
+                    break;
+                case TYPE_DESCRIPTION_HASH:
+                    if(length == 52) {
+                        payReq.setDescriptionHash(toHex(Bech32.convertBits(words, offset, length, 5, 8, false)));
+                    }
+                    break;
+                case TYPE_PAYEE:
+                    if(length == 53) {
+                        payee = Bech32.convertBits(words, offset, length, 5, 8, false);
+                    }
+                    break;
+                case TYPE_EXPIRY:
+                    payReq.setExpiry(readLong(words, offset, length));
+                    break;
+                case TYPE_MIN_FINAL_CLTV_EXPIRY:
+                    payReq.setCltvExpiry(readLong(words, offset, length));
+                    break;
+                case TYPE_FALLBACK_ADDRESS:
+                    if(length > 0 && payReq.getFallbackAddr().isEmpty()) {
+                        payReq.setFallbackAddr(toFallbackAddress(network, words, offset, length));
+                    }
+                    break;
+                case TYPE_ROUTE_HINT:
+                    payReq.addRouteHints(toRouteHint(Bech32.convertBits(words, offset, length, 5, 8, false)));
+                    break;
+                case TYPE_FEATURES:
+                    addFeatures(payReq, words, offset, length);
+                    break;
+                default:
+                    // Unknown fields are ignored.
+            }
+        }
+        if(!hasPaymentHash){
+            throw new IllegalArgumentException("Invalid payment request, no payment hash found.");
+        }
+
+        byte[] signature = Bech32.convertBits(words, dataEnd, SIGNATURE_WORDS, 5, 8, false);
+        byte[] signedData = Bech32.convertBits(words, 0, dataEnd, 5, 8, true);
+        byte[] hash = sha256(hrp.getBytes(StandardCharsets.UTF_8), signedData);
+        byte[] compactSignature = new byte[64];
+        System.arraycopy(signature, 0, compactSignature, 0, 64);
+        byte[] recoveredKey = Secp256k1.recoverPublicKey(hash, compactSignature, signature[64]);
+        if(payee != null && !MessageDigest.isEqual(payee, recoveredKey)){
+            throw new IllegalArgumentException("Invalid payment request, signature doesn't match payee public key.");
+        }
+        payReq.setDestination(toHex(recoveredKey));
+        return payReq.build();
+    }
+
+    /**
+     * Parses the amount part of the human readable part into milli satoshis.
+     */
+    static long parseAmount(String amount){
+        if(amount.isEmpty()){
+            return 0;
+        }
+        char multiplier = amount.charAt(amount.length() - 1);
+        String digits = Character.isDigit(multiplier) ? amount : amount.substring(0, amount.length() - 1);
+        if(digits.isEmpty() || digits.length() > 18){
+            throw new IllegalArgumentException("Invalid payment request, invalid amount: " + amount);
+        }
+        long value = 0;
+        for(int i=0; i<digits.length(); i++){
+            char c = digits.charAt(i);
+            if(c < '0' || c > '9'){
+                throw new IllegalArgumentException("Invalid payment request, invalid amount: " + amount);
+            }
+            value = value * 10 + (c - '0');
+        }
+        BigInteger msat;
+        switch (multiplier){
+            case 'm':
+                msat = BigInteger.valueOf(value).multiply(BigInteger.valueOf(100_000_000L));
+                break;
+            case 'u':
+                msat = BigInteger.valueOf(value).multiply(BigInteger.valueOf(100_000L));
+                break;
+            case 'n':
+                msat = BigInteger.valueOf(value).multiply(BigInteger.valueOf(100L));
+                break;
+            case 'p':
+                if(value % 10 != 0){
+                    throw new IllegalArgumentException("Invalid payment request, pico amount must be a multiple of 10: " + amount);
+                }
+                msat = BigInteger.valueOf(value / 10);
+                break;
+            default:
+                if(!Character.isDigit(multiplier)){
+                    throw new IllegalArgumentException("Invalid payment request, invalid amount multiplier: " + amount);
+                }
+                msat = BigInteger.valueOf(value).multiply(BigInteger.valueOf(100_000_000_000L));
+        }
+        if(msat.bitLength() > 63){
+            throw new IllegalArgumentException("Invalid payment request, amount too large: " + amount);
+        }
+        return msat.longValue();
+    }
+
+    private static LightningApi.RouteHint toRouteHint(byte[] data){
+        if(data.length % HOP_HINT_LENGTH != 0){
+            throw new IllegalArgumentException("Invalid payment request, invalid route hint length.");
+        }
+        LightningApi.RouteHint.Builder routeHint = LightningApi.RouteHint.newBuilder();
+        for(int i=0; i<data.length; i+=HOP_HINT_LENGTH){
+            routeHint.addHopHints(LightningApi.HopHint.newBuilder()
+                    .setNodeId(toHex(data, i, 33))
+                    .setChanId(readBytes(data, i + 33, 8))
+                    .setFeeBaseMsat((int) readBytes(data, i + 41, 4))
+                    .setFeeProportionalMillionths((int) readBytes(data, i + 45, 4))
+                    .setCltvExpiryDelta((int) readBytes(data, i + 49, 2)));
+        }
+        return routeHint.build();
+    }
+
+    private static void addFeatures(LightningApi.PayReq.Builder payReq, byte[] words, int offset, int length){
+        for(int i=0; i<length; i++){
+            int word = words[offset + length - 1 - i];
+            for(int j=0; j<5; j++){
+                if((word & (1 << j)) != 0){
+                    int bit = i * 5 + j;
+                    String name = featureNames.get(bit);
+                    payReq.putFeatures(bit, LightningApi.Feature.newBuilder()
+                            .setName(name != null ? name : "unknown")
+                            .setIsKnown(name != null)
+                            .setIsRequired(bit % 2 == 0)
+                            .build());
+                }
+            }
+        }
+    }
+
+    private static String toFallbackAddress(Network network, byte[] words, int offset, int length){
+        int version = words[offset];
+        byte[] program = Bech32.convertBits(words, offset + 1, length - 1, 5, 8, false);
+        switch (version){
+            case 17:
+                return toBase58Check(network.p2pkhVersion, program);
+            case 18:
+                return toBase58Check(network.p2shVersion, program);
+            default:
+                if(version > 16){
+                    return "";
+                }
+                byte[] addressWords = Bech32.convertBits(program, 0, program.length, 8, 5, true);
+                byte[] data = new byte[addressWords.length + 1];
+                data[0] = (byte) version;
+                System.arraycopy(addressWords, 0, data, 1, addressWords.length);
+                return Bech32.encode(network.segwitHrp, data, version == 0 ? Bech32.Encoding.BECH32 : Bech32.Encoding.BECH32M);
+        }
+    }
+
+    private static String toBase58Check(int version, byte[] hash){
+        byte[] data = new byte[hash.length + 5];
+        data[0] = (byte) version;
+        System.arraycopy(hash, 0, data, 1, hash.length);
+        byte[] checksum = sha256(sha256(data, 0, hash.length + 1));
+        System.arraycopy(checksum, 0, data, hash.length + 1, 4);
+
+        StringBuilder sb = new StringBuilder();
+        BigInteger value = new BigInteger(1, data);
+        BigInteger base = BigInteger.valueOf(58);
+        while(value.signum() > 0){
+            BigInteger[] divRem = value.divideAndRemainder(base);
+            sb.append(BASE58_CHARS.charAt(divRem[1].intValue()));
+            value = divRem[0];
+        }
+        for(int i=0; i<data.length && data[i] == 0; i++){
+            sb.append(BASE58_CHARS.charAt(0));
+        }
+        return sb.reverse().toString();
+    }
+
+    private static long readLong(byte[] words, int offset, int length){
+        if(length > 12){
+            throw new IllegalArgumentException("Invalid payment request, integer field too long.");
+        }
+        long retval = 0;
+        for(int i=offset; i<offset + length; i++){
+            retval = (retval << 5) | words[i];
+        }
+        return retval;
+    }
+
+    private static long readBytes(byte[] data, int offset, int length){
+        long retval = 0;
+        for(int i=offset; i<offset + length; i++){
+            retval = (retval << 8) | (data[i] & 0xff);
+        }
+        return retval;
+    }
+
+    private static String toHex(byte[] data){
+        return toHex(data, 0, data.length);
+    }
+
+    private static String toHex(byte[] data, int offset, int length){
+        char[] retval = new char[length * 2];
+        for(int i=0; i<length; i++){
+            retval[i * 2] = HEX_CHARS[(data[offset + i] >> 4) & 0x0f];
+            retval[i * 2 + 1] = HEX_CHARS[data[offset + i] & 0x0f];
+        }
+        return new String(retval);
+    }
+
+    private static byte[] sha256(byte[]... data){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for(byte[] d : data){
+                digest.update(d);
+            }
+            return digest.digest();
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 not supported: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data, int offset, int length){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(data, offset, length);
+            return digest.digest();
+        }catch (NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 not supported: " + e.getMessage(), e);
+        }
+    }
+}
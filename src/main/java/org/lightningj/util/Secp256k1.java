@@ -0,0 +1,328 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util;
+
+import java.math.BigInteger;
+
+/**
+ * Minimal secp256k1 implementation supporting recovery of the public key from a compact
+ * ECDSA signature, as used to find the payee node of a BOLT11 payment request.
+ * <p>
+ *     Only used for verification of public data, so no constant time guarantees are made.
+ * </p>
+ *
+ * Created by Philip Vendil.
+ */
+class Secp256k1 {
+
+    static final BigInteger P = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16);
+    static final BigInteger N = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+    static final BigInteger GX = new BigInteger("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16);
+    static final BigInteger GY = new BigInteger("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16);
+
+    private static final BigInteger SEVEN = BigInteger.valueOf(7);
+    private static final BigInteger SQRT_EXPONENT = P.add(BigInteger.ONE).shiftRight(2);
+    private static final BigInteger[] G = new BigInteger[]{GX, GY, BigInteger.ONE};
+
+    /**
+     * Recovers the public key that created the given signature.
+     *
+     * @param hash the 32 byte hash that was signed.
+     * @param signature the 64 byte compact signature (r and s).
+     * @param recoveryId the recovery id (0-3).
+     * @return the recovered 33 byte compressed public key.
+     * @throws IllegalArgumentException if signature is invalid and no public key could be recovered.
+     */
+    static byte[] recoverPublicKey(byte[] hash, byte[] signature, int recoveryId) throws IllegalArgumentException{
+        if(signature.length != 64 || recoveryId < 0 || recoveryId > 3){
+            throw new IllegalArgumentException("Invalid signature, couldn't recover public key.");
+        }
+        BigInteger r = new BigInteger(1, copyOf(signature, 0, 32));
+        BigInteger s = new BigInteger(1, copyOf(signature, 32, 32));
+        if(r.signum() == 0 || r.compareTo(N) >= 0 || s.signum() == 0 || s.compareTo(N) >= 0){
+            throw new IllegalArgumentException("Invalid signature, r or s out of range.");
+        }
+        BigInteger x = recoveryId >= 2 ? r.add(N) : r;
+        if(x.compareTo(P) >= 0){
+            throw new IllegalArgumentException("Invalid signature, couldn't recover public key.");
+        }
+        BigInteger alpha = x.pow(3).add(SEVEN).mod(P);
+        BigInteger y = alpha.modPow(SQRT_EXPONENT, P);
+        if(!y.multiply(y).mod(P).equals(alpha)){
+            throw new IllegalArgumentException("Invalid signature, couldn't recover public key.");
+        }
+        if(y.testBit(0) != ((recoveryId & 1) == 1)){
+            y = P.subtract(y);
+        }
+        BigInteger e = new BigInteger(1, hash);
+        BigInteger rInv = r.modInverse(N);
+        BigInteger u1 = e.negate().multiply(rInv).mod(N);
+        BigInteger u2 = s.multiply(rInv).mod(N);
+
+        BigInteger[] q = multiplyAndAdd(u1, G, u2, new BigInteger[]{x, y, BigInteger.ONE});
+        if(q == null){
+            throw new IllegalArgumentException("Invalid signature, couldn't recover public key.");
+        }
+        return compress(q);
+    }
+
+    /**
+     * Calculates u1 * p1 + u2 * p2 in one pass (Shamir's trick).
+     *
+     * @return the resulting point in jacobian coordinates, null if point at infinity.
+     */
+    static BigInteger[] multiplyAndAdd(BigInteger u1, BigInteger[] p1, BigInteger u2, BigInteger[] p2){
+        long[][] fp1 = toFieldPoint(p1);
+        long[][] fp2 = toFieldPoint(p2);
+        long[][] sum = add(fp1, fp2);
+        long[][] result = null;
+        int bits = Math.max(u1.bitLength(), u2.bitLength());
+        for(int i=bits - 1; i>=0; i--){
+            result = twice(result);
+            boolean b1 = u1.testBit(i);
+            boolean b2 = u2.testBit(i);
+            if(b1 && b2){
+                result = add(result, sum);
+            }else if(b1){
+                result = add(result, fp1);
+            }else if(b2){
+                result = add(result, fp2);
+            }
+        }
+        if(result == null){
+            return null;
+        }
+        return new BigInteger[]{toBigInteger(result[0]), toBigInteger(result[1]), toBigInteger(result[2])};
+    }
+
+    /**
+     * Converts a jacobian point to a 33 byte compressed public key.
+     */
+    static byte[] compress(BigInteger[] point){
+        BigInteger zInv = point[2].modInverse(P);
+        BigInteger zInv2 = zInv.multiply(zInv).mod(P);
+        BigInteger x = point[0].multiply(zInv2).mod(P);
+        BigInteger y = point[1].multiply(zInv2).multiply(zInv).mod(P);
+        byte[] retval = new byte[33];
+        retval[0] = (byte) (y.testBit(0) ? 0x03 : 0x02);
+        byte[] xBytes = x.toByteArray();
+        int length = Math.min(xBytes.length, 32);
+        System.arraycopy(xBytes, xBytes.length - length, retval, 33 - length, length);
+        return retval;
+    }
+
+    /*
+     * Point arithmetic in jacobian coordinates (X, Y, Z), with a null point representing infinity.
+     */
+
+    private static long[][] twice(long[][] p){
+        if(p == null || isZero(p[1])){
+            return null;
+        }
+        long[] a = sqr(p[0]);
+        long[] b = sqr(p[1]);
+        long[] c = sqr(b);
+        long[] xb = add(p[0], b);
+        long[] d = mulSmall(sub(sub(sqr(xb), a), c), 2);
+        long[] e = mulSmall(a, 3);
+        long[] f = sqr(e);
+        long[] x3 = sub(f, mulSmall(d, 2));
+        long[] y3 = sub(mul(e, sub(d, x3)), mulSmall(c, 8));
+        long[] z3 = mulSmall(mul(p[1], p[2]), 2);
+        return new long[][]{x3, y3, z3};
+    }
+
+    private static long[][] add(long[][] p1, long[][] p2){
+        if(p1 == null){
+            return p2;
+        }
+        if(p2 == null){
+            return p1;
+        }
+        long[] z1z1 = sqr(p1[2]);
+        long[] z2z2 = sqr(p2[2]);
+        long[] u1 = mul(p1[0], z2z2);
+        long[] u2 = mul(p2[0], z1z1);
+        long[] s1 = mul(mul(p1[1], p2[2]), z2z2);
+        long[] s2 = mul(mul(p2[1], p1[2]), z1z1);
+        long[] h = sub(u2, u1);
+        long[] r = sub(s2, s1);
+        if(isZero(h)){
+            if(isZero(r)){
+                return twice(p1);
+            }
+            return null;
+        }
+        long[] h2 = sqr(h);
+        long[] h3 = mul(h2, h);
+        long[] u1h2 = mul(u1, h2);
+        long[] x3 = sub(sub(sqr(r), h3), mulSmall(u1h2, 2));
+        long[] y3 = sub(mul(r, sub(u1h2, x3)), mul(s1, h3));
+        long[] z3 = mul(mul(h, p1[2]), p2[2]);
+        return new long[][]{x3, y3, z3};
+    }
+
+    /*
+     * Field arithmetic modulo P using 10 limbs of 26 bits stored in longs, so limb products
+     * and their sums never overflow. Multiplication results are reduced to a value in [0, 2^256)
+     * using 2^256 = 0x1000003D1 (mod P), but not necessarily below P. Additions and subtractions
+     * are lazy and may leave signed limbs of up to a few times 2^26, which mul, sqr and
+     * mulSmall accept as input.
+     */
+
+    private static final int LIMBS = 10;
+    private static final long M26 = 0x3FFFFFFL;
+    private static final long M22 = 0x3FFFFFL;
+
+    private static long[] mul(long[] a, long[] b){
+        long[] t = new long[2 * LIMBS];
+        for(int i=0; i<LIMBS; i++){
+            long ai = a[i];
+            for(int j=0; j<LIMBS; j++){
+                t[i + j] += ai * b[j];
+            }
+        }
+        return reduce(t);
+    }
+
+    private static long[] sqr(long[] a){
+        long[] t = new long[2 * LIMBS];
+        for(int i=0; i<LIMBS; i++){
+            long ai = a[i];
+            t[2 * i] += ai * ai;
+            long ai2 = ai << 1;
+            for(int j=i + 1; j<LIMBS; j++){
+                t[i + j] += ai2 * a[j];
+            }
+        }
+        return reduce(t);
+    }
+
+    /**
+     * Reduces a 20 limb product to a normalized 10 limb value.
+     */
+    private static long[] reduce(long[] t){
+        long c = 0;
+        for(int k=0; k<t.length - 1; k++){
+            t[k] += c;
+            c = t[k] >> 26;
+            t[k] &= M26;
+        }
+        t[t.length - 1] += c;
+        // Fold limbs above 2^260, 2^260 = 0x1000003D10 = 2^36 + 0x3D10 (mod P)
+        for(int k=t.length - 1; k>=LIMBS; k--){
+            t[k - LIMBS] += t[k] * 0x3D10L;
+            t[k - LIMBS + 1] += t[k] << 10;
+        }
+        long[] r = new long[LIMBS];
+        System.arraycopy(t, 0, r, 0, LIMBS);
+        return normalize(r);
+    }
+
+    private static long[] mulSmall(long[] a, int factor){
+        long[] r = new long[LIMBS];
+        for(int i=0; i<LIMBS; i++){
+            r[i] = a[i] * factor;
+        }
+        return normalize(r);
+    }
+
+    private static long[] add(long[] a, long[] b){
+        long[] r = new long[LIMBS];
+        for(int i=0; i<LIMBS; i++){
+            r[i] = a[i] + b[i];
+        }
+        return r;
+    }
+
+    private static long[] sub(long[] a, long[] b){
+        long[] r = new long[LIMBS];
+        for(int i=0; i<LIMBS; i++){
+            r[i] = a[i] - b[i];
+        }
+        return r;
+    }
+
+    /**
+     * Propagates carries (signed) and folds bits above 2^256 back into the value
+     * until all limbs are 26 bits (22 bits for the top limb).
+     */
+    private static long[] normalize(long[] r){
+        long e;
+        do{
+            long c = 0;
+            for(int i=0; i<LIMBS - 1; i++){
+                r[i] += c;
+                c = r[i] >> 26;
+                r[i] &= M26;
+            }
+            r[LIMBS - 1] += c;
+            e = r[LIMBS - 1] >> 22;
+            r[LIMBS - 1] &= M22;
+            // 2^256 = 2^32 + 977 (mod P), 2^32 is bit 6 of limb 1.
+            r[0] += e * 977;
+            r[1] += e << 6;
+        }while(e != 0);
+        return r;
+    }
+
+    private static final long[] P_LIMBS = toField(P.subtract(BigInteger.ONE));
+    static {
+        P_LIMBS[0] += 1;
+    }
+
+    private static boolean isZero(long[] value){
+        // Normalized values are below 2^256, so zero is represented either as 0 or P.
+        long[] a = normalize(value.clone());
+        boolean zero = true;
+        boolean p = true;
+        for(int i=0; i<LIMBS; i++){
+            zero &= a[i] == 0;
+            p &= a[i] == P_LIMBS[i];
+        }
+        return zero || p;
+    }
+
+    private static long[][] toFieldPoint(BigInteger[] point){
+        return new long[][]{toField(point[0]), toField(point[1]), toField(point[2])};
+    }
+
+    private static long[] toField(BigInteger value){
+        long[] r = new long[LIMBS];
+        BigInteger v = value.mod(P);
+        for(int i=0; i<LIMBS; i++){
+            r[i] = v.longValue() & M26;
+            v = v.shiftRight(26);
+        }
+        return r;
+    }
+
+    private static BigInteger toBigInteger(long[] a){
+        return toBigIntegerUnreduced(a).mod(P);
+    }
+
+    private static BigInteger toBigIntegerUnreduced(long[] a){
+        BigInteger r = BigInteger.ZERO;
+        for(int i=LIMBS - 1; i>=0; i--){
+            r = r.shiftLeft(26).add(BigInteger.valueOf(a[i]));
+        }
+        return r;
+    }
+
+    private static byte[] copyOf(byte[] data, int offset, int length){
+        byte[] retval = new byte[length];
+        System.arraycopy(data, offset, retval, 0, length);
+        return retval;
+    }
+}
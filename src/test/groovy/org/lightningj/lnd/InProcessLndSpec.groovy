@@ -0,0 +1,89 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd
+
+import io.grpc.BindableService
+import io.grpc.ManagedChannel
+import io.grpc.Server
+import io.grpc.inprocess.InProcessChannelBuilder
+import io.grpc.inprocess.InProcessServerBuilder
+import spock.lang.Specification
+
+/**
+ * Base specification for unit tests running against fake LND services in an in-process
+ * GRPC server. Inheriting specs return their fake services from inProcessServices(), each
+ * only overriding the service methods it needs, and use the channel to the server.
+ *
+ * Created by Philip Vendil.
+ */
+abstract class InProcessLndSpec extends Specification {
+
+    /**
+     * Channel to the in-process server serving the services returned by inProcessServices().
+     */
+    ManagedChannel channel
+
+    private List<Server> servers = []
+    private List<ManagedChannel> channels = []
+
+    /**
+     * Method to be implemented by inheriting specs returning the fake services the in-process
+     * server should serve.
+     *
+     * @return list of services, empty if no server should be started before each feature.
+     */
+    protected abstract List<BindableService> inProcessServices()
+
+    def setup(){
+        List<BindableService> services = inProcessServices()
+        if(!services.isEmpty()){
+            channel = startServer(services as BindableService[])
+        }
+    }
+
+    def cleanup(){
+        channels.each{ it.shutdownNow() }
+        servers.each{ it.shutdownNow() }
+    }
+
+    /**
+     * Help method that starts an in-process server, both server and channel are shut down after
+     * the feature is completed.
+     *
+     * @param services the services to serve.
+     * @return a direct executor channel to the started server.
+     */
+    protected ManagedChannel startServer(BindableService... services){
+        String name = InProcessServerBuilder.generateName()
+        InProcessServerBuilder serverBuilder = InProcessServerBuilder.forName(name).directExecutor()
+        services.each{ serverBuilder.addService(it) }
+        servers << serverBuilder.build().start()
+        ManagedChannel retval = InProcessChannelBuilder.forName(name).directExecutor().build()
+        channels << retval
+        return retval
+    }
+
+    /**
+     * Help method that waits up to 5 seconds for the given condition to become true.
+     *
+     * @param condition the condition to wait for.
+     */
+    protected static void waitFor(Closure<Boolean> condition){
+        long end = System.currentTimeMillis() + 5000
+        while(!condition() && System.currentTimeMillis() < end){
+            Thread.sleep(10)
+        }
+        assert condition()
+    }
+}
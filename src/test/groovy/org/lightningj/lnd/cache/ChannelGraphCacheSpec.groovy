@@ -0,0 +1,295 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache
+
+import io.grpc.BindableService
+import io.grpc.Status
+import io.grpc.stub.ServerCallStreamObserver
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.metrics.InMemoryMetricsCollector
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.wrapper.CommunicationException
+import org.lightningj.lnd.wrapper.SynchronousLndAPI
+
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit tests for ChannelGraphCache.
+ *
+ * Created by Philip Vendil.
+ */
+class ChannelGraphCacheSpec extends InProcessLndSpec {
+
+    static final String NODE1 = "02" + "11" * 32
+    static final String NODE2 = "03" + "22" * 32
+    static final String NODE3 = "02" + "33" * 32
+
+    TestLightningService service = new TestLightningService()
+    ChannelGraphCache cache
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [service]
+    }
+
+    def setup(){
+        cache = new ChannelGraphCache(channel, false)
+    }
+
+    def cleanup(){
+        cache.close()
+    }
+
+    def "Verify that start loads snapshot and lookups by pubkey and channel id works"(){
+        setup:
+        service.graph = genGraph()
+        when:
+        cache.start()
+        then:
+        cache.isSynchronized()
+        cache.getNodeCount() == 3
+        cache.getChannelCount() == 2
+        cache.getNode(NODE1).alias == "node1"
+        cache.getNode(NODE1).addresses == ["127.0.0.1:9735"]
+        cache.getNode(NODE1).hasFeature(9)
+        !cache.getNode(NODE1).hasFeature(10)
+        cache.getChannel(100L).capacity == 50000L
+        cache.getChannel(100L).node1.toHex() == NODE1
+        cache.getChannel(100L).node1Policy.feeBaseMsat == 1000L
+        cache.getChannel(100L).node2Policy == null
+        cache.getChannel(999L) == null
+        cache.getChannels(NODE2).collect{ it.channelId }.sort() == [100L, 200L]
+        cache.getTotalCapacity(NodeKey.fromHex(NODE2)) == 150000L
+        // Verify that pubkeys are interned
+        cache.getChannel(100L).node2.is(cache.getChannel(200L).node1)
+        cache.getChannel(100L).node1.is(cache.getNode(NODE1).pubKey)
+    }
+
+    def "Verify that topology updates are applied after snapshot is loaded"(){
+        setup:
+        service.graph = genGraph()
+        cache.start()
+        when: // Update policy of existing channel and add new channel
+        service.sendUpdate(LightningApi.GraphTopologyUpdate.newBuilder()
+                .addChannelUpdates(LightningApi.ChannelEdgeUpdate.newBuilder()
+                    .setChanId(100L).setCapacity(50000L).setAdvertisingNode(NODE2).setConnectingNode(NODE1)
+                    .setRoutingPolicy(LightningApi.RoutingPolicy.newBuilder().setFeeBaseMsat(2000L).setTimeLockDelta(40)))
+                .addChannelUpdates(LightningApi.ChannelEdgeUpdate.newBuilder()
+                    .setChanId(300L).setCapacity(70000L).setAdvertisingNode(NODE3).setConnectingNode(NODE1)
+                    .setChanPoint(LightningApi.ChannelPoint.newBuilder().setFundingTxidStr("abcd").setOutputIndex(1))
+                    .setRoutingPolicy(LightningApi.RoutingPolicy.newBuilder().setFeeBaseMsat(3000L)))
+                .addNodeUpdates(LightningApi.NodeUpdate.newBuilder().setIdentityKey(NODE3).setAlias("node3")
+                    .addNodeAddresses(LightningApi.NodeAddress.newBuilder().setNetwork("tcp").setAddr("10.0.0.1:9735")))
+                .build())
+        then:
+        cache.getChannel(100L).node1Policy.feeBaseMsat == 1000L
+        cache.getChannel(100L).node2Policy.feeBaseMsat == 2000L
+        cache.getChannel(100L).node2Policy.timeLockDelta == 40
+        cache.getChannel(300L).chanPoint == "abcd:1"
+        cache.getChannel(300L).node1.toHex() == NODE1
+        cache.getChannel(300L).node2.toHex() == NODE3
+        cache.getChannel(300L).node2Policy.feeBaseMsat == 3000L
+        cache.getChannel(300L).node1Policy == null
+        cache.getNode(NODE3).alias == "node3"
+        cache.getNode(NODE3).addresses == ["10.0.0.1:9735"]
+        cache.getChannels(NODE1).size() == 2
+
+        when: // Close channel
+        service.sendUpdate(LightningApi.GraphTopologyUpdate.newBuilder()
+                .addClosedChans(LightningApi.ClosedChannelUpdate.newBuilder().setChanId(100L))
+                .build())
+        then:
+        cache.getChannel(100L) == null
+        cache.getChannelCount() == 2
+        cache.getChannels(NODE1).collect{ it.channelId } == [300L]
+        cache.getChannels(NODE2).collect{ it.channelId } == [200L]
+    }
+
+    def "Verify that updates received while snapshot is loaded are applied after the snapshot"(){
+        setup:
+        service.graph = genGraph()
+        service.updateBeforeSnapshot = LightningApi.GraphTopologyUpdate.newBuilder()
+                .addClosedChans(LightningApi.ClosedChannelUpdate.newBuilder().setChanId(200L))
+                .build()
+        when:
+        cache.start()
+        then:
+        cache.getChannel(100L) != null
+        cache.getChannel(200L) == null
+    }
+
+    def "Verify that failed subscription marks cache as not synchronized and reloads if reconnect delay is set"(){
+        setup:
+        service.graph = genGraph()
+        cache.setReconnectDelay(10)
+        cache.start()
+        when:
+        service.graph = LightningApi.ChannelGraph.newBuilder(genGraph())
+                .addEdges(genEdge(400L, NODE1, NODE3, 10000L)).build()
+        service.failSubscription(Status.UNAVAILABLE)
+        then:
+        service.subscribeCalls.poll(5, TimeUnit.SECONDS) != null
+        waitFor{ cache.isSynchronized() }
+        cache.getChannel(400L) != null
+    }
+
+    def "Verify that subscription failing while snapshot is loaded leaves cache not synchronized and schedules reload"(){
+        setup:
+        service.graph = genGraph()
+        service.subscriptionErrorBeforeSnapshot = Status.UNAVAILABLE
+        when:
+        cache.start()
+        then:
+        !cache.isSynchronized()
+        cache.getChannelCount() == 2
+
+        when:
+        service.subscribeCalls.clear()
+        service.subscriptionErrorBeforeSnapshot = Status.UNAVAILABLE
+        cache.setReconnectDelay(10)
+        cache.start()
+        then: // Subscribed once by start() and once by the scheduled reload
+        service.subscribeCalls.poll(5, TimeUnit.SECONDS) != null
+        service.subscribeCalls.poll(5, TimeUnit.SECONDS) != null
+        waitFor{ cache.isSynchronized() }
+    }
+
+    def "Verify that failed snapshot call throws wrapped StatusException"(){
+        setup:
+        service.describeGraphError = Status.UNAVAILABLE
+        when:
+        cache.start()
+        then:
+        thrown CommunicationException
+        !cache.isSynchronized()
+    }
+
+    def "Verify that malformed snapshot cancels the subscription and stops buffering updates"(){
+        setup:
+        service.graph = LightningApi.ChannelGraph.newBuilder(genGraph())
+                .addNodes(LightningApi.LightningNode.newBuilder().setPubKey("invalid")).build()
+        when:
+        cache.start()
+        then:
+        thrown IllegalArgumentException
+        !cache.isSynchronized()
+        waitFor{ service.subscriptionCancelled }
+        when: // Updates of the failed generation are ignored
+        cache.onTopologyUpdate(1L, LightningApi.GraphTopologyUpdate.newBuilder()
+                .addClosedChans(LightningApi.ClosedChannelUpdate.newBuilder().setChanId(100L)).build())
+        then:
+        cache.pendingUpdates == null
+        cache.getChannelCount() == 0
+    }
+
+    def "Verify that calls of cache created from an API are recorded by the metrics collector of the API"(){
+        setup:
+        service.graph = genGraph()
+        SynchronousLndAPI api = new SynchronousLndAPI(channel)
+        InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+        api.setMetricsCollector(collector)
+        ChannelGraphCache apiCache = new ChannelGraphCache(api)
+        when:
+        apiCache.start()
+        then:
+        apiCache.isSynchronized()
+        collector.getMethodMetrics("lnrpc.Lightning/DescribeGraph").callCount == 1
+        cleanup:
+        apiCache.close()
+    }
+
+    def "Verify that close clears the cache and cancels the subscription"(){
+        setup:
+        service.graph = genGraph()
+        cache.start()
+        when:
+        cache.close()
+        then:
+        !cache.isSynchronized()
+        cache.getChannelCount() == 0
+        cache.getNode(NODE1) == null
+        when:
+        cache.start()
+        then:
+        thrown IllegalStateException
+    }
+
+    private static LightningApi.ChannelGraph genGraph(){
+        LightningApi.ChannelGraph.newBuilder()
+                .addNodes(LightningApi.LightningNode.newBuilder().setPubKey(NODE1).setAlias("node1")
+                    .addAddresses(LightningApi.NodeAddress.newBuilder().setNetwork("tcp").setAddr("127.0.0.1:9735"))
+                    .putFeatures(9, LightningApi.Feature.newBuilder().setName("tlv-onion").build()))
+                .addNodes(LightningApi.LightningNode.newBuilder().setPubKey(NODE2).setAlias("node2"))
+                .addNodes(LightningApi.LightningNode.newBuilder().setPubKey(NODE3).setAlias("node3"))
+                .addEdges(LightningApi.ChannelEdge.newBuilder(genEdge(100L, NODE1, NODE2, 50000L))
+                    .setNode1Policy(LightningApi.RoutingPolicy.newBuilder().setFeeBaseMsat(1000L)))
+                .addEdges(genEdge(200L, NODE2, NODE3, 100000L))
+                .build()
+    }
+
+    private static LightningApi.ChannelEdge genEdge(long chanId, String node1, String node2, long capacity){
+        LightningApi.ChannelEdge.newBuilder().setChannelId(chanId).setChanPoint("abc:" + chanId)
+                .setNode1Pub(node1).setNode2Pub(node2).setCapacity(capacity).build()
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+
+        LightningApi.ChannelGraph graph
+        LightningApi.GraphTopologyUpdate updateBeforeSnapshot
+        Status describeGraphError
+        volatile Status subscriptionErrorBeforeSnapshot
+        volatile StreamObserver<LightningApi.GraphTopologyUpdate> updateObserver
+        volatile boolean subscriptionCancelled
+        BlockingQueue<Object> subscribeCalls = new LinkedBlockingQueue<>()
+
+        @Override
+        void describeGraph(LightningApi.ChannelGraphRequest request, StreamObserver<LightningApi.ChannelGraph> responseObserver) {
+            if(describeGraphError != null){
+                responseObserver.onError(describeGraphError.asRuntimeException())
+                return
+            }
+            if(updateBeforeSnapshot != null){
+                sendUpdate(updateBeforeSnapshot)
+            }
+            if(subscriptionErrorBeforeSnapshot != null){
+                Status status = subscriptionErrorBeforeSnapshot
+                subscriptionErrorBeforeSnapshot = null
+                updateObserver.onError(status.asRuntimeException())
+            }
+            responseObserver.onNext(graph)
+            responseObserver.onCompleted()
+        }
+
+        @Override
+        void subscribeChannelGraph(LightningApi.GraphTopologySubscription request, StreamObserver<LightningApi.GraphTopologyUpdate> responseObserver) {
+            subscriptionCancelled = false
+            ((ServerCallStreamObserver) responseObserver).setOnCancelHandler{ subscriptionCancelled = true }
+            updateObserver = responseObserver
+            subscribeCalls.add(request)
+        }
+
+        void sendUpdate(LightningApi.GraphTopologyUpdate update){
+            updateObserver.onNext(update)
+        }
+
+        void failSubscription(Status status){
+            subscribeCalls.clear()
+            updateObserver.onError(status.asRuntimeException())
+        }
+    }
+}
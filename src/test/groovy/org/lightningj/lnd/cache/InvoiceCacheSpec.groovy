@@ -0,0 +1,306 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache
+
+import com.google.protobuf.ByteString
+import io.grpc.BindableService
+import io.grpc.Status
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.wrapper.CommunicationException
+import org.lightningj.lnd.wrapper.StatusException
+import org.lightningj.lnd.wrapper.SynchronousLndAPI
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+
+import static org.lightningj.lnd.proto.LightningApi.Invoice.InvoiceState.*
+
+/**
+ * Unit tests for InvoiceCache.
+ *
+ * Created by Philip Vendil.
+ */
+class InvoiceCacheSpec extends InProcessLndSpec {
+
+    TestLightningService service = new TestLightningService()
+    InvoiceCache cache
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [service]
+    }
+
+    def setup(){
+        10.times{ service.invoices << invoice(it + 1, it < 4 ? SETTLED : OPEN, it < 4 ? it + 1 : 0) }
+        cache = new InvoiceCache(new SynchronousLndAPI(channel))
+    }
+
+    def cleanup(){
+        cache.close()
+    }
+
+    def "Verify that start loads all invoices and subscribes to new invoices only"(){
+        when:
+        cache.start()
+        then:
+        cache.isSynchronized()
+        cache.size() == 10
+        cache.getInvoice(hash(1)).state == SETTLED
+        cache.isSettled(hash(1).toByteArray())
+        !cache.isSettled(hash(5).toByteArray())
+        cache.getInvoice(hash(11)) == null
+        cache.getAddIndex() == 10
+        cache.getSettleIndex() == 4
+        service.subscriptions.size() == 1
+        service.subscriptions[0].addIndex == 0
+        service.subscriptions[0].settleIndex == 0
+        service.listRequests.every{ it.reversed }
+    }
+
+    def "Verify that only the most recent invoices are loaded and least recently used invoice is evicted"(){
+        setup:
+        cache = new InvoiceCache(new SynchronousLndAPI(channel), 5)
+        when:
+        cache.start()
+        then:
+        cache.size() == 5
+        cache.getInvoice(hash(5)) == null
+        (6..10).every{ cache.getInvoice(hash(it)) != null }
+        when:
+        cache.getInvoice(hash(6))
+        service.push(invoice(11, OPEN, 0))
+        then:
+        cache.size() == 5
+        cache.getInvoice(hash(7)) == null
+        cache.getInvoice(hash(6)) != null
+        cache.getInvoice(hash(11)) != null
+        cache.getAddIndex() == 11
+    }
+
+    def "Verify that subscription updates the cache and completes futures waiting for settlement"(){
+        setup:
+        cache.start()
+        CompletableFuture<LightningApi.Invoice> future = cache.waitForSettlement(hash(5).toByteArray())
+        expect:
+        !future.isDone()
+        service.lookups.isEmpty()
+        when:
+        service.push(invoice(5, ACCEPTED, 0))
+        then:
+        !future.isDone()
+        when:
+        service.push(invoice(5, SETTLED, 5))
+        then:
+        future.isDone()
+        future.get().state == SETTLED
+        cache.isSettled(hash(5).toByteArray())
+        cache.getSettleIndex() == 5
+        cache.waitForSettlement(hash(1).toByteArray()).getNow(null).state == SETTLED
+    }
+
+    def "Verify that a final invoice isn't replaced by an update in non final state"(){
+        setup:
+        cache.start()
+        when:
+        service.push(invoice(2, OPEN, 0))
+        then:
+        cache.getInvoice(hash(2)).state == SETTLED
+        when:
+        service.push(invoice(6, CANCELED, 0))
+        then:
+        cache.getInvoice(hash(6)).state == CANCELED
+    }
+
+    def "Verify that invoices not in cache are looked up from LND"(){
+        setup:
+        cache = new InvoiceCache(new SynchronousLndAPI(channel), 2)
+        cache.start()
+        expect:
+        cache.getInvoice(hash(3)) == null
+        cache.lookupInvoice(hash(3).toByteArray()).state == SETTLED
+        cache.getInvoice(hash(3)) != null
+        cache.getAddIndex() == 10
+        cache.waitForSettlement(hash(1).toByteArray()).get(5, TimeUnit.SECONDS).state == SETTLED
+        when:
+        cache.lookupInvoice(hash(20).toByteArray())
+        then:
+        def e = thrown StatusException
+        e.status.code == Status.Code.NOT_FOUND
+        when:
+        cache.waitForSettlement(hash(20).toByteArray()).get(5, TimeUnit.SECONDS)
+        then:
+        def e2 = thrown ExecutionException
+        e2.cause instanceof StatusException
+    }
+
+    def "Verify that failed subscription is resumed from last seen add and settle index"(){
+        setup:
+        cache.setReconnectDelay(50)
+        cache.start()
+        service.push(invoice(11, OPEN, 0))
+        when:
+        service.failSubscriptions(Status.UNAVAILABLE)
+        then:
+        !cache.isSynchronized()
+        when:
+        waitFor{ service.subscriptions.size() == 2 && cache.isSynchronized() }
+        then:
+        service.subscriptions[1].addIndex == 11
+        service.subscriptions[1].settleIndex == 4
+        when:
+        service.push(invoice(12, OPEN, 0))
+        then:
+        cache.getInvoice(hash(12)) != null
+    }
+
+    def "Verify that futures waiting for settlement fail if subscription fails and resubscription is disabled"(){
+        setup:
+        cache.setReconnectDelay(0)
+        cache.start()
+        CompletableFuture<LightningApi.Invoice> future = cache.waitForSettlement(hash(7).toByteArray())
+        when:
+        service.failSubscriptions(Status.UNAVAILABLE)
+        then:
+        !cache.isSynchronized()
+        future.isCompletedExceptionally()
+        when:
+        future.get()
+        then:
+        def e = thrown ExecutionException
+        e.cause instanceof IllegalStateException
+        when: // Final invoices in cache are still returned but other calls fail until restarted
+        CompletableFuture<LightningApi.Invoice> settledFuture = cache.waitForSettlement(hash(2).toByteArray())
+        CompletableFuture<LightningApi.Invoice> openFuture = cache.waitForSettlement(hash(8).toByteArray())
+        then:
+        settledFuture.get().RHash == hash(2)
+        openFuture.isCompletedExceptionally()
+        when:
+        cache.start()
+        openFuture = cache.waitForSettlement(hash(8).toByteArray())
+        service.push(invoice(8, SETTLED, 5))
+        then:
+        openFuture.get(5, TimeUnit.SECONDS).state == SETTLED
+    }
+
+    def "Verify that subscription is cancelled if loading invoices fails with a runtime exception"(){
+        setup:
+        cache.setPagingOptions(null)
+        when:
+        cache.start()
+        then:
+        thrown NullPointerException
+        !cache.isSynchronized()
+        waitFor{ service.observers.isEmpty() }
+        cache.pendingUpdates == null
+    }
+
+    def "Verify that close cancels the subscription and pending futures"(){
+        setup:
+        cache.start()
+        CompletableFuture<LightningApi.Invoice> future = cache.waitForSettlement(hash(7).toByteArray())
+        when:
+        cache.close()
+        then:
+        !cache.isSynchronized()
+        cache.size() == 0
+        future.isCancelled()
+        waitFor{ service.observers.isEmpty() }
+        when:
+        future.get()
+        then:
+        thrown CancellationException
+        when:
+        cache.start()
+        then:
+        thrown IllegalStateException
+    }
+
+    def "Verify that invalid max size is rejected"(){
+        when:
+        new InvoiceCache(new SynchronousLndAPI(channel), 0)
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Invalid max size: 0, must be 1 or greater."
+    }
+
+    private static ByteString hash(int index){
+        return ByteString.copyFrom(([(byte) index] * 32) as byte[])
+    }
+
+    private static LightningApi.Invoice invoice(int addIndex, LightningApi.Invoice.InvoiceState state, long settleIndex){
+        return LightningApi.Invoice.newBuilder().setRHash(hash(addIndex)).setAddIndex(addIndex)
+                .setState(state).setSettleIndex(settleIndex).setSettled(state == SETTLED).build()
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+
+        List<LightningApi.Invoice> invoices = new CopyOnWriteArrayList<>()
+        List<LightningApi.ListInvoiceRequest> listRequests = new CopyOnWriteArrayList<>()
+        List<LightningApi.InvoiceSubscription> subscriptions = new CopyOnWriteArrayList<>()
+        List<LightningApi.PaymentHash> lookups = new CopyOnWriteArrayList<>()
+        List<StreamObserver<LightningApi.Invoice>> observers = new CopyOnWriteArrayList<>()
+
+        void push(LightningApi.Invoice invoice){
+            invoices.removeIf{ it.RHash == invoice.RHash }
+            invoices << invoice
+            observers.each{ it.onNext(invoice) }
+        }
+
+        void failSubscriptions(Status status){
+            def current = new ArrayList(observers)
+            observers.clear()
+            current.each{ it.onError(status.asRuntimeException()) }
+        }
+
+        @Override
+        void listInvoices(LightningApi.ListInvoiceRequest request, StreamObserver<LightningApi.ListInvoiceResponse> responseObserver) {
+            listRequests << request
+            long end = request.indexOffset == 0 ? Long.MAX_VALUE : request.indexOffset
+            List<LightningApi.Invoice> page = invoices.findAll{ it.addIndex < end }.sort{ it.addIndex }
+            page = page.drop(Math.max(0, page.size() - (int) request.numMaxInvoices))
+            responseObserver.onNext(LightningApi.ListInvoiceResponse.newBuilder().addAllInvoices(page)
+                    .setFirstIndexOffset(page ? page.first().addIndex : 0)
+                    .setLastIndexOffset(page ? page.last().addIndex : 0).build())
+            responseObserver.onCompleted()
+        }
+
+        @Override
+        void subscribeInvoices(LightningApi.InvoiceSubscription request, StreamObserver<LightningApi.Invoice> responseObserver) {
+            subscriptions << request
+            observers << responseObserver
+            io.grpc.Context.current().addListener({ observers.remove(responseObserver) } as io.grpc.Context.CancellationListener,
+                    { Runnable r -> r.run() } as java.util.concurrent.Executor)
+            invoices.findAll{ (request.addIndex > 0 && it.addIndex > request.addIndex) ||
+                    (request.settleIndex > 0 && it.settleIndex > request.settleIndex) }.each{ responseObserver.onNext(it) }
+        }
+
+        @Override
+        void lookupInvoice(LightningApi.PaymentHash request, StreamObserver<LightningApi.Invoice> responseObserver) {
+            lookups << request
+            LightningApi.Invoice invoice = invoices.find{ it.RHash == request.RHash }
+            if(invoice == null){
+                responseObserver.onError(Status.NOT_FOUND.withDescription("unable to locate invoice").asRuntimeException())
+                return
+            }
+            responseObserver.onNext(invoice)
+            responseObserver.onCompleted()
+        }
+    }
+}
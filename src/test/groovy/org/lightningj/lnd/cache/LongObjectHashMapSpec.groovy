@@ -0,0 +1,78 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for LongObjectHashMap.
+ *
+ * Created by Philip Vendil.
+ */
+class LongObjectHashMapSpec extends Specification {
+
+    def "Verify that put, get and remove works for many keys including resizing"(){
+        setup:
+        LongObjectHashMap<String> map = new LongObjectHashMap<>()
+        Map<Long,String> reference = [:]
+        Random random = new Random(1234)
+        when:
+        for(int i=0; i<10000; i++){
+            long key = random.nextInt(3000) * 0x10000L
+            if(random.nextInt(3) == 0){
+                assert map.remove(key) == reference.remove(key)
+            }else{
+                assert map.put(key, "v" + i) == reference.put(key, "v" + i)
+            }
+        }
+        then:
+        map.size() == reference.size()
+        reference.each { k, v -> assert map.get(k) == v }
+        map.get(-1L) == null
+        when:
+        List<String> values = []
+        map.forEachValue({ values << it })
+        then:
+        values.sort() == reference.values().sort()
+    }
+
+    def "Verify that key 0 and negative keys are supported"(){
+        setup:
+        LongObjectHashMap<String> map = new LongObjectHashMap<>()
+        when:
+        map.put(0L, "zero")
+        map.put(-5L, "negative")
+        then:
+        map.get(0L) == "zero"
+        map.get(-5L) == "negative"
+        map.remove(0L) == "zero"
+        map.get(0L) == null
+        map.size() == 1
+    }
+
+    def "Verify that null values are not supported and clear removes all entries"(){
+        setup:
+        LongObjectHashMap<String> map = new LongObjectHashMap<>()
+        map.put(1L, "a")
+        when:
+        map.put(2L, null)
+        then:
+        thrown NullPointerException
+        when:
+        map.clear()
+        then:
+        map.size() == 0
+        map.get(1L) == null
+    }
+}
@@ -0,0 +1,70 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.cache
+
+import spock.lang.Specification
+
+/**
+ * Unit tests for NodeKey.
+ *
+ * Created by Philip Vendil.
+ */
+class NodeKeySpec extends Specification {
+
+    static final String KEY1 = "02ad1fddad0c572ec3e886cbea31bbafa30b5f7e745da7e936ed9d1471116cdc02"
+    static final String KEY2 = "03ad1fddad0c572ec3e886cbea31bbafa30b5f7e745da7e936ed9d1471116cdc02"
+
+    def "Verify that hex encoded keys are decoded and encoded correctly"(){
+        when:
+        NodeKey k = NodeKey.fromHex(KEY1)
+        then:
+        k.toHex() == KEY1
+        k.toString() == KEY1
+        k.toBytes().length == 33
+        k.toBytes()[0] == (byte) 0x02
+        NodeKey.fromBytes(k.toBytes()) == k
+        NodeKey.fromHex(KEY1.toUpperCase()) == k
+    }
+
+    def "Verify that equals, hashCode and compareTo works"(){
+        setup:
+        NodeKey k1 = NodeKey.fromHex(KEY1)
+        NodeKey k2 = NodeKey.fromHex(KEY2)
+        expect:
+        k1 == NodeKey.fromHex(KEY1)
+        k1.hashCode() == NodeKey.fromHex(KEY1).hashCode()
+        k1 != k2
+        k1.compareTo(k2) < 0
+        k2.compareTo(k1) > 0
+        k1.compareTo(NodeKey.fromHex(KEY1)) == 0
+        // Verify unsigned comparison
+        NodeKey.fromHex("ff" + KEY1.substring(2)).compareTo(k1) > 0
+    }
+
+    def "Verify that invalid keys throws IllegalArgumentException"(){
+        when:
+        NodeKey.fromHex(key)
+        then:
+        thrown IllegalArgumentException
+        where:
+        key << [null, "", "02ad", "zz" + KEY1.substring(2)]
+    }
+
+    def "Verify that fromBytes throws IllegalArgumentException for invalid length"(){
+        when:
+        NodeKey.fromBytes(new byte[32])
+        then:
+        thrown IllegalArgumentException
+    }
+}
@@ -0,0 +1,185 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor
+
+import com.google.protobuf.ByteString
+import io.grpc.BindableService
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.wrapper.SynchronousLndAPI
+import org.lightningj.lnd.wrapper.message.ChannelAcceptRequest
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Unit tests for ChannelAcceptorEngine.
+ *
+ * Created by Philip Vendil.
+ */
+class ChannelAcceptorEngineSpec extends InProcessLndSpec {
+
+    static final byte[] PEER1 = ([2] * 33) as byte[]
+    static final byte[] PEER2 = ([3] * 33) as byte[]
+
+    TestLightningService service = new TestLightningService()
+    SynchronousLndAPI api
+    ChannelAcceptorEngine<ChannelAcceptRequest> engine
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [service]
+    }
+
+    def setup(){
+        api = new SynchronousLndAPI(channel)
+    }
+
+    def cleanup(){
+        engine?.close()
+    }
+
+    def "Verify that responses are correlated by pending channel id and a slow policy doesn't delay other requests"(){
+        setup:
+        CountDownLatch releaseSlow = new CountDownLatch(1)
+        engine = new ChannelAcceptorEngine<>(api, { ChannelAcceptRequest request ->
+            if(request.getFundingAmt() == 1){
+                releaseSlow.await(5, TimeUnit.SECONDS)
+                return ChannelAcceptDecision.reject("Too small.")
+            }
+            return ChannelAcceptDecision.accept()
+        } as ChannelAcceptPolicy, 2)
+        engine.start()
+        waitFor{ engine.isConnected() && service.streams.size() == 1 }
+        when:
+        service.send(1, PEER1, 1)
+        service.send(2, PEER2, 100000)
+        waitFor{ service.responses.size() == 1 }
+        then:
+        service.responses[0].pendingChanId == pendingChanId(2)
+        service.responses[0].accept
+        when:
+        releaseSlow.countDown()
+        waitFor{ service.responses.size() == 2 }
+        then:
+        service.responses[1].pendingChanId == pendingChanId(1)
+        !service.responses[1].accept
+        service.responses[1].error == "Too small."
+    }
+
+    def "Verify that decisions are cached per peer public key when time to live is set"(){
+        setup:
+        AtomicInteger calls = new AtomicInteger()
+        engine = new ChannelAcceptorEngine<>(api, { ChannelAcceptRequest request ->
+            calls.incrementAndGet()
+            return ChannelAcceptDecision.accept()
+        } as ChannelAcceptPolicy, 1)
+        engine.setDecisionCacheTimeToLive(60000)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        service.send(1, PEER1, 100000)
+        waitFor{ service.responses.size() == 1 }
+        service.send(2, PEER1, 200000)
+        service.send(3, PEER2, 200000)
+        waitFor{ service.responses.size() == 3 }
+        then:
+        calls.get() == 2
+        engine.getCachedDecisionCount() == 2
+        service.responses.every{ it.accept }
+        service.responses[1].pendingChanId == pendingChanId(2)
+        when:
+        engine.invalidateCachedDecision(PEER1)
+        service.send(4, PEER1, 100000)
+        waitFor{ service.responses.size() == 4 }
+        then:
+        calls.get() == 3
+        when:
+        engine.setDecisionCacheTimeToLive(0)
+        service.send(5, PEER1, 100000)
+        waitFor{ service.responses.size() == 5 }
+        then:
+        calls.get() == 4
+        engine.getCachedDecisionCount() == 0
+    }
+
+    def "Verify that the channel is rejected if the policy fails and failed decisions are not cached"(){
+        setup:
+        AtomicInteger calls = new AtomicInteger()
+        engine = new ChannelAcceptorEngine<>(api, { ChannelAcceptRequest request ->
+            calls.incrementAndGet()
+            throw new IOException("Policy store unavailable")
+        } as ChannelAcceptPolicy, 1)
+        engine.setDecisionCacheTimeToLive(60000)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        service.send(1, PEER1, 100000)
+        service.send(2, PEER1, 100000)
+        waitFor{ service.responses.size() == 2 }
+        then:
+        service.responses.every{ !it.accept }
+        calls.get() == 2
+        engine.getErrorCount() == 2
+        engine.getCachedDecisionCount() == 0
+    }
+
+    def "Verify that decisions created from a complete response keep their channel parameters"(){
+        setup:
+        engine = new ChannelAcceptorEngine<>(api, { ChannelAcceptRequest request ->
+            ChannelAcceptDecision.of(LightningApi.ChannelAcceptResponse.newBuilder().setAccept(true).setZeroConf(true).setMinAcceptDepth(0).build())
+        } as ChannelAcceptPolicy, 1)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        service.send(1, PEER1, 100000)
+        waitFor{ service.responses.size() == 1 }
+        then:
+        service.responses[0].accept
+        service.responses[0].zeroConf
+        service.responses[0].pendingChanId == pendingChanId(1)
+    }
+
+    private static ByteString pendingChanId(int id){
+        return ByteString.copyFrom(([id] * 32) as byte[])
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+        List<StreamObserver<LightningApi.ChannelAcceptRequest>> streams = new CopyOnWriteArrayList<>()
+        List<LightningApi.ChannelAcceptResponse> responses = new CopyOnWriteArrayList<>()
+
+        @Override
+        StreamObserver<LightningApi.ChannelAcceptResponse> channelAcceptor(StreamObserver<LightningApi.ChannelAcceptRequest> responseObserver) {
+            streams << responseObserver
+            io.grpc.Context.current().addListener({ streams.remove(responseObserver) } as io.grpc.Context.CancellationListener,
+                    { Runnable r -> r.run() } as java.util.concurrent.Executor)
+            return new StreamObserver<LightningApi.ChannelAcceptResponse>() {
+                void onNext(LightningApi.ChannelAcceptResponse value) { responses << value }
+                void onError(Throwable t) {}
+                void onCompleted() {}
+            }
+        }
+
+        synchronized void send(int id, byte[] nodePubkey, long fundingAmt){
+            streams[0].onNext(LightningApi.ChannelAcceptRequest.newBuilder()
+                    .setPendingChanId(pendingChanId(id))
+                    .setNodePubkey(ByteString.copyFrom(nodePubkey))
+                    .setFundingAmt(fundingAmt).build())
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor
+
+import com.google.protobuf.ByteString
+import io.grpc.BindableService
+import io.grpc.Status
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.router.proto.RouterGrpc
+import org.lightningj.lnd.router.proto.RouterOuterClass
+import org.lightningj.lnd.wrapper.router.SynchronousRouterAPI
+import org.lightningj.lnd.wrapper.router.message.ForwardHtlcInterceptRequest
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit tests for HtlcInterceptorEngine.
+ *
+ * Created by Philip Vendil.
+ */
+class HtlcInterceptorEngineSpec extends InProcessLndSpec {
+
+    TestRouterService service = new TestRouterService()
+    SynchronousRouterAPI api
+    HtlcInterceptorEngine<ForwardHtlcInterceptRequest> engine
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [service]
+    }
+
+    def setup(){
+        api = new SynchronousRouterAPI(channel)
+    }
+
+    def cleanup(){
+        engine?.close()
+    }
+
+    def "Verify that intercepted HTLCs are wrapped and resolved with the decision of the handler"(){
+        setup:
+        byte[] preimage = new byte[32]
+        engine = new HtlcInterceptorEngine<>(api, { ForwardHtlcInterceptRequest htlc ->
+            switch(htlc.getOutgoingAmountMsat()){
+                case 1000L: return HtlcDecision.resume()
+                case 2000L: return HtlcDecision.fail(LightningApi.Failure.FailureCode.TEMPORARY_CHANNEL_FAILURE)
+                default: return HtlcDecision.settle(preimage)
+            }
+        } as HtlcInterceptHandler, 2)
+        engine.start()
+        when:
+        waitFor{ engine.isConnected() && service.streams.size() == 1 }
+        service.send(1, 1000)
+        service.send(2, 2000)
+        service.send(3, 3000)
+        waitFor{ service.responses.size() == 3 }
+        then:
+        service.responses[0].incomingCircuitKey.htlcId == 1
+        service.responses[0].action == RouterOuterClass.ResolveHoldForwardAction.RESUME
+        service.responses[1].action == RouterOuterClass.ResolveHoldForwardAction.FAIL
+        service.responses[1].failureCode == LightningApi.Failure.FailureCode.TEMPORARY_CHANNEL_FAILURE
+        service.responses[2].action == RouterOuterClass.ResolveHoldForwardAction.SETTLE
+        service.responses[2].preimage == ByteString.copyFrom(preimage)
+        engine.getDecisionCount() == 3
+        engine.getDecisionLatency().getCount() == 3
+        engine.getPendingCount() == 0
+    }
+
+    def "Verify that responses are sent in request order unless ordered responses is disabled"(){
+        setup:
+        CountDownLatch releaseFirst = new CountDownLatch(1)
+        engine = new HtlcInterceptorEngine<>(api, { ForwardHtlcInterceptRequest htlc ->
+            if(htlc.getIncomingCircuitKey().getHtlcId() == 1){
+                releaseFirst.await(5, TimeUnit.SECONDS)
+            }
+            return HtlcDecision.resume()
+        } as HtlcInterceptHandler, 4)
+        engine.setOrderedResponses(ordered)
+        engine.start()
+        when:
+        waitFor{ service.streams.size() == 1 }
+        (1..5).each{ service.send(it, 1000) }
+        waitFor{ engine.getDecisionCount() == 4 }
+        Thread.sleep(50)
+        int sentBeforeFirst = service.responses.size()
+        releaseFirst.countDown()
+        waitFor{ service.responses.size() == 5 }
+        then:
+        sentBeforeFirst == expectedSentBeforeFirst
+        (service.responses.collect{ it.incomingCircuitKey.htlcId } == [1L, 2L, 3L, 4L, 5L]) == ordered
+        where:
+        ordered | expectedSentBeforeFirst
+        true    | 0
+        false   | 4
+    }
+
+    def "Verify that the default decision is used if the deadline is missed"(){
+        setup:
+        CountDownLatch release = new CountDownLatch(1)
+        engine = new HtlcInterceptorEngine<>(api, { ForwardHtlcInterceptRequest htlc ->
+            release.await(5, TimeUnit.SECONDS)
+            return HtlcDecision.settle(new byte[32])
+        } as HtlcInterceptHandler, 1)
+        engine.setDeadline(50)
+        engine.setDefaultDecision(HtlcDecision.fail())
+        engine.start()
+        when:
+        waitFor{ service.streams.size() == 1 }
+        service.send(1, 1000)
+        waitFor{ service.responses.size() == 1 }
+        release.countDown()
+        Thread.sleep(50)
+        then:
+        service.responses.size() == 1
+        service.responses[0].action == RouterOuterClass.ResolveHoldForwardAction.FAIL
+        engine.getTimeoutCount() == 1
+        engine.getDecisionCount() == 1
+    }
+
+    def "Verify that the default decision is used if the handler throws exception or returns null"(){
+        setup:
+        engine = new HtlcInterceptorEngine<>(api, { ForwardHtlcInterceptRequest htlc ->
+            if(htlc.getIncomingCircuitKey().getHtlcId() == 1){
+                throw new IOException("Policy store unavailable")
+            }
+            return null
+        } as HtlcInterceptHandler, 1)
+        engine.start()
+        when:
+        waitFor{ service.streams.size() == 1 }
+        service.send(1, 1000)
+        service.send(2, 1000)
+        waitFor{ service.responses.size() == 2 }
+        then:
+        service.responses.every{ it.action == RouterOuterClass.ResolveHoldForwardAction.RESUME }
+        engine.getErrorCount() == 1
+    }
+
+    def "Verify that the stream is reopened after the reconnect delay if it fails"(){
+        setup:
+        engine = new HtlcInterceptorEngine<>(api, { HtlcDecision.resume() } as HtlcInterceptHandler, 1)
+        engine.setReconnectDelay(50)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        service.fail(Status.UNAVAILABLE)
+        then:
+        !engine.isConnected()
+        when:
+        waitFor{ service.streams.size() == 1 && engine.isConnected() }
+        service.send(1, 1000)
+        waitFor{ service.responses.size() == 1 }
+        then:
+        service.responses[0].action == RouterOuterClass.ResolveHoldForwardAction.RESUME
+    }
+
+    def "Verify that close cancels the stream and the engine can't be restarted"(){
+        setup:
+        engine = new HtlcInterceptorEngine<>(api, { HtlcDecision.resume() } as HtlcInterceptHandler, 1)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        engine.close()
+        then:
+        waitFor{ service.cancelled }
+        !engine.isConnected()
+        when:
+        engine.start()
+        then:
+        def e = thrown IllegalStateException
+        e.message == "HtlcInterceptorEngine is closed."
+    }
+
+    def "Verify that at least one worker thread is required"(){
+        when:
+        new HtlcInterceptorEngine<>(api, { HtlcDecision.resume() } as HtlcInterceptHandler, 0)
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Invalid number of worker threads: 0, must be 1 or greater."
+    }
+
+    static class TestRouterService extends RouterGrpc.RouterImplBase {
+        List<StreamObserver<RouterOuterClass.ForwardHtlcInterceptRequest>> streams = new CopyOnWriteArrayList<>()
+        List<RouterOuterClass.ForwardHtlcInterceptResponse> responses = new CopyOnWriteArrayList<>()
+        volatile boolean cancelled = false
+
+        @Override
+        StreamObserver<RouterOuterClass.ForwardHtlcInterceptResponse> htlcInterceptor(StreamObserver<RouterOuterClass.ForwardHtlcInterceptRequest> responseObserver) {
+            streams << responseObserver
+            io.grpc.Context.current().addListener({
+                cancelled = true
+                streams.remove(responseObserver)
+            } as io.grpc.Context.CancellationListener, { Runnable r -> r.run() } as java.util.concurrent.Executor)
+            return new StreamObserver<RouterOuterClass.ForwardHtlcInterceptResponse>() {
+                void onNext(RouterOuterClass.ForwardHtlcInterceptResponse value) { responses << value }
+                void onError(Throwable t) {}
+                void onCompleted() {}
+            }
+        }
+
+        synchronized void send(long htlcId, long outgoingAmountMsat){
+            streams[0].onNext(RouterOuterClass.ForwardHtlcInterceptRequest.newBuilder()
+                    .setIncomingCircuitKey(RouterOuterClass.CircuitKey.newBuilder().setChanId(123).setHtlcId(htlcId))
+                    .setPaymentHash(ByteString.copyFrom(new byte[32]))
+                    .setOutgoingAmountMsat(outgoingAmountMsat).build())
+        }
+
+        void fail(Status status){
+            def observers = new ArrayList(streams)
+            streams.clear()
+            observers.each{ it.onError(status.asRuntimeException()) }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.interceptor
+
+import io.grpc.BindableService
+import io.grpc.Status
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.wrapper.SynchronousLndAPI
+import org.lightningj.lnd.wrapper.message.RPCMiddlewareRequest
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit tests for RPCMiddlewareEngine.
+ *
+ * Created by Philip Vendil.
+ */
+class RPCMiddlewareEngineSpec extends InProcessLndSpec {
+
+    static final LightningApi.MiddlewareRegistration REGISTRATION = LightningApi.MiddlewareRegistration.newBuilder()
+            .setMiddlewareName("test").setCustomMacaroonCaveatName("test-caveat").build()
+
+    TestLightningService service = new TestLightningService()
+    SynchronousLndAPI api
+    RPCMiddlewareEngine<RPCMiddlewareRequest> engine
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [service]
+    }
+
+    def setup(){
+        api = new SynchronousLndAPI(channel)
+    }
+
+    def cleanup(){
+        engine?.close()
+    }
+
+    def "Verify that the middleware is registered when the stream is opened and reopened"(){
+        setup:
+        engine = new RPCMiddlewareEngine<>(api, REGISTRATION, { RPCMiddlewareDecision.accept() } as RPCMiddlewarePolicy, 1)
+        engine.setReconnectDelay(50)
+        when:
+        engine.start()
+        waitFor{ service.registrations.size() == 1 }
+        service.completeRegistration()
+        then:
+        service.registrations[0] == REGISTRATION
+        service.responses.isEmpty()
+        engine.getDecisionCount() == 0
+        when:
+        service.fail(Status.UNAVAILABLE)
+        waitFor{ service.registrations.size() == 2 && engine.isConnected() }
+        service.sendRequest(1, "/lnrpc.Lightning/GetInfo")
+        waitFor{ service.responses.size() == 1 }
+        then:
+        service.responses[0].refMsgId == 1
+        !service.responses[0].feedback.replaceResponse
+        service.responses[0].feedback.error == ""
+    }
+
+    def "Verify that feedback is correlated by message id and a slow policy doesn't delay other messages"(){
+        setup:
+        CountDownLatch releaseSlow = new CountDownLatch(1)
+        LightningApi.GetInfoResponse replacement = LightningApi.GetInfoResponse.newBuilder().setAlias("replaced").build()
+        engine = new RPCMiddlewareEngine<>(api, REGISTRATION, { RPCMiddlewareRequest request ->
+            if(request.getMsgId() == 1){
+                releaseSlow.await(5, TimeUnit.SECONDS)
+                return RPCMiddlewareDecision.reject("Not allowed.")
+            }
+            return RPCMiddlewareDecision.replace(replacement)
+        } as RPCMiddlewarePolicy, 2)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        service.sendRequest(1, "/lnrpc.Lightning/SendCoins")
+        service.sendRequest(2, "/lnrpc.Lightning/GetInfo")
+        waitFor{ service.responses.size() == 1 }
+        then:
+        service.responses[0].refMsgId == 2
+        service.responses[0].feedback.replaceResponse
+        LightningApi.GetInfoResponse.parseFrom(service.responses[0].feedback.replacementSerialized).alias == "replaced"
+        when:
+        releaseSlow.countDown()
+        waitFor{ service.responses.size() == 2 }
+        then:
+        service.responses[1].refMsgId == 1
+        service.responses[1].feedback.error == "Not allowed."
+    }
+
+    def "Verify that the default decision is reject, or accept in read only mode, if the deadline is missed"(){
+        setup:
+        CountDownLatch release = new CountDownLatch(1)
+        engine = new RPCMiddlewareEngine<>(api, registration, { RPCMiddlewareRequest request ->
+            release.await(5, TimeUnit.SECONDS)
+            return RPCMiddlewareDecision.accept()
+        } as RPCMiddlewarePolicy, 1)
+        engine.setDeadline(50)
+        engine.start()
+        waitFor{ service.streams.size() == 1 }
+        when:
+        service.sendRequest(1, "/lnrpc.Lightning/GetInfo")
+        waitFor{ service.responses.size() == 1 }
+        release.countDown()
+        then:
+        service.responses[0].feedback.error == expectedError
+        engine.getTimeoutCount() == 1
+        where:
+        registration                                                                                     | expectedError
+        REGISTRATION                                                                                     | "Request rejected by middleware test."
+        LightningApi.MiddlewareRegistration.newBuilder().setMiddlewareName("audit").setReadOnlyMode(true).build() | ""
+    }
+
+    def "Verify that a rejected decision requires an error message"(){
+        when:
+        RPCMiddlewareDecision.reject("")
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Error message of rejected RPC must not be empty."
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+        List<StreamObserver<LightningApi.RPCMiddlewareRequest>> streams = new CopyOnWriteArrayList<>()
+        List<LightningApi.MiddlewareRegistration> registrations = new CopyOnWriteArrayList<>()
+        List<LightningApi.RPCMiddlewareResponse> responses = new CopyOnWriteArrayList<>()
+
+        @Override
+        StreamObserver<LightningApi.RPCMiddlewareResponse> registerRPCMiddleware(StreamObserver<LightningApi.RPCMiddlewareRequest> responseObserver) {
+            streams << responseObserver
+            io.grpc.Context.current().addListener({ streams.remove(responseObserver) } as io.grpc.Context.CancellationListener,
+                    { Runnable r -> r.run() } as java.util.concurrent.Executor)
+            return new StreamObserver<LightningApi.RPCMiddlewareResponse>() {
+                void onNext(LightningApi.RPCMiddlewareResponse value) {
+                    if(value.hasRegister()){
+                        registrations << value.register
+                    }else{
+                        responses << value
+                    }
+                }
+                void onError(Throwable t) {}
+                void onCompleted() {}
+            }
+        }
+
+        void completeRegistration(){
+            streams[0].onNext(LightningApi.RPCMiddlewareRequest.newBuilder().setRegComplete(true).build())
+        }
+
+        synchronized void sendRequest(long msgId, String method){
+            streams[0].onNext(LightningApi.RPCMiddlewareRequest.newBuilder()
+                    .setRequestId(msgId + 100)
+                    .setMsgId(msgId)
+                    .setRequest(LightningApi.RPCMessage.newBuilder().setMethodFullUri(method)).build())
+        }
+
+        void fail(Status status){
+            def observers = new ArrayList(streams)
+            streams.clear()
+            observers.each{ it.onError(status.asRuntimeException()) }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics
+
+import spock.lang.Specification
+
+import javax.management.MBeanServer
+import javax.management.ObjectName
+import java.lang.management.ManagementFactory
+
+import static org.lightningj.lnd.metrics.MetricsCollector.ProcessingStage.*
+
+/**
+ * Unit tests for InMemoryMetricsCollector and MethodMetrics.
+ *
+ * Created by Philip Vendil.
+ */
+class InMemoryMetricsCollectorSpec extends Specification {
+
+    static final String GET_INFO = "lnrpc.Lightning/GetInfo"
+    static final String LIST_INVOICES = "lnrpc.Lightning/ListInvoices"
+
+    InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+
+    def "Verify that recordCall aggregates call count, latency, bytes and errors per method"(){
+        when:
+        collector.recordCall(GET_INFO, 1000000, 10, 200, null)
+        collector.recordCall(GET_INFO, 3000000, 10, 0, "CommunicationException")
+        collector.recordCall(GET_INFO, 2000000, 10, 0, "CommunicationException")
+        collector.recordCall(LIST_INVOICES, 5000, 20, 2000, null)
+        MethodMetrics metrics = collector.getMethodMetrics(GET_INFO)
+        then:
+        collector.getMethodMetrics().size() == 2
+        metrics.methodName == GET_INFO
+        metrics.callCount == 3
+        metrics.errorCount == 2
+        metrics.errorCounts == [CommunicationException: 2L]
+        metrics.bytesSent == 30
+        metrics.bytesReceived == 200
+        metrics.meanLatencyMicros == 2000.0d
+        metrics.maxLatencyMicros == 3000.0d
+        metrics.latency.count == 3
+        metrics.toString().startsWith("lnrpc.Lightning/GetInfo {calls=3, errors={CommunicationException=2}")
+        collector.getMethodMetrics("lnrpc.Lightning/Unknown") == null
+    }
+
+    def "Verify that getMethodMetricsByLatency returns slowest method first"(){
+        setup:
+        collector.recordCall("fast", 1000, 0, 0, null)
+        collector.recordCall("slow", 9000000, 0, 0, null)
+        collector.recordCall("medium", 50000, 0, 0, null)
+        expect:
+        collector.getMethodMetricsByLatency(99.0).collect{ it.methodName } == ["slow", "medium", "fast"]
+    }
+
+    def "Verify that recordProcessing keeps a histogram per message type and stage"(){
+        when:
+        collector.recordProcessing("Invoice", WRAP, 1000)
+        collector.recordProcessing("Invoice", WRAP, 3000)
+        collector.recordProcessing("Invoice", VALIDATE, 500)
+        then:
+        collector.getProcessedMessageTypes() == ["Invoice"] as Set
+        collector.getProcessingTime("Invoice", WRAP).count == 2
+        collector.getProcessingTime("Invoice", WRAP).meanMicros == 2.0d
+        collector.getProcessingTime("Invoice", VALIDATE).count == 1
+        collector.getProcessingTime("Invoice", CONVERT).count == 0
+        collector.getProcessingTime("GetInfoResponse", WRAP) == null
+    }
+
+    def "Verify that metrics are registered as MXBeans if JMX is enabled and unregistered on close"(){
+        setup:
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer()
+        InMemoryMetricsCollector jmxCollector = new InMemoryMetricsCollector(true)
+        ObjectName methodName = new ObjectName("org.lightningj.lnd:type=MethodMetrics,method=" + ObjectName.quote(GET_INFO))
+        ObjectName processingName = new ObjectName("org.lightningj.lnd:type=ProcessingMetrics,message=" + ObjectName.quote("Invoice") + ",stage=WRAP")
+        when:
+        jmxCollector.recordCall(GET_INFO, 2000, 10, 20, "ServerSideException")
+        jmxCollector.recordProcessing("Invoice", WRAP, 1000)
+        then:
+        mBeanServer.getAttribute(methodName, "CallCount") == 1L
+        mBeanServer.getAttribute(methodName, "ErrorCount") == 1L
+        mBeanServer.getAttribute(methodName, "BytesReceived") == 20L
+        mBeanServer.getAttribute(methodName, "MaxLatencyMicros") == 2.0d
+        mBeanServer.getAttribute(processingName, "Count") == 1L
+        when:
+        jmxCollector.close()
+        then:
+        !mBeanServer.isRegistered(methodName)
+        !mBeanServer.isRegistered(processingName)
+    }
+}
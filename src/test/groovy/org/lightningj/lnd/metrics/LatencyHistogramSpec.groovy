@@ -0,0 +1,96 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.metrics
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for LatencyHistogram.
+ *
+ * Created by Philip Vendil.
+ */
+class LatencyHistogramSpec extends Specification {
+
+    LatencyHistogram histogram = new LatencyHistogram()
+
+    @Unroll
+    def "Verify that value #value is in a bucket with upper bound #upperBound"(){
+        when:
+        int index = LatencyHistogram.indexOf(value)
+        then:
+        LatencyHistogram.upperBoundOf(index) == upperBound
+        index == 0 || LatencyHistogram.upperBoundOf(index - 1) < value
+        where:
+        value         | upperBound
+        0             | 0
+        63            | 63
+        64            | 65
+        65            | 65
+        127           | 127
+        128           | 131
+        1000          | 1007
+        1000000       | 1015807
+        LatencyHistogram.MAX_TRACKED_VALUE | LatencyHistogram.MAX_TRACKED_VALUE
+    }
+
+    def "Verify that relative error of bucket upper bound is below 4 percent"(){
+        expect:
+        (64L..100000L).step(13).every{ long v ->
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(v))
+            upperBound >= v && (upperBound - v) / v < 0.04
+        }
+    }
+
+    def "Verify that count, mean, percentiles and max are calculated"(){
+        when:
+        (1..1000).each{ histogram.record(it * 1000L) }
+        then:
+        histogram.getCount() == 1000
+        histogram.getTotal() == 500500000L
+        histogram.getMeanMicros() == 500.5d
+        Math.abs(histogram.getMedianMicros() - 500.0d) / 500.0d < 0.04
+        Math.abs(histogram.get99thPercentileMicros() - 990.0d) / 990.0d < 0.04
+        histogram.getMaxMicros() == 1000.0d
+        histogram.getMax() == 1000000L
+        histogram.getValueAtPercentile(100.0) == 1000000L
+    }
+
+    def "Verify that empty histogram returns zero values"(){
+        expect:
+        histogram.getCount() == 0
+        histogram.getMeanMicros() == 0.0d
+        histogram.getValueAtPercentile(99.0) == 0
+        histogram.getMaxMicros() == 0.0d
+    }
+
+    def "Verify that negative values are recorded as 0 and too large values as max tracked value"(){
+        when:
+        histogram.record(-5)
+        histogram.record(Long.MAX_VALUE)
+        then:
+        histogram.getCount() == 2
+        histogram.getValueAtPercentile(50.0) == 0
+        histogram.getMax() == LatencyHistogram.MAX_TRACKED_VALUE
+    }
+
+    def "Verify that values can be recorded concurrently"(){
+        when:
+        List<Thread> threads = (1..4).collect{ Thread.start{ 10000.times{ histogram.record(it) } } }
+        threads*.join()
+        then:
+        histogram.getCount() == 40000
+        histogram.getMax() == 9999
+    }
+}
@@ -0,0 +1,148 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging
+
+import io.grpc.BindableService
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.metrics.InMemoryMetricsCollector
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.wrapper.AsynchronousLndAPI
+import org.lightningj.lnd.wrapper.SynchronousLndAPI
+import org.lightningj.lnd.wrapper.message.ForwardingEvent
+import org.lightningj.lnd.wrapper.message.Invoice
+import org.lightningj.lnd.wrapper.message.Payment
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.stream.Collectors
+
+/**
+ * Unit tests for LndPaging.
+ *
+ * Created by Philip Vendil.
+ */
+class LndPagingSpec extends InProcessLndSpec {
+
+    TestLightningService service = new TestLightningService()
+    SynchronousLndAPI api
+    PagingOptions options = new PagingOptions()
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [service]
+    }
+
+    def setup(){
+        api = new SynchronousLndAPI(channel)
+        options.initialPageSize = 7
+        options.maxPageSize = 7
+    }
+
+    def "Verify that listInvoices iterates over all invoices using index offset and request filter"(){
+        when:
+        List<Invoice> result = LndPaging.listInvoices(api, LightningApi.ListInvoiceRequest.newBuilder()
+                .setPendingOnly(true).setIndexOffset(5).build(), options).stream().collect(Collectors.toList())
+        then:
+        result.size() == 45
+        result.first().addIndex == 6
+        result.last().addIndex == 50
+        service.invoiceRequests.every{ it.pendingOnly && it.numMaxInvoices == 7 }
+        service.invoiceRequests.collect{ it.indexOffset }.take(3) == [5L, 12L, 19L]
+    }
+
+    def "Verify that listInvoices with default options returns all invoices"(){
+        when:
+        PagedIterator<Invoice> iterator = LndPaging.listInvoices(api)
+        then:
+        iterator.stream().count() == 50
+        iterator.getPageCount() == 1
+        service.invoiceRequests[0].numMaxInvoices == PagingOptions.DEFAULT_INITIAL_PAGE_SIZE
+    }
+
+    def "Verify that listPayments pages backwards if reversed is set"(){
+        when:
+        List<Payment> result = LndPaging.listPayments(new AsynchronousLndAPI(channel), LightningApi.ListPaymentsRequest.newBuilder()
+                .setReversed(true).build(), options).stream().collect(Collectors.toList())
+        then:
+        result.size() == 20
+        result.take(7).collect{ it.paymentIndex } == (14L..20L)
+        result.last().paymentIndex == 6
+        service.paymentRequests.collect{ it.indexOffset } == [0L, 14L, 7L]
+    }
+
+    def "Verify that forwardingHistory iterates over all events"(){
+        when:
+        List<ForwardingEvent> result = LndPaging.forwardingHistory(api, LightningApi.ForwardingHistoryRequest.newBuilder()
+                .setStartTime(1).build(), options).stream().collect(Collectors.toList())
+        then:
+        result.size() == 30
+        result.collect{ it.amtIn } == (1L..30L)
+        service.forwardingRequests.every{ it.startTime == 1 }
+    }
+
+    def "Verify that paged calls are recorded by the metrics collector of the API"(){
+        setup:
+        InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+        api.setMetricsCollector(collector)
+        when:
+        long count = LndPaging.listInvoices(api, LightningApi.ListInvoiceRequest.getDefaultInstance(), options).stream().count()
+        then:
+        count == 50
+        service.invoiceRequests.size() > 1
+        collector.getMethodMetrics("lnrpc.Lightning/ListInvoices").callCount == service.invoiceRequests.size()
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+
+        List<LightningApi.ListInvoiceRequest> invoiceRequests = new CopyOnWriteArrayList<>()
+        List<LightningApi.ListPaymentsRequest> paymentRequests = new CopyOnWriteArrayList<>()
+        List<LightningApi.ForwardingHistoryRequest> forwardingRequests = new CopyOnWriteArrayList<>()
+
+        @Override
+        void listInvoices(LightningApi.ListInvoiceRequest request, StreamObserver<LightningApi.ListInvoiceResponse> responseObserver) {
+            invoiceRequests << request
+            List<Long> indexes = (1L..50L).findAll{ it > request.indexOffset }.take((int) request.numMaxInvoices)
+            LightningApi.ListInvoiceResponse.Builder builder = LightningApi.ListInvoiceResponse.newBuilder()
+            indexes.each{ builder.addInvoices(LightningApi.Invoice.newBuilder().setAddIndex(it).setMemo("invoice" + it)) }
+            builder.setFirstIndexOffset(indexes ? indexes.first() : 0).setLastIndexOffset(indexes ? indexes.last() : request.indexOffset)
+            responseObserver.onNext(builder.build())
+            responseObserver.onCompleted()
+        }
+
+        @Override
+        void listPayments(LightningApi.ListPaymentsRequest request, StreamObserver<LightningApi.ListPaymentsResponse> responseObserver) {
+            paymentRequests << request
+            long end = request.indexOffset == 0 ? 21 : request.indexOffset
+            List<Long> indexes = (1L..20L).findAll{ it < end }
+            indexes = indexes.drop(Math.max(0, indexes.size() - (int) request.maxPayments))
+            LightningApi.ListPaymentsResponse.Builder builder = LightningApi.ListPaymentsResponse.newBuilder()
+            indexes.each{ builder.addPayments(LightningApi.Payment.newBuilder().setPaymentIndex(it)) }
+            builder.setFirstIndexOffset(indexes ? indexes.first() : 0).setLastIndexOffset(indexes ? indexes.last() : 0)
+            responseObserver.onNext(builder.build())
+            responseObserver.onCompleted()
+        }
+
+        @Override
+        void forwardingHistory(LightningApi.ForwardingHistoryRequest request, StreamObserver<LightningApi.ForwardingHistoryResponse> responseObserver) {
+            forwardingRequests << request
+            List<Integer> indexes = (0..29).findAll{ it >= request.indexOffset }.take(request.numMaxEvents)
+            LightningApi.ForwardingHistoryResponse.Builder builder = LightningApi.ForwardingHistoryResponse.newBuilder()
+            indexes.each{ builder.addForwardingEvents(LightningApi.ForwardingEvent.newBuilder().setAmtIn(it + 1)) }
+            builder.setLastOffsetIndex(indexes ? indexes.last() + 1 : request.indexOffset)
+            responseObserver.onNext(builder.build())
+            responseObserver.onCompleted()
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.paging
+
+import io.grpc.Status
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.wrapper.CommunicationException
+import org.lightningj.lnd.wrapper.StreamingResponseException
+import org.lightningj.lnd.wrapper.message.Invoice
+import spock.lang.Specification
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.function.Function
+import java.util.function.ToLongFunction
+import java.util.stream.Collectors
+
+/**
+ * Unit tests for PagedIterator.
+ *
+ * Created by Philip Vendil.
+ */
+class PagedIteratorSpec extends Specification {
+
+    List<LightningApi.Invoice> invoices = (1..25).collect{
+        LightningApi.Invoice.newBuilder().setAddIndex(it).setMemo("memo" + it).build()
+    }
+    List<List<Long>> requests = new CopyOnWriteArrayList<>()
+
+    def "Verify that all records are returned page by page"(){
+        setup:
+        PagingOptions options = new PagingOptions()
+        options.initialPageSize = 10
+        options.maxPageSize = 10
+        options.prefetch = prefetch
+        when:
+        PagedIterator<Invoice> iterator = createIterator(options)
+        List<Invoice> result = []
+        while(iterator.hasNext()){
+            result << iterator.next()
+        }
+        then:
+        result.size() == 25
+        result.collect{ it.addIndex } == (1L..25L)
+        result[0] instanceof Invoice
+        result[0].memo == "memo1"
+        iterator.getPageCount() == 3
+        requests.collect{ it[0] } == [0L, 10L, 20L]
+        iterator.isClosed()
+        !iterator.hasNext()
+        when:
+        iterator.next()
+        then:
+        thrown NoSuchElementException
+        where:
+        prefetch << [true, false]
+    }
+
+    def "Verify that next page is prefetched when current page is received"(){
+        setup:
+        PagingOptions options = new PagingOptions()
+        options.initialPageSize = 10
+        options.maxPageSize = 10
+        PagedIterator<Invoice> iterator = createIterator(options)
+        when:
+        iterator.next()
+        waitFor{ requests.size() == 2 }
+        then:
+        requests[1] == [10L, 10L]
+        cleanup:
+        iterator.close()
+    }
+
+    def "Verify that page size is adapted to the target page bytes"(){
+        setup:
+        int recordSize = invoices[0].serializedSize + 2
+        PagingOptions options = new PagingOptions()
+        options.initialPageSize = 2
+        options.targetPageBytes = recordSize * 5
+        options.prefetch = false
+        when:
+        PagedIterator<Invoice> iterator = createIterator(options)
+        iterator.next()
+        then:
+        iterator.getPageSize() >= 4
+        iterator.getPageSize() <= 6
+        when:
+        options.maxPageSize = 3
+        requests.clear()
+        iterator = createIterator(options)
+        iterator.next()
+        then:
+        iterator.getPageSize() == 3
+        requests[0] == [0L, 2L]
+        iterator.stream().count() == 24
+    }
+
+    def "Verify that page size is halved and the page retried if response exceeds max message size"(){
+        setup:
+        PagingOptions options = new PagingOptions()
+        options.initialPageSize = 20
+        options.prefetch = false
+        PageFetcher<LightningApi.ListInvoiceResponse> fetcher = { long indexOffset, int maxRecords ->
+            requests << [indexOffset, (long) maxRecords]
+            if(maxRecords > 5){
+                throw new CommunicationException("Too large", Status.RESOURCE_EXHAUSTED)
+            }
+            return page(indexOffset, maxRecords)
+        } as PageFetcher
+        when:
+        PagedIterator<Invoice> iterator = createIterator(fetcher, options)
+        List<Invoice> result = iterator.stream().collect(Collectors.toList())
+        then:
+        result.size() == 25
+        requests.take(3) == [[0L, 20L], [0L, 10L], [0L, 5L]]
+    }
+
+    def "Verify that errors are thrown as StreamingResponseException and closes the iterator"(){
+        setup:
+        PagingOptions options = new PagingOptions()
+        options.initialPageSize = 10
+        options.prefetch = prefetch
+        PageFetcher<LightningApi.ListInvoiceResponse> fetcher = { long indexOffset, int maxRecords ->
+            if(indexOffset > 0){
+                throw new CommunicationException("Connection lost", Status.UNAVAILABLE)
+            }
+            return page(indexOffset, maxRecords)
+        } as PageFetcher
+        PagedIterator<Invoice> iterator = createIterator(fetcher, options)
+        when:
+        10.times{ iterator.next() }
+        iterator.hasNext()
+        then:
+        def e = thrown StreamingResponseException
+        e.message == "Error fetching page: Connection lost"
+        e.cause instanceof CommunicationException
+        iterator.isClosed()
+        where:
+        prefetch << [true, false]
+    }
+
+    def "Verify that close stops the iteration"(){
+        setup:
+        PagingOptions options = new PagingOptions()
+        options.initialPageSize = 10
+        PagedIterator<Invoice> iterator = createIterator(options)
+        when:
+        iterator.next()
+        iterator.close()
+        then:
+        !iterator.hasNext()
+        iterator.isClosed()
+    }
+
+    def "Verify that invalid paging options are rejected"(){
+        when:
+        new PagingOptions().initialPageSize = 0
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Invalid initial page size: 0, must be 1 or greater."
+    }
+
+    private PagedIterator<Invoice> createIterator(PagingOptions options){
+        return createIterator({ long indexOffset, int maxRecords ->
+            requests << [indexOffset, (long) maxRecords]
+            return page(indexOffset, maxRecords)
+        } as PageFetcher, options)
+    }
+
+    private static PagedIterator<Invoice> createIterator(PageFetcher<LightningApi.ListInvoiceResponse> fetcher, PagingOptions options){
+        return new PagedIterator<Invoice>(fetcher, { it.invoicesList } as Function,
+                { it.lastIndexOffset } as ToLongFunction, 0L, options)
+    }
+
+    private LightningApi.ListInvoiceResponse page(long indexOffset, int maxRecords){
+        List<LightningApi.Invoice> records = invoices.findAll{ it.addIndex > indexOffset }.take(maxRecords)
+        return LightningApi.ListInvoiceResponse.newBuilder().addAllInvoices(records)
+                .setLastIndexOffset(records ? records.last().addIndex : indexOffset).build()
+    }
+
+    private static void waitFor(Closure<Boolean> condition){
+        long end = System.currentTimeMillis() + 5000
+        while(!condition() && System.currentTimeMillis() < end){
+            Thread.sleep(10)
+        }
+        assert condition()
+    }
+}
@@ -0,0 +1,286 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.payment
+
+import com.google.protobuf.ByteString
+import io.grpc.BindableService
+import io.grpc.Status
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.router.proto.RouterGrpc
+import org.lightningj.lnd.router.proto.RouterOuterClass
+import org.lightningj.lnd.util.HexUtils
+import org.lightningj.lnd.wrapper.ClientSideException
+import org.lightningj.lnd.wrapper.router.SynchronousRouterAPI
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ExecutionException
+
+/**
+ * Unit tests for PaymentPipeline.
+ *
+ * Created by Philip Vendil.
+ */
+class PaymentPipelineSpec extends InProcessLndSpec {
+
+    TestRouterService routerService = new TestRouterService()
+    TestLightningService lightningService = new TestLightningService()
+    SynchronousRouterAPI api
+    PaymentPipeline pipeline
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [routerService, lightningService]
+    }
+
+    def setup(){
+        api = new SynchronousRouterAPI(channel)
+    }
+
+    def cleanup(){
+        pipeline?.close()
+    }
+
+    def "Verify that at most max in flight payments are sent and queued payments are sent when others complete"(){
+        setup:
+        pipeline = new PaymentPipeline(api, 2)
+        when:
+        def futures = (1..5).collect{ pipeline.submit(request(it)) }
+        then:
+        routerService.sent.size() == 2
+        pipeline.getInFlightCount() == 2
+        pipeline.getQueuedCount() == 3
+        routerService.sent.every{ it.noInflightUpdates }
+        when:
+        routerService.update(hash(1), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        routerService.update(hash(2), LightningApi.Payment.PaymentStatus.FAILED)
+        then:
+        futures[0].get().status == LightningApi.Payment.PaymentStatus.SUCCEEDED
+        futures[1].get().status == LightningApi.Payment.PaymentStatus.FAILED
+        routerService.sent.size() == 4
+        pipeline.getInFlightCount() == 2
+        pipeline.getQueuedCount() == 1
+        when:
+        (3..5).each{ routerService.update(hash(it), LightningApi.Payment.PaymentStatus.SUCCEEDED) }
+        then:
+        futures.every{ it.isDone() }
+        pipeline.getInFlightCount() == 0
+        pipeline.getQueuedCount() == 0
+    }
+
+    def "Verify that payments with the same payment hash are only sent once"(){
+        setup:
+        pipeline = new PaymentPipeline(api)
+        when:
+        def future1 = pipeline.submit(request(1))
+        def future2 = pipeline.submit(request(1))
+        then:
+        future1.is(future2)
+        routerService.sent.size() == 1
+        when:
+        routerService.update(hash(1), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        def future3 = pipeline.submit(request(1))
+        then:
+        future1.isDone()
+        !future3.is(future1)
+        routerService.sent.size() == 2
+    }
+
+    def "Verify that intermediate in flight updates don't complete the payment and are kept as last update"(){
+        setup:
+        pipeline = new PaymentPipeline(api)
+        pipeline.setSuppressInflightUpdates(false)
+        when:
+        def future = pipeline.submit(request(1))
+        routerService.update(hash(1), LightningApi.Payment.PaymentStatus.IN_FLIGHT)
+        then:
+        !routerService.sent[0].noInflightUpdates
+        !future.isDone()
+        pipeline.getLastUpdate(hash(1)).status == LightningApi.Payment.PaymentStatus.IN_FLIGHT
+        when:
+        routerService.update(hash(1), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        then:
+        future.get().status == LightningApi.Payment.PaymentStatus.SUCCEEDED
+        pipeline.getLastUpdate(hash(1)) == null
+    }
+
+    def "Verify that a payment rejected by LND completes exceptionally and releases its slot"(){
+        setup:
+        pipeline = new PaymentPipeline(api, 1)
+        when:
+        def future1 = pipeline.submit(request(1))
+        def future2 = pipeline.submit(request(2))
+        routerService.fail(hash(1), Status.INVALID_ARGUMENT.withDescription("invalid payment"))
+        future1.get()
+        then:
+        def e = thrown ExecutionException
+        e.cause instanceof ClientSideException
+        routerService.sent.size() == 2
+        !future2.isDone()
+    }
+
+    def "Verify that a payment already sent to LND is tracked with TrackPaymentV2"(){
+        setup:
+        pipeline = new PaymentPipeline(api)
+        when:
+        def future = pipeline.submit(request(1))
+        routerService.fail(hash(1), Status.ALREADY_EXISTS.withDescription("payment is in transition"))
+        then:
+        routerService.tracked.keySet() == [HexUtils.toHex(hash(1))] as Set
+        !future.isDone()
+        when:
+        routerService.update(hash(1), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        then:
+        future.get().status == LightningApi.Payment.PaymentStatus.SUCCEEDED
+    }
+
+    def "Verify that in flight payments are resumed with one TrackPayments stream after the connection is lost"(){
+        setup:
+        pipeline = new PaymentPipeline(api, 3)
+        pipeline.setReconnectDelay(50)
+        def futures = (1..3).collect{ pipeline.submit(request(it)) }
+        lightningService.payments << payment(hash(1), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        lightningService.payments << payment(hash(2), LightningApi.Payment.PaymentStatus.IN_FLIGHT)
+        when:
+        (1..3).each{ routerService.fail(hash(it), Status.UNAVAILABLE) }
+        then:
+        pipeline.getTrackedCount() == 3
+        pipeline.getInFlightCount() == 3
+        when:
+        waitFor{ routerService.trackAllObservers.size() == 1 && futures[0].isDone() && routerService.sent.size() == 4 }
+        then:
+        futures[0].get().status == LightningApi.Payment.PaymentStatus.SUCCEEDED
+        !futures[1].isDone()
+        // Payment 3 was never received by LND and is sent again.
+        routerService.sent.count{ it.paymentHash == ByteString.copyFrom(hash(3)) } == 2
+        pipeline.getTrackedCount() == 1
+        when:
+        routerService.updateAll(hash(2), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        routerService.update(hash(3), LightningApi.Payment.PaymentStatus.SUCCEEDED)
+        then:
+        futures[1].get().status == LightningApi.Payment.PaymentStatus.SUCCEEDED
+        futures[2].get().status == LightningApi.Payment.PaymentStatus.SUCCEEDED
+        pipeline.getInFlightCount() == 0
+        waitFor{ routerService.trackAllObservers.isEmpty() }
+        routerService.sentTrackAll.size() == 1
+    }
+
+    def "Verify that invalid requests and closed pipeline complete the future exceptionally"(){
+        setup:
+        pipeline = new PaymentPipeline(api)
+        when:
+        pipeline.submit(RouterOuterClass.SendPaymentRequest.newBuilder().setAmt(1000).build()).get()
+        then:
+        def e = thrown ExecutionException
+        e.cause instanceof IllegalArgumentException
+        e.cause.message == "Invalid SendPaymentRequest, payment hash or payment request must be set."
+        when:
+        def pending = pipeline.submit(request(1))
+        pipeline.close()
+        pending.get()
+        then:
+        thrown CancellationException
+        when:
+        pipeline.submit(request(2)).get()
+        then:
+        e = thrown ExecutionException
+        e.cause.message == "PaymentPipeline is closed."
+    }
+
+    def "Verify that at least one payment in flight is required"(){
+        when:
+        new PaymentPipeline(api, 0)
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Invalid max in flight: 0, must be 1 or greater."
+    }
+
+    private static byte[] hash(int id){
+        return ([id] * 32) as byte[]
+    }
+
+    private static RouterOuterClass.SendPaymentRequest request(int id){
+        return RouterOuterClass.SendPaymentRequest.newBuilder()
+                .setPaymentHash(ByteString.copyFrom(hash(id)))
+                .setAmt(1000)
+                .setDest(ByteString.copyFrom(([2] * 33) as byte[])).build()
+    }
+
+    private static LightningApi.Payment payment(byte[] paymentHash, LightningApi.Payment.PaymentStatus status){
+        return LightningApi.Payment.newBuilder().setPaymentHash(HexUtils.toHex(paymentHash)).setStatus(status).build()
+    }
+
+    static class TestRouterService extends RouterGrpc.RouterImplBase {
+        List<RouterOuterClass.SendPaymentRequest> sent = new CopyOnWriteArrayList<>()
+        List<RouterOuterClass.TrackPaymentsRequest> sentTrackAll = new CopyOnWriteArrayList<>()
+        Map<String, StreamObserver<LightningApi.Payment>> observers = new ConcurrentHashMap<>()
+        Map<String, StreamObserver<LightningApi.Payment>> tracked = new ConcurrentHashMap<>()
+        List<StreamObserver<LightningApi.Payment>> trackAllObservers = new CopyOnWriteArrayList<>()
+
+        @Override
+        void sendPaymentV2(RouterOuterClass.SendPaymentRequest request, StreamObserver<LightningApi.Payment> responseObserver) {
+            sent << request
+            observers[HexUtils.toHex(request.paymentHash)] = responseObserver
+        }
+
+        @Override
+        void trackPaymentV2(RouterOuterClass.TrackPaymentRequest request, StreamObserver<LightningApi.Payment> responseObserver) {
+            tracked[HexUtils.toHex(request.paymentHash)] = responseObserver
+        }
+
+        @Override
+        void trackPayments(RouterOuterClass.TrackPaymentsRequest request, StreamObserver<LightningApi.Payment> responseObserver) {
+            sentTrackAll << request
+            trackAllObservers << responseObserver
+            io.grpc.Context.current().addListener({ trackAllObservers.remove(responseObserver) } as io.grpc.Context.CancellationListener,
+                    { Runnable r -> r.run() } as java.util.concurrent.Executor)
+        }
+
+        void update(byte[] paymentHash, LightningApi.Payment.PaymentStatus status){
+            String key = HexUtils.toHex(paymentHash)
+            StreamObserver<LightningApi.Payment> observer = observers[key] ?: tracked[key]
+            observer.onNext(payment(paymentHash, status))
+            if(status != LightningApi.Payment.PaymentStatus.IN_FLIGHT){
+                observers.remove(key)?.onCompleted()
+                tracked.remove(key)?.onCompleted()
+            }
+        }
+
+        void updateAll(byte[] paymentHash, LightningApi.Payment.PaymentStatus status){
+            trackAllObservers.each{ it.onNext(payment(paymentHash, status)) }
+        }
+
+        void fail(byte[] paymentHash, Status status){
+            observers.remove(HexUtils.toHex(paymentHash)).onError(status.asRuntimeException())
+        }
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+        List<LightningApi.Payment> payments = new CopyOnWriteArrayList<>()
+
+        @Override
+        void listPayments(LightningApi.ListPaymentsRequest request, StreamObserver<LightningApi.ListPaymentsResponse> responseObserver) {
+            List<LightningApi.Payment> page = request.indexOffset == 0 ? payments : []
+            responseObserver.onNext(LightningApi.ListPaymentsResponse.newBuilder()
+                    .addAllPayments(page)
+                    .setFirstIndexOffset(page.isEmpty() ? 0 : 1)
+                    .setLastIndexOffset(page.size()).build())
+            responseObserver.onCompleted()
+        }
+    }
+}
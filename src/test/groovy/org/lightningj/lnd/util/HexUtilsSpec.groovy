@@ -0,0 +1,59 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util
+
+import com.google.protobuf.ByteString
+import spock.lang.Specification
+
+/**
+ * Unit tests for HexUtils.
+ *
+ * Created by Philip Vendil.
+ */
+class HexUtilsSpec extends Specification {
+
+    def "Verify that toHex encodes byte arrays and ByteStrings in lower case hex"(){
+        expect:
+        HexUtils.toHex(data as byte[]) == expected
+        HexUtils.toHex(ByteString.copyFrom(data as byte[])) == expected
+        where:
+        data                           | expected
+        []                             | ""
+        [0x00]                         | "00"
+        [0x01, 0xAB, 0xFF, 0x7F, 0x80] | "01abff7f80"
+    }
+
+    def "Verify that toHex returns null for null data"(){
+        expect:
+        HexUtils.toHex((byte[]) null) == null
+        HexUtils.toHex((ByteString) null) == null
+    }
+
+    def "Verify that toHex of a ByteString substring only encodes the viewed bytes"(){
+        expect:
+        HexUtils.toHex(ByteString.copyFrom([1, 2, 3, 4] as byte[]).substring(1, 3)) == "0203"
+    }
+
+    def "Verify that CachedHex is only valid for the same ByteString instance"(){
+        setup:
+        ByteString value = ByteString.copyFrom([0xDE, 0xAD] as byte[])
+        HexUtils.CachedHex cached = new HexUtils.CachedHex(value)
+        expect:
+        cached.getHex() == "dead"
+        cached.isCacheOf(value)
+        !cached.isCacheOf(ByteString.copyFrom([0xDE, 0xAD] as byte[]))
+        !cached.isCacheOf(null)
+        new HexUtils.CachedHex(null).getHex() == null
+    }
+}
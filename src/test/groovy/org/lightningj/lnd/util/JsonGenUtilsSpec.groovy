@@ -15,6 +15,7 @@ package org.lightningj.lnd.util
 
 import com.google.protobuf.ByteString
 import com.google.protobuf.Descriptors
+import com.google.protobuf.MessageOrBuilder
 import org.lightningj.lnd.proto.LightningApi
 import org.lightningj.lnd.proto.LightningApi.Invoice
 import org.lightningj.lnd.proto.LightningApi.Route
@@ -240,6 +241,14 @@ class JsonGenUtilsSpec extends Specification {
         result.build().toString() == '{"memo":"SomeMemo","rPreimage":"","rHash":"","value":0,"valueMsat":0,"settled":false,"creationDate":5432123,"settleDate":0,"paymentRequest":"","descriptionHash":"VGVzdA==","expiry":5432343,"fallbackAddr":"","cltvExpiry":12345,"routeHints":[],"private":false,"addIndex":0,"settleIndex":0,"amtPaid":0,"amtPaidSat":0,"amtPaidMsat":0,"state":"OPEN","htlcs":[],"features":[],"isKeysend":false,"paymentAddr":"","isAmp":false,"ampInvoiceState":[]}'
     }
 
+    def "Verify that messageToJson gives the same result for a built message as for its builder"(){
+        setup:
+        Invoice.Builder builder = createInvoice()
+        expect:
+        JsonGenUtils.messageToJson((MessageOrBuilder) builder.build(),LightningApi.Invoice.descriptor).build() ==
+                JsonGenUtils.messageToJson(builder,LightningApi.Invoice.descriptor).build()
+    }
+
     def "Verify that jsonToMessage converts json to a message fields that contain single values"(){
         setup:
         JsonObject jsonObject = Json.createReader(new StringReader('{"memo":"SomeMemo","rPreimage":"","rHash":"","value":0,"valueMsat":0,"settled":false,"creationDate":5432123,"settleDate":0,"paymentRequest":"","descriptionHash":"VGVzdA==","expiry":5432343,"fallbackAddr":"","cltvExpiry":12345,"routeHints":[],"private":false,"addIndex":0,"settleIndex":0,"amtPaid":0,"amtPaidSat":0,"amtPaidMsat":0,"state":"OPEN","htlcs":[],"features":[],"isKeysend":false}')).readObject()
@@ -0,0 +1,100 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util
+
+import com.google.protobuf.ByteString
+import com.google.protobuf.DynamicMessage
+import com.google.protobuf.Timestamp
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.router.proto.RouterOuterClass
+import spock.lang.Specification
+
+import javax.json.Json
+import javax.json.JsonException
+import javax.json.JsonObject
+
+/**
+ * Unit tests for JsonMessagePlan and the plan based conversion in JsonGenUtils.
+ *
+ * Created by Philip Vendil.
+ */
+class JsonMessagePlanSpec extends Specification {
+
+    def "Verify that plans are compiled once per descriptor and contain a field plan for each field"(){
+        when:
+        JsonMessagePlan plan = JsonMessagePlan.get(LightningApi.Invoice.getDescriptor())
+        then:
+        JsonMessagePlan.get(LightningApi.Invoice.getDescriptor()).is(plan)
+        LightningApi.Invoice.getDescriptor().getFields().every{
+            JsonMessagePlan.getField(it).descriptor == it && JsonMessagePlan.getField(it).jsonName == it.getJsonName()
+        }
+        JsonMessagePlan.getField(LightningApi.Invoice.getDescriptor().findFieldByName("route_hints")).repeated
+        JsonMessagePlan.getField(LightningApi.Invoice.getDescriptor().findFieldByName("features")).repeated
+        !JsonMessagePlan.getField(LightningApi.Invoice.getDescriptor().findFieldByName("memo")).repeated
+    }
+
+    def "Verify that jsonToMessage resolves nested messages of protocols other than lnrpc"(){
+        setup:
+        RouterOuterClass.QueryMissionControlResponse expected = RouterOuterClass.QueryMissionControlResponse.newBuilder()
+                .addPairs(RouterOuterClass.PairHistory.newBuilder()
+                        .setNodeFrom(ByteString.copyFromUtf8("from"))
+                        .setHistory(RouterOuterClass.PairData.newBuilder().setFailTime(123L).setFailAmtSat(456L)))
+                .build()
+        JsonObject jsonObject = JsonGenUtils.messageToJson(expected.toBuilder(), expected.getDescriptorForType()).build()
+        when:
+        def builder = JsonGenUtils.jsonToMessage(jsonObject, RouterOuterClass.QueryMissionControlResponse.getDescriptor())
+        then:
+        builder instanceof RouterOuterClass.QueryMissionControlResponse.Builder
+        builder.build() == expected
+    }
+
+    def "Verify that jsonToMessage uses DynamicMessage for message types not in any supported protocol"(){
+        setup:
+        JsonObject jsonObject = Json.createReader(new StringReader('{"seconds":12345,"nanos":5}')).readObject()
+        when:
+        def builder = JsonGenUtils.jsonToMessage(jsonObject, Timestamp.getDescriptor())
+        then:
+        builder instanceof DynamicMessage.Builder
+        Timestamp.parseFrom(builder.build().toByteString()) == Timestamp.newBuilder().setSeconds(12345L).setNanos(5).build()
+    }
+
+    def "Verify that JsonObject based and streaming conversion of the same plan reads values identically"(){
+        setup:
+        String json = '{"memo":"memo","value":12,"settled":true,"state":"SETTLED","rHash":"AQID","routeHints":[{"hopHints":[{"nodeId":"abc","feeBaseMsat":1}]}],"features":[{"key":9,"value":{"name":"tlv","isRequired":false}}]}'
+        when:
+        LightningApi.Invoice.Builder treeBuilder = LightningApi.Invoice.newBuilder()
+        JsonGenUtils.jsonToMessage(Json.createReader(new StringReader(json)).readObject(), treeBuilder, LightningApi.Invoice.getDescriptor())
+        LightningApi.Invoice.Builder streamBuilder = LightningApi.Invoice.newBuilder()
+        JsonStreamUtils.readMessage(Json.createParser(new StringReader(json)), streamBuilder)
+        then:
+        treeBuilder.build() == streamBuilder.build()
+        treeBuilder.getRHash() == ByteString.copyFrom([1, 2, 3] as byte[])
+        treeBuilder.getFeaturesMap()[9].name == "tlv"
+        treeBuilder.getRouteHints(0).getHopHints(0).getFeeBaseMsat() == 1
+    }
+
+    def "Verify that JsonObject based conversion throws JsonException for values of wrong type"(){
+        when:
+        JsonGenUtils.jsonToMessage(Json.createReader(new StringReader(json)).readObject(), LightningApi.Invoice.newBuilder(), LightningApi.Invoice.getDescriptor())
+        then:
+        def e = thrown JsonException
+        e.message == expectedMessage
+        where:
+        json                   | expectedMessage
+        '{"memo":1}'           | "Invalid JSON value NUMBER for field memo of type STRING."
+        '{"settled":"true"}'   | "Invalid JSON value STRING for field settled of type BOOLEAN."
+        '{"routeHints":{}}'    | "Invalid JSON value OBJECT for field routeHints of type repeated MESSAGE."
+        '{"state":"UNKNOWN"}'  | "Invalid value UNKNOWN for enum field state."
+    }
+}
@@ -0,0 +1,186 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util
+
+import com.google.protobuf.ByteString
+import com.google.protobuf.MessageOrBuilder
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.router.proto.RouterOuterClass
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.json.Json
+import javax.json.JsonException
+import javax.json.stream.JsonGenerator
+import javax.json.stream.JsonParser
+
+/**
+ * Unit tests for JsonStreamUtils.
+ *
+ * Created by Philip Vendil.
+ */
+class JsonStreamUtilsSpec extends Specification {
+
+    static LightningApi.Invoice invoice = LightningApi.Invoice.newBuilder()
+            .setMemo("Some \"quoted\" memo åäö\n")
+            .setRHash(ByteString.copyFrom([0x01, 0x02, 0xFF] as byte[]))
+            .setValue(12345L)
+            .setCreationDate(5432123L)
+            .setCltvExpiry(144)
+            .setState(LightningApi.Invoice.InvoiceState.SETTLED)
+            .addRouteHints(LightningApi.RouteHint.newBuilder().addHopHints(LightningApi.HopHint.newBuilder().setNodeId("abc").setChanId(123L)))
+            .addRouteHints(LightningApi.RouteHint.newBuilder())
+            .putFeatures(9, LightningApi.Feature.newBuilder().setName("tlv-onion").setIsKnown(true).build())
+            .build()
+
+    static LightningApi.SendRequest sendRequest = LightningApi.SendRequest.newBuilder()
+            .putDestCustomRecords(2L, ByteString.copyFromUtf8("abc"))
+            .putDestCustomRecords(123L, ByteString.copyFromUtf8("def"))
+            .addDestFeatures(LightningApi.FeatureBit.TLV_ONION_REQ)
+            .build()
+
+    static LightningApi.NetworkInfo networkInfo = LightningApi.NetworkInfo.newBuilder()
+            .setAvgOutDegree(0.00001d)
+            .setAvgChannelSize(1.0E10d)
+            .setTotalNetworkCapacity(Long.MAX_VALUE)
+            .build()
+
+    static LightningApi.NodeMetricsResponse nodeMetrics = LightningApi.NodeMetricsResponse.newBuilder()
+            .putBetweennessCentrality("node1", LightningApi.FloatMetric.newBuilder().setValue(0.25d).setNormalizedValue(1.0d).build())
+            .build()
+
+    static RouterOuterClass.MissionControlConfig missionControlConfig = RouterOuterClass.MissionControlConfig.newBuilder()
+            .setHopProbability(0.6f)
+            .setWeight(0.1f)
+            .build()
+
+    @Unroll
+    def "Verify that streamed JSON of #message.descriptorForType.name is identical to the JsonObjectBuilder based conversion with prettyPrint: #prettyPrint"(){
+        expect:
+        JsonStreamUtils.toJsonString(message, prettyPrint) == JsonGenUtils.jsonToString(JsonGenUtils.messageToJson(message.toBuilder(), message.descriptorForType), prettyPrint)
+        where:
+        message                                                                              | prettyPrint
+        invoice                                                                              | false
+        invoice                                                                              | true
+        sendRequest                                                                          | false
+        sendRequest                                                                          | true
+        networkInfo                                                                          | false
+        nodeMetrics                                                                          | true
+        missionControlConfig                                                                 | false
+        LightningApi.NetworkInfo.newBuilder().setAvgOutDegree(Double.POSITIVE_INFINITY).setAvgChannelSize(Double.NaN).build() | false
+        LightningApi.ListInvoiceResponse.getDefaultInstance()                                | true
+    }
+
+    def "Verify that writeMessage writes UTF-8 encoded JSON to output stream without closing it"(){
+        setup:
+        boolean closed = false
+        ByteArrayOutputStream baos = new ByteArrayOutputStream() {
+            void close() { closed = true }
+        }
+        when:
+        JsonStreamUtils.writeMessage(invoice, baos, false)
+        then:
+        new String(baos.toByteArray(), "UTF-8") == JsonStreamUtils.toJsonString(invoice, false)
+        !closed
+    }
+
+    def "Verify that writeMessage can be used to stream messages as elements of a JSON array"(){
+        setup:
+        StringWriter sw = new StringWriter()
+        JsonGenerator generator = Json.createGenerator(sw)
+        when:
+        generator.writeStartArray()
+        JsonStreamUtils.writeMessage(generator, sendRequest)
+        JsonStreamUtils.writeMessage(generator, sendRequest)
+        generator.writeEnd()
+        generator.close()
+        String single = JsonStreamUtils.toJsonString(sendRequest, false)
+        then:
+        sw.toString() == "[" + single + "," + single + "]"
+    }
+
+    @Unroll
+    def "Verify that readMessage parses JSON of #message.descriptorForType.name back into an equal message"(){
+        setup:
+        String json = JsonStreamUtils.toJsonString(message, prettyPrint)
+        when:
+        def builder = message.newBuilderForType()
+        JsonStreamUtils.readMessage(Json.createParser(new StringReader(json)), builder)
+        then:
+        builder.build() == message
+        where:
+        message              | prettyPrint
+        invoice              | false
+        sendRequest          | true
+        networkInfo          | false
+        nodeMetrics          | false
+        missionControlConfig | true
+    }
+
+    def "Verify that readMessage reads messages from a parser that have already returned START_OBJECT"(){
+        setup:
+        String single = JsonStreamUtils.toJsonString(invoice, false)
+        JsonParser parser = Json.createParser(new StringReader("[" + single + "," + single + "]"))
+        List<LightningApi.Invoice> result = []
+        when:
+        parser.next() // START_ARRAY
+        JsonParser.Event event
+        while((event = parser.next()) != JsonParser.Event.END_ARRAY){
+            result << JsonStreamUtils.readMessage(parser, event, LightningApi.Invoice.newBuilder()).build()
+        }
+        then:
+        result == [invoice, invoice]
+        when:
+        JsonStreamUtils.readMessage(Json.createParser(new StringReader("[]")), LightningApi.Invoice.newBuilder())
+        then:
+        def e = thrown JsonException
+        e.message == "Invalid JSON data for message Invoice, expected an object but got START_ARRAY."
+    }
+
+    def "Verify that readMessage handles special float values, unknown fields and repeated keys"(){
+        setup:
+        String json = '{"unknown":{"a":[1,{"b":[]}],"c":"d"},"avgOutDegree":"inf","avgChannelSize":"NaN","numNodes":1,"unknownArray":[[],{}],"numNodes":2}'
+        when:
+        LightningApi.NetworkInfo.Builder builder = LightningApi.NetworkInfo.newBuilder()
+        JsonStreamUtils.readMessage(Json.createParser(new StringReader(json)), builder)
+        then:
+        builder.getAvgOutDegree() == Double.POSITIVE_INFINITY
+        Double.isNaN(builder.getAvgChannelSize())
+        builder.getNumNodes() == 2
+        when:
+        LightningApi.SendRequest.Builder sendBuilder = LightningApi.SendRequest.newBuilder()
+        JsonStreamUtils.readMessage(Json.createParser(new StringReader('{"destFeatures":["TLV_ONION_REQ"],"destFeatures":["TLV_ONION_OPT"]}')), sendBuilder)
+        then:
+        sendBuilder.getDestFeaturesList() == [LightningApi.FeatureBit.TLV_ONION_OPT]
+    }
+
+    @Unroll
+    def "Verify that readMessage throws JsonException for invalid JSON data: #json"(){
+        when:
+        JsonStreamUtils.readMessage(Json.createParser(new StringReader(json)), LightningApi.Invoice.newBuilder())
+        then:
+        def e = thrown Exception
+        e instanceof JsonException || e instanceof ArithmeticException
+        where:
+        json << ['[]',
+                 '{"memo":1}',
+                 '{"value":"1"}',
+                 '{"value":1.5}',
+                 '{"routeHints":[{"hopHints":[{"cltvExpiryDelta":12345678901}]}]}',
+                 '{"private":null}',
+                 '{"state":"INVALID"}',
+                 '{"routeHints":{}}',
+                 '{"routeHints":[1]}']
+    }
+}
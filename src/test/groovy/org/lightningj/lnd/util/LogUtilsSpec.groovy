@@ -0,0 +1,72 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.util
+
+import org.lightningj.lnd.wrapper.message.Invoice
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse
+import spock.lang.Specification
+
+/**
+ * Unit tests for LogUtils.
+ *
+ * Created by Philip Vendil.
+ */
+class LogUtilsSpec extends Specification {
+
+    def cleanup(){
+        LogUtils.setMaxFullMessageSize(LogUtils.DEFAULT_MAX_FULL_MESSAGE_SIZE)
+    }
+
+    def "Verify that default max full message size is used if system property isn't set"(){
+        expect:
+        LogUtils.getMaxFullMessageSize() == LogUtils.DEFAULT_MAX_FULL_MESSAGE_SIZE
+    }
+
+    def "Verify that toLogString returns full JSON for messages smaller than max full message size"(){
+        setup:
+        ListInvoiceResponse resp = genListInvoiceResponse(2)
+        expect:
+        LogUtils.toLogString(resp) == resp.toString()
+    }
+
+    def "Verify that toLogString returns summary for messages larger than max full message size"(){
+        setup:
+        ListInvoiceResponse resp = genListInvoiceResponse(2)
+        LogUtils.setMaxFullMessageSize(10)
+        expect:
+        LogUtils.toLogString(resp) == resp.toSummaryString()
+        LogUtils.toLogString(resp) =~ /^ListInvoiceResponse: summary \{serializedSize=\d+, invoices=2 entries\}$/
+    }
+
+    def "Verify that toLogString always returns full JSON if max full message size is negative"(){
+        setup:
+        ListInvoiceResponse resp = genListInvoiceResponse(2)
+        LogUtils.setMaxFullMessageSize(-1)
+        expect:
+        LogUtils.toLogString(resp) == resp.toString()
+    }
+
+    private static ListInvoiceResponse genListInvoiceResponse(int numberOfInvoices){
+        ListInvoiceResponse resp = new ListInvoiceResponse()
+        List<Invoice> invoices = []
+        for(int i = 0; i < numberOfInvoices; i++){
+            Invoice invoice = new Invoice()
+            invoice.setMemo("Invoice " + i)
+            invoice.setValue(1000 + i)
+            invoices << invoice
+        }
+        resp.setInvoices(invoices)
+        return resp
+    }
+}
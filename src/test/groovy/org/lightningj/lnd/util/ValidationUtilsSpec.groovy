@@ -13,8 +13,11 @@
  *************************************************************************/
 package org.lightningj.lnd.util
 
+import com.google.protobuf.DescriptorProtos
 import com.google.protobuf.Descriptors
+import com.google.protobuf.DynamicMessage
 import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.wrapper.ValidationResult
 import spock.lang.Specification
 
 /**
@@ -39,4 +42,83 @@ class ValidationUtilsSpec extends Specification {
         then:
         !foundRequired
     }
+
+    def "Verify that message types without constraints returns the same immutable valid result"(){
+        setup:
+        LightningApi.Invoice invoice = LightningApi.Invoice.newBuilder().setMemo("memo").build()
+        when:
+        ValidationResult result1 = ValidationUtils.validateMessage(invoice, invoice.getDescriptorForType())
+        ValidationResult result2 = ValidationUtils.validateMessage(invoice.toBuilder(), invoice.getDescriptorForType())
+        then:
+        result1.is(result2)
+        result1.isValid()
+        result1.messageType == "Invoice"
+        !ValidationUtils.hasConstraints(invoice.getDescriptorForType())
+        when:
+        result1.getMessageErrors().add(null)
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "Verify that required fields and required sub messages are validated"(){
+        setup:
+        Descriptors.Descriptor parent = requiredFieldsFile.findMessageTypeByName("Parent")
+        Descriptors.Descriptor child = requiredFieldsFile.findMessageTypeByName("Child")
+        Descriptors.Descriptor unconstrained = requiredFieldsFile.findMessageTypeByName("Unconstrained")
+        expect:
+        ValidationUtils.hasConstraints(parent)
+        ValidationUtils.hasConstraints(child)
+        !ValidationUtils.hasConstraints(unconstrained)
+        when: "all required fields are set"
+        DynamicMessage validChild = DynamicMessage.newBuilder(child).setField(child.findFieldByName("id"), "abc").build()
+        DynamicMessage.Builder builder = DynamicMessage.newBuilder(parent)
+                .setField(parent.findFieldByName("name"), "name")
+                .setField(parent.findFieldByName("child"), validChild)
+                .addRepeatedField(parent.findFieldByName("tags"), "tag")
+        ValidationResult result = ValidationUtils.validateMessage(builder, parent)
+        then:
+        result.isValid()
+        result.is(ValidationUtils.validateMessage(builder.build(), parent))
+        when: "a required field is missing and the child misses a required field"
+        builder.clearField(parent.findFieldByName("name"))
+        builder.setField(parent.findFieldByName("child"), DynamicMessage.getDefaultInstance(child))
+        result = ValidationUtils.validateMessage(builder, parent)
+        then:
+        !result.isValid()
+        result.messageType == "Parent"
+        result.messageErrors.collect{ it.field } == ["name"]
+        result.messageErrors[0].descriptionResourceKey == "lightningj.validation.fieldisrequired"
+        result.subMessageResults.size() == 1
+        result.subMessageResults[0].messageType == "Child"
+        result.aggregatedValidationErrors.collect{ it.field } == ["name", "id"]
+    }
+
+    private static Descriptors.FileDescriptor requiredFieldsFile = createRequiredFieldsFile()
+
+    private static Descriptors.FileDescriptor createRequiredFieldsFile(){
+        DescriptorProtos.FileDescriptorProto fileProto = DescriptorProtos.FileDescriptorProto.newBuilder()
+                .setName("validationtest.proto")
+                .setSyntax("proto2")
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder().setName("Child")
+                        .addField(field("id", 1, DescriptorProtos.FieldDescriptorProto.Label.LABEL_REQUIRED, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING, null)))
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder().setName("Unconstrained")
+                        .addField(field("value", 1, DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING, null)))
+                .addMessageType(DescriptorProtos.DescriptorProto.newBuilder().setName("Parent")
+                        .addField(field("name", 1, DescriptorProtos.FieldDescriptorProto.Label.LABEL_REQUIRED, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING, null))
+                        .addField(field("child", 2, DescriptorProtos.FieldDescriptorProto.Label.LABEL_REQUIRED, DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE, ".Child"))
+                        .addField(field("tags", 3, DescriptorProtos.FieldDescriptorProto.Label.LABEL_REPEATED, DescriptorProtos.FieldDescriptorProto.Type.TYPE_STRING, null))
+                        .addField(field("other", 4, DescriptorProtos.FieldDescriptorProto.Label.LABEL_OPTIONAL, DescriptorProtos.FieldDescriptorProto.Type.TYPE_MESSAGE, ".Unconstrained")))
+                .build()
+        return Descriptors.FileDescriptor.buildFrom(fileProto, new Descriptors.FileDescriptor[0])
+    }
+
+    private static DescriptorProtos.FieldDescriptorProto field(String name, int number, DescriptorProtos.FieldDescriptorProto.Label label,
+                                                               DescriptorProtos.FieldDescriptorProto.Type type, String typeName){
+        DescriptorProtos.FieldDescriptorProto.Builder builder = DescriptorProtos.FieldDescriptorProto.newBuilder()
+                .setName(name).setNumber(number).setLabel(label).setType(type)
+        if(typeName != null){
+            builder.setTypeName(typeName)
+        }
+        return builder.build()
+    }
 }
@@ -0,0 +1,260 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper
+
+import io.grpc.BindableService
+import io.grpc.ManagedChannel
+import io.grpc.Status
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.stateservice.proto.StateGrpc
+import org.lightningj.lnd.stateservice.proto.Stateservice
+import org.lightningj.lnd.wrapper.message.GetInfoResponse
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.function.Function
+
+import static org.lightningj.lnd.wrapper.APIPool.LoadBalancingStrategy.*
+
+/**
+ * Unit tests for APIPool.
+ *
+ * Created by Philip Vendil.
+ */
+class APIPoolSpec extends InProcessLndSpec {
+
+    List<TestNode> nodes = []
+    APIPool<SynchronousLndAPI> pool
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return []
+    }
+
+    def setup(){
+        3.times{
+            TestNode node = new TestNode("node" + it)
+            node.channel = startServer(new TestLightningService(node), new TestStateService(node))
+            nodes << node
+        }
+    }
+
+    def cleanup(){
+        pool?.close()
+    }
+
+    def "Verify that round robin strategy spreads calls evenly over all members"(){
+        setup:
+        pool = createPool(ROUND_ROBIN)
+        when:
+        Map<String,Integer> counts = [:]
+        30.times{
+            GetInfoResponse resp = pool.execute({ SynchronousLndAPI api -> api.getInfo() } as APIPool.APICall)
+            counts[resp.alias] = (counts[resp.alias] ?: 0) + 1
+        }
+        then:
+        counts == [node0: 10, node1: 10, node2: 10]
+        pool.getStrategy() == ROUND_ROBIN
+    }
+
+    def "Verify that least outstanding requests strategy skips members with pending calls"(){
+        setup:
+        pool = createPool(LEAST_OUTSTANDING_REQUESTS)
+        nodes[0].holdGetInfo = true
+        nodes[1].holdGetInfo = true
+        LightningGrpc.newStub(pool.getMembers()[0].getAPI().getChannel()).getInfo(LightningApi.GetInfoRequest.getDefaultInstance(), new NoOpObserver())
+        LightningGrpc.newStub(pool.getMembers()[1].getAPI().getChannel()).getInfo(LightningApi.GetInfoRequest.getDefaultInstance(), new NoOpObserver())
+        expect:
+        pool.getMembers()[0].getOutstandingRequests() == 1
+        pool.getMembers()[1].getOutstandingRequests() == 1
+        pool.getMembers()[2].getOutstandingRequests() == 0
+        (1..10).every{ pool.getAPI().is(pool.getMembers()[2].getAPI()) }
+        when:
+        nodes[0].releaseGetInfo()
+        then:
+        pool.getMembers()[0].getOutstandingRequests() == 0
+        pool.getAPI().getChannel() != pool.getMembers()[1].getAPI().getChannel()
+        cleanup:
+        nodes[1].releaseGetInfo()
+    }
+
+    def "Verify that members not in state RPC_ACTIVE or SERVER_ACTIVE are skipped"(){
+        setup:
+        nodes[0].state = Stateservice.WalletState.LOCKED
+        nodes[1].state = Stateservice.WalletState.RPC_ACTIVE
+        nodes[2].state = Stateservice.WalletState.WAITING_TO_START
+        pool = createPool(ROUND_ROBIN)
+        when:
+        pool.start()
+        then:
+        !pool.getMembers()[0].isAvailable()
+        pool.getMembers()[0].getWalletState() == Stateservice.WalletState.LOCKED
+        pool.getMembers()[1].isAvailable()
+        pool.getAvailableCount() == 1
+        (1..10).every{ pool.execute({ SynchronousLndAPI api -> api.getInfo() } as APIPool.APICall).alias == "node1" }
+        when:
+        nodes[0].pushState(Stateservice.WalletState.SERVER_ACTIVE)
+        then:
+        pool.getMembers()[0].isAvailable()
+        pool.getAvailableCount() == 2
+    }
+
+    def "Verify that CommunicationException with status UNAVAILABLE is thrown if no member is available"(){
+        setup:
+        nodes.each{ it.state = Stateservice.WalletState.LOCKED }
+        pool = createPool(LEAST_OUTSTANDING_REQUESTS)
+        pool.start()
+        when:
+        pool.getAPI()
+        then:
+        def e = thrown CommunicationException
+        e.message == "No available LND node in API pool."
+        e.status.code == Status.Code.UNAVAILABLE
+    }
+
+    def "Verify that member is unavailable if state subscription fails and resubscribes after reconnect delay"(){
+        setup:
+        pool = createPool(ROUND_ROBIN)
+        pool.setReconnectDelay(50)
+        pool.start()
+        when:
+        nodes[1].failStateSubscriptions(Status.UNAVAILABLE)
+        then:
+        !pool.getMembers()[1].isAvailable()
+        pool.getMembers()[1].getWalletState() == null
+        when:
+        waitFor{ nodes[1].stateObservers.size() == 1 }
+        then:
+        pool.getMembers()[1].isAvailable()
+    }
+
+    def "Verify that members not supporting the state service are considered available"(){
+        setup:
+        nodes[2].unimplemented = true
+        pool = createPool(ROUND_ROBIN)
+        when:
+        pool.start()
+        then:
+        pool.getAvailableCount() == 3
+    }
+
+    def "Verify that close cancels state subscriptions and closes all channels"(){
+        setup:
+        pool = createPool(ROUND_ROBIN)
+        pool.start()
+        when:
+        pool.close()
+        then:
+        pool.getMembers().every{ it.getAPI().getChannel().isShutdown() }
+        waitFor{ nodes.every{ it.stateObservers.isEmpty() } }
+        when:
+        pool.start()
+        then:
+        thrown IllegalStateException
+        cleanup:
+        pool = null
+    }
+
+    def "Verify that at least one channel is required"(){
+        when:
+        new APIPool<SynchronousLndAPI>([], { new SynchronousLndAPI(it) } as Function)
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "APIPool requires at least one channel."
+    }
+
+    private APIPool<SynchronousLndAPI> createPool(APIPool.LoadBalancingStrategy strategy){
+        return new APIPool<SynchronousLndAPI>(nodes.collect{ it.channel }, { new SynchronousLndAPI(it) } as Function, strategy)
+    }
+
+    static class TestNode {
+        String alias
+        ManagedChannel channel
+        volatile Stateservice.WalletState state = Stateservice.WalletState.SERVER_ACTIVE
+        volatile boolean holdGetInfo = false
+        volatile boolean unimplemented = false
+        List<StreamObserver<Stateservice.SubscribeStateResponse>> stateObservers = new CopyOnWriteArrayList<>()
+        List<StreamObserver<LightningApi.GetInfoResponse>> heldObservers = new CopyOnWriteArrayList<>()
+
+        TestNode(String alias){
+            this.alias = alias
+        }
+
+        void pushState(Stateservice.WalletState newState){
+            state = newState
+            stateObservers.each{ it.onNext(Stateservice.SubscribeStateResponse.newBuilder().setState(newState).build()) }
+        }
+
+        void failStateSubscriptions(Status status){
+            def observers = new ArrayList(stateObservers)
+            stateObservers.clear()
+            observers.each{ it.onError(status.asRuntimeException()) }
+        }
+
+        void releaseGetInfo(){
+            def observers = new ArrayList(heldObservers)
+            heldObservers.clear()
+            observers.each{
+                it.onNext(LightningApi.GetInfoResponse.newBuilder().setAlias(alias).build())
+                it.onCompleted()
+            }
+        }
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+        TestNode node
+
+        TestLightningService(TestNode node){
+            this.node = node
+        }
+
+        @Override
+        void getInfo(LightningApi.GetInfoRequest request, StreamObserver<LightningApi.GetInfoResponse> responseObserver) {
+            if(node.holdGetInfo){
+                node.heldObservers << responseObserver
+                return
+            }
+            responseObserver.onNext(LightningApi.GetInfoResponse.newBuilder().setAlias(node.alias).build())
+            responseObserver.onCompleted()
+        }
+    }
+
+    static class TestStateService extends StateGrpc.StateImplBase {
+        TestNode node
+
+        TestStateService(TestNode node){
+            this.node = node
+        }
+
+        @Override
+        void subscribeState(Stateservice.SubscribeStateRequest request, StreamObserver<Stateservice.SubscribeStateResponse> responseObserver) {
+            if(node.unimplemented){
+                responseObserver.onError(Status.UNIMPLEMENTED.asRuntimeException())
+                return
+            }
+            node.stateObservers << responseObserver
+            io.grpc.Context.current().addListener({ node.stateObservers.remove(responseObserver) } as io.grpc.Context.CancellationListener,
+                    { Runnable r -> r.run() } as java.util.concurrent.Executor)
+            responseObserver.onNext(Stateservice.SubscribeStateResponse.newBuilder().setState(node.state).build())
+        }
+    }
+
+    static class NoOpObserver implements StreamObserver<LightningApi.GetInfoResponse> {
+        void onNext(LightningApi.GetInfoResponse value) {}
+        void onError(Throwable t) {}
+        void onCompleted() {}
+    }
+}
@@ -36,7 +36,9 @@ class APISpec extends Specification {
     SynchronousLndAPI api = new SynchronousLndAPI(Mock(ManagedChannel))
 
     def setup(){
-        api.log = Mock(Logger)
+        api.log = Mock(Logger){
+            isLoggable(Level.FINE) >> true
+        }
     }
 
     def "Verify that validate() checks a message if performValidation is set true"(){
@@ -110,6 +112,19 @@ class APISpec extends Specification {
         1 * api.log.fine( {it =~ """Sending request message: WalletBalanceRequest:"""})
     }
 
+    def "Verify that processRequest doesn't convert message to string if FINE logging is disabled"(){
+        setup:
+        api.log = Mock(Logger)
+        Message m = Mock(Message)
+        when:
+        api.processRequest(m)
+        then:
+        1 * api.log.isLoggable(Level.FINE) >> false
+        1 * m.validate() >> { getValidValidationResult()}
+        0 * m.toSummaryString()
+        0 * api.log.fine(_)
+    }
+
     def "Verify getter and setter for perform validation"(){
         when:
         api.setPerformValidation(false)
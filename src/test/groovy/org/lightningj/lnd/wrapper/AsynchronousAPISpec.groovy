@@ -14,8 +14,10 @@
 package org.lightningj.lnd.wrapper
 
 import io.grpc.ManagedChannel
+import org.lightningj.lnd.wrapper.message.WalletBalanceResponse
 import spock.lang.Specification
 
+import java.util.logging.Level
 import java.util.logging.Logger
 
 /**
@@ -28,7 +30,9 @@ class AsynchronousAPISpec extends Specification {
     AsynchronousLndAPI api = new AsynchronousLndAPI(Mock(ManagedChannel))
 
     def setup(){
-        api.log = Mock(Logger)
+        api.log = Mock(Logger){
+            isLoggable(Level.FINE) >> true
+        }
     }
 
     def "AsynchronousLndAPI initializes constructors properly."(){
@@ -40,4 +44,14 @@ class AsynchronousAPISpec extends Specification {
         api1.channel != null
     }
 
+    def "Verify that processResponse performs validation and debug logging"(){
+        setup:
+        WalletBalanceResponse resp = new WalletBalanceResponse()
+        when:
+        WalletBalanceResponse resp2 = api.processResponse(resp)
+        then:
+        resp == resp2
+        1 * api.log.fine({ it =~'Received response message: WalletBalanceResponse: '})
+    }
+
 }
@@ -0,0 +1,104 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper
+
+import io.grpc.stub.ClientCallStreamObserver
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.wrapper.message.WalletBalanceResponse
+import spock.lang.Specification
+
+import java.util.logging.Logger
+
+import static io.grpc.Status.ABORTED
+import static io.grpc.Status.CANCELLED
+
+/**
+ * Unit tests for FlowControlledStreamObserverWrapper.
+ *
+ * Created by Philip Vendil.
+ */
+class FlowControlledStreamObserverWrapperSpec extends Specification {
+
+    def observerMock = Mock(FlowControlledStreamObserver)
+    def requestStream = Mock(ClientCallStreamObserver)
+    FlowControlledStreamObserverWrapper sow = new FlowControlledStreamObserverWrapper(observerMock,true,"WalletBalanceResponse")
+
+    def setup(){
+        StreamObserverWrapper.log = Mock(Logger)
+    }
+
+    def "Verify that beforeStart disables auto request with observers initial request and gives observer a flow control"(){
+        setup:
+        StreamFlowControl flowControl = null
+        when:
+        sow.beforeStart(requestStream)
+        then:
+        1 * observerMock.getInitialRequest() >> 5
+        1 * requestStream.disableAutoRequestWithInitial(5)
+        1 * observerMock.onStart(_ as StreamFlowControl) >> { StreamFlowControl fc -> flowControl = fc}
+        when:
+        flowControl.request(3)
+        then:
+        1 * requestStream.request(3)
+        when:
+        flowControl.cancel("Stop")
+        then:
+        1 * requestStream.cancel("Stop", null)
+    }
+
+    def "Verify that received messages are converted and forwarded to the observer"(){
+        setup:
+        sow.beforeStart(requestStream)
+        when:
+        sow.onNext(LightningApi.WalletBalanceResponse.newBuilder().setConfirmedBalance(123L).build())
+        then:
+        1 * observerMock.onNext(_ as WalletBalanceResponse) >> {WalletBalanceResponse w ->
+            assert w.getConfirmedBalance() ==  123L}
+    }
+
+    def "Verify that local processing error cancels the call and is only reported once"(){
+        setup:
+        sow.beforeStart(requestStream)
+        sow.wrapperFactory = Mock(WrapperFactory)
+        sow.wrapperFactory.wrap(_) >> { throw new ClientSideException("SomeMessage", ABORTED)}
+        when:
+        sow.onNext(LightningApi.WalletBalanceResponse.newBuilder().build())
+        then:
+        1 * requestStream.cancel(_ as String, _ as ClientSideException)
+        1 * observerMock.onError(_ as ClientSideException)
+        when: // Cancelled call results in a GRPC error that shouldn't be forwarded
+        sow.onError(new io.grpc.StatusException(CANCELLED))
+        sow.onNext(LightningApi.WalletBalanceResponse.newBuilder().build())
+        sow.onCompleted()
+        then:
+        0 * observerMock._
+    }
+
+    def "Verify that GRPC errors are converted and forwarded without cancelling the call"(){
+        setup:
+        sow.beforeStart(requestStream)
+        when:
+        sow.onError(new io.grpc.StatusException(CANCELLED))
+        then:
+        0 * requestStream.cancel(_,_)
+        1 * observerMock.onError(_ as ClientSideException)
+    }
+
+    def "Verify that onCompleted is forwarded to the observer"(){
+        when:
+        sow.onCompleted()
+        then:
+        1 * observerMock.onCompleted()
+    }
+}
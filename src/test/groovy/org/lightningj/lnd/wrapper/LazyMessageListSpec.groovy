@@ -0,0 +1,126 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper
+
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.wrapper.message.Invoice
+import org.lightningj.lnd.wrapper.message.ListInvoiceResponse
+import spock.lang.Specification
+
+import java.util.function.IntFunction
+import java.util.stream.Collectors
+
+/**
+ * Unit tests for LazyMessageList.
+ *
+ * Created by Philip Vendil.
+ */
+class LazyMessageListSpec extends Specification {
+
+    LightningApi.ListInvoiceResponse apiObject = genListInvoiceResponse(5)
+
+    def "Verify that elements are wrapped when accessed and cached per index"(){
+        setup:
+        int reads = 0
+        LazyMessageList<Invoice> list = new LazyMessageList<>(5, { int i -> reads++; apiObject.getInvoices(i) } as IntFunction, true)
+        expect:
+        list.size() == 5
+        reads == 0
+        list.getCachedCount() == 0
+        when:
+        Invoice first = list.get(2)
+        then:
+        first.memo == "memo2"
+        reads == 1
+        list.get(2).is(first)
+        reads == 1
+        list.getCachedCount() == 1
+        !list.isModified()
+        when:
+        list.get(5)
+        then:
+        thrown IndexOutOfBoundsException
+    }
+
+    def "Verify that a new wrapper is created for every access if caching is disabled"(){
+        setup:
+        LazyMessageList<Invoice> list = new LazyMessageList<>(5, { int i -> apiObject.getInvoices(i) } as IntFunction, false)
+        expect:
+        list.get(1).memo == "memo1"
+        !list.get(1).is(list.get(1))
+        list.getCachedCount() == 0
+    }
+
+    def "Verify that the list is modified if a modifying method is called or a cached element is modified"(){
+        setup:
+        LazyMessageList<Invoice> list = new LazyMessageList<>(5, { int i -> apiObject.getInvoices(i) } as IntFunction, true)
+        when:
+        list.get(3).setMemo("changed")
+        then:
+        list.isModified()
+        when:
+        list.add(new Invoice())
+        then:
+        list.size() == 6
+        list.get(3).memo == "changed"
+        list.get(0).memo == "memo0"
+        list.isModified()
+        when:
+        list.clear()
+        then:
+        list.size() == 0
+        LazyMessageList.isModified(list)
+        LazyMessageList.isModified(new ArrayList<Invoice>())
+    }
+
+    def "Verify that generated list getter returns lazy view and only modified lists are populated into builder"(){
+        setup:
+        ListInvoiceResponse response = new ListInvoiceResponse(apiObject)
+        when:
+        List<Invoice> invoices = response.getInvoices()
+        then:
+        invoices instanceof LazyMessageList
+        invoices.get(4).memo == "memo4"
+        ((LazyMessageList) invoices).getCachedCount() == 1
+        response.getApiObject().is(apiObject)
+        response.isReadOnly()
+        when:
+        invoices.get(1).setMemo("changed")
+        then:
+        response.getApiObject().getInvoices(1).memo == "changed"
+        response.getApiObject().getInvoicesCount() == 5
+        response.getApiObject().getInvoices(0).memo == "memo0"
+        ((LazyMessageList) invoices).getCachedCount() == 2
+    }
+
+    def "Verify that stream accessor wraps elements without creating list"(){
+        setup:
+        ListInvoiceResponse response = new ListInvoiceResponse(apiObject)
+        expect:
+        response.streamInvoices().map{ it.memo }.collect(Collectors.toList()) == ["memo0", "memo1", "memo2", "memo3", "memo4"]
+        response.streamInvoices().filter{ it.value > 2 }.count() == 2
+        when:
+        response.getInvoices().get(0).setMemo("changed")
+        then:
+        response.streamInvoices().findFirst().get().memo == "changed"
+    }
+
+    private static LightningApi.ListInvoiceResponse genListInvoiceResponse(int size){
+        LightningApi.ListInvoiceResponse.Builder builder = LightningApi.ListInvoiceResponse.newBuilder()
+        size.times{
+            builder.addInvoices(LightningApi.Invoice.newBuilder().setMemo("memo" + it).setValue(it))
+        }
+        return builder.build()
+    }
+}
@@ -13,14 +13,22 @@
  *************************************************************************/
 package org.lightningj.lnd.wrapper
 
+import com.google.protobuf.ByteString
 import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.walletkit.proto.WalletKitOuterClass
+import org.lightningj.lnd.wrapper.message.AliasMap
+import org.lightningj.lnd.wrapper.message.GetInfoResponse
+import org.lightningj.lnd.wrapper.message.Invoice
 import org.lightningj.lnd.wrapper.message.OpenChannelRequest
 import org.lightningj.lnd.wrapper.message.OpenStatusUpdate
+import org.lightningj.lnd.wrapper.message.RouteHint
 import org.lightningj.lnd.wrapper.message.SendRequest
 import org.lightningj.lnd.wrapper.message.WalletBalanceRequest
+import org.lightningj.lnd.wrapper.walletkit.message.SignPsbtResponse
 import spock.lang.Specification
 
 import javax.json.Json
+import javax.json.JsonException
 import javax.json.JsonObject
 import javax.json.JsonObjectBuilder
 import javax.json.JsonReader
@@ -120,6 +128,33 @@ class MessageSpec extends Specification {
 }"""
     }
 
+    def "Verify that toJson streams the same JSON as toJsonAsString to writers and output streams"(){
+        setup:
+        OpenChannelRequest r = genOpenChannelRequest()
+        StringWriter sw = new StringWriter()
+        ByteArrayOutputStream baos = new ByteArrayOutputStream()
+        when:
+        r.toJson(sw, true)
+        r.toJson(baos, false)
+        then:
+        sw.toString() == r.toJsonAsString(true)
+        new String(baos.toByteArray(), "UTF-8") == r.toJsonAsString(false)
+    }
+
+    def "Verify that JSON stream parsing constructor populates fields properly"(){
+        setup:
+        String jsonData = genOpenChannelRequest().toJsonAsString(false)
+        when:
+        OpenChannelRequest openChannelRequest = new OpenChannelRequest(Json.createParser(new StringReader(jsonData)))
+        then:
+        openChannelRequest == genOpenChannelRequest()
+        when:
+        new OpenChannelRequest(Json.createParser(new StringReader('{"localFundingAmount":"abc"}')))
+        then:
+        def e = thrown JsonException
+        e.message.startsWith("Error converting JSON to Message: Invalid JSON value VALUE_STRING for field localFundingAmount")
+    }
+
     def "Verify that getApiObject() return low level API object"(){
         when:
         LightningApi.OpenChannelRequest apiObject = genOpenChannelRequest().getApiObject()
@@ -195,6 +230,13 @@ class MessageSpec extends Specification {
 }"""
     }
 
+    def "Verify that toSummaryString() returns message name, serialized size and number of entries in repeated fields"(){
+        setup:
+        OpenChannelRequest r = genOpenChannelRequest()
+        expect:
+        r.toSummaryString() == "OpenChannelRequest: summary {serializedSize=" + r.getApiObject().getSerializedSize() + ", outpoints=0 entries}"
+    }
+
     def "Verify that equals and hashcode works"(){
         setup:
         OpenChannelRequest o1 = genOpenChannelRequest()
@@ -211,6 +253,218 @@ class MessageSpec extends Specification {
         o1.hashCode() != o4.hashCode()
     }
 
+    def "Verify that built API object and hash code are cached until a setter is called"(){
+        setup:
+        Invoice invoice = new Invoice(LightningApi.Invoice.newBuilder().setMemo("memo1").setValue(123).build())
+        when:
+        LightningApi.Invoice apiObject = invoice.getApiObject()
+        int hashCode = invoice.hashCode()
+        then:
+        invoice.getApiObject().is(apiObject)
+        invoice.hashCode() == hashCode
+        when:
+        invoice.setMemo("memo2")
+        then:
+        !invoice.getApiObject().is(apiObject)
+        invoice.getApiObject().memo == "memo2"
+        invoice.getApiObject().is(invoice.getApiObject())
+        invoice.hashCode() == invoice.getApiObject().hashCode()
+        invoice.hashCode() != hashCode
+    }
+
+    def "Verify that cached API object and hash code are cleared when the builder is fetched"(){
+        setup:
+        Invoice invoice = new Invoice(LightningApi.Invoice.newBuilder().setMemo("memo1").setValue(123).build())
+        Invoice other = new Invoice(LightningApi.Invoice.newBuilder().setMemo("memo2").setValue(123).build())
+        Set<Invoice> invoices = new HashSet<>()
+        when:
+        LightningApi.Invoice apiObject = invoice.getApiObject()
+        int hashCode = invoice.hashCode()
+        invoice.getBuilder().setMemo("memo2")
+        then:
+        !invoice.getApiObject().is(apiObject)
+        invoice.getApiObject().memo == "memo2"
+        invoice.hashCode() != hashCode
+        invoice == other
+        when:
+        invoices.add(invoice)
+        invoices.add(other)
+        then:
+        invoices.size() == 1
+    }
+
+    def "Verify that API object is rebuilt when repeated field lists have been fetched"(){
+        setup:
+        LightningApi.Invoice invoiceApiObject = LightningApi.Invoice.newBuilder().setMemo("memo1")
+                .addRouteHints(LightningApi.RouteHint.newBuilder().build()).build()
+        Invoice invoice = new Invoice(invoiceApiObject)
+        Invoice other = new Invoice(invoiceApiObject)
+        when:
+        invoice.getRouteHints().clear()
+        then:
+        invoice.getApiObject().routeHintsCount == 0
+        !invoice.getApiObject().is(invoice.getApiObject())
+        invoice != other
+        invoice.hashCode() != other.hashCode()
+        when:
+        other.getRouteHints().clear()
+        then:
+        invoice == other
+        invoice.hashCode() == other.hashCode()
+    }
+
+    def "Verify that cached API object is kept when repeated and map fields are only read"(){
+        setup:
+        LightningApi.GetInfoResponse apiObject = LightningApi.GetInfoResponse.newBuilder().setAlias("node1").addUris("uri1")
+                .putFeatures(9, LightningApi.Feature.newBuilder().setName("tlv-onion").build()).build()
+        GetInfoResponse response = new GetInfoResponse(apiObject)
+        WalletKitOuterClass.SignPsbtResponse signApiObject = WalletKitOuterClass.SignPsbtResponse.newBuilder().addSignedInputs(1).build()
+        SignPsbtResponse signResponse = new SignPsbtResponse(signApiObject)
+        when:
+        int hashCode = response.hashCode()
+        response.getUris()
+        response.getFeaturesEntries()
+        response.getFeaturesAsDetachedMap()
+        signResponse.getSignedInputs()
+        then:
+        response.getApiObject().is(apiObject)
+        response.hashCode() == hashCode
+        response == new GetInfoResponse(apiObject)
+        signResponse.getApiObject().is(signApiObject)
+        when:
+        response.getUris().add("uri2")
+        signResponse.getSignedInputs().set(0, 2)
+        then:
+        response.getApiObject().urisList == ["uri1", "uri2"]
+        signResponse.getApiObject().signedInputsList == [2]
+    }
+
+    def "Verify that modified map entries and map values are populated into the API object"(){
+        setup:
+        LightningApi.GetInfoResponse apiObject = LightningApi.GetInfoResponse.newBuilder()
+                .putFeatures(9, LightningApi.Feature.newBuilder().setName("tlv-onion").build()).build()
+        GetInfoResponse response1 = new GetInfoResponse(apiObject)
+        GetInfoResponse response2 = new GetInfoResponse(apiObject)
+        when:
+        response1.getFeaturesEntries().getEntry()[0].getValue().setName("other")
+        response2.getFeaturesEntries().getEntry()[0].setKey(10)
+        then:
+        response1.getApiObject().getFeaturesMap()[9].name == "other"
+        response2.getApiObject().getFeaturesMap().keySet() == [10] as Set
+    }
+
+    def "Verify that wrapped messages can be deduplicated in a HashSet"(){
+        setup:
+        Set<Invoice> invoices = new HashSet<>()
+        when:
+        (1..3).each{ invoices.add(new Invoice(LightningApi.Invoice.newBuilder().setMemo("memo").setAddIndex(it % 2).build())) }
+        then:
+        invoices.size() == 2
+        invoices.contains(new Invoice(LightningApi.Invoice.newBuilder().setMemo("memo").setAddIndex(1).build()))
+    }
+
+    def "Verify that messages wrapping an API object are read-only until a setter is called"(){
+        setup:
+        LightningApi.Invoice apiObject = LightningApi.Invoice.newBuilder().setMemo("memo1").setValue(123)
+                .setRHash(ByteString.copyFrom("somehash".bytes))
+                .addRouteHints(LightningApi.RouteHint.newBuilder().addHopHints(LightningApi.HopHint.newBuilder().setChanId(5))).build()
+        when:
+        Invoice invoice = WrapperFactory.getInstance().wrap(apiObject)
+        then:
+        invoice.isReadOnly()
+        invoice.memo == "memo1"
+        invoice.value == 123
+        invoice.getRHashAsByteString().is(apiObject.getRHash())
+        invoice.messageName == "Invoice"
+        invoice.validate().isValid()
+        invoice.toJsonAsString(false).contains('"memo":"memo1"')
+        invoice.getApiObject().is(apiObject)
+        invoice.isReadOnly()
+        when:
+        invoice.setMemo("memo2")
+        then:
+        !invoice.isReadOnly()
+        invoice.memo == "memo2"
+        invoice.getApiObject().memo == "memo2"
+        invoice.getApiObject().routeHints[0].hopHints[0].chanId == 5
+        apiObject.memo == "memo1"
+    }
+
+    def "Verify that reading repeated and map fields keeps the message read-only"(){
+        setup:
+        LightningApi.GetInfoResponse apiObject = LightningApi.GetInfoResponse.newBuilder().setAlias("node1").addUris("uri1")
+                .putFeatures(9, LightningApi.Feature.newBuilder().setName("tlv-onion").build()).build()
+        GetInfoResponse response = new GetInfoResponse(apiObject)
+        when:
+        response.getUris()
+        response.getFeaturesAsDetachedMap()
+        response.getChains()
+        String json = response.toJsonAsString(false)
+        response.toString()
+        response.hashCode()
+        then:
+        json.contains('"uris":["uri1"]')
+        response.getApiObject().is(apiObject)
+        response.isReadOnly()
+        when:
+        response.getUris().add("uri2")
+        then:
+        response.toJsonAsString(false).contains('"uris":["uri1","uri2"]')
+        !response.isReadOnly()
+    }
+
+    def "Verify that fetching repeated fields of a read-only message creates builder when API object is requested"(){
+        setup:
+        LightningApi.Invoice apiObject = LightningApi.Invoice.newBuilder().setMemo("memo1")
+                .addRouteHints(LightningApi.RouteHint.newBuilder()).build()
+        Invoice invoice = new Invoice(apiObject)
+        when:
+        invoice.getRouteHints().add(new RouteHint())
+        then:
+        invoice.isReadOnly()
+        invoice.getApiObject().routeHintsCount == 2
+        !invoice.isReadOnly()
+        apiObject.routeHintsCount == 1
+    }
+
+    def "Verify that repeated uint64 fields can be read and set as primitive arrays and streams"(){
+        setup:
+        AliasMap aliasMap = new AliasMap(LightningApi.AliasMap.newBuilder().addAliases(1L).addAliases(2L).addAliases(3L).build())
+        expect:
+        aliasMap.getAliasesAsLongArray() == [1L, 2L, 3L] as long[]
+        aliasMap.getAliasesAsLongStream().sum() == 6L
+        aliasMap.isReadOnly()
+        when: "boxed list is modified"
+        aliasMap.getAliases().add(4L)
+        then:
+        aliasMap.getAliasesAsLongArray() == [1L, 2L, 3L, 4L] as long[]
+        aliasMap.getAliasesAsLongStream().max().asLong == 4L
+        when:
+        aliasMap.setAliasesFromLongArray([7L, 8L] as long[])
+        then:
+        aliasMap.getAliases() == [7L, 8L]
+        aliasMap.getAliasesAsLongArray() == [7L, 8L] as long[]
+        aliasMap.getApiObject().getAliasesList() == [7L, 8L]
+    }
+
+    def "Verify that repeated uint32 fields can be read and set as primitive arrays and streams"(){
+        setup:
+        SignPsbtResponse response = new SignPsbtResponse(WalletKitOuterClass.SignPsbtResponse.newBuilder().addSignedInputs(3).addSignedInputs(5).build())
+        expect:
+        response.getSignedInputsAsIntArray() == [3, 5] as int[]
+        response.getSignedInputsAsIntStream().sum() == 8
+        when:
+        response.setSignedInputsFromIntArray([1, 2, 3] as int[])
+        then:
+        response.getSignedInputs() == [1, 2, 3]
+        response.getApiObject().getSignedInputsCount() == 3
+        when:
+        response.setSignedInputs(new int[0])
+        then:
+        response.getSignedInputsAsIntArray().length == 0
+        response.getApiObject().getSignedInputsCount() == 0
+    }
+
     def "Verify that field of type of Map with ByteString is converted to byte[] correctly."(){
         setup:
         SendRequest sendRequest = new SendRequest()
@@ -262,6 +516,41 @@ class MessageSpec extends Specification {
 
     }
 
+    def "Verify that ByteString accessors returns the underlying data without copying"(){
+        setup:
+        ByteString hash = ByteString.copyFrom([0x01, 0x02, 0xAB] as byte[])
+        Invoice invoice = new Invoice()
+        when:
+        invoice.setRHashAsByteString(hash)
+        then:
+        invoice.getRHashAsByteString().is(hash)
+        invoice.getApiObject().getRHash().is(hash)
+        invoice.getRHash() == [0x01, 0x02, 0xAB] as byte[]
+        invoice.getRHashAsReadOnlyBuffer().isReadOnly()
+        invoice.getRHashAsReadOnlyBuffer().remaining() == 3
+        when:
+        invoice.setRHashAsByteString(null)
+        then:
+        invoice.getRHashAsByteString().is(hash)
+    }
+
+    def "Verify that hex getter caches the encoded value until the field is updated"(){
+        setup:
+        Invoice invoice = new Invoice()
+        invoice.setRHash([0xDE, 0xAD] as byte[])
+        when:
+        String hex1 = invoice.getRHashAsHex()
+        String hex2 = invoice.getRHashAsHex()
+        then:
+        hex1 == "dead"
+        hex1.is(hex2)
+        when:
+        invoice.setRHash([0xBE, 0xEF] as byte[])
+        then:
+        invoice.getRHashAsHex() == "beef"
+        new Invoice().getRHashAsHex() == ""
+    }
+
     def "Verify that validate generates a validation report"(){
         expect:
         genOpenChannelRequest().validate() instanceof ValidationResult
@@ -0,0 +1,174 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper
+
+import io.grpc.BindableService
+import io.grpc.ClientInterceptors
+import io.grpc.Status
+import io.grpc.stub.StreamObserver
+import org.lightningj.lnd.InProcessLndSpec
+import org.lightningj.lnd.metrics.InMemoryMetricsCollector
+import org.lightningj.lnd.metrics.MetricsCollector
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.proto.LightningGrpc
+import org.lightningj.lnd.wrapper.message.Invoice
+
+import static org.lightningj.lnd.metrics.MetricsCollector.ProcessingStage.*
+
+/**
+ * Unit tests for MetricsClientInterceptor and the collection of metrics in the API.
+ *
+ * Created by Philip Vendil.
+ */
+class MetricsClientInterceptorSpec extends InProcessLndSpec {
+
+    static final LightningApi.GetInfoResponse GET_INFO_RESPONSE = LightningApi.GetInfoResponse.newBuilder().setAlias("node1").setBlockHeight(800000).build()
+
+    @Override
+    protected List<BindableService> inProcessServices(){
+        return [new TestLightningService()]
+    }
+
+    def "Verify that successful call is recorded with method name, latency and bytes"(){
+        setup:
+        MetricsCollector collector = Mock(MetricsCollector)
+        def stub = LightningGrpc.newBlockingStub(ClientInterceptors.intercept(channel, new MetricsClientInterceptor(collector)))
+        LightningApi.GetInfoRequest request = LightningApi.GetInfoRequest.getDefaultInstance()
+        when:
+        stub.getInfo(request)
+        then:
+        1 * collector.recordCall("lnrpc.Lightning/GetInfo", { it > 0 }, 0, GET_INFO_RESPONSE.getSerializedSize(), null)
+    }
+
+    def "Verify that failed call is recorded with error class mapped by StatusExceptionWrapper"(){
+        setup:
+        MetricsCollector collector = Mock(MetricsCollector)
+        def stub = LightningGrpc.newBlockingStub(ClientInterceptors.intercept(channel, new MetricsClientInterceptor(collector)))
+        when:
+        stub.walletBalance(LightningApi.WalletBalanceRequest.getDefaultInstance())
+        then:
+        thrown io.grpc.StatusRuntimeException
+        1 * collector.recordCall("lnrpc.Lightning/WalletBalance", _, 0, 0, "CommunicationException")
+    }
+
+    def "Verify that exception thrown by collector doesn't affect the call"(){
+        setup:
+        MetricsCollector collector = Mock(MetricsCollector)
+        collector.recordCall(*_) >> { throw new IllegalStateException("test") }
+        def stub = LightningGrpc.newBlockingStub(ClientInterceptors.intercept(channel, new MetricsClientInterceptor(collector)))
+        expect:
+        stub.getInfo(LightningApi.GetInfoRequest.getDefaultInstance()).alias == "node1"
+    }
+
+    def "Verify that synchronous API records call metrics and convert and validate times when metrics collector is set"(){
+        setup:
+        InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+        SynchronousLndAPI api = new SynchronousLndAPI(channel)
+        when:
+        api.getInfo()
+        then:
+        collector.getMethodMetrics().isEmpty()
+        when:
+        api.setMetricsCollector(collector)
+        api.getInfo()
+        api.getInfo()
+        then:
+        api.getMetricsCollector() == collector
+        collector.getMethodMetrics("lnrpc.Lightning/GetInfo").callCount == 2
+        collector.getMethodMetrics("lnrpc.Lightning/GetInfo").bytesReceived == 2 * GET_INFO_RESPONSE.getSerializedSize()
+        collector.getProcessingTime("GetInfoRequest", CONVERT).count == 2
+        collector.getProcessingTime("GetInfoRequest", VALIDATE).count == 2
+        collector.getProcessingTime("GetInfoResponse", VALIDATE).count == 2
+        when:
+        api.setMetricsCollector(null)
+        api.getInfo()
+        then:
+        collector.getMethodMetrics("lnrpc.Lightning/GetInfo").callCount == 2
+    }
+
+    def "Verify that synchronous unary responses records wrap time"(){
+        setup:
+        InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+        SynchronousLndAPI api = new SynchronousLndAPI(channel)
+        api.setMetricsCollector(collector)
+        when:
+        def response = api.getInfo()
+        then:
+        response.alias == "node1"
+        response.blockHeight == 800000
+        collector.getProcessingTime("GetInfoResponse", WRAP).count == 1
+        collector.getProcessingTime("GetInfoResponse", VALIDATE).count == 1
+        when:
+        api.setMetricsCollector(null)
+        api.getInfo()
+        then:
+        collector.getProcessingTime("GetInfoResponse", WRAP).count == 1
+    }
+
+    def "Verify that synchronous streaming responses records wrap time"(){
+        setup:
+        InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+        SynchronousLndAPI api = new SynchronousLndAPI(channel)
+        api.setMetricsCollector(collector)
+        when:
+        List<Invoice> invoices = api.subscribeInvoices(0L, 0L).toList()
+        then:
+        invoices.size() == 3
+        collector.getProcessingTime("Invoice", WRAP).count == 3
+        collector.getProcessingTime("Invoice", VALIDATE).count == 3
+        collector.getMethodMetrics("lnrpc.Lightning/SubscribeInvoices").callCount == 1
+    }
+
+    def "Verify that asynchronous streaming responses records wrap and validate time"(){
+        setup:
+        InMemoryMetricsCollector collector = new InMemoryMetricsCollector()
+        AsynchronousLndAPI api = new AsynchronousLndAPI(channel)
+        api.setMetricsCollector(collector)
+        List<Invoice> received = []
+        when:
+        api.subscribeInvoices(0L, 0L, new StreamObserver<Invoice>() {
+            void onNext(Invoice value) { received << value }
+            void onError(Throwable t) {}
+            void onCompleted() {}
+        })
+        then:
+        received.size() == 3
+        collector.getProcessingTime("Invoice", WRAP).count == 3
+        collector.getProcessingTime("Invoice", VALIDATE).count == 3
+        collector.getMethodMetrics("lnrpc.Lightning/SubscribeInvoices").callCount == 1
+        collector.getMethodMetrics("lnrpc.Lightning/SubscribeInvoices").bytesSent == 0
+    }
+
+    static class TestLightningService extends LightningGrpc.LightningImplBase {
+
+        @Override
+        void getInfo(LightningApi.GetInfoRequest request, StreamObserver<LightningApi.GetInfoResponse> responseObserver) {
+            responseObserver.onNext(GET_INFO_RESPONSE)
+            responseObserver.onCompleted()
+        }
+
+        @Override
+        void walletBalance(LightningApi.WalletBalanceRequest request, StreamObserver<LightningApi.WalletBalanceResponse> responseObserver) {
+            responseObserver.onError(Status.UNAVAILABLE.withDescription("wallet not ready").asRuntimeException())
+        }
+
+        @Override
+        void subscribeInvoices(LightningApi.InvoiceSubscription request, StreamObserver<LightningApi.Invoice> responseObserver) {
+            3.times{
+                responseObserver.onNext(LightningApi.Invoice.newBuilder().setMemo("invoice" + it).setAddIndex(it).build())
+            }
+            responseObserver.onCompleted()
+        }
+    }
+}
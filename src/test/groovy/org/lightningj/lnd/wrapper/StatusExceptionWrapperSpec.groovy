@@ -55,6 +55,20 @@ class StatusExceptionWrapperSpec extends Specification {
 
     }
 
+    @Unroll
+    def "Verify that getExceptionClass returns #type for status with code #code"(){
+        expect:
+        exceptionWrapper.getExceptionClass(code).getSimpleName() == type
+        where:
+        code                | type
+        CANCELLED           | "ClientSideException"
+        UNKNOWN             | "ServerSideException"
+        DEADLINE_EXCEEDED   | "CommunicationException"
+        UNAUTHENTICATED     | "ClientSideException"
+        UNAVAILABLE         | "CommunicationException"
+        INTERNAL            | "ServerSideException"
+    }
+
     def "Verify that both io.grpc.StatusException and io.grpc.StatusRuntimeException is wrapped"(){
         when:
         StatusException e = exceptionWrapper.wrap(new io.grpc.StatusRuntimeException(ABORTED))
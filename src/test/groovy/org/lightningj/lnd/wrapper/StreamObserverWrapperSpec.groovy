@@ -35,7 +35,9 @@ class StreamObserverWrapperSpec extends Specification {
     StreamObserverWrapper sow = new StreamObserverWrapper(streamObserverMock,true,"WalletBalanceResponse")
 
     def setup(){
-        StreamObserverWrapper.log = Mock(Logger)
+        StreamObserverWrapper.log = Mock(Logger){
+            isLoggable(Level.FINE) >> true
+        }
     }
 
     def "Verify that constructor initializes properly"(){
@@ -0,0 +1,150 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.lnd.wrapper
+
+import io.grpc.Context
+import io.grpc.ManagedChannel
+import io.grpc.Status
+import io.grpc.StatusRuntimeException
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.wrapper.message.WalletBalanceResponse
+import spock.lang.Specification
+
+import java.util.logging.Level
+import java.util.logging.Logger
+import java.util.stream.Collectors
+
+/**
+ * Unit tests for StreamingResponseIterator.
+ *
+ * Created by Philip Vendil.
+ */
+class StreamingResponseIteratorSpec extends Specification {
+
+    SynchronousLndAPI api = new SynchronousLndAPI(Mock(ManagedChannel))
+
+    def setup(){
+        api.log = Mock(Logger){
+            isLoggable(Level.FINE) >> true
+        }
+    }
+
+    def "Verify that messages are wrapped lazily when iterated"(){
+        setup:
+        Iterator source = Mock(Iterator)
+        Context.CancellableContext context = Context.current().withCancellation()
+        StreamingResponseIterator<WalletBalanceResponse> iter = api.processRepeatableResponse(source, context)
+        when:
+        boolean hasNext = iter.hasNext()
+        then:
+        hasNext
+        1 * source.hasNext() >> true
+        0 * source.next()
+        0 * api.log.fine(_)
+        when:
+        WalletBalanceResponse r1 = iter.next()
+        then:
+        r1.totalBalance == 123L
+        1 * source.hasNext() >> true
+        1 * source.next() >> genWalletBalanceResponseApi(123L)
+        1 * api.log.fine({ it =~ 'Received response message: WalletBalanceResponse: '})
+        when:
+        hasNext = iter.hasNext()
+        then:
+        !hasNext
+        1 * source.hasNext() >> false
+        iter.isClosed()
+        context.isCancelled()
+    }
+
+    def "Verify that close cancels the underlying call and hasNext returns false"(){
+        setup:
+        Iterator source = Mock(Iterator)
+        Context.CancellableContext context = Context.current().withCancellation()
+        StreamingResponseIterator<WalletBalanceResponse> iter = api.processRepeatableResponse(source, context)
+        when:
+        iter.close()
+        then:
+        iter.isClosed()
+        context.isCancelled()
+        !iter.hasNext()
+        0 * source.hasNext()
+        when:
+        iter.next()
+        then:
+        thrown NoSuchElementException
+    }
+
+    def "Verify that cancellation error after close ends the iteration silently"(){
+        setup:
+        Iterator source = Mock(Iterator)
+        StreamingResponseIterator<WalletBalanceResponse> iter = api.processRepeatableResponse(source, null)
+        source.hasNext() >> { iter.close(); throw new StatusRuntimeException(Status.CANCELLED) }
+        expect:
+        !iter.hasNext()
+    }
+
+    def "Verify that GRPC errors are converted to StreamingResponseException with wrapped status exception as cause"(){
+        setup:
+        Iterator source = Mock(Iterator)
+        Context.CancellableContext context = Context.current().withCancellation()
+        StreamingResponseIterator<WalletBalanceResponse> iter = api.processRepeatableResponse(source, context)
+        source.hasNext() >> { throw new StatusRuntimeException(Status.UNAVAILABLE) }
+        when:
+        iter.hasNext()
+        then:
+        def e = thrown StreamingResponseException
+        e.cause instanceof CommunicationException
+        iter.isClosed()
+        context.isCancelled()
+    }
+
+    def "Verify that invalid messages are converted to StreamingResponseException with ValidationException as cause"(){
+        setup:
+        api.setPerformValidation(true)
+        Iterator source = [genWalletBalanceResponseApi(1L)].iterator()
+        StreamingResponseIterator<Message> iter = api.processRepeatableResponse(source, null)
+        api.wrapperFactory = Mock(WrapperFactory)
+        Message m = Mock(Message)
+        api.wrapperFactory.wrap(_) >> m
+        m.validate() >> { APISpec.getInvalidValidationResult()}
+        when:
+        iter.next()
+        then:
+        def e = thrown StreamingResponseException
+        e.cause instanceof ValidationException
+        iter.isClosed()
+    }
+
+    def "Verify that stream returns all remaining messages and closes iterator when stream is closed"(){
+        setup:
+        Iterator source = [genWalletBalanceResponseApi(1L), genWalletBalanceResponseApi(2L), genWalletBalanceResponseApi(3L)].iterator()
+        Context.CancellableContext context = Context.current().withCancellation()
+        StreamingResponseIterator<WalletBalanceResponse> iter = api.processRepeatableResponse(source, context)
+        when:
+        List<Long> result = iter.stream().limit(2).map({ it.totalBalance }).collect(Collectors.toList())
+        then:
+        result == [1L,2L]
+        !iter.isClosed()
+        when:
+        iter.stream().close()
+        then:
+        iter.isClosed()
+        context.isCancelled()
+    }
+
+    private LightningApi.WalletBalanceResponse genWalletBalanceResponseApi(long totalValue){
+        LightningApi.WalletBalanceResponse.newBuilder().setTotalBalance(totalValue).build()
+    }
+}
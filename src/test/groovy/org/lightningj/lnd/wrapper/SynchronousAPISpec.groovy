@@ -18,6 +18,7 @@ import org.lightningj.lnd.proto.LightningApi
 import org.lightningj.lnd.wrapper.message.WalletBalanceResponse
 import spock.lang.Specification
 
+import java.util.logging.Level
 import java.util.logging.Logger
 
 /**
@@ -30,7 +31,9 @@ class SynchronousAPISpec extends Specification {
     SynchronousLndAPI api = new SynchronousLndAPI(Mock(ManagedChannel))
 
     def setup(){
-        api.log = Mock(Logger)
+        api.log = Mock(Logger){
+            isLoggable(Level.FINE) >> true
+        }
     }
 
     def "SynchronousAPI initializes constructors properly."(){
@@ -59,5 +59,28 @@
                     "org.lightningj.lnd.wrapper.dev.message:" +
                     "org.lightningj.lnd.wrapper.neutrino.message:" +
                     "org.lightningj.lnd.wrapper.peers.message"
+            p.getProtocols() == V1XMLParser.SUPPORTED_PROTOCOLS
+        }
+
+        def "Verify that a parser with a subset of protocols only loads related packages and schemas in supported order"(){
+            setup:
+            V1XMLParser p = new V1XMLParser("invoices", "lnd")
+            expect:
+            p.getProtocols() == ["lnd", "invoices"]
+            p.getSchemaLocations() == ["/lnd_v1.xsd", "/invoices_v1.xsd"] as String[]
+            p.getJAXBClassPath() == "org.lightningj.lnd.wrapper.message:org.lightningj.lnd.wrapper.invoices.message"
+        }
+
+        def "Verify that constructor with protocols throws IllegalArgumentException for no or unsupported protocols"(){
+            when:
+            new V1XMLParser(new String[0])
+            then:
+            def e = thrown IllegalArgumentException
+            e.message == "At least one XML protocol must be specified."
+            when:
+            new V1XMLParser("lnd", "unknown")
+            then:
+            e = thrown IllegalArgumentException
+            e.message == "Unsupported XML protocol: unknown"
         }
     }
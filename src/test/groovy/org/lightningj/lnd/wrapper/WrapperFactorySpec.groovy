@@ -14,9 +14,16 @@
 package org.lightningj.lnd.wrapper
 
 import com.google.protobuf.GeneratedMessageV3
+import org.lightningj.lnd.chainkit.proto.Chainkit
+import org.lightningj.lnd.invoices.proto.InvoicesOuterClass
 import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.stateservice.proto.Stateservice
+import org.lightningj.lnd.wrapper.chainkit.message.GetBestBlockResponse
+import org.lightningj.lnd.wrapper.invoices.message.CancelInvoiceMsg
+import org.lightningj.lnd.wrapper.message.PendingChannelsResponse
 import org.lightningj.lnd.wrapper.message.WalletBalanceRequest
 import org.lightningj.lnd.wrapper.message.WalletBalanceResponse
+import org.lightningj.lnd.wrapper.stateservice.message.GetStateResponse
 import spock.lang.Specification
 
 /**
@@ -40,6 +47,51 @@ class WrapperFactorySpec extends Specification {
         o2.totalBalance == 123L
     }
 
+    def "Verify that wrapper constructors are registered for all protocols, including inner classes"(){
+        expect:
+        WrapperFactory.wrapperConstructors.size() > 0
+        WrapperFactory.wrapperConstructors.containsKey(LightningApi.Invoice)
+        WrapperFactory.wrapperConstructors.containsKey(LightningApi.PendingChannelsResponse.PendingChannel)
+        WrapperFactory.wrapperConstructors.containsKey(InvoicesOuterClass.CancelInvoiceMsg)
+        WrapperFactory.wrapperConstructors.containsKey(Chainkit.GetBestBlockResponse)
+        WrapperFactory.wrapperConstructors.containsKey(Stateservice.GetStateResponse)
+    }
+
+    def "Verify that prototypes are registered for all protocols, including inner classes"(){
+        expect:
+        factory.getPrototype(LightningApi.Invoice.getDescriptor()).is(LightningApi.Invoice.getDefaultInstance())
+        factory.getPrototype(LightningApi.PendingChannelsResponse.PendingChannel.getDescriptor()).is(LightningApi.PendingChannelsResponse.PendingChannel.getDefaultInstance())
+        factory.getPrototype(InvoicesOuterClass.CancelInvoiceMsg.getDescriptor()).is(InvoicesOuterClass.CancelInvoiceMsg.getDefaultInstance())
+        factory.getPrototype(Stateservice.GetStateResponse.getDescriptor()).is(Stateservice.GetStateResponse.getDefaultInstance())
+        factory.getPrototype(com.google.protobuf.Empty.getDescriptor()) == null
+    }
+
+    def "Verify that messages from all protocols and inner classes are wrapped correctly"(){
+        when:
+        CancelInvoiceMsg o1 = factory.wrap(InvoicesOuterClass.CancelInvoiceMsg.getDefaultInstance())
+        GetBestBlockResponse o2 = factory.wrap(Chainkit.GetBestBlockResponse.newBuilder().setBlockHeight(123).build())
+        GetStateResponse o3 = factory.wrap(Stateservice.GetStateResponse.getDefaultInstance())
+        PendingChannelsResponse.PendingChannel o4 = factory.wrap(LightningApi.PendingChannelsResponse.PendingChannel.newBuilder().setCapacity(1000L).build())
+        then:
+        o1 != null
+        o2.blockHeight == 123
+        o3 != null
+        o4.capacity == 1000L
+    }
+
+    def "Verify that reflective lookup finds the same wrapper class as the registry"(){
+        when:
+        Message o = factory.lookupReflectiveConstructor(LightningApi.WalletBalanceResponse).apply(LightningApi.WalletBalanceResponse.newBuilder().setTotalBalance(123L).build())
+        then:
+        o instanceof WalletBalanceResponse
+        ((WalletBalanceResponse) o).totalBalance == 123L
+
+        when:
+        o = factory.lookupReflectiveConstructor(InvoicesOuterClass.CancelInvoiceMsg).apply(InvoicesOuterClass.CancelInvoiceMsg.getDefaultInstance())
+        then:
+        o instanceof CancelInvoiceMsg
+    }
+
     def "Verify that ClientSideException it throws for invalid objects"(){
         when:
         factory.wrap(Mock(GeneratedMessageV3))
@@ -47,4 +47,28 @@ class XMLParserFactorySpec extends Specification {
         def e = thrown(IllegalArgumentException)
         e.message == "Error no XML Parser with version 0.0 supported."
     }
+
+    def "Verify that getXMLParser with protocols returns cached parser for the given set of protocols"(){
+        when:
+        XMLParser p = factory.getXMLParser("1.0", "lnd", "invoices")
+        then:
+        p instanceof V1XMLParser
+        ((V1XMLParser) p).protocols == ["lnd", "invoices"]
+        factory.getXMLParser("1.0", "invoices", "lnd").is(p)
+        !factory.getXMLParser("1.0", "lnd").is(p)
+        !factory.getXMLParser("1.0").is(p)
+    }
+
+    def "Verify that getXMLParser with protocols throws IllegalArgumentException for unsupported version or protocol"(){
+        when:
+        factory.getXMLParser("0.0", "lnd")
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Error no XML Parser with version 0.0 supported."
+        when:
+        factory.getXMLParser("1.0", "unknown")
+        then:
+        e = thrown(IllegalArgumentException)
+        e.message == "Unsupported XML protocol: unknown"
+    }
 }
@@ -39,8 +39,17 @@ import org.lightningj.lnd.wrapper.stateservice.message.GetStateRequest
 import org.lightningj.lnd.wrapper.dev.message.ImportGraphResponse
 import spock.lang.Specification
 
+import jakarta.xml.bind.JAXBException
+import jakarta.xml.bind.Marshaller
+import jakarta.xml.bind.Unmarshaller
 import jakarta.xml.bind.UnmarshalException
 import javax.xml.validation.Schema
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
 
 /**
  * Unit tests for the base XMLParser.
@@ -358,6 +367,208 @@ class XMLParserSpec extends Specification {
         parser.getSchema() instanceof Schema
     }
 
+    def "Verify that marshall to OutputStream and unmarshall from InputStream gives same result as byte array variants"(){
+        setup:
+        ByteArrayOutputStream baos = new ByteArrayOutputStream()
+        ByteArrayOutputStream prettyBaos = new ByteArrayOutputStream()
+        when:
+        parser.marshall(createListInvoiceResponse(), baos)
+        parser.marshall(createListInvoiceResponse(), prettyBaos, true)
+        then:
+        new String(baos.toByteArray(), "UTF-8") == invoiceXML
+        new String(prettyBaos.toByteArray(), "UTF-8") == prettyPrintedInvoiceXML
+        when:
+        ListInvoiceResponse lir = parser.unmarshall(new ByteArrayInputStream(invoiceXML.getBytes("UTF-8")))
+        then:
+        lir.invoices.collect{ it.memo } == ["memo1", "memo2", "memo3"]
+    }
+
+    def "Verify that element writer streams elements that can be read back by unmarshallElements"(){
+        setup:
+        ByteArrayOutputStream baos = new ByteArrayOutputStream()
+        when:
+        XMLElementWriter writer = parser.createElementWriter(baos, "invoices", Invoice)
+        (1..5).each{ writer.write(createInvoice("memo" + it)) }
+        writer.close()
+        writer.close()
+        String xmlData = new String(baos.toByteArray(), "UTF-8")
+        then:
+        writer.getCount() == 5
+        xmlData.startsWith('<?xml version="1.0" encoding="UTF-8"?><invoices xmlns="http://lightningj.org/xsd/lndjapi_1_0"')
+        xmlData.endsWith("</Invoice></invoices>")
+        xmlData.count("xmlns=") == 1
+        xmlData.count("<Invoice>") == 5
+        when:
+        XMLElementIterator<Invoice> iter = parser.unmarshallElements(new ByteArrayInputStream(baos.toByteArray()), Invoice)
+        List<String> memos = iter.stream().collect{ it.memo }
+        then:
+        memos == ["memo1", "memo2", "memo3", "memo4", "memo5"]
+        !iter.hasNext()
+        when:
+        writer.write(createInvoice("memo6"))
+        then:
+        def e = thrown IllegalStateException
+        e.message == "XMLElementWriter is closed."
+    }
+
+    def "Verify that unmarshallElements reads nested elements from a regular marshalled message"(){
+        when:
+        XMLElementIterator<Invoice> iter = parser.unmarshallElements(new ByteArrayInputStream(invoiceXML.getBytes("UTF-8")), Invoice)
+        then:
+        iter.hasNext()
+        iter.hasNext()
+        iter.next().memo == "memo1"
+        iter.next().memo == "memo2"
+        iter.next().memo == "memo3"
+        !iter.hasNext()
+        when:
+        iter.next()
+        then:
+        thrown NoSuchElementException
+        parser.getPooledUnmarshallerCount() == 1
+    }
+
+    def "Verify that unmarshallElements throws XMLStreamingException for invalid element and closes the iterator"(){
+        setup:
+        String xmlData = '<invoices xmlns="http://lightningj.org/xsd/lndjapi_1_0"><Invoice><memo>memo1</memo><value>abc</value></Invoice></invoices>'
+        XMLElementIterator<Invoice> iter = parser.unmarshallElements(new ByteArrayInputStream(xmlData.getBytes("UTF-8")), Invoice)
+        when:
+        iter.next()
+        then:
+        def e = thrown XMLStreamingException
+        e.message.startsWith("Error reading XML element: ")
+        e.cause instanceof UnmarshalException
+        !iter.hasNext()
+        parser.getPooledUnmarshallerCount() == 0
+    }
+
+    def "Verify that unmarshallElements requires a XML root element type"(){
+        when:
+        parser.unmarshallElements(new ByteArrayInputStream(invoiceXML.getBytes("UTF-8")), Message)
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Invalid element type Message, must be a XML root element."
+    }
+
+    def "Verify that warmUp initializes context, schema and pools in background"(){
+        setup:
+        ExecutorService executor = Executors.newFixedThreadPool(2)
+        when:
+        XMLParser result = parser.warmUp(executor).get(60, TimeUnit.SECONDS)
+        then:
+        result.is(parser)
+        parser.getPooledUnmarshallerCount() == 1
+        parser.getPooledMarshallerCount() == 1
+        parser.getSchema() != null
+        new String(parser.marshall(createListInvoiceResponse()), "UTF-8") == invoiceXML
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "Verify that warmUp completes exceptionally if initialization fails"(){
+        setup:
+        XMLParser invalidParser = new V1XMLParser(){
+            @Override
+            protected String getJAXBClassPath() {
+                return "org.lightningj.lnd.invalid"
+            }
+        }
+        when:
+        invalidParser.warmUp().get(60, TimeUnit.SECONDS)
+        then:
+        def e = thrown ExecutionException
+        e.cause instanceof JAXBException
+    }
+
+    def "Verify that a parser with a subset of protocols can marshall and unmarshall messages of these protocols"(){
+        setup:
+        XMLParser invoicesParser = new V1XMLParser("lnd", "invoices")
+        when:
+        byte[] result = invoicesParser.marshall(createInvoicesAddHoldInvoiceRequest())
+        AddHoldInvoiceRequest request = invoicesParser.unmarshall(result)
+        then:
+        request.value == 123
+        request.routeHints.size() == 1
+        when:
+        invoicesParser.unmarshall(autoEnrollStatusResponse.getBytes("UTF-8"))
+        then:
+        thrown JAXBException
+    }
+
+    def "Verify that getSchema() loads the schema once"(){
+        expect:
+        parser.getSchema().is(parser.getSchema())
+    }
+
+    def "Verify that marshall and unmarshall are thread-safe and reuse pooled instances"(){
+        setup:
+        parser.setMaxPoolSize(2)
+        byte[] expectedXML = parser.marshall(createListInvoiceResponse())
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+        when:
+        List<Future<Boolean>> results = (1..8).collect{
+            executor.submit({
+                (1..25).every{
+                    ListInvoiceResponse resp = (ListInvoiceResponse) parser.unmarshall(expectedXML)
+                    resp.invoices.size() == 3 && Arrays.equals(parser.marshall(resp), expectedXML)
+                }
+            } as Callable<Boolean>)
+        }
+        then:
+        results.every{ it.get(30, TimeUnit.SECONDS) }
+        parser.getPooledUnmarshallerCount() >= 1
+        parser.getPooledUnmarshallerCount() <= 2
+        parser.getPooledMarshallerCount() >= 1
+        parser.getPooledMarshallerCount() <= 2
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    def "Verify that pooled marshallers keep pretty print setting separated"(){
+        expect:
+        (1..3).every{
+            new String(parser.marshall(createListInvoiceResponse(), true), "UTF-8") == prettyPrintedInvoiceXML &&
+                    new String(parser.marshall(createListInvoiceResponse()), "UTF-8") == invoiceXML
+        }
+    }
+
+    def "Verify that unmarshaller isn't returned to the pool after failure"(){
+        when:
+        parser.unmarshall(badxml.getBytes("UTF-8"))
+        then:
+        thrown UnmarshalException
+        parser.getPooledUnmarshallerCount() == 0
+    }
+
+    def "Verify that setMaxPoolSize 0 disables pooling and negative size is rejected"(){
+        when:
+        parser.setMaxPoolSize(0)
+        parser.marshall(createListInvoiceResponse())
+        then:
+        parser.getMaxPoolSize() == 0
+        parser.getPooledMarshallerCount() == 0
+        when:
+        parser.setMaxPoolSize(-1)
+        then:
+        def e = thrown IllegalArgumentException
+        e.message == "Invalid max pool size: -1, must be 0 or greater."
+    }
+
+    def "Verify that deprecated marshaller getters return new non pooled instances"(){
+        when:
+        Marshaller marshaller = parser.getMarshaller()
+        Marshaller prettyPrintMarshaller = parser.getPrettyPrintMarshaller()
+        Unmarshaller unmarshaller = parser.getUnmarshaller()
+        then:
+        !marshaller.is(parser.getMarshaller())
+        !marshaller.getProperty(Marshaller.JAXB_FORMATTED_OUTPUT)
+        prettyPrintMarshaller.getProperty(Marshaller.JAXB_FORMATTED_OUTPUT)
+        unmarshaller.getSchema() != null
+        !unmarshaller.is(parser.getUnmarshaller())
+        parser.getPooledMarshallerCount() == 0
+        parser.getPooledUnmarshallerCount() == 0
+    }
+
 
 
 
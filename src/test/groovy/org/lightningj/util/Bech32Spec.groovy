@@ -0,0 +1,81 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit tests for Bech32.
+ *
+ * Created by Philip Vendil.
+ */
+class Bech32Spec extends Specification {
+
+    @Unroll
+    def "Verify that valid #encoding test vector #data is decoded"(){
+        when:
+        Bech32.Decoded decoded = Bech32.decode(data)
+        then:
+        decoded.encoding == encoding
+        decoded.hrp == data.substring(0, data.lastIndexOf('1')).toLowerCase()
+        Bech32.encode(decoded.hrp, decoded.data, encoding) == data.toLowerCase()
+        where:
+        data                                                                            | encoding
+        "A12UEL5L"                                                                      | Bech32.Encoding.BECH32
+        "a12uel5l"                                                                      | Bech32.Encoding.BECH32
+        "abcdef1qpzry9x8gf2tvdw0s3jn54khce6mua7lmqqqxw"                                 | Bech32.Encoding.BECH32
+        "split1checkupstagehandshakeupstreamerranterredcaperred2y9e3w"                  | Bech32.Encoding.BECH32
+        "A1LQFN3A"                                                                      | Bech32.Encoding.BECH32M
+        "abcdef1l7aum6echk45nj3s0wdvt2fg8x9yrzpqzd3ryx"                                 | Bech32.Encoding.BECH32M
+    }
+
+    @Unroll
+    def "Verify that invalid data #data throws IllegalArgumentException"(){
+        when:
+        Bech32.decode(data)
+        then:
+        thrown IllegalArgumentException
+        where:
+        data << [null, "pzry9x0s0muk", "1pzry9x0s0muk", "x1b4n0q5v", "li1dgmt3", "A1G7SGD8", "10a06t8", "1qzzfhee",
+                 "A12UEL5l", "a12uel5m"]
+    }
+
+    def "Verify that max length is checked"(){
+        setup:
+        String maxLengthData = "an83characterlonghumanreadablepartthatcontainsthenumber1andtheexcludedcharactersbio1tt5tgs"
+        String tooLongData = Bech32.encode("lnbc", new byte[90], Bech32.Encoding.BECH32)
+        expect:
+        Bech32.decode(maxLengthData).hrp == "an83characterlonghumanreadablepartthatcontainsthenumber1andtheexcludedcharactersbio"
+        when:
+        Bech32.decode(tooLongData)
+        then:
+        thrown IllegalArgumentException
+        when:
+        Bech32.Decoded decoded = Bech32.decode(tooLongData, -1)
+        then:
+        decoded.hrp == "lnbc"
+        decoded.data.length == 90
+    }
+
+    def "Verify that convertBits converts between 8 and 5 bit words"(){
+        setup:
+        byte[] data = [0x75, 0x1e, 0x76, 0xe8, 0x19] as byte[]
+        when:
+        byte[] words = Bech32.convertBits(data, 0, data.length, 8, 5, true)
+        then:
+        words.length == 8
+        Bech32.convertBits(words, 0, words.length, 5, 8, false) == data
+    }
+}
@@ -0,0 +1,129 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util
+
+import org.lightningj.lnd.proto.LightningApi
+import org.lightningj.lnd.wrapper.message.PayReq
+import spock.lang.Specification
+
+/**
+ * Unit tests for Bolt11Decoder.
+ *
+ * Created by Philip Vendil.
+ */
+class Bolt11DecoderSpec extends Specification {
+
+    static final String PAYEE = "03e7156ae33b0a208d0744199163177e909e80176e55d97a2f221ede0f934dd9ad"
+
+    // Test vector from BOLT11 specification, no amount, description and payment secret.
+    static final String SPEC_INVOICE = "lnbc1pvjluezsp5zyg3zyg3zyg3zyg3zyg3zyg3zyg3zyg3zyg3zyg3zyg3zyg3zygspp5qqqsyqcyq5rqwzqfqqqsyqcyq5rqwzqfqqqsyqcyq5rqwzqfqypqdpl2pkx2ctnv5sxxmmwwd5kgetjypeh2ursdae8g6twvus8g6rfwvs8qun0dfjkxaq9qrsgq357wnc5r2ueh7ck6q93dj32dlqnls087fxdwk8qakdyafkq3yap9us6v52vjjsrvywa6rt52cm9r9zqt8r2t7mlcwspyetp5h2tztugp9lfyql"
+
+    // Invoice signed with the BOLT11 test vector key, with amount, description hash, p2pkh and
+    // segwit fallback addresses, route hints, expiry and min final cltv expiry.
+    static final String FULL_INVOICE = "lnbc20m1pvjluezpp5qqqsyqcyq5rqwzqfqqqsyqcyq5rqwzqfqqqsyqcyq5rqwzqfqypqhp58yjmdan79s6qqdhdzgynm4zwqd5d7xmw5fk98klysy043l2ahrqsfpp3x9et2e20v6pu37c5d9vax37wxq72un98r9yq20q82gphp2nflc7jtzrcazrra7wwgzxqc8u7754cdlpfrmccae92qgzqvzq2ps8pqqqqqqpqqqqq9qqqvpeuqafqxu92d8lr6fvg0r5gv0heeeqgcrqlnm6jhphu9y00rrhy4grqszsvpcgpy9qqqqqqgqqqqq7qqzqxqzpucqzqffppqw508d6qejxtdg4y5r3zarvary0c5xw7kl9e6pwrsvtpcn5f9mqveaqpmsv4k434l0pn6fakdsagxqc8uf3vxfvzgzc52y9pasknsz3l2r4aa7ju0q8r2ttnj9tx57hhf9turg6sp9797e7"
+
+    def "Verify that BOLT11 specification test vector is decoded into wrapped PayReq"(){
+        when:
+        PayReq payReq = Bolt11Decoder.decode(SPEC_INVOICE)
+        then:
+        payReq.destination == PAYEE
+        payReq.paymentHash == "0001020304050607080900010203040506070809000102030405060708090102"
+        payReq.numSatoshis == 0L
+        payReq.numMsat == 0L
+        payReq.timestamp == 1496314658L
+        payReq.expiry == 3600L
+        payReq.cltvExpiry == 18L
+        payReq.description == "Please consider supporting this project"
+        payReq.descriptionHash == ""
+        payReq.fallbackAddr == ""
+        payReq.paymentAddr == ([0x11] * 32) as byte[]
+        payReq.routeHints.size() == 0
+        payReq.getFeaturesAsDetachedMap().keySet() == [8, 14] as Set
+        payReq.getFeaturesAsDetachedMap()[8].name == "tlv-onion"
+        payReq.getFeaturesAsDetachedMap()[8].isRequired
+        payReq.getFeaturesAsDetachedMap()[8].isKnown
+        payReq.getFeaturesAsDetachedMap()[14].name == "payment-addr"
+    }
+
+    def "Verify that all supported fields are decoded"(){
+        when:
+        LightningApi.PayReq payReq = Bolt11Decoder.decodeToApi(FULL_INVOICE)
+        then:
+        payReq.destination == PAYEE
+        payReq.numSatoshis == 2000000L
+        payReq.numMsat == 2000000000L
+        payReq.expiry == 60L
+        payReq.cltvExpiry == 9L
+        payReq.description == ""
+        payReq.descriptionHash == "3925b6f67e2c340036ed12093dd44e0368df1b6ea26c53dbe4811f58fd5db8c1"
+        payReq.fallbackAddr == "15WTXVVv4JHN992HjbRxMwmekcppRpzJrK"
+        payReq.routeHintsCount == 1
+        payReq.getRouteHints(0).hopHintsCount == 2
+        payReq.getRouteHints(0).getHopHints(0).nodeId == "029e03a901b85534ff1e92c43c74431f7ce72046060fcf7a95c37e148f78c77255"
+        payReq.getRouteHints(0).getHopHints(0).chanId == 0x0102030405060708L
+        payReq.getRouteHints(0).getHopHints(0).feeBaseMsat == 1
+        payReq.getRouteHints(0).getHopHints(0).feeProportionalMillionths == 20
+        payReq.getRouteHints(0).getHopHints(0).cltvExpiryDelta == 3
+        payReq.getRouteHints(0).getHopHints(1).nodeId == "039e03a901b85534ff1e92c43c74431f7ce72046060fcf7a95c37e148f78c77255"
+        payReq.getRouteHints(0).getHopHints(1).chanId == 0x030405060708090aL
+        payReq.getRouteHints(0).getHopHints(1).cltvExpiryDelta == 4
+    }
+
+    def "Verify that lightning: prefix and upper case payment requests are accepted"(){
+        expect:
+        Bolt11Decoder.decodeToApi("lightning:" + SPEC_INVOICE).destination == PAYEE
+        Bolt11Decoder.decodeToApi("LIGHTNING:" + SPEC_INVOICE.toUpperCase()).destination == PAYEE
+    }
+
+    def "Verify that invalid payment requests throws IllegalArgumentException"(){
+        when:
+        Bolt11Decoder.decodeToApi(data)
+        then:
+        thrown IllegalArgumentException
+        where:
+        data << [null, "", "lnbc1qqqqqqqq",
+                 // Invalid checksum
+                 SPEC_INVOICE.substring(0, SPEC_INVOICE.length() - 1) + "q",
+                 // Not a lightning payment request
+                 Bech32.encode("bc", Bech32.decode(SPEC_INVOICE, -1).data, Bech32.Encoding.BECH32),
+                 // Unknown currency
+                 Bech32.encode("lnxx", Bech32.decode(SPEC_INVOICE, -1).data, Bech32.Encoding.BECH32),
+                 // Invalid amount multiplier
+                 Bech32.encode("lnbc10x", Bech32.decode(SPEC_INVOICE, -1).data, Bech32.Encoding.BECH32),
+                 // Pico amount not multiple of 10
+                 Bech32.encode("lnbc11p", Bech32.decode(SPEC_INVOICE, -1).data, Bech32.Encoding.BECH32)]
+    }
+
+    def "Verify that modified payment request with correct checksum recovers another destination"(){
+        setup:
+        Bech32.Decoded decoded = Bech32.decode(SPEC_INVOICE, -1)
+        String modified = Bech32.encode("lnbc10u", decoded.data, Bech32.Encoding.BECH32)
+        expect:
+        Bolt11Decoder.decodeToApi(modified).destination != PAYEE
+        Bolt11Decoder.decodeToApi(modified).numSatoshis == 1000L
+    }
+
+    def "Verify that amounts are converted to milli satoshis"(){
+        expect:
+        Bolt11Decoder.parseAmount(amount) == expected
+        where:
+        amount  | expected
+        ""      | 0L
+        "1"     | 100000000000L
+        "20m"   | 2000000000L
+        "25u"   | 2500000L
+        "100n"  | 10000L
+        "10p"   | 1L
+    }
+}
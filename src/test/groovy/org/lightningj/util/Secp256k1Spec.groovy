@@ -0,0 +1,85 @@
+/************************************************************************
+ *                                                                       *
+ *  LightningJ                                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public License   *
+ *  (LGPL-3.0-or-later)                                                  *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 3 of the License, or any later version.                      *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.lightningj.util
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.security.MessageDigest
+
+/**
+ * Unit tests for Secp256k1.
+ *
+ * Created by Philip Vendil.
+ */
+class Secp256k1Spec extends Specification {
+
+    // Private key from the BOLT11 test vectors
+    static final BigInteger PRIV_KEY = new BigInteger("e126f68f7eafcc8b74f54d269fe206be715000f94dac067d1c04a8ca3b2db734", 16)
+    static final String PUB_KEY = "03e7156ae33b0a208d0744199163177e909e80176e55d97a2f221ede0f934dd9ad"
+
+    static final BigInteger[] G = [Secp256k1.GX, Secp256k1.GY, BigInteger.ONE] as BigInteger[]
+
+    def "Verify that multiplyAndAdd and compress calculates the public key of a private key"(){
+        expect:
+        Secp256k1.compress(Secp256k1.multiplyAndAdd(PRIV_KEY, G, BigInteger.ZERO, G)).encodeHex().toString() == PUB_KEY
+    }
+
+    def "Verify that multiplyAndAdd returns null for point at infinity"(){
+        expect:
+        Secp256k1.multiplyAndAdd(Secp256k1.N, G, BigInteger.ZERO, G) == null
+    }
+
+    @Unroll
+    def "Verify that public key is recovered from signature with nonce #nonce"(){
+        setup:
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest("lightningj".getBytes("UTF-8"))
+        BigInteger k = BigInteger.valueOf(nonce)
+        BigInteger[] point = Secp256k1.multiplyAndAdd(k, G, BigInteger.ZERO, G)
+        BigInteger zInv = point[2].modInverse(Secp256k1.P)
+        BigInteger x = point[0].multiply(zInv.pow(2)).mod(Secp256k1.P)
+        BigInteger y = point[1].multiply(zInv.pow(3)).mod(Secp256k1.P)
+        BigInteger r = x.mod(Secp256k1.N)
+        BigInteger s = k.modInverse(Secp256k1.N).multiply(new BigInteger(1, hash).add(r.multiply(PRIV_KEY))).mod(Secp256k1.N)
+        byte[] signature = new byte[64]
+        copyTo(r, signature, 0)
+        copyTo(s, signature, 32)
+        expect:
+        Secp256k1.recoverPublicKey(hash, signature, y.testBit(0) ? 1 : 0).encodeHex().toString() == PUB_KEY
+        Secp256k1.recoverPublicKey(hash, signature, y.testBit(0) ? 0 : 1).encodeHex().toString() != PUB_KEY
+        where:
+        nonce << [123456796L, 246913585L, 370370374L, 0x7FFFFFFFFFFFFFFFL]
+    }
+
+    def "Verify that recoverPublicKey throws IllegalArgumentException for invalid signatures"(){
+        when:
+        Secp256k1.recoverPublicKey(new byte[32], new byte[64], 0)
+        then:
+        thrown IllegalArgumentException
+        when:
+        Secp256k1.recoverPublicKey(new byte[32], new byte[63], 0)
+        then:
+        thrown IllegalArgumentException
+        when:
+        Secp256k1.recoverPublicKey(new byte[32], new byte[64], 4)
+        then:
+        thrown IllegalArgumentException
+    }
+
+    private static void copyTo(BigInteger value, byte[] target, int offset){
+        byte[] bytes = value.toByteArray()
+        int length = Math.min(bytes.length, 32)
+        System.arraycopy(bytes, bytes.length - length, target, offset + 32 - length, length)
+    }
+}